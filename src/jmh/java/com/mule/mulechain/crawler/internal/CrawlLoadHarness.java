@@ -0,0 +1,330 @@
+package com.mule.mulechain.crawler.internal;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mule.mulechain.crawler.internal.helpers.CrawlPartition;
+import com.mule.mulechain.crawler.internal.helpers.SiteGraph;
+import com.mule.mulechain.crawler.internal.helpers.crawlingHelper;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.runtime.operation.Result;
+import org.mule.runtime.extension.api.runtime.process.CompletionCallback;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Runs Crawl-website, Generate-sitemap and a Crawl-website-shard per shard against a {@link SyntheticSite} and writes a JSON performance report with
+ * pages per second, server side latency percentiles, peak heap and GC activity of every operation.
+ * <p>
+ * Settings are passed as name=value arguments, e.g. pages=20000 fanOut=20 depth=4 latencyMs=20 errorRate=0.01 maxPages=5000.
+ * Exits with status 1 if an operation fails, so it can gate a build.
+ */
+public class CrawlLoadHarness {
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      int equals = arg.indexOf('=');
+      if (equals <= 0) {
+        throw new IllegalArgumentException("Expected name=value but got " + arg);
+      }
+      options.put(arg.substring(0, equals), arg.substring(equals + 1));
+    }
+
+    SyntheticSite.Settings site = new SyntheticSite.Settings();
+    site.pageCount = intOption(options, "pages", site.pageCount);
+    site.fanOut = intOption(options, "fanOut", site.fanOut);
+    site.crossLinks = intOption(options, "crossLinks", site.crossLinks);
+    site.pageSizeKb = intOption(options, "pageSizeKb", site.pageSizeKb);
+    site.imagesPerPage = intOption(options, "images", site.imagesPerPage);
+    site.latencyMs = intOption(options, "latencyMs", site.latencyMs);
+    site.latencyJitterMs = intOption(options, "jitterMs", site.latencyJitterMs);
+    site.maxConcurrentPages = intOption(options, "maxConcurrent", site.maxConcurrentPages);
+    site.errorRate = Double.parseDouble(options.getOrDefault("errorRate", String.valueOf(site.errorRate)));
+
+    int maxDepth = intOption(options, "depth", 3);
+    int crawlerThreads = intOption(options, "threads", 4);
+    List<String> operations = Arrays.asList(options.getOrDefault("operations", "crawl,sitemap").split(","));
+    File report = new File(options.getOrDefault("report", "target/load-report.json"));
+
+    Map<String, Object> results = new LinkedHashMap<>();
+    results.put("timestamp", new Date().toString());
+    results.put("javaVersion", System.getProperty("java.version"));
+    results.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+    results.put("site", site);
+    results.put("maxDepth", maxDepth);
+    results.put("crawlerThreads", crawlerThreads);
+    List<Map<String, Object>> measurements = new ArrayList<>();
+    results.put("operations", measurements);
+
+    boolean failed = false;
+    Path downloadPath = Files.createTempDirectory("crawl-load");
+
+    MulechainwebcrawlerConfiguration configuration = withDefaults(new MulechainwebcrawlerConfiguration());
+    set(configuration, "crawlerThreads", crawlerThreads);
+    // lists are separated by semicolons, e.g. boostPaths=/p/7**;/p/8**
+    for (String list : Arrays.asList("priorityKeywords", "boostPaths")) {
+      if (options.containsKey(list)) {
+        set(configuration, list, Arrays.asList(options.get(list).split(";")));
+      }
+    }
+    configuration.initialise();
+
+    try (SyntheticSite server = new SyntheticSite(site)) {
+      MulechainwebcrawlerConnection connection = withDefaults(new MulechainwebcrawlerConnectionProvider()).connect();
+      MulechainwebcrawlerOperations crawler = new MulechainwebcrawlerOperations();
+      CrawlOutputSettings outputSettings = withDefaults(new CrawlOutputSettings());
+      CrawlBudgetSettings budget = withDefaults(new CrawlBudgetSettings());
+      for (String limit : Arrays.asList("maxPages", "maxDownloadMb", "maxDurationSeconds", "maxPagesPerHost")) {
+        set(budget, limit, intOption(options, limit, 0));
+      }
+
+      for (String operation : operations) {
+        Map<String, Object> measurement = new LinkedHashMap<>();
+        measurement.put("operation", operation);
+        measurements.add(measurement);
+
+        server.resetStatistics();
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = heapPools();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long gcCount = gcCount();
+        long gcTime = gcTime();
+        long start = System.nanoTime();
+
+        try {
+          String result;
+          if ("crawl".equals(operation)) {
+            result = crawler.crawlWebsite(configuration, connection, server.getUrl(), maxDepth, true, site.imagesPerPage > 0,
+                                          downloadPath.toString(), null, false, true, outputSettings, budget);
+          } else if ("sitemap".equals(operation)) {
+            result = crawler.getSiteMap(configuration, connection, server.getUrl(), maxDepth, null, false, true,
+                                        SiteGraph.Format.valueOf(options.getOrDefault("sitemapFormat", "JSON_TREE")), options.get("outputFile"),
+                                        Boolean.parseBoolean(options.get("linkStatistics")), budget);
+          } else if ("async".equals(operation)) {
+            result = crawlConcurrently(crawler, configuration, connection, intOption(options, "concurrentCrawls", 4), server.getUrl(), maxDepth, budget);
+          } else if ("shards".equals(operation)) {
+            // the synthetic site is a single host, sharding by host would put every page on one shard
+            CrawlPartition.ShardBy shardBy = CrawlPartition.ShardBy.valueOf(options.getOrDefault("shardBy", "URL"));
+            result = crawlInShards(configuration, intOption(options, "shards", 3), shardBy, server.getUrl(), maxDepth, site.imagesPerPage > 0,
+                                   downloadPath.toString(), outputSettings, budget);
+          } else {
+            throw new IllegalArgumentException("Unknown operation " + operation + ", expected crawl, sitemap, async or shards");
+          }
+
+          long elapsed = System.nanoTime() - start;
+          JsonNode root = crawlingHelper.parseJSON(result.getBytes(StandardCharsets.UTF_8));
+          long pages = countNodes(root);
+          measurement.put("pages", pages);
+          measurement.put("durationMs", TimeUnit.NANOSECONDS.toMillis(elapsed));
+          measurement.put("pagesPerSecond", pages * 1e9 / elapsed);
+          // the crawler's own view: phase timings, status codes and per host latency
+          measurement.put("crawlerMetrics", root.path("metrics"));
+          measurement.put("budgetExhausted", root.path("budgetExhausted").asText(null));
+        } catch (Exception e) {
+          failed = true;
+          measurement.put("error", e.toString());
+        }
+
+        measurement.put("requests", server.getRequests());
+        measurement.put("serverErrors", server.getErrors());
+        measurement.put("throttled", server.getThrottled());
+        measurement.put("bytesServed", server.getBytesSent());
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("p50", server.getLatencyPercentile(50));
+        latency.put("p90", server.getLatencyPercentile(90));
+        latency.put("p99", server.getLatencyPercentile(99));
+        latency.put("max", server.getLatencyPercentile(100));
+        measurement.put("latencyMs", latency);
+        // sum of the peaks of the heap pools since the operation started, an upper bound of the peak heap
+        measurement.put("peakHeapBytes", heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum());
+        measurement.put("gcCount", gcCount() - gcCount);
+        measurement.put("gcTimeMs", gcTime() - gcTime);
+      }
+    } finally {
+      configuration.dispose();
+      deleteRecursively(downloadPath);
+    }
+
+    if (report.getParentFile() != null) {
+      Files.createDirectories(report.getParentFile().toPath());
+    }
+    new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(report, results);
+    System.out.println(new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(measurements));
+    System.out.println("Report written to " + report.getAbsolutePath());
+
+    if (failed) {
+      System.exit(1);
+    }
+  }
+
+  // starts the sitemaps of several flows at once with Generate-sitemap-async from one thread, which is never blocked
+  private static String crawlConcurrently(MulechainwebcrawlerOperations crawler, MulechainwebcrawlerConfiguration configuration,
+                                          MulechainwebcrawlerConnection connection, int crawls, String url, int maxDepth,
+                                          CrawlBudgetSettings budget) throws Exception {
+    List<CompletableFuture<String>> results = new ArrayList<>();
+    for (int i = 0; i < crawls; i++) {
+      CompletableFuture<String> result = new CompletableFuture<>();
+      crawler.getSiteMapAsync(configuration, connection, url, maxDepth, null, false, i == 0, SiteGraph.Format.JSON_TREE, null, false, budget, new CompletionCallback<String, Void>() {
+        @Override
+        public void success(Result<String, Void> crawled) {
+          result.complete(crawled.getOutput());
+        }
+
+        @Override
+        public void error(Throwable e) {
+          result.completeExceptionally(e);
+        }
+      });
+      results.add(result);
+    }
+    for (CompletableFuture<String> result : results) {
+      result.get();
+    }
+    return results.get(0).get();
+  }
+
+  // every shard has its own configuration and connection, as it would on its own node, and they share the store
+  private static String crawlInShards(MulechainwebcrawlerConfiguration coordinator, int shards, CrawlPartition.ShardBy shardBy, String url, int maxDepth, boolean downloadImages,
+                                      String downloadPath, CrawlOutputSettings outputSettings, CrawlBudgetSettings budget) throws Exception {
+    String crawlId = "load-" + System.nanoTime();
+    List<MulechainwebcrawlerConfiguration> configurations = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    List<Exception> failures = Collections.synchronizedList(new ArrayList<>());
+    try {
+      for (int i = 0; i < shards; i++) {
+        MulechainwebcrawlerConfiguration configuration = withDefaults(new MulechainwebcrawlerConfiguration());
+        set(configuration, "crawlerThreads", coordinator.getCrawlerThreads());
+        configuration.initialise();
+        set(configuration, "crawlStore", coordinator.getCrawlStore());
+        configurations.add(configuration);
+
+        ShardSettings sharding = withDefaults(new ShardSettings());
+        set(sharding, "shardIndex", i);
+        set(sharding, "shardCount", shards);
+        set(sharding, "shardBy", shardBy);
+        MulechainwebcrawlerConnection connection = withDefaults(new MulechainwebcrawlerConnectionProvider()).connect();
+        Thread thread = new Thread(() -> {
+          try {
+            new MulechainwebcrawlerOperations().crawlWebsiteShard(configuration, connection, url, maxDepth, true, downloadImages,
+                                                                  downloadPath, crawlId, false, sharding, outputSettings, budget);
+          } catch (Exception e) {
+            failures.add(e);
+          }
+        }, "shard-" + i);
+        thread.start();
+        threads.add(thread);
+      }
+      String result = new MulechainwebcrawlerOperations().mergeCrawlShards(coordinator, crawlId, shards, 3600);
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      if (!failures.isEmpty()) {
+        throw failures.get(0);
+      }
+      return result;
+    } finally {
+      configurations.forEach(MulechainwebcrawlerConfiguration::dispose);
+    }
+  }
+
+  private static int intOption(Map<String, String> options, String name, int defaultValue) {
+    return options.containsKey(name) ? Integer.parseInt(options.get(name)) : defaultValue;
+  }
+
+  // parameters are normally injected by the runtime, apply the defaults declared on them instead
+  private static <T> T withDefaults(T target) throws ReflectiveOperationException {
+    for (Field field : target.getClass().getDeclaredFields()) {
+      Optional optional = field.getAnnotation(Optional.class);
+      if (optional == null || optional.defaultValue().isEmpty()) {
+        continue;
+      }
+      String value = optional.defaultValue();
+      Class<?> type = field.getType();
+      Object converted;
+      if (type == int.class) {
+        converted = Integer.parseInt(value);
+      } else if (type == double.class) {
+        converted = Double.parseDouble(value);
+      } else if (type == boolean.class) {
+        converted = Boolean.parseBoolean(value);
+      } else if (type.isEnum()) {
+        converted = enumValue(type, value);
+      } else {
+        converted = value;
+      }
+      field.setAccessible(true);
+      field.set(target, converted);
+    }
+    return target;
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static Object enumValue(Class<?> type, String value) {
+    return Enum.valueOf((Class<? extends Enum>) type, value);
+  }
+
+  private static void set(Object target, String name, Object value) throws ReflectiveOperationException {
+    Field field = target.getClass().getDeclaredField(name);
+    field.setAccessible(true);
+    field.set(target, value);
+  }
+
+  private static long countNodes(JsonNode node) {
+    if (node == null || node.isNull()) {
+      return 0;
+    }
+    long count = 1;
+    for (JsonNode child : node.path("children")) {
+      count += countNodes(child);
+    }
+    return count;
+  }
+
+  private static List<MemoryPoolMXBean> heapPools() {
+    List<MemoryPoolMXBean> pools = new ArrayList<>();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+        pools.add(pool);
+      }
+    }
+    return pools;
+  }
+
+  private static long gcCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0, collector.getCollectionCount());
+    }
+    return count;
+  }
+
+  private static long gcTime() {
+    long time = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      time += Math.max(0, collector.getCollectionTime());
+    }
+    return time;
+  }
+
+  private static void deleteRecursively(Path directory) throws IOException {
+    if (!Files.exists(directory)) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+}
@@ -0,0 +1,266 @@
+package com.mule.mulechain.crawler.internal;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Local HTTP server serving a generated site, so crawls can be measured without network access.
+ * <p>
+ * Page 0 is the home page at /. Page i links to its children i * fanOut + 1 ... i * fanOut + fanOut, which makes a tree
+ * of pageCount pages, plus crossLinks links to pages chosen at random. Everything is derived from the page id, so the
+ * same settings always produce the same site, including which pages fail.
+ */
+public class SyntheticSite implements AutoCloseable {
+
+  public static class Settings {
+    public int pageCount = 1000;
+    public int fanOut = 10;
+    public int crossLinks = 3;
+    public int pageSizeKb = 20;
+    public int imagesPerPage = 2;
+    public int latencyMs = 0;
+    public int latencyJitterMs = 0;
+    public double errorRate = 0;
+    // pages requested while more than this many are being served are answered 429, 0 for no limit
+    public int maxConcurrentPages = 0;
+  }
+
+  private static final String[] WORDS = ("mule runtime connector flow message payload transform api gateway policy "
+      + "deployment worker cluster endpoint request response header schema validation error retry batch record stream "
+      + "queue event listener scheduler configuration property certificate token exchange asset version release "
+      + "the a of to in for with on by from that this is are can will when each all").split(" ");
+
+  // 1x1 transparent png
+  private static final byte[] IMAGE = {
+      (byte) 0x89, 'P', 'N', 'G', 0x0d, 0x0a, 0x1a, 0x0a, 0, 0, 0, 0x0d, 'I', 'H', 'D', 'R', 0, 0, 0, 1, 0, 0, 0, 1,
+      8, 6, 0, 0, 0, 0x1f, 0x15, (byte) 0xc4, (byte) 0x89, 0, 0, 0, 0x0a, 'I', 'D', 'A', 'T', 0x78, (byte) 0x9c, 0x63,
+      0, 1, 0, 0, 5, 0, 1, 0x0d, 0x0a, 0x2d, (byte) 0xb4, 0, 0, 0, 0, 'I', 'E', 'N', 'D', (byte) 0xae, 0x42, 0x60,
+      (byte) 0x82};
+
+  // number of distinct images, pages share them like real sites share logos and icons
+  private static final int IMAGE_POOL = 50;
+  private static final int LATENCY_BUCKETS = 60_000;
+
+  private final Settings settings;
+  private final HttpServer server;
+  private final ExecutorService executor;
+
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong errors = new AtomicLong();
+  private final AtomicLong throttled = new AtomicLong();
+  private final AtomicInteger pagesInFlight = new AtomicInteger();
+  private final AtomicLong bytesSent = new AtomicLong();
+  // request counts per millisecond of latency, the last bucket collects everything slower
+  private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_BUCKETS + 1);
+
+  public SyntheticSite(Settings settings) throws IOException {
+    this.settings = settings;
+    this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 256);
+    // latency is simulated by sleeping, so every request in flight needs its own thread
+    this.executor = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "synthetic-site");
+      thread.setDaemon(true);
+      return thread;
+    });
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    server.start();
+  }
+
+  public String getUrl() {
+    return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+  }
+
+  public long getRequests() {
+    return requests.get();
+  }
+
+  public long getErrors() {
+    return errors.get();
+  }
+
+  public long getThrottled() {
+    return throttled.get();
+  }
+
+  public long getBytesSent() {
+    return bytesSent.get();
+  }
+
+  /**
+   * Server side time to answer a request in milliseconds, including the simulated latency, at the given percentile.
+   */
+  public long getLatencyPercentile(double percentile) {
+    long total = 0;
+    for (int i = 0; i < latencies.length(); i++) {
+      total += latencies.get(i);
+    }
+    long rank = (long) Math.ceil(total * percentile / 100.0);
+    long seen = 0;
+    for (int i = 0; i < latencies.length(); i++) {
+      seen += latencies.get(i);
+      if (seen >= rank && seen > 0) {
+        return i;
+      }
+    }
+    return 0;
+  }
+
+  public void resetStatistics() {
+    requests.set(0);
+    errors.set(0);
+    throttled.set(0);
+    bytesSent.set(0);
+    for (int i = 0; i < latencies.length(); i++) {
+      latencies.set(i, 0);
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    long start = System.nanoTime();
+    try {
+      String path = exchange.getRequestURI().getPath();
+      if ("/".equals(path)) {
+        page(exchange, 0);
+      } else if (path.startsWith("/p/") && path.endsWith(".html")) {
+        int id = parseId(path.substring(3, path.length() - 5));
+        if (id > 0 && id < settings.pageCount) {
+          page(exchange, id);
+        } else {
+          send(exchange, 404, "text/plain", "Not found".getBytes(StandardCharsets.UTF_8));
+        }
+      } else if (path.startsWith("/img/")) {
+        delay(path.hashCode());
+        send(exchange, 200, "image/png", IMAGE);
+      } else if ("/sitemap.xml".equals(path)) {
+        send(exchange, 200, "application/xml", sitemap());
+      } else {
+        send(exchange, 404, "text/plain", "Not found".getBytes(StandardCharsets.UTF_8));
+      }
+    } finally {
+      exchange.close();
+      requests.incrementAndGet();
+      long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      latencies.incrementAndGet((int) Math.min(millis, LATENCY_BUCKETS));
+    }
+  }
+
+  private void page(HttpExchange exchange, int id) throws IOException {
+    try {
+      if (settings.maxConcurrentPages > 0 && pagesInFlight.incrementAndGet() > settings.maxConcurrentPages) {
+        throttled.incrementAndGet();
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        send(exchange, 429, "text/plain", "Too many requests".getBytes(StandardCharsets.UTF_8));
+        return;
+      }
+      servePage(exchange, id);
+    } finally {
+      if (settings.maxConcurrentPages > 0) {
+        pagesInFlight.decrementAndGet();
+      }
+    }
+  }
+
+  private void servePage(HttpExchange exchange, int id) throws IOException {
+    SplittableRandom random = new SplittableRandom(id);
+    delay(id);
+    // the home page never fails, otherwise there would be nothing to crawl
+    if (random.nextDouble() < settings.errorRate && id != 0) {
+      errors.incrementAndGet();
+      send(exchange, 500, "text/plain", "Internal error".getBytes(StandardCharsets.UTF_8));
+      return;
+    }
+    send(exchange, 200, "text/html; charset=utf-8", html(id, random));
+  }
+
+  private byte[] html(int id, SplittableRandom random) {
+    StringBuilder html = new StringBuilder(settings.pageSizeKb * 1024 + 4096);
+    html.append("<!DOCTYPE html>\n<html lang=\"en\">\n<head>\n<meta charset=\"utf-8\">\n<title>Page ").append(id)
+        .append("</title>\n<meta name=\"description\" content=\"Synthetic page ").append(id).append("\">\n")
+        .append("<meta property=\"og:title\" content=\"Page ").append(id).append("\">\n</head>\n<body>\n<nav><ul>\n");
+
+    for (long child = (long) id * settings.fanOut + 1; child <= (long) id * settings.fanOut + settings.fanOut && child < settings.pageCount; child++) {
+      html.append("<li><a href=\"/p/").append(child).append(".html\">Page ").append(child).append("</a></li>\n");
+    }
+    for (int i = 0; i < settings.crossLinks; i++) {
+      int target = random.nextInt(settings.pageCount);
+      html.append("<li><a href=\"").append(target == 0 ? "/" : "/p/" + target + ".html").append("\">Related ").append(target).append("</a></li>\n");
+    }
+    html.append("<li><a href=\"https://www.example.org/\">External</a></li>\n</ul></nav>\n<main>\n<h1>Page ").append(id).append("</h1>\n");
+
+    for (int i = 0; i < settings.imagesPerPage; i++) {
+      html.append("<img src=\"/img/").append(random.nextInt(IMAGE_POOL)).append(".png\" alt=\"Figure ").append(i).append("\">\n");
+    }
+
+    // fill up to the page size with paragraphs of text
+    int target = settings.pageSizeKb * 1024;
+    while (html.length() < target) {
+      html.append("<h2 id=\"s").append(html.length()).append("\">Section</h2>\n<p>");
+      for (int word = 0; word < 120; word++) {
+        html.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+      }
+      html.append("</p>\n");
+    }
+    html.append("</main>\n</body>\n</html>\n");
+    return html.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private byte[] sitemap() {
+    StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
+    xml.append("<url><loc>").append(getUrl()).append("</loc></url>\n");
+    for (int id = 1; id < settings.pageCount; id++) {
+      xml.append("<url><loc>").append(getUrl()).append("p/").append(id).append(".html</loc></url>\n");
+    }
+    return xml.append("</urlset>\n").toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private void delay(int seed) {
+    int latency = settings.latencyMs;
+    if (settings.latencyJitterMs > 0) {
+      latency += new SplittableRandom(seed).nextInt(settings.latencyJitterMs + 1);
+    }
+    if (latency > 0) {
+      try {
+        Thread.sleep(latency);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", contentType);
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+    bytesSent.addAndGet(body.length);
+  }
+
+  private static int parseId(String id) {
+    try {
+      return Integer.parseInt(id);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+}
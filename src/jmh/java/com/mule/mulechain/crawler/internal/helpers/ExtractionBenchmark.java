@@ -0,0 +1,68 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-page cost of the extraction done for every crawled page. The document is parsed once per trial, so apart from
+ * {@link #parse()} the numbers exclude parsing. Run with -prof gc to see the allocation rate next to the throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ExtractionBenchmark {
+
+    @Param({"small", "medium", "large"})
+    public String fixture;
+
+    private String html;
+    private Document document;
+    private String text;
+    private Map<String, Object> insights;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        html = Fixtures.load(fixture);
+        document = Jsoup.parse(html, Fixtures.BASE_URI);
+        text = document.text();
+        insights = crawlingHelper.getPageInsights(document, null, crawlingHelper.PageInsightType.ALL);
+    }
+
+    @Benchmark
+    public Document parse() {
+        return Jsoup.parse(html, Fixtures.BASE_URI);
+    }
+
+    @Benchmark
+    public Map<String, Object> getPageInsights() throws IOException {
+        return crawlingHelper.getPageInsights(document, null, crawlingHelper.PageInsightType.ALL);
+    }
+
+    @Benchmark
+    public String getPageContent() throws IOException {
+        return crawlingHelper.getPageContent(document, null);
+    }
+
+    @Benchmark
+    public Map<String, String> getPageMetaTags() throws IOException {
+        return crawlingHelper.getPageMetaTags(document);
+    }
+
+    @Benchmark
+    public int countWords() {
+        return crawlingHelper.countWords(text);
+    }
+
+    @Benchmark
+    public String convertToJSON() throws IOException {
+        return crawlingHelper.convertToJSON(insights);
+    }
+}
@@ -0,0 +1,46 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTML pages the benchmarks run against, modelled on documentation pages: a navigation bar, a table of contents and an
+ * article with links, code, tables and images.
+ * <ul>
+ * <li>small, about 25 KB</li>
+ * <li>medium, about 400 KB</li>
+ * <li>large, about 4 MB, stored gzipped</li>
+ * </ul>
+ */
+final class Fixtures {
+
+    static final String BASE_URI = "https://docs.example.com/guide/page";
+
+    private Fixtures() {
+    }
+
+    static String load(String name) throws IOException {
+        String resource = "/fixtures/" + name + ".html";
+        InputStream in = Fixtures.class.getResourceAsStream(resource);
+        if (in == null) {
+            in = Fixtures.class.getResourceAsStream(resource + ".gz");
+            if (in == null) {
+                throw new IOException("No fixture named " + name);
+            }
+            in = new GZIPInputStream(in);
+        }
+
+        try (InputStream body = in) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+            return new String(content.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of classifying every link of a page as external or as a reference to the page itself. Reported per page, i.e.
+ * per pass over all of its links.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class LinkClassificationBenchmark {
+
+    @Param({"small", "medium", "large"})
+    public String fixture;
+
+    private String[] links;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Document document = Jsoup.parse(Fixtures.load(fixture), Fixtures.BASE_URI);
+        links = document.select("a[href]").stream().map(element -> element.attr("abs:href")).toArray(String[]::new);
+    }
+
+    @Benchmark
+    public void isExternalLink(Blackhole blackhole) throws MalformedURLException {
+        for (String link : links) {
+            blackhole.consume(crawlingHelper.isExternalLink(Fixtures.BASE_URI, link));
+        }
+    }
+
+    @Benchmark
+    public void isReferenceLink(Blackhole blackhole) {
+        for (String link : links) {
+            blackhole.consume(crawlingHelper.isReferenceLink(Fixtures.BASE_URI, link));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.mule.mulechain.crawler.internal;
+
+import com.mule.mulechain.crawler.internal.helpers.TextChunker;
+import com.mule.mulechain.crawler.internal.helpers.crawlingHelper;
+import org.jsoup.nodes.Document;
+import org.mule.runtime.api.exception.MuleRuntimeException;
+import org.mule.runtime.extension.api.runtime.streaming.PagingProvider;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mule.runtime.api.i18n.I18nMessageFactory.createStaticMessage;
+
+/**
+ * Streams the text chunks of a single page as JSON records. The page is fetched with the first page of results and
+ * chunks are cut only as they are requested.
+ */
+public class ChunkPagingProvider implements PagingProvider<MulechainwebcrawlerConnection, String> {
+
+  private static final int PAGE_SIZE = 25;
+
+  private final MulechainwebcrawlerConfiguration configuration;
+  private final String url;
+  private final ChunkingSettings chunking;
+  private TextChunker chunker;
+
+  public ChunkPagingProvider(MulechainwebcrawlerConfiguration configuration, String url, ChunkingSettings chunking) {
+    this.configuration = configuration;
+    this.url = url;
+    this.chunking = chunking;
+  }
+
+  @Override
+  public List<String> getPage(MulechainwebcrawlerConnection connection) {
+    try {
+      if (chunker == null) {
+        Document document = crawlingHelper.getDocument(connection.getFetcher(), url);
+        chunker = chunking.createChunker(document, configuration.getTags());
+      }
+      if (!chunker.hasNext()) {
+        return Collections.emptyList();
+      }
+      List<String> page = new ArrayList<>(PAGE_SIZE);
+      while (page.size() < PAGE_SIZE && chunker.hasNext()) {
+        page.add(crawlingHelper.convertToJSON(chunker.next().toRecord()));
+      }
+      return page;
+    } catch (IOException e) {
+      throw new MuleRuntimeException(createStaticMessage("Unable to chunk " + url), e);
+    }
+  }
+
+  @Override
+  public java.util.Optional<Integer> getTotalResults(MulechainwebcrawlerConnection connection) {
+    return java.util.Optional.empty();
+  }
+
+  @Override
+  public void close(MulechainwebcrawlerConnection connection) {
+    chunker = null;
+  }
+}
@@ -0,0 +1,40 @@
+package com.mule.mulechain.crawler.internal;
+
+import com.mule.mulechain.crawler.internal.helpers.TextChunker;
+import org.jsoup.nodes.Document;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.DisplayName;
+
+import java.util.List;
+
+/**
+ * How page text is split into chunks for embedding.
+ */
+public class ChunkingSettings {
+
+  /**
+   * Unit of the chunk size and overlap. Tokens are estimated at about 4 characters each.
+   */
+  @Parameter
+  @Optional(defaultValue = "TOKENS")
+  @DisplayName("Chunk Unit")
+  private TextChunker.Unit chunkUnit;
+
+  @Parameter
+  @Optional(defaultValue = "512")
+  @DisplayName("Chunk Size")
+  private int chunkSize;
+
+  /**
+   * How much of the end of a chunk is repeated at the start of the next one, at most half the chunk size.
+   */
+  @Parameter
+  @Optional(defaultValue = "64")
+  @DisplayName("Chunk Overlap")
+  private int chunkOverlap;
+
+  public TextChunker createChunker(Document document, List<String> tags) {
+    return new TextChunker(document, tags, chunkUnit, chunkSize, chunkOverlap);
+  }
+}
@@ -0,0 +1,45 @@
+package com.mule.mulechain.crawler.internal;
+
+import com.mule.mulechain.crawler.internal.helpers.CrawlBudget;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.DisplayName;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits on a crawl besides its maximum depth, 0 for no limit. When one runs out the crawl stops and returns the pages
+ * crawled so far, with the limit that was reached in budgetExhausted.
+ */
+public class CrawlBudgetSettings {
+
+  @Parameter
+  @Optional(defaultValue = "0")
+  @DisplayName("Max Pages")
+  private int maxPages;
+
+  /**
+   * Stops the crawl once this much page content has been downloaded. Pages served from the cache do not count.
+   */
+  @Parameter
+  @Optional(defaultValue = "0")
+  @DisplayName("Max Download Size (MB)")
+  private int maxDownloadMb;
+
+  @Parameter
+  @Optional(defaultValue = "0")
+  @DisplayName("Max Duration (seconds)")
+  private int maxDurationSeconds;
+
+  /**
+   * Pages over this number on a host are skipped, while the crawl goes on with the other hosts.
+   */
+  @Parameter
+  @Optional(defaultValue = "0")
+  @DisplayName("Max Pages Per Host")
+  private int maxPagesPerHost;
+
+  public CrawlBudget createBudget() {
+    return new CrawlBudget(maxPages, maxDownloadMb * 1024L * 1024L, TimeUnit.SECONDS.toMillis(maxDurationSeconds), maxPagesPerHost);
+  }
+}
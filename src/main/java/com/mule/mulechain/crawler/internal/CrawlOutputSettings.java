@@ -0,0 +1,58 @@
+package com.mule.mulechain.crawler.internal;
+
+import com.mule.mulechain.crawler.internal.helpers.CrawlMetrics;
+import com.mule.mulechain.crawler.internal.helpers.FilePerPageSink;
+import com.mule.mulechain.crawler.internal.helpers.JsonLinesSink;
+import com.mule.mulechain.crawler.internal.helpers.PageSink;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.DisplayName;
+
+import java.io.IOException;
+
+/**
+ * How crawled pages are written to the download location.
+ */
+public class CrawlOutputSettings {
+
+  public enum OutputFormat {
+    FILE_PER_PAGE,
+    JSON_LINES
+  }
+
+  /**
+   * One JSON file per page, or pages appended to rotating JSON Lines segments with an index file.
+   */
+  @Parameter
+  @Optional(defaultValue = "FILE_PER_PAGE")
+  @DisplayName("Output Format")
+  private OutputFormat outputFormat;
+
+  /**
+   * Pages written to a JSON Lines segment before the next one is started, 0 for no limit.
+   */
+  @Parameter
+  @Optional(defaultValue = "10000")
+  @DisplayName("Max Pages Per Segment")
+  private int maxPagesPerSegment;
+
+  /**
+   * Size a JSON Lines segment grows to before the next one is started, 0 for no limit.
+   */
+  @Parameter
+  @Optional(defaultValue = "100")
+  @DisplayName("Max Segment Size (MB)")
+  private int maxSegmentSizeMb;
+
+  @Parameter
+  @Optional(defaultValue = "NONE")
+  @DisplayName("Segment Compression")
+  private JsonLinesSink.Compression segmentCompression;
+
+  public PageSink createSink(String downloadPath, CrawlMetrics metrics) throws IOException {
+    if (outputFormat == OutputFormat.JSON_LINES) {
+      return new JsonLinesSink(downloadPath, maxPagesPerSegment, maxSegmentSizeMb * 1024L * 1024L, segmentCompression, metrics);
+    }
+    return new FilePerPageSink(downloadPath, metrics);
+  }
+}
@@ -0,0 +1,187 @@
+package com.mule.mulechain.crawler.internal;
+
+import com.mule.mulechain.crawler.internal.helpers.CrawlEngine;
+import com.mule.mulechain.crawler.internal.helpers.PageExtractor;
+import com.mule.mulechain.crawler.internal.helpers.PageRecord;
+import com.mule.mulechain.crawler.internal.helpers.SiteMapNode;
+import com.mule.mulechain.crawler.internal.helpers.TextChunk;
+import com.mule.mulechain.crawler.internal.helpers.crawlingHelper;
+import org.mule.runtime.api.exception.MuleRuntimeException;
+import org.mule.runtime.extension.api.runtime.streaming.PagingProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+
+import static org.mule.runtime.api.i18n.I18nMessageFactory.createStaticMessage;
+
+/**
+ * Streams one JSON record per crawled page, or per text chunk when pages are chunked. The crawl runs on the stream executor of
+ * the configuration and hands records over through a bounded queue, so a slow consumer pauses the crawl instead of letting
+ * results pile up in memory.
+ */
+public class CrawlPagingProvider implements PagingProvider<MulechainwebcrawlerConnection, String> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CrawlPagingProvider.class);
+
+  private static final int PAGE_SIZE = 25;
+
+  // compared by identity to mark the end of the crawl
+  private static final String END_OF_CRAWL = new String("END_OF_CRAWL");
+
+  private final MulechainwebcrawlerConfiguration configuration;
+  private final String url;
+  private final int maxDepth;
+  private final Set<PageExtractor.Output> pageOutputs;
+  private final CrawlEngine.PageProcessor processor;
+
+  private final BlockingQueue<String> records = new ArrayBlockingQueue<>(PAGE_SIZE * 4);
+  private volatile Throwable failure;
+  private Future<?> crawl;
+  private boolean finished;
+
+  public CrawlPagingProvider(MulechainwebcrawlerConfiguration configuration, String url, int maxDepth, Set<PageExtractor.Output> pageOutputs, CrawlEngine.PageProcessor processor) {
+    this.configuration = configuration;
+    this.url = url;
+    this.maxDepth = maxDepth;
+    this.pageOutputs = pageOutputs;
+    this.processor = processor;
+  }
+
+  /**
+   * A page streamed as its text chunks. The chunks are cut when the page comes up in crawl order, one record at a time, so
+   * a slow consumer pauses the chunking of a page as well and its chunks are never all held at once.
+   */
+  public static SiteMapNode chunksOf(String url, Iterator<TextChunk> chunks) {
+    return new Chunks(url, chunks);
+  }
+
+  private static class Chunks extends SiteMapNode {
+    private final Iterator<TextChunk> chunks;
+
+    private Chunks(String url, Iterator<TextChunk> chunks) {
+      super(url);
+      this.chunks = chunks;
+    }
+  }
+
+  @Override
+  public List<String> getPage(MulechainwebcrawlerConnection connection) {
+    if (finished) {
+      // the end of the crawl may have come with the last records, its failure is reported on the call after them
+      checkFailure();
+      return Collections.emptyList();
+    }
+    if (crawl == null) {
+      start(connection);
+    }
+
+    List<String> page = new ArrayList<>(PAGE_SIZE);
+    try {
+      // wait for at least one record, then take whatever else is ready
+      String record = records.take();
+      while (record != null) {
+        if (record == END_OF_CRAWL) {
+          finished = true;
+          break;
+        }
+        page.add(record);
+        if (page.size() >= PAGE_SIZE) {
+          break;
+        }
+        record = records.poll();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MuleRuntimeException(createStaticMessage("Interrupted while waiting for crawl results"), e);
+    }
+
+    if (finished && page.isEmpty()) {
+      checkFailure();
+    }
+    return page;
+  }
+
+  @Override
+  public java.util.Optional<Integer> getTotalResults(MulechainwebcrawlerConnection connection) {
+    return java.util.Optional.empty();
+  }
+
+  @Override
+  public void close(MulechainwebcrawlerConnection connection) {
+    if (crawl != null) {
+      crawl.cancel(true);
+    }
+  }
+
+  @Override
+  public boolean useStickyConnections() {
+    return true;
+  }
+
+  private void start(MulechainwebcrawlerConnection connection) {
+    CrawlEngine engine = configuration.createCrawlEngine(connection.getFetcher());
+    engine.setExtraction(pageOutputs, configuration.getTags());
+
+    crawl = configuration.getStreamExecutor().submit(() -> {
+      try {
+        engine.crawl(url, maxDepth, processor, this::emit);
+      } catch (IOException | RuntimeException e) {
+        LOGGER.error("Streaming crawl failed: " + e);
+        failure = e;
+      } finally {
+        try {
+          records.put(END_OF_CRAWL);
+        } catch (InterruptedException e) {
+          // consumer has closed the stream, nobody is waiting for the end marker
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+  }
+
+  private void checkFailure() {
+    if (failure != null) {
+      throw new MuleRuntimeException(createStaticMessage("Crawl of " + url + " failed"), failure);
+    }
+  }
+
+  private void emit(SiteMapNode node, String parentUrl, int depth) throws IOException {
+    if (node instanceof Chunks) {
+      // one record per chunk, each with where its page sits in the crawl
+      Iterator<TextChunk> chunks = ((Chunks) node).chunks;
+      while (chunks.hasNext()) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("url", node.getUrl());
+        record.put("parentUrl", parentUrl);
+        record.put("depth", depth);
+        record.putAll(chunks.next().toRecord());
+        put(crawlingHelper.convertToJSON(record));
+      }
+      return;
+    }
+
+    Map<String, Object> record = new LinkedHashMap<>();
+    record.put("url", node.getUrl());
+    record.put("parentUrl", parentUrl);
+    record.put("depth", depth);
+    if (node instanceof PageRecord) {
+      record.putAll(((PageRecord) node).getPageData());
+    }
+    put(crawlingHelper.convertToJSON(record));
+  }
+
+  private void put(String record) throws InterruptedIOException {
+    try {
+      records.put(record);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Streaming crawl cancelled");
+    }
+  }
+}
@@ -1,24 +1,363 @@
 package com.mule.mulechain.crawler.internal;
 
+import com.mule.mulechain.crawler.internal.helpers.BloomFilter;
+import com.mule.mulechain.crawler.internal.helpers.CrawlEngine;
+import com.mule.mulechain.crawler.internal.helpers.CrawlJournal;
+import com.mule.mulechain.crawler.internal.helpers.CrawlStore;
+import com.mule.mulechain.crawler.internal.helpers.ImageDownloader;
+import com.mule.mulechain.crawler.internal.helpers.InMemoryCrawlStore;
+import com.mule.mulechain.crawler.internal.helpers.KeywordLinkScorer;
+import com.mule.mulechain.crawler.internal.helpers.LinkScorer;
+import com.mule.mulechain.crawler.internal.helpers.LongHashSet;
+import com.mule.mulechain.crawler.internal.helpers.NearDuplicateIndex;
+import com.mule.mulechain.crawler.internal.helpers.PageFetcher;
+import com.mule.mulechain.crawler.internal.helpers.UrlNormalizer;
+import com.mule.mulechain.crawler.internal.helpers.UrlScope;
+import com.mule.mulechain.crawler.internal.helpers.VisitedUrlSet;
+import org.mule.runtime.api.lifecycle.Disposable;
+import org.mule.runtime.api.lifecycle.Initialisable;
+import org.mule.runtime.api.store.ObjectStore;
 import org.mule.runtime.extension.api.annotation.Operations;
+import org.mule.runtime.extension.api.annotation.Sources;
+import org.mule.runtime.extension.api.annotation.connectivity.ConnectionProviders;
 import org.mule.runtime.extension.api.annotation.param.Optional;
 import org.mule.runtime.extension.api.annotation.param.Parameter;
 import org.mule.runtime.extension.api.annotation.param.display.DisplayName;
 
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * This class represents an extension configuration, values set in this class are commonly used across multiple
  * operations since they represent something core from the extension.
  */
 @Operations(MulechainwebcrawlerOperations.class)
-public class MulechainwebcrawlerConfiguration {
+@ConnectionProviders(MulechainwebcrawlerConnectionProvider.class)
+@Sources(PageChangeSource.class)
+public class MulechainwebcrawlerConfiguration implements Initialisable, Disposable {
 
   @Parameter
   @Optional
   @DisplayName("Tag List")
   private List<String> tags;
 
+  /**
+   * Number of pages fetched in parallel while crawling.
+   */
+  @Parameter
+  @Optional(defaultValue = "4")
+  @DisplayName("Crawler Threads")
+  private int crawlerThreads;
+
+  /**
+   * Query parameters removed from urls before they are compared, e.g. utm_* or sessionid. A trailing * matches any suffix.
+   */
+  @Parameter
+  @Optional
+  @DisplayName("Ignored Query Parameters")
+  private List<String> ignoredQueryParameters;
+
+  /**
+   * How visited urls are remembered: exact 64-bit fingerprints, or a Bloom filter that uses less memory on very large
+   * crawls at the cost of occasionally treating an unvisited page as already visited.
+   */
+  @Parameter
+  @Optional(defaultValue = "FINGERPRINT")
+  @DisplayName("Visited URL Tracking")
+  private VisitedUrlTracking visitedUrlTracking;
+
+  /**
+   * Number of urls the Bloom filter is sized for, when Bloom filter tracking is used.
+   */
+  @Parameter
+  @Optional(defaultValue = "1000000")
+  @DisplayName("Bloom Filter Capacity")
+  private int bloomFilterCapacity;
+
+  /**
+   * Number of pages whose links are kept in memory during a crawl, so pages reached again at another depth are not
+   * fetched twice.
+   */
+  @Parameter
+  @Optional(defaultValue = "5000")
+  @DisplayName("Page Cache Size")
+  private int pageCacheSize;
+
+  /**
+   * Number of images downloaded in parallel.
+   */
+  @Parameter
+  @Optional(defaultValue = "4")
+  @DisplayName("Image Download Threads")
+  private int imageDownloadThreads;
+
+  /**
+   * Number of crawls of the async operations that run at once on JVMs before Java 21, each holding one thread until it
+   * completes. Further crawls wait for a thread. Not used on Java 21 and later, where every crawl gets a virtual thread.
+   */
+  @Parameter
+  @Optional(defaultValue = "8")
+  @DisplayName("Async Crawl Threads")
+  private int asyncCrawlThreads;
+
+  /**
+   * Images larger than this are not downloaded. 0 means no limit.
+   */
+  @Parameter
+  @Optional(defaultValue = "0")
+  @DisplayName("Max Image Size (KB)")
+  private int maxImageSizeKb;
+
+  /**
+   * Only save responses whose Content-Type is an image.
+   */
+  @Parameter
+  @Optional(defaultValue = "false")
+  @DisplayName("Images Only")
+  private boolean imagesOnly;
+
+  /**
+   * Skip saving pages whose content is nearly identical to a page already crawled, such as versioned copies or print views.
+   */
+  @Parameter
+  @Optional(defaultValue = "false")
+  @DisplayName("Detect Near Duplicates")
+  private boolean detectNearDuplicates;
+
+  /**
+   * Maximum number of differing bits between the 64-bit SimHash of two pages for them to count as near duplicates.
+   */
+  @Parameter
+  @Optional(defaultValue = "3")
+  @DisplayName("Near Duplicate Distance")
+  private int nearDuplicateDistance;
+
+  /**
+   * Skip pages disallowed by the robots.txt of their host and wait its Crawl-delay between requests.
+   */
+  @Parameter
+  @Optional(defaultValue = "true")
+  @DisplayName("Respect Robots.txt")
+  private boolean respectRobotsTxt;
+
+  /**
+   * Extensions of links that are not fetched while crawling, such as pdf or zip, decided before any request is made.
+   * Defaults to common document, archive, image, audio, video, style and font extensions. Set an empty list to fetch
+   * every link and decide from the Content-Type of the response.
+   */
+  @Parameter
+  @Optional
+  @DisplayName("Skipped Extensions")
+  private List<String> skippedExtensions;
+
+  /**
+   * Hosts the crawl may follow links to, such as docs.example.com, or *.example.com for any subdomain of example.com.
+   * Defaults to the host of the start page and its subdomains.
+   */
+  @Parameter
+  @Optional
+  @DisplayName("Allowed Hosts")
+  private List<String> allowedHosts;
+
+  /**
+   * Only follow links whose path matches one of these rules: a path prefix such as /docs, a glob such as /docs/** or
+   * *.html, or a regular expression on the path and query prefixed with regex:.
+   */
+  @Parameter
+  @Optional
+  @DisplayName("Include Paths")
+  private List<String> includePaths;
+
+  /**
+   * Do not follow links whose path matches one of these rules, written as for Include Paths, e.g. /api/**.
+   */
+  @Parameter
+  @Optional
+  @DisplayName("Exclude Paths")
+  private List<String> excludePaths;
+
+  /**
+   * Crawl best-first, following first the links whose url or anchor text contain these words. Pages are then crawled
+   * once each, in the order of the scores of the links to them rather than depth by depth, so a budget is spent on the
+   * pages that matter most.
+   */
+  @Parameter
+  @Optional
+  @DisplayName("Priority Keywords")
+  private List<String> priorityKeywords;
+
+  /**
+   * Crawl best-first, following first the links whose path matches one of these rules, written as for Include Paths.
+   */
+  @Parameter
+  @Optional
+  @DisplayName("Boost Paths")
+  private List<String> boostPaths;
+
+  /**
+   * Lowers the score of a link by this much for every segment of its path, so shallower pages are crawled first among
+   * pages of similar relevance. Only applies with Priority Keywords or Boost Paths.
+   */
+  @Parameter
+  @Optional(defaultValue = "0")
+  @DisplayName("Path Depth Penalty")
+  private double pathDepthPenalty;
+
+  /**
+   * Directory where the progress of crawls started with a Crawl ID is journaled, so they can be resumed after an
+   * interruption. Defaults to a directory under java.io.tmpdir.
+   */
+  @Parameter
+  @Optional
+  @DisplayName("Checkpoint Directory")
+  private String checkpointDirectory;
+
+  /**
+   * Object store through which the shards of a distributed crawl exchange links and results. Use a persistent object
+   * store to run shards on different nodes of a cluster. Defaults to memory, for shards running in this application.
+   */
+  @Parameter
+  @Optional
+  @DisplayName("Shared Crawl Store")
+  private ObjectStore<Serializable> sharedCrawlStore;
+
+  private ExecutorService crawlExecutor;
+  private ExecutorService imageExecutor;
+  private ExecutorService asyncExecutor;
+  private ExecutorService streamExecutor;
+  private UrlScope urlScope;
+  private LinkScorer linkScorer;
+  private CrawlStore crawlStore;
+
+  public enum VisitedUrlTracking {
+    FINGERPRINT,
+    BLOOM_FILTER
+  }
+
+  @Override
+  public void initialise() {
+    // compiled once, every link of every crawl is checked against the same rules
+    urlScope = UrlScope.compile(allowedHosts, includePaths, excludePaths);
+    linkScorer = KeywordLinkScorer.create(priorityKeywords, boostPaths, pathDepthPenalty);
+    crawlStore = sharedCrawlStore != null ? new ObjectStoreCrawlStore(sharedCrawlStore) : new InMemoryCrawlStore();
+    crawlExecutor = Executors.newFixedThreadPool(Math.max(1, crawlerThreads), threadFactory("web-crawler-worker-"));
+    // separate from the crawl workers, which wait on image downloads
+    imageExecutor = Executors.newFixedThreadPool(Math.max(1, imageDownloadThreads), threadFactory("web-crawler-image-"));
+    asyncExecutor = newAsyncExecutor(asyncCrawlThreads);
+    // one thread per open stream, each parked while its consumer is behind
+    streamExecutor = Executors.newCachedThreadPool(threadFactory("web-crawler-stream-"));
+  }
+
+  @Override
+  public void dispose() {
+    if (crawlExecutor != null) {
+      crawlExecutor.shutdownNow();
+    }
+    if (imageExecutor != null) {
+      imageExecutor.shutdownNow();
+    }
+    if (asyncExecutor != null) {
+      asyncExecutor.shutdownNow();
+    }
+    if (streamExecutor != null) {
+      streamExecutor.shutdownNow();
+    }
+  }
+
+  // the async operations' crawls spend their time waiting on the crawl workers, so they run on virtual threads when the
+  // JVM has them (Java 21 and later). Otherwise each crawl blocks a platform thread, and a fixed pool queues the crawls
+  // started beyond its size instead of growing a thread for every one of them
+  private static ExecutorService newAsyncExecutor(int threads) {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newFixedThreadPool(Math.max(1, threads), threadFactory("web-crawler-async-"));
+    }
+  }
+
+  private static ThreadFactory threadFactory(String prefix) {
+    AtomicInteger threadCount = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /**
+   * Returns a new index for one crawl, or null when near duplicate detection is off.
+   */
+  public NearDuplicateIndex createNearDuplicateIndex() {
+    return detectNearDuplicates ? new NearDuplicateIndex(nearDuplicateDistance) : null;
+  }
+
+  public ImageDownloader createImageDownloader(PageFetcher fetcher, String downloadPath) throws IOException {
+    return new ImageDownloader(fetcher, imageExecutor, downloadPath, maxImageSizeKb * 1024L, imagesOnly);
+  }
+
+  /**
+   * Opens the journal of a resumable crawl, or returns null when no crawl id is given.
+   */
+  public CrawlJournal openCrawlJournal(String crawlId, String url, int maxDepth) throws IOException {
+    if (crawlId == null || crawlId.isEmpty()) {
+      return null;
+    }
+    String directory = checkpointDirectory != null ? checkpointDirectory : Paths.get(System.getProperty("java.io.tmpdir"), "mule-web-crawler").toString();
+    return CrawlJournal.open(Paths.get(directory), crawlId, url, maxDepth);
+  }
+
+  public CrawlEngine createCrawlEngine(PageFetcher fetcher) {
+    Supplier<VisitedUrlSet> visitedSetFactory = visitedUrlTracking == VisitedUrlTracking.BLOOM_FILTER
+        ? () -> new BloomFilter(bloomFilterCapacity, 0.01)
+        : LongHashSet::new;
+    CrawlEngine engine = new CrawlEngine(crawlExecutor, fetcher, createUrlNormalizer(), visitedSetFactory);
+    engine.setPageCacheSize(pageCacheSize);
+    engine.setHostPolicies(respectRobotsTxt ? fetcher.getHostPolicies() : null);
+    if (skippedExtensions != null) {
+      engine.setSkippedExtensions(skippedExtensions);
+    }
+    engine.setScope(urlScope);
+    // a window of twice the workers keeps them busy while pages are handled in the order they were started
+    engine.setScorer(linkScorer, 2 * Math.max(1, crawlerThreads));
+    return engine;
+  }
+
+  /**
+   * The compiled scope rules, or null when links are not restricted beyond the site of the start page.
+   */
+  public UrlScope getUrlScope() {
+    return urlScope;
+  }
+
+  /**
+   * Runs the crawls of the async operations, off the threads of the flows that started them.
+   */
+  public ExecutorService getAsyncExecutor() {
+    return asyncExecutor;
+  }
+
+  /**
+   * Runs the crawls of the streaming operations, each handing its pages to the consumer of its stream.
+   */
+  public ExecutorService getStreamExecutor() {
+    return streamExecutor;
+  }
+
+  public CrawlStore getCrawlStore() {
+    return crawlStore;
+  }
+
+  public UrlNormalizer createUrlNormalizer() {
+    return new UrlNormalizer(ignoredQueryParameters);
+  }
+
   // Getters and Setters
   public List<String> getTags() {
     return this.tags;
@@ -27,4 +366,16 @@ public class MulechainwebcrawlerConfiguration {
   public void setTags(List<String> tags) {
     this.tags = tags;
   }
+
+  public int getCrawlerThreads() {
+    return crawlerThreads;
+  }
+
+  public boolean isRespectRobotsTxt() {
+    return respectRobotsTxt;
+  }
+
+  public ExecutorService getCrawlExecutor() {
+    return crawlExecutor;
+  }
 }
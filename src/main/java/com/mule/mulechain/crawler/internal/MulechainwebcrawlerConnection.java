@@ -0,0 +1,24 @@
+package com.mule.mulechain.crawler.internal;
+
+import com.mule.mulechain.crawler.internal.helpers.PageFetcher;
+
+/**
+ * This class represents an extension connection. It holds the shared {@link PageFetcher} all operations fetch through.
+ */
+public final class MulechainwebcrawlerConnection {
+
+  private final PageFetcher fetcher;
+
+  public MulechainwebcrawlerConnection(PageFetcher fetcher) {
+    this.fetcher = fetcher;
+  }
+
+  public PageFetcher getFetcher() {
+    return fetcher;
+  }
+
+  public void invalidate() {
+    // connections are pooled by the JDK, only the metrics registered over JMX need releasing
+    fetcher.getMetrics().unregister();
+  }
+}
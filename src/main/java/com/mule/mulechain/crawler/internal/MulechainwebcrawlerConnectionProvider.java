@@ -0,0 +1,111 @@
+package com.mule.mulechain.crawler.internal;
+
+import com.mule.mulechain.crawler.internal.helpers.HttpCache;
+import com.mule.mulechain.crawler.internal.helpers.PageFetcher;
+import org.mule.runtime.api.connection.CachedConnectionProvider;
+import org.mule.runtime.api.connection.ConnectionException;
+import org.mule.runtime.api.connection.ConnectionValidationResult;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.RefName;
+import org.mule.runtime.extension.api.annotation.param.display.DisplayName;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+
+/**
+ * This class (as it's name implies) provides connection instances and the funcionality to disconnect and validate those
+ * connections.
+ * <p>
+ * It is a {@link CachedConnectionProvider}, so a single fetcher (and its keep-alive connections) is shared by every
+ * operation that uses the same configuration.
+ */
+public class MulechainwebcrawlerConnectionProvider implements CachedConnectionProvider<MulechainwebcrawlerConnection> {
+
+  // name of the configuration, the crawl metrics are published over JMX under it
+  @RefName
+  private String configName;
+
+  /**
+   * Time in milliseconds to wait for a connection to be established.
+   */
+  @Parameter
+  @Optional(defaultValue = "10000")
+  @DisplayName("Connect Timeout (ms)")
+  private int connectTimeout;
+
+  /**
+   * Time in milliseconds to wait for data while reading a response.
+   */
+  @Parameter
+  @Optional(defaultValue = "30000")
+  @DisplayName("Read Timeout (ms)")
+  private int readTimeout;
+
+  @Parameter
+  @Optional(defaultValue = "Mozilla/5.0 (compatible; MACWebCrawler/0.1.0)")
+  @DisplayName("User Agent")
+  private String userAgent;
+
+  /**
+   * Maximum number of requests in flight to a single host.
+   */
+  @Parameter
+  @Optional(defaultValue = "8")
+  @DisplayName("Max Connections Per Host")
+  private int maxConnectionsPerHost;
+
+  /**
+   * Request gzip/deflate compressed responses.
+   */
+  @Parameter
+  @Optional(defaultValue = "true")
+  @DisplayName("Compression")
+  private boolean compression;
+
+  /**
+   * Directory where fetched pages are cached between crawls. When set, pages are revalidated with conditional requests
+   * and served from disk if the server reports them as not modified.
+   */
+  @Parameter
+  @Optional
+  @DisplayName("Cache Directory")
+  private String cacheDirectory;
+
+  /**
+   * Pages larger than this are not downloaded, judging by Content-Length when the server sends it and otherwise by
+   * aborting the download once the limit is reached. 0 means no limit.
+   */
+  @Parameter
+  @Optional(defaultValue = "10240")
+  @DisplayName("Max Page Size (KB)")
+  private int maxPageSizeKb;
+
+  @Override
+  public MulechainwebcrawlerConnection connect() throws ConnectionException {
+    HttpCache cache = null;
+    if (cacheDirectory != null && !cacheDirectory.isEmpty()) {
+      try {
+        cache = new HttpCache(Paths.get(cacheDirectory));
+      } catch (IOException e) {
+        throw new ConnectionException("Unable to open cache directory " + cacheDirectory, e);
+      }
+    }
+    PageFetcher fetcher = new PageFetcher(connectTimeout, readTimeout, userAgent, maxConnectionsPerHost, compression, cache, maxPageSizeKb * 1024L);
+    if (configName != null) {
+      fetcher.getMetrics().register(configName);
+    }
+    return new MulechainwebcrawlerConnection(fetcher);
+  }
+
+  @Override
+  public void disconnect(MulechainwebcrawlerConnection connection) {
+    connection.invalidate();
+  }
+
+  @Override
+  public ConnectionValidationResult validate(MulechainwebcrawlerConnection connection) {
+    return ConnectionValidationResult.success();
+  }
+}
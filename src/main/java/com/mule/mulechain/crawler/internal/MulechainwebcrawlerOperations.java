@@ -1,23 +1,50 @@
 package com.mule.mulechain.crawler.internal;
 
+import com.mule.mulechain.crawler.internal.helpers.CrawlBudget;
+import com.mule.mulechain.crawler.internal.helpers.CrawlEngine;
+import com.mule.mulechain.crawler.internal.helpers.CrawlJournal;
+import com.mule.mulechain.crawler.internal.helpers.CrawlMetrics;
+import com.mule.mulechain.crawler.internal.helpers.CrawlPartition;
 import com.mule.mulechain.crawler.internal.helpers.CrawlResult;
+import com.mule.mulechain.crawler.internal.helpers.ImageDownloader;
+import com.mule.mulechain.crawler.internal.helpers.NearDuplicateIndex;
+import com.mule.mulechain.crawler.internal.helpers.PageExtract;
+import com.mule.mulechain.crawler.internal.helpers.PageExtractor;
+import com.mule.mulechain.crawler.internal.helpers.PageFetcher;
+import com.mule.mulechain.crawler.internal.helpers.PageRecord;
+import com.mule.mulechain.crawler.internal.helpers.PageSink;
+import com.mule.mulechain.crawler.internal.helpers.SimHash;
+import com.mule.mulechain.crawler.internal.helpers.SiteGraph;
+import com.mule.mulechain.crawler.internal.helpers.SitemapReader;
 import com.mule.mulechain.crawler.internal.helpers.SiteMapNode;
 import com.mule.mulechain.crawler.internal.helpers.crawlingHelper;
+import com.fasterxml.jackson.databind.JsonNode;
 import org.jsoup.UnsupportedMimeTypeException;
 import org.jsoup.nodes.Document;
 import org.mule.runtime.extension.api.annotation.Alias;
 import org.mule.runtime.extension.api.annotation.param.Config;
+import org.mule.runtime.extension.api.annotation.param.Connection;
 import org.mule.runtime.extension.api.annotation.param.MediaType;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.ParameterGroup;
 import org.mule.runtime.extension.api.annotation.param.display.DisplayName;
 import org.mule.runtime.extension.api.annotation.param.display.Example;
 import org.mule.runtime.extension.api.annotation.param.display.Placement;
+import org.mule.runtime.extension.api.runtime.operation.Result;
+import org.mule.runtime.extension.api.runtime.process.CompletionCallback;
+import org.mule.runtime.extension.api.runtime.streaming.PagingProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.net.URL;
-import java.text.SimpleDateFormat;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.mule.runtime.extension.api.annotation.param.MediaType.ANY;
 
@@ -47,23 +74,197 @@ public class MulechainwebcrawlerOperations {
   @MediaType(value = ANY, strict = false)
   @Alias("Crawl-website")
   public String crawlWebsite(@Config MulechainwebcrawlerConfiguration configuration,
+                             @Connection MulechainwebcrawlerConnection connection,
                              @DisplayName("Website URL") @Placement(order = 1) @Example("https://mac-project.ai/docs") String url,
                              @DisplayName("Maximum Depth") @Placement(order = 2) @Example("2") int maxDepth,
                              @DisplayName("Retrieve Meta Tags") @Placement(order = 3) @Example("Yes") boolean getMetaTags,
                              @DisplayName("Download Images") @Placement(order = 4) @Example("Yes") boolean downloadImages,
-                             @DisplayName("Download Location") @Placement(order = 5) @Example("/users/mulesoft/downloads") String downloadPath) throws IOException {
+                             @DisplayName("Download Location") @Placement(order = 5) @Example("/users/mulesoft/downloads") String downloadPath,
+                             @DisplayName("Crawl ID") @Placement(order = 6) @Example("docs-nightly") @Optional String crawlId,
+                             @DisplayName("Seed From Sitemap XML") @Placement(order = 7) @Optional(defaultValue = "false") boolean seedFromSitemap,
+                             @DisplayName("Include Metrics") @Placement(order = 8) @Optional(defaultValue = "false") boolean includeMetrics,
+                             @ParameterGroup(name = "Output") CrawlOutputSettings outputSettings,
+                             @ParameterGroup(name = "Budget") CrawlBudgetSettings budget) throws IOException {
     LOGGER.info("Website crawl action");
 
 
-    // initialise variables
-    Set<String> visitedLinksGlobal = new HashSet<>();
-    Map<Integer, Set<String>> visitedLinksByDepth = new HashMap<>();
     List<String> specificTags = configuration.getTags();
+    CrawlMetrics.Snapshot metricsBefore = connection.getFetcher().getMetrics().snapshot();
 
-    SiteMapNode root = startCrawling(url, 0, maxDepth, visitedLinksByDepth, visitedLinksGlobal, downloadImages, downloadPath, specificTags, getMetaTags, CrawlType.CONTENT);
+    // pages listed in the sitemap are crawled even when nothing links to them
+    List<String> seedUrls = null;
+    if (seedFromSitemap) {
+      seedUrls = new SitemapReader(connection.getFetcher()).readSite(url, configuration.createUrlNormalizer(), configuration.getUrlScope(), configuration.isRespectRobotsTxt());
+    }
+
+    CrawlEngine engine = configuration.createCrawlEngine(connection.getFetcher());
+    engine.setBudget(budget.createBudget());
+
+    // a crawl id makes the crawl resumable, running it again after an interruption continues where it stopped
+    SiteMapNode root;
+    try (PageSink sink = outputSettings.createSink(downloadPath, connection.getFetcher().getMetrics());
+         CrawlJournal journal = configuration.openCrawlJournal(crawlId, url, maxDepth)) {
+      root = startCrawling(configuration, connection.getFetcher(), engine, url, maxDepth, downloadImages, downloadPath, sink, specificTags, getMetaTags, CrawlType.CONTENT, seedUrls, journal);
+    }
+
+
+    return toResult(root, connection, includeMetrics, metricsBefore, engine.getExhaustedBudget());
+  }
+
+
+  /**
+   * Crawl one shard of a website crawl distributed over the nodes of a cluster. Run it on every node with the same Crawl ID,
+   * Website URL, Maximum Depth and Shard Count, and a different Shard Index. Every url is fetched by exactly one shard, and the
+   * shards hand each other the links they find through the Shared Crawl Store of the configuration. Returns the pages of this
+   * shard with their parentUrl and depth, and publishes them for Merge-crawl-shards. Budgets apply to each shard.
+   */
+  @MediaType(value = ANY, strict = false)
+  @Alias("Crawl-website-shard")
+  public String crawlWebsiteShard(@Config MulechainwebcrawlerConfiguration configuration,
+                             @Connection MulechainwebcrawlerConnection connection,
+                             @DisplayName("Website URL") @Placement(order = 1) @Example("https://mac-project.ai/docs") String url,
+                             @DisplayName("Maximum Depth") @Placement(order = 2) @Example("2") int maxDepth,
+                             @DisplayName("Retrieve Meta Tags") @Placement(order = 3) @Example("Yes") boolean getMetaTags,
+                             @DisplayName("Download Images") @Placement(order = 4) @Example("Yes") boolean downloadImages,
+                             @DisplayName("Download Location") @Placement(order = 5) @Example("/users/mulesoft/downloads") String downloadPath,
+                             @DisplayName("Crawl ID") @Placement(order = 6) @Example("docs-nightly-2024-05-01") String crawlId,
+                             @DisplayName("Include Metrics") @Placement(order = 7) @Optional(defaultValue = "false") boolean includeMetrics,
+                             @ParameterGroup(name = "Sharding") ShardSettings sharding,
+                             @ParameterGroup(name = "Output") CrawlOutputSettings outputSettings,
+                             @ParameterGroup(name = "Budget") CrawlBudgetSettings budget) throws IOException {
+    LOGGER.info("Website shard crawl action");
+
+    CrawlMetrics.Snapshot metricsBefore = connection.getFetcher().getMetrics().snapshot();
+    CrawlPartition partition = sharding.createPartition(configuration.getCrawlStore(), crawlId);
+
+    CrawlEngine engine = configuration.createCrawlEngine(connection.getFetcher());
+    engine.setBudget(budget.createBudget());
+    engine.setPartition(partition);
+
+    // parents may be on other shards, so pages are recorded flat and assembled into a tree by the merge
+    List<JsonNode> pages = new ArrayList<>();
+    try (PageSink sink = outputSettings.createSink(downloadPath, connection.getFetcher().getMetrics())) {
+      CrawlEngine.PageProcessor processor = createPageProcessor(configuration, connection.getFetcher(), engine, downloadImages, downloadPath, sink, configuration.getTags(), getMetaTags, CrawlType.CONTENT, null, null);
+      engine.crawl(url, maxDepth, processor, (node, parentUrl, depth) -> pages.add(crawlingHelper.toShardRecord(node, parentUrl, depth)));
+    }
+
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("shard", partition.getShard());
+    result.put("lastDepth", partition.getLastDepth());
+    result.put("pages", pages);
+    if (engine.getExhaustedBudget() != null) {
+      result.put("budgetExhausted", engine.getExhaustedBudget());
+    }
+    if (includeMetrics) {
+      result.put("metrics", connection.getFetcher().getMetrics().summarySince(metricsBefore));
+    }
+    String json = crawlingHelper.convertToJSON(result);
+    partition.publishResult(json);
+    return json;
+  }
+
+
+  /**
+   * Wait for all shards of a distributed crawl to finish and merge their pages into the site tree Crawl-website returns.
+   * Removes what the crawl left in the Shared Crawl Store, so a Crawl ID can be used again afterwards.
+   */
+  @MediaType(value = ANY, strict = false)
+  @Alias("Merge-crawl-shards")
+  public String mergeCrawlShards(@Config MulechainwebcrawlerConfiguration configuration,
+                             @DisplayName("Crawl ID") @Placement(order = 1) @Example("docs-nightly-2024-05-01") String crawlId,
+                             @DisplayName("Shard Count") @Placement(order = 2) @Example("3") int shardCount,
+                             @DisplayName("Timeout (seconds)") @Placement(order = 3) @Optional(defaultValue = "3600") int timeoutSeconds) throws IOException {
+    LOGGER.info("Merge crawl shards");
+
+    List<String> results = CrawlPartition.collectResults(configuration.getCrawlStore(), crawlId, shardCount, TimeUnit.SECONDS.toMillis(timeoutSeconds));
+
+    List<JsonNode> pages = new ArrayList<>();
+    Map<String, Object> exhaustedBudgets = new LinkedHashMap<>();
+    int lastDepth = 0;
+    for (String result : results) {
+      JsonNode shard = crawlingHelper.parseJSON(result.getBytes(StandardCharsets.UTF_8));
+      shard.path("pages").forEach(pages::add);
+      lastDepth = Math.max(lastDepth, shard.path("lastDepth").asInt());
+      if (shard.has("budgetExhausted")) {
+        exhaustedBudgets.put(shard.path("shard").asText(), shard.path("budgetExhausted").asText());
+      }
+    }
+    CrawlPartition.cleanUp(configuration.getCrawlStore(), crawlId, shardCount, lastDepth);
+
+    JsonNode root = crawlingHelper.mergeShardRecords(pages);
+    if (exhaustedBudgets.isEmpty() || root == null) {
+      return crawlingHelper.convertToJSON(root);
+    }
+    return crawlingHelper.convertToJSON(root, Collections.<String, Object>singletonMap("budgetExhausted", exhaustedBudgets));
+  }
+
+
+  /**
+   * Crawl a website at a specified depth and stream the contents of every page as soon as it has been crawled, instead of saving them to files.
+   * Each item is a JSON record with the url, parentUrl, depth, title, content and optionally the meta tags of a page.
+   * With Chunk Content, each item is a chunk of the text of a page instead, with the url, parentUrl, depth, title, headingPath, chunkIndex and content.
+   */
+  @MediaType(value = ANY, strict = false)
+  @Alias("Crawl-website-streaming")
+  public PagingProvider<MulechainwebcrawlerConnection, String> crawlWebsiteStreaming(@Config MulechainwebcrawlerConfiguration configuration,
+                             @DisplayName("Website URL") @Placement(order = 1) @Example("https://mac-project.ai/docs") String url,
+                             @DisplayName("Maximum Depth") @Placement(order = 2) @Example("2") int maxDepth,
+                             @DisplayName("Retrieve Meta Tags") @Placement(order = 3) @Example("Yes") boolean getMetaTags,
+                             @DisplayName("Chunk Content") @Placement(order = 4) @Optional(defaultValue = "false") boolean chunkContent,
+                             @ParameterGroup(name = "Chunking") ChunkingSettings chunking) {
+    LOGGER.info("Website streaming crawl action");
+
+    NearDuplicateIndex nearDuplicates = configuration.createNearDuplicateIndex();
+
+    if (chunkContent) {
+      // chunks are cut from the document itself, the page text is only needed to detect near duplicates
+      Set<PageExtractor.Output> chunkOutputs = nearDuplicates != null ? EnumSet.of(PageExtractor.Output.TEXT) : EnumSet.noneOf(PageExtractor.Output.class);
+      return new CrawlPagingProvider(configuration, url, maxDepth, chunkOutputs, (pageUrl, depth, page, firstVisit) -> {
+        if (firstVisit) {
+          String original = findNearDuplicate(nearDuplicates, pageUrl, page.getExtract());
+          if (original != null) {
+            return new PageRecord(pageUrl, Collections.<String, Object>singletonMap("duplicateOf", original));
+          }
+          return CrawlPagingProvider.chunksOf(pageUrl, chunking.createChunker(page.getDocument(), configuration.getTags()));
+        }
+        return new PageRecord(pageUrl, Collections.<String, Object>singletonMap("duplicate", true));
+      });
+    }
+
+    Set<PageExtractor.Output> pageOutputs = getMetaTags ? EnumSet.of(PageExtractor.Output.TEXT, PageExtractor.Output.META_TAGS) : EnumSet.of(PageExtractor.Output.TEXT);
+
+    return new CrawlPagingProvider(configuration, url, maxDepth, pageOutputs, (pageUrl, depth, page, firstVisit) -> {
+      if (firstVisit) {
+        String original = findNearDuplicate(nearDuplicates, pageUrl, page.getExtract());
+        if (original != null) {
+          return new PageRecord(pageUrl, Collections.<String, Object>singletonMap("duplicateOf", original));
+        }
+        LOGGER.debug("Fetching content for : " + pageUrl);
+        Map<String, Object> pageData = getPageData(pageUrl, page.getDocument().title(), page.getExtract(), null);
+        if (page.isUnchanged()) {
+          pageData.put("unchanged", true);
+        }
+        return new PageRecord(pageUrl, pageData);
+      }
+      // content previously streamed
+      return new PageRecord(pageUrl, Collections.<String, Object>singletonMap("duplicate", true));
+    });
+  }
 
 
-    return crawlingHelper.convertToJSON(root);
+  /**
+   * Split the text of a web page into overlapping chunks for embedding, following its headings and paragraphs.
+   * Each item is a JSON record with the url, title, headingPath, chunkIndex, content and size of a chunk. Restrict the text to specific elements in the configuration.
+   */
+  @MediaType(value = ANY, strict = false)
+  @Alias("Chunk-page-content")
+  public PagingProvider<MulechainwebcrawlerConnection, String> chunkPageContent(
+          @Config MulechainwebcrawlerConfiguration configuration,
+          @DisplayName("Page Url") @Placement(order = 1) @Example("https://mac-project.ai/docs") String url,
+          @ParameterGroup(name = "Chunking") ChunkingSettings chunking) {
+    LOGGER.info("Chunk page content");
+
+    return new ChunkPagingProvider(configuration, url, chunking);
   }
 
 
@@ -73,31 +274,157 @@ public class MulechainwebcrawlerOperations {
   @MediaType(value = ANY, strict = false)
   @Alias("Get-page-meta-tags")
   public String getMetaTags (
+                            @Connection MulechainwebcrawlerConnection connection,
                             @DisplayName("Page URL") @Placement(order = 1) @Example("https://mac-project.ai/docs") String url) throws IOException {
     LOGGER.info("Get meta tags");
 
-    Document document = crawlingHelper.getDocument(url);
+    Document document = crawlingHelper.getDocument(connection.getFetcher(), url);
 
     return crawlingHelper.convertToJSON(crawlingHelper.getPageMetaTags(document));
   }
 
   /**
    * Retrieve internal links as a site map from the specified url and depth.
+   * The site map is returned as a JSON tree of urls and children, as a list of links with one line per link and the
+   * url of the page and the url it links to separated by a tab, or as a sitemap.xml. With an Output File, it is written
+   * to the file as it is generated and a summary is returned instead. Link Statistics add the number of crawled pages
+   * linking to every url and its PageRank to the JSON tree, and a priority derived from the PageRank to the sitemap.xml.
    */
   @MediaType(value = ANY, strict = false)
   @Alias("Generate-sitemap")
   public String getSiteMap (
+          @Config MulechainwebcrawlerConfiguration configuration,
+          @Connection MulechainwebcrawlerConnection connection,
           @DisplayName("Website URL") @Placement(order = 1) @Example("https://mac-project.ai/docs") String url,
-          @DisplayName("Maximum Depth") @Placement(order = 2) @Example("2") int maxDepth) throws IOException {
+          @DisplayName("Maximum Depth") @Placement(order = 2) @Example("2") int maxDepth,
+          @DisplayName("Crawl ID") @Placement(order = 3) @Example("docs-sitemap") @Optional String crawlId,
+          @DisplayName("Use Sitemap XML") @Placement(order = 4) @Optional(defaultValue = "false") boolean useSitemapXml,
+          @DisplayName("Include Metrics") @Placement(order = 5) @Optional(defaultValue = "false") boolean includeMetrics,
+          @DisplayName("Output Format") @Placement(order = 6) @Optional(defaultValue = "JSON_TREE") SiteGraph.Format outputFormat,
+          @DisplayName("Output File") @Placement(order = 7) @Example("/users/mulesoft/downloads/sitemap.xml") @Optional String outputFile,
+          @DisplayName("Include Link Statistics") @Placement(order = 8) @Optional(defaultValue = "false") boolean includeStatistics,
+          @ParameterGroup(name = "Budget") CrawlBudgetSettings budget) throws IOException {
     LOGGER.info("Generate sitemap");
+    CrawlMetrics.Snapshot metricsBefore = connection.getFetcher().getMetrics().snapshot();
+    SiteGraph graph = new SiteGraph();
+
+    // the site lists its pages itself, so they are not discovered by fetching every one of them
+    if (useSitemapXml) {
+      List<String> pageUrls = new SitemapReader(connection.getFetcher()).readSite(url, configuration.createUrlNormalizer(), configuration.getUrlScope(), configuration.isRespectRobotsTxt());
+      if (pageUrls != null) {
+        String rootUrl = configuration.createUrlNormalizer().normalize(url);
+        graph.addNode(rootUrl, null, 0);
+        List<String> listed = new ArrayList<>();
+        CrawlBudget.Limit exhaustedBudget = null;
+        if (maxDepth > 0) {
+          CrawlBudget crawlBudget = budget.createBudget();
+          for (String pageUrl : pageUrls) {
+            // nothing is fetched, only the page budget applies
+            if (crawlBudget.isPagesExceeded(listed.size() + 1)) {
+              exhaustedBudget = CrawlBudget.Limit.MAX_PAGES;
+              break;
+            }
+            graph.addNode(pageUrl, rootUrl, 1);
+            listed.add(pageUrl);
+          }
+        }
+        // the sitemap is the only page known to link to them
+        graph.addLinks(rootUrl, listed);
+        return exportSiteGraph(graph, outputFormat, outputFile, includeStatistics, connection, includeMetrics, metricsBefore, exhaustedBudget);
+      }
+      LOGGER.info("No sitemap found for " + url + ", crawling the site instead");
+    }
+
+    CrawlEngine engine = configuration.createCrawlEngine(connection.getFetcher());
+    engine.setBudget(budget.createBudget());
+    engine.setLinkListener(graph::addLinks);
+
+    // pages go straight into the graph, no tree of nodes is assembled
+    try (CrawlJournal journal = configuration.openCrawlJournal(crawlId, url, maxDepth)) {
+      CrawlEngine.PageProcessor processor = createPageProcessor(configuration, connection.getFetcher(), engine, false, null, null, null, false, CrawlType.LINK, null, null);
+      engine.crawl(url, maxDepth, processor, (node, parentUrl, depth) -> graph.addNode(node.getUrl(), parentUrl, depth), journal);
+    }
+
+    return exportSiteGraph(graph, outputFormat, outputFile, includeStatistics, connection, includeMetrics, metricsBefore, engine.getExhaustedBudget());
+  }
+
+  /**
+   * Same as Crawl-website, without blocking the flow while the site is crawled: the crawl runs in the background and the
+   * flow continues with its result once it completes. The crawl runs on a virtual thread on Java 21 and later. On earlier
+   * JVMs it is not non-blocking: it holds one of the Async Crawl Threads of the configuration until it completes, and waits
+   * for one when they are all busy.
+   */
+  @MediaType(value = ANY, strict = false)
+  @Alias("Crawl-website-async")
+  public void crawlWebsiteAsync(@Config MulechainwebcrawlerConfiguration configuration,
+                             @Connection MulechainwebcrawlerConnection connection,
+                             @DisplayName("Website URL") @Placement(order = 1) @Example("https://mac-project.ai/docs") String url,
+                             @DisplayName("Maximum Depth") @Placement(order = 2) @Example("2") int maxDepth,
+                             @DisplayName("Retrieve Meta Tags") @Placement(order = 3) @Example("Yes") boolean getMetaTags,
+                             @DisplayName("Download Images") @Placement(order = 4) @Example("Yes") boolean downloadImages,
+                             @DisplayName("Download Location") @Placement(order = 5) @Example("/users/mulesoft/downloads") String downloadPath,
+                             @DisplayName("Crawl ID") @Placement(order = 6) @Example("docs-nightly") @Optional String crawlId,
+                             @DisplayName("Seed From Sitemap XML") @Placement(order = 7) @Optional(defaultValue = "false") boolean seedFromSitemap,
+                             @DisplayName("Include Metrics") @Placement(order = 8) @Optional(defaultValue = "false") boolean includeMetrics,
+                             @ParameterGroup(name = "Output") CrawlOutputSettings outputSettings,
+                             @ParameterGroup(name = "Budget") CrawlBudgetSettings budget,
+                             CompletionCallback<String, Void> callback) {
+    runAsync(configuration, callback, () -> crawlWebsite(configuration, connection, url, maxDepth, getMetaTags, downloadImages, downloadPath,
+                                                         crawlId, seedFromSitemap, includeMetrics, outputSettings, budget));
+  }
+
+
+  /**
+   * Same as Generate-sitemap, without blocking the flow while the site is crawled. Before Java 21 the crawl blocks one of
+   * the Async Crawl Threads instead of the flow's thread.
+   */
+  @MediaType(value = ANY, strict = false)
+  @Alias("Generate-sitemap-async")
+  public void getSiteMapAsync(
+          @Config MulechainwebcrawlerConfiguration configuration,
+          @Connection MulechainwebcrawlerConnection connection,
+          @DisplayName("Website URL") @Placement(order = 1) @Example("https://mac-project.ai/docs") String url,
+          @DisplayName("Maximum Depth") @Placement(order = 2) @Example("2") int maxDepth,
+          @DisplayName("Crawl ID") @Placement(order = 3) @Example("docs-sitemap") @Optional String crawlId,
+          @DisplayName("Use Sitemap XML") @Placement(order = 4) @Optional(defaultValue = "false") boolean useSitemapXml,
+          @DisplayName("Include Metrics") @Placement(order = 5) @Optional(defaultValue = "false") boolean includeMetrics,
+          @DisplayName("Output Format") @Placement(order = 6) @Optional(defaultValue = "JSON_TREE") SiteGraph.Format outputFormat,
+          @DisplayName("Output File") @Placement(order = 7) @Example("/users/mulesoft/downloads/sitemap.xml") @Optional String outputFile,
+          @DisplayName("Include Link Statistics") @Placement(order = 8) @Optional(defaultValue = "false") boolean includeStatistics,
+          @ParameterGroup(name = "Budget") CrawlBudgetSettings budget,
+          CompletionCallback<String, Void> callback) {
+    runAsync(configuration, callback, () -> getSiteMap(configuration, connection, url, maxDepth, crawlId, useSitemapXml, includeMetrics,
+                                                       outputFormat, outputFile, includeStatistics, budget));
+  }
 
-    // initialise variables
-    Set<String> visitedLinksGlobal = new HashSet<>();
-    Map<Integer, Set<String>> visitedLinksByDepth = new HashMap<>();
 
-    SiteMapNode root = startCrawling(url, 0, maxDepth, visitedLinksByDepth, visitedLinksGlobal, false, null, null, false, CrawlType.LINK);
+  /**
+   * Same as Merge-crawl-shards, without blocking the flow while the shards crawl. Before Java 21 the wait blocks one of
+   * the Async Crawl Threads instead of the flow's thread.
+   */
+  @MediaType(value = ANY, strict = false)
+  @Alias("Merge-crawl-shards-async")
+  public void mergeCrawlShardsAsync(@Config MulechainwebcrawlerConfiguration configuration,
+                             @DisplayName("Crawl ID") @Placement(order = 1) @Example("docs-nightly-2024-05-01") String crawlId,
+                             @DisplayName("Shard Count") @Placement(order = 2) @Example("3") int shardCount,
+                             @DisplayName("Timeout (seconds)") @Placement(order = 3) @Optional(defaultValue = "3600") int timeoutSeconds,
+                             CompletionCallback<String, Void> callback) {
+    runAsync(configuration, callback, () -> mergeCrawlShards(configuration, crawlId, shardCount, timeoutSeconds));
+  }
+
+
+  /**
+   * Stream internal links as site map records (url, parentUrl and depth) from the specified url and depth, as they are discovered.
+   */
+  @MediaType(value = ANY, strict = false)
+  @Alias("Generate-sitemap-streaming")
+  public PagingProvider<MulechainwebcrawlerConnection, String> getSiteMapStreaming (
+          @Config MulechainwebcrawlerConfiguration configuration,
+          @DisplayName("Website URL") @Placement(order = 1) @Example("https://mac-project.ai/docs") String url,
+          @DisplayName("Maximum Depth") @Placement(order = 2) @Example("2") int maxDepth) {
+    LOGGER.info("Generate sitemap streaming");
 
-    return crawlingHelper.convertToJSON(root);
+    return new CrawlPagingProvider(configuration, url, maxDepth, EnumSet.noneOf(PageExtractor.Output.class), (pageUrl, depth, page, firstVisit) -> new SiteMapNode(pageUrl));
   }
 
   /**
@@ -106,21 +433,26 @@ public class MulechainwebcrawlerOperations {
   @MediaType(value = ANY, strict = false)
   @Alias("Download-image")
   public String downloadWebsiteImages (
+                             @Config MulechainwebcrawlerConfiguration configuration,
+                             @Connection MulechainwebcrawlerConnection connection,
                              @DisplayName("Page Or Image URL") @Placement(order = 1) @Example("https://mac-project.ai/docs") String url,
                              @DisplayName("Download Location") @Placement(order = 2) @Example("/users/mulesoft/downloads") String downloadPath) throws IOException {
 
     String result = "";
 
+    ImageDownloader images = configuration.createImageDownloader(connection.getFetcher(), downloadPath);
+
     try {
       // url provided is a website url, so download all images from this document
-      Document document = crawlingHelper.getDocument(url);
-      result = crawlingHelper.convertToJSON(downloadWebsiteImages(document, downloadPath));
+      Document document = crawlingHelper.getDocument(connection.getFetcher(), url);
+      Set<String> imageUrls = PageExtractor.extract(document, EnumSet.of(PageExtractor.Output.IMAGES), null).getImages();
+      result = crawlingHelper.convertToJSON(images.downloadAll(imageUrls));
     }
     catch (UnsupportedMimeTypeException e) {
       // url provided is direct link to image, so download single image
 
       Map<String, String> linkFileMap = new HashMap<>();
-      linkFileMap.put(url, downloadSingleImage(url, downloadPath));
+      linkFileMap.put(url, images.download(url));
       result = crawlingHelper.convertToJSON(linkFileMap);
     }
     return result;
@@ -134,10 +466,11 @@ public class MulechainwebcrawlerOperations {
   @Alias("Get-page-insights")
   public String getPageInsights(
           @Config MulechainwebcrawlerConfiguration configuration,
+          @Connection MulechainwebcrawlerConnection connection,
           @DisplayName("Page Url") @Placement(order = 1) @Example("https://mac-project.ai/docs") String url) throws IOException {
     LOGGER.info("Analyze page");
 
-    Document document = crawlingHelper.getDocument(url);
+    Document document = crawlingHelper.getDocument(connection.getFetcher(), url);
 
     return crawlingHelper.convertToJSON(crawlingHelper.getPageInsights(document, configuration.getTags(), crawlingHelper.PageInsightType.ALL));
   }
@@ -150,12 +483,13 @@ public class MulechainwebcrawlerOperations {
   @Alias("Get-page-content")
   public String getPageContent(
           @Config MulechainwebcrawlerConfiguration configuration,
+          @Connection MulechainwebcrawlerConnection connection,
           @DisplayName("Page Url") @Placement(order = 1) @Example("https://mac-project.ai/docs") String url) throws IOException {
     LOGGER.info("Get page content");
 
     Map<String, String> contents = new HashMap<String, String>();
 
-    Document document = crawlingHelper.getDocument(url);
+    Document document = crawlingHelper.getDocument(connection.getFetcher(), url);
 
     contents.put("url", document.baseUri());
     contents.put("title", document.title());
@@ -165,251 +499,247 @@ public class MulechainwebcrawlerOperations {
   }
 
 
-  private String savePageContents(Object results, String downloadPath, String title) throws IOException {
-
-    String pageContents = crawlingHelper.convertToJSON(results);
-
-    String fileName = "";
-
-    // Generate a unique filename using the current timestamp
-    String timestamp = new SimpleDateFormat("yyyyMMddHHmmssSSS").format(new Date());
-
-
-    // Create a unique filename based on the sanitized title
-    fileName = crawlingHelper.getSanitizedFilename(title) + "_" + timestamp + ".json";
-
-    // Write JSON content to the file
-    // Ensure the output directory exists
-    File file = new File(downloadPath, fileName);
-    // Ensure the directory exists
-    file.getParentFile().mkdirs();
-
-    try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-      // Write content to the file
-      writer.write(pageContents);
-      LOGGER.info("Saved content to file: " + fileName);
-    } catch (IOException e) {
-      LOGGER.error("An error occurred while writing to the file: " + e.getMessage());
+  private SiteMapNode startCrawling(MulechainwebcrawlerConfiguration configuration, PageFetcher fetcher, CrawlEngine engine, String url, int maxDepth, boolean downloadImages, String downloadPath, PageSink sink, List<String> contentTags, boolean getMetaTags, CrawlType crawlType, List<String> seedUrls, CrawlJournal journal) throws IOException {
+    CrawlEngine.PageProcessor processor = createPageProcessor(configuration, fetcher, engine, downloadImages, downloadPath, sink, contentTags, getMetaTags, crawlType, seedUrls, journal);
+    if (journal != null) {
+      journal.setPageOutput(sink);
     }
-
-    return (file != null) ? file.getName() : "File is null";
+    return engine.crawl(url, maxDepth, processor, journal);
   }
 
+  private CrawlEngine.PageProcessor createPageProcessor(MulechainwebcrawlerConfiguration configuration, PageFetcher fetcher, CrawlEngine engine, boolean downloadImages, String downloadPath, PageSink sink, List<String> contentTags, boolean getMetaTags, CrawlType crawlType, List<String> seedUrls, CrawlJournal journal) throws IOException {
 
-  //private String startCrawling(String url, int depth, int maxDepth, Set<String> visitedLinks, boolean downloadImages, String downloadPath, List<String> tags) {
-  private SiteMapNode startCrawling(String url, int depth, int maxDepth, Map<Integer, Set<String>> visitedLinksByDepth, Set<String> visitedLinksGlobal, boolean downloadImages, String downloadPath, List<String> contentTags, boolean getMetaTags, CrawlType crawlType ) {
-
-    // return if maxDepth reached
-    if (depth > maxDepth) {
-      return null;
+    if (seedUrls != null) {
+      engine.setSeedUrls(seedUrls);
     }
 
-    // Initialize the set for the current depth if not already present
-    visitedLinksByDepth.putIfAbsent(depth, new HashSet<>());
-
-    // Check if this URL has already been visited at this depth
-    if (visitedLinksByDepth.get(depth).contains(url)) {
-      return null;
+    // shared by all pages, so images referenced from several pages are downloaded once
+    ImageDownloader images = downloadImages ? configuration.createImageDownloader(fetcher, downloadPath) : null;
+    NearDuplicateIndex nearDuplicates = configuration.createNearDuplicateIndex();
+
+    // pages replayed from the journal are not processed again, so what processing them added is restored up front
+    if (journal != null) {
+      for (CrawlJournal.Page recorded : journal.getRecordedPages()) {
+        if (recorded.getNode() instanceof CrawlResult) {
+          CrawlResult result = (CrawlResult) recorded.getNode();
+          if (nearDuplicates != null && result.getSimHash() != null) {
+            nearDuplicates.add(result.getSimHash(), result.getUrl());
+          }
+          if (images != null && result.getImageFiles() != null) {
+            images.restore(result.getImageFiles());
+          }
+        }
+      }
     }
 
-    // crawl & extract current page
-    try {
-
-      // Mark the URL as visited for this depth
-      visitedLinksByDepth.get(depth).add(url);
-
-      SiteMapNode node = null;
-
-      // get page as a html document
-      Document document = crawlingHelper.getDocument(url);
+    if (crawlType == CrawlType.CONTENT) {
+      Set<PageExtractor.Output> pageOutputs = EnumSet.of(PageExtractor.Output.TEXT);
+      if (getMetaTags) {
+        pageOutputs.add(PageExtractor.Output.META_TAGS);
+      }
+      if (downloadImages) {
+        pageOutputs.add(PageExtractor.Output.IMAGES);
+      }
+      engine.setExtraction(pageOutputs, contentTags);
+    }
 
+    return (pageUrl, depth, page, firstVisit) -> {
 
       // check if url contents have been downloaded before ie applied globally (at all depths). Note, we don't want to do this globally for CrawlType.LINK because we want a link to be unique only at the depth level and not globally (at all depths)
-      if (!visitedLinksGlobal.contains(url) && crawlType == CrawlType.CONTENT) {
-
-        // add url to urlContentFetched to indicate content has been fetched.
-        visitedLinksGlobal.add(url);
-
-        // Create Map to hold all data for the current page - this will be serialized to JSON and saved to file
-        Map<String, Object> pageData = new HashMap<>();
-
-
-        LOGGER.info("Fetching content for : " + url);
-
-        String title = document.title();
-
-        pageData.put("url", url);
-        pageData.put("title", title);
+      if (firstVisit && crawlType == CrawlType.CONTENT) {
 
+        Document document = page.getDocument();
 
-        // check if need to download images in the current page
-        if (downloadImages) {
-          LOGGER.info("Downloading images for : " + url);
-          pageData.put("imageFiles", downloadWebsiteImages(document, downloadPath));
+        // content is nearly the same as a page already saved, so only point to that page
+        Long simHash = simHashOf(nearDuplicates, page.getExtract());
+        String original = simHash != null ? findNearDuplicate(nearDuplicates, pageUrl, simHash) : null;
+        if (original != null) {
+          return CrawlResult.nearDuplicate(pageUrl, original);
         }
 
-
-        // get all meta tags from the document
-        if (getMetaTags) {
-          // Iterating over each entry in the map
-          for (Map.Entry<String, String> entry : crawlingHelper.getPageMetaTags(document).entrySet()) {
-            pageData.put(entry.getKey(), entry.getValue());
+        // page not modified since the last crawl and its file is still there, so nothing to rewrite
+        if (page.isUnchanged()) {
+          String previousFile = getPreviouslySavedFile(fetcher, pageUrl, downloadPath);
+          if (previousFile != null) {
+            LOGGER.debug("Unchanged : " + pageUrl);
+            CrawlResult result = new CrawlResult(pageUrl, previousFile, true);
+            if (journal != null) {
+              result.setSimHash(simHash);
+            }
+            return result;
           }
         }
 
+        LOGGER.debug("Fetching content for : " + pageUrl);
 
-        // get page contents
-        pageData.put("content", crawlingHelper.getPageContent(document, contentTags));
+        // Create Map to hold all data for the current page - this will be serialized to JSON and saved to file
+        String title = document.title();
+        Map<String, Object> pageData = getPageData(pageUrl, title, page.getExtract(), images);
 
 
         // save gathered data of page to file
-        String filename = savePageContents(pageData, downloadPath, title);
+        String filename = sink.write(pageUrl, title, pageData);
+        rememberSavedFile(fetcher, pageUrl, downloadPath, filename);
 
 
         // Create a new node for this URL
-        node = new CrawlResult(url, filename);
+        CrawlResult result = new CrawlResult(pageUrl, filename);
+        if (journal != null) {
+          @SuppressWarnings("unchecked")
+          Map<String, String> imageFiles = (Map<String, String>) pageData.get("imageFiles");
+          result.setSimHash(simHash);
+          result.setImageFiles(imageFiles);
+        }
+        return result;
 
       }
       else if (crawlType == CrawlType.LINK) {
-        node = new SiteMapNode(url);
-        LOGGER.info("Found url : " + url);
+        LOGGER.debug("Found url : " + pageUrl);
+        return new SiteMapNode(pageUrl);
       }
       else {
         // content previously downloaded, so setting file name as such
-        node = new CrawlResult(url, "Duplicate.");
+        return new CrawlResult(pageUrl, "Duplicate.");
       }
+    };
+  }
 
-
-      // If not at max depth, find and crawl the links on the page
-      if (depth <= maxDepth) {
-        // get all links on the current page
-        Set<String> links = new HashSet<>();
-
-        Map<String, Object> linksMap  = (Map<String, Object>)  crawlingHelper.getPageInsights(document, null, crawlingHelper.PageInsightType.INTERNALLINKS).get("links");
-        if (linksMap != null) {
-          links = (Set<String>) linksMap.get("internal");  // Cast to Set<String>
-        }
-
-        if (links != null) {
-          for (String nextUrl : links) {
-
-            // Recursively crawl the link and add as a child
-            SiteMapNode childNode = startCrawling(nextUrl, depth + 1, maxDepth, visitedLinksByDepth, visitedLinksGlobal, downloadImages, downloadPath, contentTags, getMetaTags, crawlType);
-            if (childNode != null) {
-              node.addChild(childNode);
-            }
-          }
+  // runs the operation on the async executor and completes the callback with its result, the calling thread returns at once
+  private static void runAsync(MulechainwebcrawlerConfiguration configuration, CompletionCallback<String, Void> callback, Callable<String> operation) {
+    try {
+      configuration.getAsyncExecutor().execute(() -> {
+        String result;
+        try {
+          result = operation.call();
+        } catch (Throwable e) {
+          callback.error(e);
+          return;
         }
-      }
-      return node;
-    } catch (Exception e) {
-      LOGGER.error(e.toString());
+        callback.success(Result.<String, Void>builder().output(result).build());
+      });
+    } catch (RejectedExecutionException e) {
+      // the configuration is being disposed
+      callback.error(e);
     }
-    return null;
   }
 
-  private Map<String, String> downloadWebsiteImages(Document document, String saveDirectory) throws IOException {
-    // List to store image URLs
-    Set<String> imageUrls = new HashSet<>();
+  // the site tree, with the budget the crawl ran out of and a "metrics" block summarizing the crawl when asked for
+  private String toResult(SiteMapNode root, MulechainwebcrawlerConnection connection, boolean includeMetrics, CrawlMetrics.Snapshot metricsBefore, CrawlBudget.Limit exhaustedBudget) throws IOException {
+    Map<String, Object> appended = new LinkedHashMap<>();
+    if (exhaustedBudget != null) {
+      appended.put("budgetExhausted", exhaustedBudget);
+    }
+    if (includeMetrics) {
+      appended.put("metrics", connection.getFetcher().getMetrics().summarySince(metricsBefore));
+    }
+    if (appended.isEmpty() || root == null) {
+      return crawlingHelper.convertToJSON(root);
+    }
+    return crawlingHelper.convertToJSON(root, appended);
+  }
 
-    Map<String, String> linkFileMap = new HashMap<>();
+  // the site map in format, or a summary of it once written to outputFile. The budget and metrics are added to the JSON
+  // tree or the summary, the other formats have no place for them
+  private String exportSiteGraph(SiteGraph graph, SiteGraph.Format format, String outputFile, boolean includeStatistics, MulechainwebcrawlerConnection connection,
+                                 boolean includeMetrics, CrawlMetrics.Snapshot metricsBefore, CrawlBudget.Limit exhaustedBudget) throws IOException {
+    Map<String, Object> appended = new LinkedHashMap<>();
+    if (exhaustedBudget != null) {
+      appended.put("budgetExhausted", exhaustedBudget);
+    }
+    if (includeMetrics) {
+      appended.put("metrics", connection.getFetcher().getMetrics().summarySince(metricsBefore));
+    }
+    if (outputFile == null || outputFile.isEmpty()) {
+      StringWriter out = new StringWriter();
+      graph.write(format, out, includeStatistics, appended);
+      return out.toString();
+    }
 
-    Map<String, Object> linksMap  = (Map<String, Object>)  crawlingHelper.getPageInsights(document, null, crawlingHelper.PageInsightType.IMAGELINKS).get("links");
-    if (linksMap != null) {
-      imageUrls = (Set<String>) linksMap.get("images");  // Cast to Set<String>
+    Path file = Paths.get(outputFile);
+    if (file.getParent() != null) {
+      Files.createDirectories(file.getParent());
+    }
+    try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      graph.write(format, out, includeStatistics, null);
     }
+    Map<String, Object> summary = new LinkedHashMap<>();
+    summary.put("file", outputFile);
+    summary.put("format", format);
+    summary.put("nodes", graph.getNodeCount());
+    summary.put("urls", graph.getUrlCount());
+    summary.put("links", graph.getLinkCount());
+    summary.putAll(appended);
+    return crawlingHelper.convertToJSON(summary);
+  }
 
-    if (imageUrls != null) {
+  private String findNearDuplicate(NearDuplicateIndex nearDuplicates, String pageUrl, PageExtract extract) {
+    Long simHash = simHashOf(nearDuplicates, extract);
+    return simHash != null ? findNearDuplicate(nearDuplicates, pageUrl, simHash) : null;
+  }
 
-      // Save all images found on the page
-      LOGGER.info("Number of img[src] elements found : " + imageUrls.size());
-      for (String imageUrl : imageUrls) {
-        linkFileMap.put(imageUrl, downloadSingleImage(imageUrl, saveDirectory));
-      }
+  // the SimHash of the page text, or null when near duplicates are not detected or the page has no text
+  private static Long simHashOf(NearDuplicateIndex nearDuplicates, PageExtract extract) {
+    if (nearDuplicates == null || extract.getText() == null || extract.getText().isEmpty()) {
+      return null;
     }
-    return linkFileMap;
+    return SimHash.of(extract.getText());
   }
 
-  private String downloadSingleImage(String imageUrl, String saveDirectory) throws IOException{
-    LOGGER.info("Found image : " + imageUrl);
-    File file;
-    try {
-      // Check if the URL is a Data URL
-      if (imageUrl.startsWith("data:image/")) {
-        // Extract base64 data from the Data URL
-        String base64Data = imageUrl.substring(imageUrl.indexOf(",") + 1);
-
-        if (base64Data.isEmpty()) {
-          LOGGER.info("Base64 data is empty for URL: " + imageUrl);
-          return "";
-        }
-
-        // Decode the base64 data
-        byte[] imageBytes;
+  private String findNearDuplicate(NearDuplicateIndex nearDuplicates, String pageUrl, long simHash) {
+    String original = nearDuplicates.findOrAdd(simHash, pageUrl);
+    if (original != null) {
+      LOGGER.debug("Near duplicate of " + original + " : " + pageUrl);
+    }
+    return original;
+  }
 
-        try {
-          imageBytes = Base64.getDecoder().decode(base64Data);
-        } catch (IllegalArgumentException e) {
-          LOGGER.info("Error decoding base64 data: " + e.getMessage());
-          return "";
-        }
+  private String getPreviouslySavedFile(PageFetcher fetcher, String pageUrl, String downloadPath) throws IOException {
+    if (fetcher.getCache() == null) {
+      return null;
+    }
+    String fileName = fetcher.getCache().getAttribute(pageUrl, savedFileAttribute(downloadPath));
+    if (fileName == null) {
+      return null;
+    }
+    // json lines references are <segment>#<offset>
+    String file = fileName.contains("#") ? fileName.substring(0, fileName.indexOf('#')) : fileName;
+    return new File(downloadPath, file).exists() ? fileName : null;
+  }
 
-        if (imageBytes.length == 0) {
-          LOGGER.info("Decoded image bytes are empty for URL: " + imageUrl);
-          return "";
-        }
+  private void rememberSavedFile(PageFetcher fetcher, String pageUrl, String downloadPath, String fileName) throws IOException {
+    if (fetcher.getCache() != null) {
+      fetcher.getCache().setAttribute(pageUrl, savedFileAttribute(downloadPath), fileName);
+    }
+  }
 
-        // Determine the file extension from the Data URL
-        String fileType = imageUrl.substring(5, imageUrl.indexOf(";"));
-        String fileExtension = fileType.split("/")[1];
+  private static String savedFileAttribute(String downloadPath) {
+    return "savedFile." + new File(downloadPath).getAbsolutePath();
+  }
 
-        // Generate a unique filename using the current timestamp
-        String timestamp = new SimpleDateFormat("yyyyMMddHHmmssSSS").format(new Date());
-        String fileName = "image_" + timestamp + "." + fileExtension;
-        file = new File(saveDirectory, fileName);
+  private Map<String, Object> getPageData(String pageUrl, String title, PageExtract extract, ImageDownloader images) throws IOException {
 
-        // Ensure the directory exists
-        file.getParentFile().mkdirs();
+    Map<String, Object> pageData = new HashMap<>();
 
-        // Write the decoded bytes to the file
-        try (FileOutputStream out = new FileOutputStream(file)) {
-          out.write(imageBytes);
-          LOGGER.info("DataImage saved: " + file.getAbsolutePath());
-        }
-      } else {
-        // Handle standard image URLs
-        URL url = new URL(imageUrl);
+    pageData.put("url", pageUrl);
+    pageData.put("title", title);
 
-        // Extract the 'url' parameter from the query string
-        String decodedUrl = crawlingHelper.extractAndDecodeUrl(imageUrl);
-        // Extract the filename from the decoded URL
-        String fileName = crawlingHelper.extractFileNameFromUrl(decodedUrl);
 
-        //String fileName = decodedUrl.substring(imageUrl.lastIndexOf("/") + 1);
-        file = new File(saveDirectory, fileName);
+    // check if need to download images in the current page
+    if (images != null) {
+      LOGGER.debug("Downloading images for : " + pageUrl);
+      pageData.put("imageFiles", images.downloadAll(extract.getImages()));
+    }
 
-        // Ensure the directory exists
-        file.getParentFile().mkdirs();
 
-        // Download and save the image
-        try (InputStream in = url.openStream();
-             FileOutputStream out = new FileOutputStream(file)) {
+    // get all meta tags from the document
+    if (extract.getMetaTags() != null) {
+      pageData.putAll(extract.getMetaTags());
+    }
 
-          byte[] buffer = new byte[1024];
-          int bytesRead;
-          while ((bytesRead = in.read(buffer)) != -1) {
-            out.write(buffer, 0, bytesRead);
-          }
-        }
-        LOGGER.info("Image saved: " + file.getAbsolutePath());
 
-      }
-    } catch (IOException e) {
-      LOGGER.error("Error saving image: " + imageUrl);
-      throw e;
-    }
+    // get page contents
+    pageData.put("content", extract.getText());
 
-    return (file != null) ? file.getName() : "File is null";
+    return pageData;
   }
 }
-
@@ -0,0 +1,57 @@
+package com.mule.mulechain.crawler.internal;
+
+import com.mule.mulechain.crawler.internal.helpers.CrawlStore;
+import org.mule.runtime.api.store.ObjectDoesNotExistException;
+import org.mule.runtime.api.store.ObjectStore;
+import org.mule.runtime.api.store.ObjectStoreException;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * A {@link CrawlStore} backed by a Mule object store. A persistent object store is shared by all the nodes of a
+ * cluster, so the shards of a crawl can run on different nodes.
+ */
+public class ObjectStoreCrawlStore implements CrawlStore {
+
+  private final ObjectStore<Serializable> objectStore;
+
+  public ObjectStoreCrawlStore(ObjectStore<Serializable> objectStore) {
+    this.objectStore = objectStore;
+  }
+
+  @Override
+  public void put(String key, Serializable value) throws IOException {
+    try {
+      if (objectStore.contains(key)) {
+        objectStore.remove(key);
+      }
+      objectStore.store(key, value);
+    } catch (ObjectStoreException e) {
+      throw new IOException("Could not store " + key, e);
+    }
+  }
+
+  @Override
+  public Serializable get(String key) throws IOException {
+    try {
+      return objectStore.contains(key) ? objectStore.retrieve(key) : null;
+    } catch (ObjectDoesNotExistException e) {
+      // removed in between
+      return null;
+    } catch (ObjectStoreException e) {
+      throw new IOException("Could not read " + key, e);
+    }
+  }
+
+  @Override
+  public Serializable remove(String key) throws IOException {
+    try {
+      return objectStore.contains(key) ? objectStore.remove(key) : null;
+    } catch (ObjectDoesNotExistException e) {
+      return null;
+    } catch (ObjectStoreException e) {
+      throw new IOException("Could not remove " + key, e);
+    }
+  }
+}
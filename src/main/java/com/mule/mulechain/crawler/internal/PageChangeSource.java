@@ -0,0 +1,226 @@
+package com.mule.mulechain.crawler.internal;
+
+import com.mule.mulechain.crawler.internal.helpers.ChangeDetector;
+import com.mule.mulechain.crawler.internal.helpers.CrawlEngine;
+import com.mule.mulechain.crawler.internal.helpers.CrawlMetrics;
+import com.mule.mulechain.crawler.internal.helpers.CrawlStore;
+import com.mule.mulechain.crawler.internal.helpers.PageExtractor;
+import com.mule.mulechain.crawler.internal.helpers.PageRecord;
+import com.mule.mulechain.crawler.internal.helpers.SiteMapNode;
+import com.mule.mulechain.crawler.internal.helpers.crawlingHelper;
+import org.mule.runtime.api.connection.ConnectionProvider;
+import org.mule.runtime.api.exception.MuleException;
+import org.mule.runtime.extension.api.annotation.Alias;
+import org.mule.runtime.extension.api.annotation.param.Config;
+import org.mule.runtime.extension.api.annotation.param.Connection;
+import org.mule.runtime.extension.api.annotation.param.MediaType;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.ParameterGroup;
+import org.mule.runtime.extension.api.annotation.param.display.DisplayName;
+import org.mule.runtime.extension.api.annotation.param.display.Example;
+import org.mule.runtime.extension.api.runtime.operation.Result;
+import org.mule.runtime.extension.api.runtime.source.PollContext;
+import org.mule.runtime.extension.api.runtime.source.PollingSource;
+import org.mule.runtime.extension.api.runtime.source.SourceCallbackContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.mule.runtime.extension.api.annotation.param.MediaType.ANY;
+
+/**
+ * Crawls a website on every poll and emits one event per page that is new, changed or removed since the previous
+ * poll, with the url, change, parentUrl, depth, title and content of the page. Pages are compared by a hash of their
+ * title and text, kept in the Shared Crawl Store of the configuration between polls, so use a persistent object store
+ * there to keep detecting changes across restarts. The first poll emits every page as new.
+ * <p>
+ * With a Cache Directory on the connection, pages are revalidated with the ETag and Last-Modified of the previous poll
+ * and unchanged pages are not downloaded again.
+ */
+@Alias("On-page-change")
+@MediaType(value = ANY, strict = false)
+public class PageChangeSource extends PollingSource<String, Void> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PageChangeSource.class);
+
+  @Config
+  private MulechainwebcrawlerConfiguration configuration;
+
+  @Connection
+  private ConnectionProvider<MulechainwebcrawlerConnection> connectionProvider;
+
+  @Parameter
+  @DisplayName("Website URL")
+  @Example("https://mac-project.ai/docs")
+  private String url;
+
+  @Parameter
+  @DisplayName("Maximum Depth")
+  @Example("2")
+  private int maxDepth;
+
+  /**
+   * Include the text of new and changed pages in their events.
+   */
+  @Parameter
+  @Optional(defaultValue = "true")
+  @DisplayName("Include Content")
+  private boolean includeContent;
+
+  /**
+   * Emit an event for every page of the previous poll that the crawl no longer reached. A crawl that ran out of budget or
+   * could not fetch some pages may not have reached every page, it only reports the pages that answered 404 or 410.
+   */
+  @Parameter
+  @Optional(defaultValue = "true")
+  @DisplayName("Emit Removed Pages")
+  private boolean emitRemoved;
+
+  /**
+   * Name the page hashes are kept under, for sources watching the same website with different settings. Defaults to
+   * the website url.
+   */
+  @Parameter
+  @Optional
+  @DisplayName("Watch ID")
+  private String watchId;
+
+  @ParameterGroup(name = "Budget")
+  private CrawlBudgetSettings budget;
+
+  private MulechainwebcrawlerConnection connection;
+
+  @Override
+  protected void doStart() throws MuleException {
+    connection = connectionProvider.connect();
+    // a connection of its own, published next to the one the operations share instead of in its place
+    CrawlMetrics metrics = connection.getFetcher().getMetrics();
+    String name = metrics.getRegisteredName();
+    if (name != null) {
+      metrics.register(name + "/source");
+    }
+  }
+
+  @Override
+  protected void doStop() {
+    if (connection != null) {
+      connectionProvider.disconnect(connection);
+      connection = null;
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void poll(PollContext<String, Void> pollContext) {
+    if (pollContext.isSourceStopping()) {
+      return;
+    }
+    CrawlStore store = configuration.getCrawlStore();
+    String stateKey = "page-changes/" + (watchId != null ? watchId : url);
+    try {
+      Map<String, Long> previous = (Map<String, Long>) store.get(stateKey);
+      ChangeDetector changes = new ChangeDetector(previous != null ? previous : Collections.<String, Long>emptyMap());
+
+      CrawlEngine engine = configuration.createCrawlEngine(connection.getFetcher());
+      engine.setBudget(budget.createBudget());
+      engine.setExtraction(EnumSet.of(PageExtractor.Output.TEXT), configuration.getTags());
+
+      // hashed on the workers, compared on this thread in frontier order
+      AtomicBoolean startPageCrawled = new AtomicBoolean();
+      engine.crawl(url, maxDepth, (pageUrl, depth, page, firstVisit) -> {
+        if (!firstVisit) {
+          return new SiteMapNode(pageUrl);
+        }
+        String title = page.getDocument().title();
+        String text = page.getExtract().getText();
+        Map<String, Object> pageData = new LinkedHashMap<>();
+        pageData.put("title", title);
+        pageData.put("content", includeContent ? text : null);
+        pageData.put("hash", ChangeDetector.hash(title, text));
+        return new PageRecord(pageUrl, pageData);
+      }, (node, parentUrl, depth) -> {
+        if (depth == 0) {
+          startPageCrawled.set(true);
+        }
+        if (!(node instanceof PageRecord) || pollContext.isSourceStopping()) {
+          return;
+        }
+        Map<String, Object> pageData = ((PageRecord) node).getPageData();
+        ChangeDetector.Change change = changes.check(node.getUrl(), (Long) pageData.get("hash"));
+        if (change != null) {
+          Map<String, Object> event = new LinkedHashMap<>();
+          event.put("url", node.getUrl());
+          event.put("change", change);
+          event.put("parentUrl", parentUrl);
+          event.put("depth", depth);
+          event.put("title", pageData.get("title"));
+          if (includeContent) {
+            event.put("content", pageData.get("content"));
+          }
+          emit(pollContext, changes, node.getUrl(), event);
+        }
+      });
+
+      if (!startPageCrawled.get()) {
+        // an outage or a DNS failure says nothing about the pages, the next poll compares them with the same hashes
+        LOGGER.warn("Change detection crawl of " + url + " could not fetch the start page, pages are compared again on the next poll");
+        return;
+      }
+      if (pollContext.isSourceStopping()) {
+        changes.carryOverUnseen();
+        store.put(stateKey, changes.getState());
+        return;
+      }
+
+      // the links of a page that failed were not followed, so pages not reached are only known to be gone when nothing
+      // failed but pages that no longer exist
+      List<String> gone = new ArrayList<>();
+      Map<String, Integer> failedPages = engine.getFailedPages();
+      for (Map.Entry<String, Integer> failed : failedPages.entrySet()) {
+        if (failed.getValue() == 404 || failed.getValue() == 410) {
+          gone.add(failed.getKey());
+        }
+      }
+      if (engine.getExhaustedBudget() != null || gone.size() < failedPages.size()) {
+        changes.carryOverUnseen(gone);
+      }
+      if (emitRemoved) {
+        for (String removed : changes.getRemoved()) {
+          Map<String, Object> event = new LinkedHashMap<>();
+          event.put("url", removed);
+          event.put("change", ChangeDetector.Change.REMOVED);
+          emit(pollContext, changes, removed, event);
+        }
+      }
+      store.put(stateKey, changes.getState());
+    } catch (IOException e) {
+      LOGGER.error("Change detection crawl of " + url + " failed : " + e);
+    }
+  }
+
+  // a change the flow did not take is reported again by the next poll
+  private void emit(PollContext<String, Void> pollContext, ChangeDetector changes, String pageUrl, Map<String, Object> event) throws IOException {
+    String json = crawlingHelper.convertToJSON(event);
+    PollContext.PollItemStatus status = pollContext.accept(item -> item
+        .setResult(Result.<String, Void>builder().output(json).build())
+        .setId(event.get("change") + " " + pageUrl));
+    if (status != PollContext.PollItemStatus.ACCEPTED) {
+      LOGGER.debug("Change not delivered, " + status + " : " + pageUrl);
+      changes.revert(pageUrl);
+    }
+  }
+
+  @Override
+  public void onRejectedItem(Result<String, Void> result, SourceCallbackContext callbackContext) {
+    LOGGER.debug("Change rejected : " + result.getOutput());
+  }
+}
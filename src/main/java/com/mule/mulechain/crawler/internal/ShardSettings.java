@@ -0,0 +1,57 @@
+package com.mule.mulechain.crawler.internal;
+
+import com.mule.mulechain.crawler.internal.helpers.CrawlPartition;
+import com.mule.mulechain.crawler.internal.helpers.CrawlStore;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+import org.mule.runtime.extension.api.annotation.param.Parameter;
+import org.mule.runtime.extension.api.annotation.param.display.DisplayName;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Which part of a distributed crawl a node runs. Every shard of a crawl must be given the same Shard Count and Shard By.
+ */
+public class ShardSettings {
+
+  /**
+   * Index of this shard, from 0 to Shard Count - 1.
+   */
+  @Parameter
+  @DisplayName("Shard Index")
+  private int shardIndex;
+
+  @Parameter
+  @DisplayName("Shard Count")
+  private int shardCount;
+
+  /**
+   * How urls are assigned to shards: by url, which spreads the pages of a single site over all nodes, or by host, so each
+   * host is only requested from one node and its politeness limits hold. Sharding by host does not parallelize the crawl
+   * of a single host, all its pages go to one shard while the others stay idle.
+   */
+  @Parameter
+  @Optional(defaultValue = "URL")
+  @DisplayName("Shard By")
+  private CrawlPartition.ShardBy shardBy;
+
+  /**
+   * How long a shard waits for the others at every depth before failing. Merge-crawl-shards waits for the results of all
+   * shards for its own Timeout (seconds) instead.
+   */
+  @Parameter
+  @Optional(defaultValue = "600")
+  @DisplayName("Shard Timeout (seconds)")
+  private int shardTimeoutSeconds;
+
+  public CrawlPartition createPartition(CrawlStore store, String crawlId) {
+    return new CrawlPartition(store, crawlId, shardIndex, shardCount, shardBy, getTimeoutMillis());
+  }
+
+  public int getShardCount() {
+    return shardCount;
+  }
+
+  public long getTimeoutMillis() {
+    return TimeUnit.SECONDS.toMillis(shardTimeoutSeconds);
+  }
+}
@@ -0,0 +1,103 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the pages of a crawl with the content hashes recorded by the previous crawl of the same site, to tell
+ * which pages are new, changed or removed. Only the 64-bit hash of every page is kept between crawls.
+ * <p>
+ * Not thread safe, pages are checked on the thread that runs the crawl.
+ */
+public class ChangeDetector {
+
+    public enum Change {
+        NEW,
+        CHANGED,
+        REMOVED
+    }
+
+    private final Map<String, Long> previous;
+    private final HashMap<String, Long> current = new HashMap<>();
+
+    /**
+     * @param previous hash of every page by url from the previous crawl, empty on the first one
+     */
+    public ChangeDetector(Map<String, Long> previous) {
+        this.previous = previous;
+    }
+
+    /**
+     * Hash of what a reader of the page sees, so changes to markup, scripts or tracking parameters do not count.
+     */
+    public static long hash(String title, String text) {
+        return UrlNormalizer.fingerprint(title + '\n' + text);
+    }
+
+    /**
+     * Records the page as seen by this crawl and returns how it changed, or null if it did not.
+     */
+    public Change check(String url, long hash) {
+        current.put(url, hash);
+        Long previousHash = previous.get(url);
+        if (previousHash == null) {
+            return Change.NEW;
+        }
+        return previousHash != hash ? Change.CHANGED : null;
+    }
+
+    /**
+     * Forgets the change of the page, e.g. because it could not be delivered, so the next crawl reports it again.
+     */
+    public void revert(String url) {
+        Long previousHash = previous.get(url);
+        if (previousHash != null) {
+            current.put(url, previousHash);
+        } else {
+            current.remove(url);
+        }
+    }
+
+    /**
+     * Urls of the previous crawl that this one did not reach. Only meaningful once the crawl has completed.
+     */
+    public List<String> getRemoved() {
+        List<String> removed = new ArrayList<>();
+        for (String url : previous.keySet()) {
+            if (!current.containsKey(url)) {
+                removed.add(url);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Keeps the hashes of the pages this crawl did not reach, for a crawl that stopped early, so they are neither
+     * reported as removed now nor as new next time.
+     */
+    public void carryOverUnseen() {
+        carryOverUnseen(Collections.<String>emptySet());
+    }
+
+    /**
+     * Same as {@link #carryOverUnseen()}, except for the pages known to be gone, which are still reported as removed.
+     */
+    public void carryOverUnseen(Collection<String> gone) {
+        for (Map.Entry<String, Long> page : previous.entrySet()) {
+            if (!gone.contains(page.getKey())) {
+                current.putIfAbsent(page.getKey(), page.getValue());
+            }
+        }
+    }
+
+    /**
+     * The hashes to compare the next crawl with.
+     */
+    public HashMap<String, Long> getState() {
+        return current;
+    }
+}
@@ -0,0 +1,56 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+/**
+ * Limits on how much a single crawl may do, on top of its maximum depth. A limit of 0 or less means unlimited.
+ * <p>
+ * Pages and pages per host count every page in the result, so they stop a crawl at the same point on every run. Bytes
+ * and time depend on the site and the network, and stop the crawl once the pages in flight have completed.
+ */
+public class CrawlBudget {
+
+    public static final CrawlBudget UNLIMITED = new CrawlBudget(0, 0, 0, 0);
+
+    /**
+     * The budget a crawl ran out of.
+     */
+    public enum Limit {
+        MAX_PAGES,
+        MAX_BYTES,
+        MAX_DURATION,
+        MAX_PAGES_PER_HOST
+    }
+
+    private final long maxPages;
+    private final long maxBytes;
+    private final long maxDurationMillis;
+    private final long maxPagesPerHost;
+
+    public CrawlBudget(long maxPages, long maxBytes, long maxDurationMillis, long maxPagesPerHost) {
+        this.maxPages = maxPages;
+        this.maxBytes = maxBytes;
+        this.maxDurationMillis = maxDurationMillis;
+        this.maxPagesPerHost = maxPagesPerHost;
+    }
+
+    public boolean isPagesExceeded(long pages) {
+        return maxPages > 0 && pages >= maxPages;
+    }
+
+    /**
+     * @param bytes bytes of page bodies downloaded so far, pages served from the local cache cost nothing
+     */
+    public boolean isBytesExceeded(long bytes) {
+        return maxBytes > 0 && bytes >= maxBytes;
+    }
+
+    public boolean isPagesPerHostExceeded(long pages) {
+        return maxPagesPerHost > 0 && pages >= maxPagesPerHost;
+    }
+
+    /**
+     * System.nanoTime() at which a crawl started at startNanos runs out of time, or Long.MAX_VALUE without a time limit.
+     */
+    public long getDeadline(long startNanos) {
+        return maxDurationMillis > 0 ? startNanos + maxDurationMillis * 1_000_000L : Long.MAX_VALUE;
+    }
+}
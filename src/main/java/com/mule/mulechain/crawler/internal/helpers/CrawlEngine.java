@@ -0,0 +1,869 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import org.jsoup.HttpStatusException;
+import org.jsoup.UnsupportedMimeTypeException;
+import org.jsoup.nodes.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Breadth-first crawl engine. Pages of one depth level are fetched in parallel on the supplied worker pool, while
+ * de-duplication and tree assembly happen on the calling thread in frontier order, so the resulting tree is the same
+ * on every run regardless of the order in which pages complete.
+ * <p>
+ * With a {@link LinkScorer} the crawl is best-first instead: the links found so far wait in a priority queue and the
+ * best ones are crawled next, whatever their depth, so a budget is spent on the pages that matter most.
+ */
+public class CrawlEngine {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CrawlEngine.class);
+
+    // progress is logged every this many pages instead of once per url
+    private static final int PROGRESS_INTERVAL = 100;
+
+    // highest score first, then in the order the links were found
+    private static final Comparator<FrontierEntry> BY_SCORE = (a, b) -> Double.compare(b.score, a.score);
+    private static final Comparator<FrontierEntry> BEST_FIRST = BY_SCORE.thenComparingLong(entry -> entry.order);
+
+    /**
+     * Extensions of links that are not worth a request, as they are documents, archives or media rather than pages.
+     */
+    public static final Set<String> DEFAULT_SKIPPED_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "pdf", "doc", "docx", "xls", "xlsx", "ppt", "pptx", "odt", "ods", "odp", "rtf", "epub",
+            "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "tar", "jar", "war", "exe", "msi", "dmg", "pkg", "deb", "rpm", "iso", "apk",
+            "jpg", "jpeg", "png", "gif", "bmp", "webp", "svg", "ico", "tif", "tiff", "avif",
+            "mp3", "wav", "ogg", "flac", "aac", "m4a", "mp4", "m4v", "mov", "avi", "mkv", "webm", "wmv", "flv",
+            "css", "js", "woff", "woff2", "ttf", "otf", "eot")));
+
+    /**
+     * Builds the node for a crawled page. Called on a worker thread.
+     * firstVisit is true when the url is seen for the first time in this crawl (at any depth). When it is false the page
+     * has normally been fetched already and page is null.
+     */
+    public interface PageProcessor {
+        SiteMapNode process(String url, int depth, FetchedPage page, boolean firstVisit) throws IOException;
+    }
+
+    /**
+     * Receives crawled pages in frontier order, on the calling thread, as soon as each one is available.
+     */
+    public interface PageListener {
+        void onPage(SiteMapNode node, String parentUrl, int depth) throws IOException;
+    }
+
+    /**
+     * Receives the links of every page crawled, once per url, on the calling thread.
+     */
+    public interface LinkListener {
+        void onLinks(String url, Collection<String> links) throws IOException;
+    }
+
+    private final ExecutorService executor;
+    private final PageFetcher fetcher;
+    private final UrlNormalizer normalizer;
+    private final Supplier<VisitedUrlSet> visitedSetFactory;
+    private int pageCacheSize = 5000;
+    private Set<PageExtractor.Output> pageOutputs = EnumSet.noneOf(PageExtractor.Output.class);
+    private List<String> tags;
+    private HostPolicies hostPolicies;
+    private Collection<String> seedUrls = Collections.emptyList();
+    private Set<String> skippedExtensions = DEFAULT_SKIPPED_EXTENSIONS;
+    private UrlScope scope;
+    private CrawlPartition partition;
+    private CrawlBudget budget = CrawlBudget.UNLIMITED;
+    private LinkScorer scorer;
+    private int window = 1;
+    private LinkListener linkListener;
+    private CrawlBudget.Limit exhaustedBudget;
+    private boolean hostLimited;
+    // fetches of the last crawl that failed, by url, with the status the server answered or 0 without a response
+    private final Map<String, Integer> failedPages = new ConcurrentHashMap<>();
+    // the part of the frontier size in the metrics that this crawl added
+    private int frontierSize;
+
+    /**
+     * @param visitedSetFactory creates the crawl-wide set of visited urls, e.g. an exact {@link LongHashSet} or a {@link BloomFilter}
+     */
+    public CrawlEngine(ExecutorService executor, PageFetcher fetcher, UrlNormalizer normalizer, Supplier<VisitedUrlSet> visitedSetFactory) {
+        this.executor = executor;
+        this.fetcher = fetcher;
+        this.normalizer = normalizer;
+        this.visitedSetFactory = visitedSetFactory;
+    }
+
+    /**
+     * Maximum number of pages whose links are remembered within a crawl, see {@link PageMemo}.
+     */
+    public void setPageCacheSize(int pageCacheSize) {
+        this.pageCacheSize = pageCacheSize;
+    }
+
+    /**
+     * What to extract from every page seen for the first time, in the same pass that collects its links. The result
+     * is available to the processor through {@link FetchedPage#getExtract()}.
+     */
+    public void setExtraction(Set<PageExtractor.Output> pageOutputs, List<String> tags) {
+        this.pageOutputs = EnumSet.noneOf(PageExtractor.Output.class);
+        this.pageOutputs.addAll(pageOutputs);
+        this.tags = tags;
+    }
+
+    /**
+     * Policies to obey while crawling: urls disallowed by robots.txt are skipped and requests to a host are spaced by
+     * its Crawl-delay. null to ignore robots.txt.
+     */
+    public void setHostPolicies(HostPolicies hostPolicies) {
+        this.hostPolicies = hostPolicies;
+    }
+
+    /**
+     * Urls crawled at depth 1 as children of the start page, in addition to the links found on it, e.g. the pages
+     * listed in the sitemap of the site.
+     */
+    public void setSeedUrls(Collection<String> seedUrls) {
+        this.seedUrls = seedUrls;
+    }
+
+    /**
+     * Links whose path ends in one of these extensions, compared case-insensitively, are not fetched.
+     */
+    public void setSkippedExtensions(Collection<String> skippedExtensions) {
+        Set<String> extensions = new HashSet<>();
+        for (String extension : skippedExtensions) {
+            extensions.add(extension.toLowerCase(Locale.ROOT).replaceFirst("^\\.", ""));
+        }
+        this.skippedExtensions = extensions;
+    }
+
+    /**
+     * Rules links must match to be followed, null to follow every link on the site of the start page. Links out of
+     * scope are dropped as pages are visited, so they never reach the frontier or cost a request. The start page is
+     * always crawled.
+     */
+    public void setScope(UrlScope scope) {
+        this.scope = scope;
+    }
+
+    /**
+     * Makes the crawl one shard of a distributed crawl: only the urls the partition assigns to this shard are fetched,
+     * the links to the others are handed to their shards at every depth. Only supported by the crawl with a listener,
+     * as the parents of pages may be on other shards.
+     */
+    public void setPartition(CrawlPartition partition) {
+        this.partition = partition;
+    }
+
+    /**
+     * Limits on the crawl besides its maximum depth. When one runs out the crawl stops, and returns the pages crawled
+     * until then.
+     */
+    public void setBudget(CrawlBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Makes the crawl best-first: pages are crawled in the order of the scores of the links to them, highest first,
+     * whatever their depth, and every url is crawled once, at the depth it was first found at. A resumable or
+     * partitioned crawl still goes depth by depth, and crawls the pages of each depth in the order of the scores of
+     * their urls. null to crawl breadth-first.
+     *
+     * @param window pages crawled at once, e.g. twice the number of worker threads. Pages complete in the order they
+     *               were started, so a larger window keeps the workers busier but follows the scores less closely
+     */
+    public void setScorer(LinkScorer scorer, int window) {
+        this.scorer = scorer;
+        this.window = Math.max(1, window);
+    }
+
+    /**
+     * Receives the links of every page, normalized and in scope, e.g. to record the link graph of the site. null for
+     * none.
+     */
+    public void setLinkListener(LinkListener linkListener) {
+        this.linkListener = linkListener;
+    }
+
+    /**
+     * The budget the last crawl ran out of, or null if it crawled everything within its maximum depth.
+     */
+    public CrawlBudget.Limit getExhaustedBudget() {
+        if (exhaustedBudget != null) {
+            return exhaustedBudget;
+        }
+        return hostLimited ? CrawlBudget.Limit.MAX_PAGES_PER_HOST : null;
+    }
+
+    /**
+     * The pages the last crawl could not fetch, with the HTTP status their server answered, or 0 when it did not answer
+     * (timeout, connection or DNS failure). The links of these pages were not followed. Pages that are not HTML or are
+     * over the size limit are not included, they are left out of every crawl.
+     */
+    public Map<String, Integer> getFailedPages() {
+        return failedPages;
+    }
+
+    /**
+     * Crawls and returns the site tree rooted at url.
+     */
+    public SiteMapNode crawl(String url, int maxDepth, PageProcessor processor) throws IOException {
+        return run(url, maxDepth, processor, null, null);
+    }
+
+    /**
+     * Crawls and returns the site tree rooted at url, recording progress in the journal. Pages the journal already
+     * holds from an interrupted run are taken from it instead of being crawled again, and the journal is deleted once
+     * the crawl completes.
+     */
+    public SiteMapNode crawl(String url, int maxDepth, PageProcessor processor, CrawlJournal journal) throws IOException {
+        return run(url, maxDepth, processor, null, journal);
+    }
+
+    /**
+     * Crawls and hands every page to the listener without assembling a tree, so memory does not grow with the
+     * number of pages emitted.
+     */
+    public void crawl(String url, int maxDepth, PageProcessor processor, PageListener listener) throws IOException {
+        crawl(url, maxDepth, processor, listener, null);
+    }
+
+    /**
+     * Crawls and hands every page to the listener, recording progress in the journal as the crawl returning a tree
+     * does.
+     */
+    public void crawl(String url, int maxDepth, PageProcessor processor, PageListener listener, CrawlJournal journal) throws IOException {
+        try {
+            run(url, maxDepth, processor, listener, journal);
+        } catch (IOException | RuntimeException e) {
+            // the other shards would wait for this one at the next depth
+            if (partition != null) {
+                partition.leave();
+            }
+            throw e;
+        }
+    }
+
+    private SiteMapNode run(String url, int maxDepth, PageProcessor processor, PageListener listener, CrawlJournal journal) throws IOException {
+        if (partition != null && listener == null) {
+            throw new IllegalStateException("A partitioned crawl hands its pages to a listener");
+        }
+        failedPages.clear();
+        try {
+            if (scorer != null && journal == null && partition == null) {
+                return runBestFirst(url, maxDepth, processor, listener);
+            }
+            return runByDepth(url, maxDepth, processor, listener, journal);
+        } finally {
+            // also when the crawl failed, the metrics are shared with the crawls still running
+            setFrontierSize(0);
+        }
+    }
+
+    private SiteMapNode runByDepth(String url, int maxDepth, PageProcessor processor, PageListener listener, CrawlJournal journal) throws IOException {
+        VisitedUrlSet visitedLinksGlobal = visitedSetFactory.get();
+        PageMemo pageMemo = new PageMemo(pageCacheSize);
+        List<FrontierEntry> frontier = Collections.singletonList(new FrontierEntry(normalizer.normalize(url), null, null));
+        SiteMapNode root = null;
+        long pagesCrawled = 0;
+
+        exhaustedBudget = null;
+        hostLimited = false;
+        long deadline = budget.getDeadline(System.nanoTime());
+        long pagesScheduled = 0;
+        long bytesDownloaded = 0;
+        Map<String, Long> pagesPerHost = new HashMap<>();
+
+        for (int depth = 0; depth <= maxDepth; depth++) {
+            if (partition != null) {
+                // every shard goes through every depth, also with nothing to crawl, until no shard has any page left
+                frontier = exchange(depth, frontier);
+                if (frontier == null) {
+                    break;
+                }
+            } else if (frontier.isEmpty()) {
+                break;
+            }
+            if (scorer != null) {
+                // only urls are scored, so a resumed crawl orders every depth as the interrupted one did
+                frontier = byScore(frontier, depth);
+            }
+
+            // a url is crawled at most once per depth
+            LongHashSet visitedAtDepth = new LongHashSet(frontier.size());
+            List<FrontierEntry> level = new ArrayList<>();
+            List<Boolean> firstVisits = new ArrayList<>();
+            long digest = 0;
+
+            for (FrontierEntry entry : frontier) {
+                long fingerprint = UrlNormalizer.fingerprint(entry.url);
+                if (visitedAtDepth.add(fingerprint)) {
+                    level.add(entry);
+                    firstVisits.add(visitedLinksGlobal.add(fingerprint));
+                    digest = digest * 31 + fingerprint;
+                }
+            }
+
+            // fails before anything is fetched if the journal was written for a different crawl
+            if (journal != null) {
+                journal.startLevel(depth, level.size(), digest);
+            }
+            setFrontierSize(level.size());
+
+            List<Future<PageOutcome>> outcomes = new ArrayList<>(level.size());
+            boolean[] replayed = new boolean[level.size()];
+            if (isPast(deadline)) {
+                exhaustedBudget = CrawlBudget.Limit.MAX_DURATION;
+            }
+
+            for (int i = 0; i < level.size(); i++) {
+                FrontierEntry entry = level.get(i);
+                long fingerprint = UrlNormalizer.fingerprint(entry.url);
+
+                // pages over budget are left out of the result, a null outcome marks them
+                if (exhaustedBudget == null && budget.isPagesExceeded(pagesScheduled)) {
+                    exhaustedBudget = CrawlBudget.Limit.MAX_PAGES;
+                }
+                if (exhaustedBudget != null) {
+                    outcomes.add(null);
+                    continue;
+                }
+                String host = host(entry.url);
+                long hostPages = pagesPerHost.getOrDefault(host, 0L);
+                if (budget.isPagesPerHostExceeded(hostPages)) {
+                    hostLimited = true;
+                    outcomes.add(null);
+                    continue;
+                }
+                pagesPerHost.put(host, hostPages + 1);
+                pagesScheduled++;
+
+                boolean firstVisit = firstVisits.get(i);
+                final int currentDepth = depth;
+
+                // completed before the previous run was interrupted
+                CrawlJournal.Page recorded = journal != null ? journal.getRecordedPage(depth, i) : null;
+                if (recorded != null) {
+                    replayed[i] = true;
+                    pageMemo.put(fingerprint, recorded.getNode() != null ? recorded.getLinks() : PageMemo.FAILED);
+                    outcomes.add(CompletableFuture.completedFuture(recorded.getNode() != null ? new PageOutcome(recorded.getNode(), recorded.getLinks()) : null));
+                } else {
+                    outcomes.add(submitVisit(() -> visit(entry.url, fingerprint, currentDepth, firstVisit, processor, pageMemo, false)));
+                }
+            }
+
+            List<FrontierEntry> nextFrontier = new ArrayList<>();
+
+            for (int i = 0; i < level.size(); i++) {
+                FrontierEntry entry = level.get(i);
+                Future<PageOutcome> future = outcomes.get(i);
+                if (exhaustedBudget == null && future != null && !awaitUntil(outcomes, i, deadline)) {
+                    exhaustedBudget = CrawlBudget.Limit.MAX_DURATION;
+                    cancel(outcomes, i);
+                }
+                // not scheduled, or dropped from the queue once the budget ran out
+                if (future == null || future.isCancelled()) {
+                    continue;
+                }
+
+                PageOutcome outcome = await(outcomes, i);
+                if (journal != null && !replayed[i]) {
+                    journal.recordPage(depth, i, outcome != null ? outcome.node : null, outcome != null ? outcome.links : null);
+                }
+                if (outcome == null) {
+                    continue;
+                }
+
+                bytesDownloaded += outcome.bytesDownloaded;
+                if (exhaustedBudget == null && budget.isBytesExceeded(bytesDownloaded)) {
+                    exhaustedBudget = CrawlBudget.Limit.MAX_BYTES;
+                    cancel(outcomes, i + 1);
+                }
+
+                if (++pagesCrawled % PROGRESS_INTERVAL == 0) {
+                    LOGGER.info("Crawled " + pagesCrawled + " pages of " + url + ", depth " + depth + ", " + (level.size() - i - 1) + " pages left at this depth");
+                }
+
+                if (listener != null) {
+                    listener.onPage(outcome.node, entry.parentUrl, depth);
+                } else if (entry.parent == null) {
+                    root = outcome.node;
+                } else {
+                    entry.parent.addChild(outcome.node);
+                }
+                if (linkListener != null && firstVisits.get(i)) {
+                    linkListener.onLinks(entry.url, outcome.links);
+                }
+
+                if (depth < maxDepth && exhaustedBudget == null) {
+                    // only keep a reference to the parent node when the tree is being assembled
+                    SiteMapNode parent = listener == null ? outcome.node : null;
+                    for (String link : outcome.links) {
+                        nextFrontier.add(new FrontierEntry(link, parent, entry.url));
+                    }
+                    if (depth == 0) {
+                        // seeds already reached through a link are dropped by the per depth check
+                        for (String seed : seedUrls) {
+                            String normalized = normalizer.normalize(seed);
+                            if (scope == null || scope.isInScope(normalized)) {
+                                nextFrontier.add(new FrontierEntry(normalized, parent, entry.url));
+                            }
+                        }
+                    }
+                }
+            }
+            if (journal != null) {
+                journal.endLevel(depth);
+            }
+            if (exhaustedBudget != null) {
+                if (partition != null) {
+                    partition.leave();
+                }
+                break;
+            }
+            frontier = nextFrontier;
+        }
+        logFinished(url, pagesCrawled);
+        // a crawl stopped by its budget keeps its journal, running it again with a larger budget continues it
+        if (journal != null && exhaustedBudget == null) {
+            journal.complete();
+        }
+        return root;
+    }
+
+    private SiteMapNode runBestFirst(String url, int maxDepth, PageProcessor processor, PageListener listener) throws IOException {
+        // urls are marked when queued, so each is queued and crawled once
+        VisitedUrlSet queued = visitedSetFactory.get();
+        // every page is a first visit, nothing is expanded from the memo
+        PageMemo pageMemo = new PageMemo(0);
+        PriorityQueue<FrontierEntry> queue = new PriorityQueue<>(BEST_FIRST);
+        String start = normalizer.normalize(url);
+        queued.add(UrlNormalizer.fingerprint(start));
+        queue.add(new FrontierEntry(start, null, null, 0, 0, 0));
+        long order = 1;
+
+        // pages started and not handled yet, handled in the order they were started so the crawl is the same on every run
+        List<FrontierEntry> running = new ArrayList<>(window);
+        List<Future<PageOutcome>> outcomes = new ArrayList<>(window);
+        SiteMapNode root = null;
+        long pagesCrawled = 0;
+
+        exhaustedBudget = null;
+        hostLimited = false;
+        long deadline = budget.getDeadline(System.nanoTime());
+        long pagesScheduled = 0;
+        long bytesDownloaded = 0;
+        Map<String, Long> pagesPerHost = new HashMap<>();
+
+        while (true) {
+            while (exhaustedBudget == null && running.size() < window && !queue.isEmpty()) {
+                if (isPast(deadline)) {
+                    exhaustedBudget = CrawlBudget.Limit.MAX_DURATION;
+                } else if (budget.isPagesExceeded(pagesScheduled)) {
+                    exhaustedBudget = CrawlBudget.Limit.MAX_PAGES;
+                } else {
+                    FrontierEntry entry = queue.poll();
+                    String host = host(entry.url);
+                    long hostPages = pagesPerHost.getOrDefault(host, 0L);
+                    if (budget.isPagesPerHostExceeded(hostPages)) {
+                        hostLimited = true;
+                        continue;
+                    }
+                    pagesPerHost.put(host, hostPages + 1);
+                    pagesScheduled++;
+
+                    long fingerprint = UrlNormalizer.fingerprint(entry.url);
+                    running.add(entry);
+                    outcomes.add(submitVisit(() -> visit(entry.url, fingerprint, entry.depth, true, processor, pageMemo, true)));
+                }
+            }
+            setFrontierSize(queue.size());
+            if (running.isEmpty()) {
+                break;
+            }
+
+            FrontierEntry entry = running.get(0);
+            Future<PageOutcome> future = outcomes.get(0);
+            if (exhaustedBudget == null && !awaitUntil(outcomes, 0, deadline)) {
+                exhaustedBudget = CrawlBudget.Limit.MAX_DURATION;
+                cancel(outcomes, 0);
+            }
+            PageOutcome outcome = future.isCancelled() ? null : await(outcomes, 0);
+            running.remove(0);
+            outcomes.remove(0);
+            if (outcome == null) {
+                continue;
+            }
+
+            bytesDownloaded += outcome.bytesDownloaded;
+            if (exhaustedBudget == null && budget.isBytesExceeded(bytesDownloaded)) {
+                exhaustedBudget = CrawlBudget.Limit.MAX_BYTES;
+                cancel(outcomes, 0);
+            }
+
+            if (++pagesCrawled % PROGRESS_INTERVAL == 0) {
+                LOGGER.info("Crawled " + pagesCrawled + " pages of " + url + ", " + queue.size() + " links queued");
+            }
+
+            if (listener != null) {
+                listener.onPage(outcome.node, entry.parentUrl, entry.depth);
+            } else if (entry.parent == null) {
+                root = outcome.node;
+            } else {
+                entry.parent.addChild(outcome.node);
+            }
+            if (linkListener != null) {
+                linkListener.onLinks(entry.url, outcome.links);
+            }
+
+            if (entry.depth < maxDepth && exhaustedBudget == null) {
+                SiteMapNode parent = listener == null ? outcome.node : null;
+                int i = 0;
+                for (String link : outcome.links) {
+                    double score = outcome.scores[i++];
+                    if (queued.add(UrlNormalizer.fingerprint(link))) {
+                        queue.add(new FrontierEntry(link, parent, entry.url, entry.depth + 1, score, order++));
+                    }
+                }
+                if (entry.depth == 0) {
+                    for (String seed : seedUrls) {
+                        String normalized = normalizer.normalize(seed);
+                        if ((scope == null || scope.isInScope(normalized)) && queued.add(UrlNormalizer.fingerprint(normalized))) {
+                            queue.add(new FrontierEntry(normalized, parent, entry.url, 1, scorer.score(normalized, null, 1), order++));
+                        }
+                    }
+                }
+            }
+        }
+        logFinished(url, pagesCrawled);
+        return root;
+    }
+
+    private void setFrontierSize(int size) {
+        fetcher.getMetrics().addFrontierSize(size - frontierSize);
+        frontierSize = size;
+    }
+
+    private List<FrontierEntry> byScore(List<FrontierEntry> frontier, int depth) {
+        List<FrontierEntry> scored = new ArrayList<>(frontier.size());
+        for (FrontierEntry entry : frontier) {
+            scored.add(new FrontierEntry(entry.url, entry.parent, entry.parentUrl, depth, scorer.score(entry.url, null, depth), 0));
+        }
+        // stable, pages with the same score keep the order they were found in
+        scored.sort(BY_SCORE);
+        return scored;
+    }
+
+    private void logFinished(String url, long pagesCrawled) {
+        if (exhaustedBudget != null) {
+            LOGGER.warn("Crawl of " + url + " stopped after " + pagesCrawled + " pages, budget exhausted : " + exhaustedBudget);
+        } else {
+            LOGGER.info("Crawl of " + url + " finished, " + pagesCrawled + " pages");
+        }
+    }
+
+    private static boolean isPast(long deadline) {
+        return deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0;
+    }
+
+    // cancels the pages from index on that have not started yet, the ones running are left to complete
+    private void cancel(List<Future<PageOutcome>> outcomes, int from) {
+        for (int i = from; i < outcomes.size(); i++) {
+            Future<PageOutcome> outcome = outcomes.get(i);
+            if (outcome != null) {
+                outcome.cancel(false);
+            }
+        }
+    }
+
+    // cancels every page of an interrupted crawl, interrupting the ones running
+    private InterruptedIOException interrupted(List<Future<PageOutcome>> outcomes) {
+        for (Future<PageOutcome> outcome : outcomes) {
+            if (outcome != null) {
+                outcome.cancel(true);
+            }
+        }
+        Thread.currentThread().interrupt();
+        return new InterruptedIOException("Crawl interrupted");
+    }
+
+    private Future<PageOutcome> submitVisit(Callable<PageOutcome> visit) {
+        PageVisit task = new PageVisit(visit, fetcher.getMetrics());
+        task.metrics.pageStarted();
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Waits for the page at index until the deadline.
+     *
+     * @return false if the deadline passed before the page completed
+     */
+    private boolean awaitUntil(List<Future<PageOutcome>> outcomes, int index, long deadline) throws IOException {
+        Future<PageOutcome> outcome = outcomes.get(index);
+        if (deadline == Long.MAX_VALUE || outcome.isDone()) {
+            return true;
+        }
+        try {
+            outcome.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            // reported by await
+            return true;
+        } catch (InterruptedException e) {
+            throw interrupted(outcomes);
+        }
+    }
+
+    // lower case extension of the last path segment, empty if it has none
+    static String extension(String url) {
+        int end = url.length();
+        int query = url.indexOf('?');
+        if (query >= 0) {
+            end = query;
+        }
+        int fragment = url.indexOf('#');
+        if (fragment >= 0 && fragment < end) {
+            end = fragment;
+        }
+        int scheme = url.indexOf("://");
+        int path = url.indexOf('/', scheme >= 0 ? scheme + 3 : 0);
+        if (path < 0 || path >= end) {
+            return "";
+        }
+        int slash = url.lastIndexOf('/', end - 1);
+        int dot = url.lastIndexOf('.', end - 1);
+        if (dot <= slash || dot == end - 1) {
+            return "";
+        }
+        return url.substring(dot + 1, end).toLowerCase(Locale.ROOT);
+    }
+
+    private static String host(String url) {
+        try {
+            return new URL(url).getHost();
+        } catch (MalformedURLException e) {
+            return "";
+        }
+    }
+
+    private PageOutcome await(List<Future<PageOutcome>> outcomes, int index) throws IOException {
+        try {
+            return outcomes.get(index).get();
+        } catch (InterruptedException e) {
+            throw interrupted(outcomes);
+        } catch (ExecutionException e) {
+            LOGGER.error(e.getCause().toString());
+            return null;
+        }
+    }
+
+    private PageOutcome visit(String url, long fingerprint, int depth, boolean firstVisit, PageProcessor processor, PageMemo pageMemo, boolean scoreLinks) {
+        CrawlMetrics metrics = fetcher.getMetrics();
+        try {
+            return visit(url, fingerprint, depth, firstVisit, processor, pageMemo, scoreLinks, metrics);
+        } finally {
+            metrics.pageFinished();
+        }
+    }
+
+    private PageOutcome visit(String url, long fingerprint, int depth, boolean firstVisit, PageProcessor processor, PageMemo pageMemo, boolean scoreLinks, CrawlMetrics metrics) {
+
+        // page already fetched at another depth, expand it from the memo instead of fetching it again
+        List<String> knownLinks = firstVisit ? null : pageMemo.get(fingerprint);
+        if (knownLinks == PageMemo.FAILED) {
+            return null;
+        }
+
+        try {
+            if (knownLinks != null) {
+                return new PageOutcome(processor.process(url, depth, null, false), knownLinks);
+            }
+
+            // decided from the url alone, so no request is made for a link to a pdf or an archive
+            if (!skippedExtensions.isEmpty() && skippedExtensions.contains(extension(url))) {
+                LOGGER.debug("Skipping by extension : " + url);
+                pageMemo.put(fingerprint, PageMemo.FAILED);
+                return null;
+            }
+
+            if (hostPolicies != null) {
+                if (!hostPolicies.isAllowed(url)) {
+                    LOGGER.debug("Disallowed by robots.txt : " + url);
+                    pageMemo.put(fingerprint, PageMemo.FAILED);
+                    return null;
+                }
+                hostPolicies.awaitTurn(url);
+            }
+
+            // get page as a html document
+            FetchedPage page = crawlingHelper.fetchPage(fetcher, url);
+            Document document = page.getDocument();
+
+            // get all links on the current page, together with whatever the processor needs, in one pass
+            long start = System.nanoTime();
+            EnumSet<PageExtractor.Output> outputs = EnumSet.of(PageExtractor.Output.INTERNAL_LINKS);
+            if (scope != null && scope.hasHostRules()) {
+                // allowed hosts may be other sites than the one of the page
+                outputs.add(PageExtractor.Output.EXTERNAL_LINKS);
+            }
+            if (firstVisit) {
+                outputs.addAll(pageOutputs);
+            }
+            if (scoreLinks) {
+                outputs.add(PageExtractor.Output.LINK_TEXT);
+            }
+            PageExtract extract = PageExtractor.extract(document, outputs, tags);
+            page.setExtract(extract);
+            metrics.record(CrawlMetrics.Phase.EXTRACT, start);
+
+            start = System.nanoTime();
+            SiteMapNode node = processor.process(url, depth, page, firstVisit);
+            metrics.record(CrawlMetrics.Phase.PROCESS, start);
+
+            List<String> links = new ArrayList<>(extract.getInternalLinks().size());
+            List<String> anchorTexts = scoreLinks ? new ArrayList<>(extract.getInternalLinks().size()) : null;
+            addLinks(links, anchorTexts, extract.getInternalLinks(), extract.getLinkTexts());
+            if (scope != null && scope.hasHostRules()) {
+                addLinks(links, anchorTexts, extract.getExternalLinks(), extract.getLinkTexts());
+            }
+            pageMemo.put(fingerprint, links);
+
+            PageOutcome outcome = new PageOutcome(node, links, page.getBytesDownloaded());
+            if (scoreLinks) {
+                // scored here rather than on the calling thread, which is the one that waits for every page
+                outcome.scores = new double[links.size()];
+                for (int i = 0; i < links.size(); i++) {
+                    outcome.scores[i] = scorer.score(links.get(i), anchorTexts.get(i), depth + 1);
+                }
+            }
+            return outcome;
+        } catch (Exception e) {
+            pageMemo.put(fingerprint, PageMemo.FAILED);
+            metrics.pageFailed();
+            if (!(e instanceof UnsupportedMimeTypeException || e instanceof PageFetcher.BodyTooLargeException)) {
+                failedPages.put(url, e instanceof HttpStatusException ? ((HttpStatusException) e).getStatusCode() : 0);
+            }
+            LOGGER.error(e.toString());
+        }
+        return null;
+    }
+
+    private List<FrontierEntry> exchange(int depth, List<FrontierEntry> frontier) throws IOException {
+        List<String[]> outgoing = new ArrayList<>(frontier.size());
+        for (FrontierEntry entry : frontier) {
+            outgoing.add(new String[]{entry.url, entry.parentUrl});
+        }
+        List<String[]> incoming = partition.exchange(depth, outgoing);
+        if (incoming == null) {
+            return null;
+        }
+        List<FrontierEntry> owned = new ArrayList<>(incoming.size());
+        for (String[] entry : incoming) {
+            owned.add(new FrontierEntry(entry[0], null, entry[1]));
+        }
+        return owned;
+    }
+
+    // anchorTexts, when not null, receives the anchor text of every link added, or null for a link without
+    private void addLinks(List<String> links, List<String> anchorTexts, Collection<String> found, Map<String, String> linkTexts) {
+        for (String link : found) {
+            String normalized = normalizer.normalize(link);
+            if (scope == null || scope.isInScope(normalized)) {
+                links.add(normalized);
+                if (anchorTexts != null) {
+                    anchorTexts.add(linkTexts.get(link));
+                }
+            }
+        }
+    }
+
+    private static class FrontierEntry {
+        private final String url;
+        private final SiteMapNode parent;
+        private final String parentUrl;
+        // only set when scoring links
+        private final int depth;
+        private final double score;
+        private final long order;
+
+        private FrontierEntry(String url, SiteMapNode parent, String parentUrl) {
+            this(url, parent, parentUrl, 0, 0, 0);
+        }
+
+        private FrontierEntry(String url, SiteMapNode parent, String parentUrl, int depth, double score, long order) {
+            this.url = url;
+            this.parent = parent;
+            this.parentUrl = parentUrl;
+            this.depth = depth;
+            this.score = score;
+            this.order = order;
+        }
+    }
+
+    /**
+     * A page submitted to the workers. A page that started is counted as finished by visit once it completes, one cancelled
+     * before it started is counted as finished by its cancellation, so every page leaves pagesInFlight exactly once.
+     */
+    private static class PageVisit extends FutureTask<PageOutcome> {
+        private final CrawlMetrics metrics;
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        private PageVisit(Callable<PageOutcome> visit, CrawlMetrics metrics) {
+            super(visit);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void run() {
+            if (started.compareAndSet(false, true)) {
+                super.run();
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean neverStarted = started.compareAndSet(false, true);
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (neverStarted) {
+                metrics.pageFinished();
+            }
+            return cancelled;
+        }
+    }
+
+    private static class PageOutcome {
+        private final SiteMapNode node;
+        private final Collection<String> links;
+        private final long bytesDownloaded;
+        // scores of the links, in the same order, when the crawl is best-first
+        private double[] scores;
+
+        private PageOutcome(SiteMapNode node, Collection<String> links) {
+            this(node, links, 0);
+        }
+
+        private PageOutcome(SiteMapNode node, Collection<String> links, long bytesDownloaded) {
+            this.node = node;
+            this.links = links;
+            this.bytesDownloaded = bytesDownloaded;
+        }
+    }
+}
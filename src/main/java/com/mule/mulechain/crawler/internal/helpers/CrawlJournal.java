@@ -0,0 +1,296 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Append-only journal of a crawl, one JSON record per line, so an interrupted crawl can be resumed by its crawl id.
+ * <p>
+ * The first line identifies the crawl. Every depth level starts with a record of its size and a digest of the url
+ * fingerprints in it, followed by one record per completed page with its depth, position in the level, node and
+ * outgoing links. Because the engine is deterministic, replaying the recorded pages rebuilds the same frontier,
+ * visited set and tree, and only the pages that were not recorded are fetched again.
+ * <p>
+ * Records are flushed as they are written, so they survive the process dying, and forced to disk at the end of
+ * every level. A page is only recorded after the output it was written to has been flushed, so a replayed page always
+ * has its data. A torn last line is dropped when the journal is reopened.
+ */
+public class CrawlJournal implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CrawlJournal.class);
+
+    private static final String EXTENSION = ".journal";
+
+    private final Path file;
+    private final Map<Integer, Level> recordedLevels = new HashMap<>();
+    private final FileOutputStream out;
+    private final OutputStream writer;
+    private Flushable pageOutput;
+    private boolean closed;
+
+    /**
+     * A page recorded by a previous run. node is null for a page that failed.
+     */
+    public static class Page {
+        private final SiteMapNode node;
+        private final List<String> links;
+
+        private Page(SiteMapNode node, List<String> links) {
+            this.node = node;
+            this.links = links;
+        }
+
+        public SiteMapNode getNode() {
+            return node;
+        }
+
+        public List<String> getLinks() {
+            return links;
+        }
+    }
+
+    private static class Level {
+        private final int size;
+        private final long digest;
+        private final Map<Integer, Page> pages = new HashMap<>();
+
+        private Level(int size, long digest) {
+            this.size = size;
+            this.digest = digest;
+        }
+    }
+
+    /**
+     * Opens the journal of crawlId in directory, reading back what an earlier run recorded, or starts a new one.
+     */
+    public static CrawlJournal open(Path directory, String crawlId, String url, int maxDepth) throws IOException {
+        if (crawlId == null || !crawlId.matches("[A-Za-z0-9._-]+")) {
+            throw new IllegalArgumentException("Crawl ID may only contain letters, digits, '.', '_' and '-': " + crawlId);
+        }
+        return new CrawlJournal(Files.createDirectories(directory).resolve(crawlId + EXTENSION), crawlId, url, maxDepth);
+    }
+
+    private CrawlJournal(Path file, String crawlId, String url, int maxDepth) throws IOException {
+        this.file = file;
+
+        boolean resumed = Files.exists(file) && replay(crawlId, url, maxDepth);
+
+        this.out = new FileOutputStream(file.toFile(), resumed);
+        this.writer = new BufferedOutputStream(out);
+
+        if (resumed) {
+            LOGGER.info("Resuming crawl " + crawlId + " from " + file);
+        } else {
+            Map<String, Object> header = new LinkedHashMap<>();
+            header.put("crawlId", crawlId);
+            header.put("url", url);
+            header.put("maxDepth", maxDepth);
+            append(header);
+        }
+    }
+
+    // reads the complete lines of an existing journal and cuts off a line torn by a crash
+    private boolean replay(String crawlId, String url, int maxDepth) throws IOException {
+        long validLength = 0;
+        boolean first = true;
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long position = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                position++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                JsonNode record = crawlingHelper.parseJSON(line.toByteArray());
+                line.reset();
+
+                if (first) {
+                    if (!url.equals(record.path("url").asText()) || maxDepth != record.path("maxDepth").asInt()) {
+                        throw new IOException("Crawl " + crawlId + " was started for " + record.path("url").asText()
+                                + " with maximum depth " + record.path("maxDepth").asInt() + ", not " + url + " with maximum depth " + maxDepth);
+                    }
+                    first = false;
+                } else if (record.has("level")) {
+                    recordedLevels.put(record.get("level").asInt(), new Level(record.get("size").asInt(), record.get("digest").asLong()));
+                } else {
+                    Level level = recordedLevels.get(record.get("depth").asInt());
+                    if (level != null) {
+                        level.pages.put(record.get("index").asInt(), readPage(record));
+                    }
+                }
+                validLength = position;
+            }
+        }
+
+        if (first) {
+            // not even the header made it to disk
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(validLength);
+        }
+        return true;
+    }
+
+    /**
+     * Sets where the processor writes the pages to, flushed before every page is recorded.
+     */
+    public void setPageOutput(Flushable pageOutput) {
+        this.pageOutput = pageOutput;
+    }
+
+    /**
+     * Pages recorded by an earlier run that have not been handed out yet, for restoring what processing them had
+     * built up, e.g. a near duplicate index, before the crawl starts.
+     */
+    public List<Page> getRecordedPages() {
+        List<Page> pages = new ArrayList<>();
+        for (Level level : recordedLevels.values()) {
+            pages.addAll(level.pages.values());
+        }
+        return pages;
+    }
+
+    /**
+     * Records the start of a level, or when it was already recorded checks that the replayed run reached the same urls.
+     *
+     * @param digest order-dependent digest of the url fingerprints of the level
+     */
+    public void startLevel(int depth, int size, long digest) throws IOException {
+        Level recorded = recordedLevels.get(depth);
+        if (recorded != null) {
+            if (recorded.size != size || recorded.digest != digest) {
+                throw new IOException("Journal " + file + " does not match the crawl at depth " + depth
+                        + ", the site or the configuration has changed since it was written");
+            }
+            return;
+        }
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("level", depth);
+        record.put("size", size);
+        record.put("digest", digest);
+        append(record);
+    }
+
+    /**
+     * Returns the page recorded at this position by an earlier run, or null if it still has to be crawled.
+     */
+    public Page getRecordedPage(int depth, int index) {
+        Level level = recordedLevels.get(depth);
+        // handed out once, the engine keeps the node from here on
+        return level != null ? level.pages.remove(index) : null;
+    }
+
+    /**
+     * Records a crawled page, node is null when it failed.
+     */
+    public void recordPage(int depth, int index, SiteMapNode node, Collection<String> links) throws IOException {
+        if (pageOutput != null) {
+            pageOutput.flush();
+        }
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("depth", depth);
+        record.put("index", index);
+        if (node == null) {
+            record.put("failed", true);
+        } else {
+            record.put("node", writeNode(node));
+            record.put("links", links);
+        }
+        append(record);
+    }
+
+    public void endLevel(int depth) throws IOException {
+        writer.flush();
+        out.getChannel().force(false);
+        recordedLevels.remove(depth);
+    }
+
+    /**
+     * Called once the crawl has finished, the journal is no longer needed and is deleted.
+     */
+    public void complete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            writer.close();
+        }
+    }
+
+    private void append(Map<String, Object> record) throws IOException {
+        writer.write(crawlingHelper.convertToJSONBytes(record));
+        writer.write('\n');
+        // hand the record to the OS, so it is kept if the process dies
+        writer.flush();
+    }
+
+    private static Map<String, Object> writeNode(SiteMapNode node) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("url", node.getUrl());
+        if (node instanceof CrawlResult) {
+            CrawlResult result = (CrawlResult) node;
+            fields.put("fileName", result.getFileName());
+            fields.put("unchanged", result.isUnchanged());
+            fields.put("duplicateOf", result.getDuplicateOf());
+            if (result.getSimHash() != null) {
+                fields.put("simHash", result.getSimHash());
+            }
+            if (result.getImageFiles() != null) {
+                fields.put("imageFiles", result.getImageFiles());
+            }
+        }
+        return fields;
+    }
+
+    private static Page readPage(JsonNode record) {
+        if (record.path("failed").asBoolean()) {
+            return new Page(null, Collections.<String>emptyList());
+        }
+
+        JsonNode fields = record.get("node");
+        String url = fields.get("url").asText();
+        SiteMapNode node;
+        if (!fields.has("fileName")) {
+            node = new SiteMapNode(url);
+        } else if (fields.hasNonNull("duplicateOf")) {
+            node = CrawlResult.nearDuplicate(url, fields.get("duplicateOf").asText());
+        } else {
+            CrawlResult result = new CrawlResult(url, fields.get("fileName").asText(), fields.path("unchanged").asBoolean());
+            if (fields.has("simHash")) {
+                result.setSimHash(fields.get("simHash").asLong());
+            }
+            if (fields.has("imageFiles")) {
+                Map<String, String> imageFiles = new LinkedHashMap<>();
+                Iterator<Map.Entry<String, JsonNode>> images = fields.get("imageFiles").fields();
+                while (images.hasNext()) {
+                    Map.Entry<String, JsonNode> image = images.next();
+                    imageFiles.put(image.getKey(), image.getValue().asText());
+                }
+                result.setImageFiles(imageFiles);
+            }
+            node = result;
+        }
+
+        List<String> links = new ArrayList<>();
+        for (JsonNode link : record.path("links")) {
+            links.add(link.asText());
+        }
+        return new Page(node, links);
+    }
+}
@@ -0,0 +1,422 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timers and counters of everything fetched through one {@link PageFetcher}, exposed over JMX as
+ * com.mule.mulechain.crawler:type=CrawlMetrics,name=&lt;config&gt;.
+ * <p>
+ * An operation can report what happened while it ran with {@link #snapshot()} and {@link #summarySince(Snapshot)}.
+ * Operations running at the same time on the same connection are included in each other's summary.
+ */
+public class CrawlMetrics implements CrawlMetricsMXBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CrawlMetrics.class);
+
+    /**
+     * The phases a page goes through. CONNECT covers DNS, connect, TLS and waiting for the response headers, and
+     * DOWNLOAD_PARSE the body, which jsoup parses as it arrives.
+     */
+    public enum Phase {
+        CONNECT,
+        DOWNLOAD_PARSE,
+        EXTRACT,
+        PROCESS,
+        WRITE,
+        IMAGE_DOWNLOAD
+    }
+
+    // latency histogram bucket upper bounds in milliseconds, the last bucket is unbounded
+    private static final long[] BUCKETS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, Long.MAX_VALUE};
+    // hosts beyond this share one histogram, so crawls touching many hosts do not grow the map without bound
+    private static final int MAX_HOSTS = 1000;
+    private static final String OTHER_HOSTS = "other";
+
+    // the metrics registered under each name, the last one published. Metrics replaced under their name leave their
+    // replacement registered, and are published again once it is unregistered
+    private static final Map<ObjectName, Deque<CrawlMetrics>> REGISTERED = new HashMap<>();
+
+    private final LongAdder pagesFetched = new LongAdder();
+    private final LongAdder pagesFailed = new LongAdder();
+    private final LongAdder pagesNotModified = new LongAdder();
+    private final LongAdder imagesDownloaded = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final AtomicInteger frontierSize = new AtomicInteger();
+    private final AtomicInteger pagesInFlight = new AtomicInteger();
+    private final Map<Phase, Timer> timers = new EnumMap<>(Phase.class);
+    private final ConcurrentMap<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLongArray> hostLatencies = new ConcurrentHashMap<>();
+
+    private ObjectName objectName;
+
+    private static class Timer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    /**
+     * Counter values at one point in time.
+     */
+    public static class Snapshot {
+        private final long time = System.nanoTime();
+        private final Map<String, Long> counters = new LinkedHashMap<>();
+        private final Map<Phase, long[]> timers = new EnumMap<>(Phase.class);
+        private final Map<Integer, Long> statusCodes = new HashMap<>();
+        private final Map<String, long[]> hostLatencies = new HashMap<>();
+    }
+
+    public CrawlMetrics() {
+        for (Phase phase : Phase.values()) {
+            timers.put(phase, new Timer());
+        }
+    }
+
+    public void record(Phase phase, long startNanos) {
+        timers.get(phase).record(System.nanoTime() - startNanos);
+    }
+
+    public void pageFetched(boolean notModified) {
+        pagesFetched.increment();
+        if (notModified) {
+            pagesNotModified.increment();
+        }
+    }
+
+    public void pageFailed() {
+        pagesFailed.increment();
+    }
+
+    public void imageDownloaded(long bytes) {
+        imagesDownloaded.increment();
+        bytesOut.add(bytes);
+    }
+
+    public void bytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    public void bytesOut(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    /**
+     * Adds the change in the frontier of one crawl to the frontier size, which sums the crawls running on the connection.
+     */
+    public void addFrontierSize(int delta) {
+        frontierSize.addAndGet(delta);
+    }
+
+    public void pageStarted() {
+        pagesInFlight.incrementAndGet();
+    }
+
+    public void pageFinished() {
+        pagesInFlight.decrementAndGet();
+    }
+
+    /**
+     * Records one response, with the time it took from sending the request to receiving the headers.
+     */
+    public void response(String host, int status, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        timers.get(Phase.CONNECT).record(nanos);
+        statusCodes.computeIfAbsent(status, code -> new LongAdder()).increment();
+
+        AtomicLongArray histogram = hostLatencies.get(host);
+        if (histogram == null) {
+            String key = hostLatencies.size() < MAX_HOSTS ? host : OTHER_HOSTS;
+            histogram = hostLatencies.computeIfAbsent(key, h -> new AtomicLongArray(BUCKETS.length));
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (millis > BUCKETS[bucket]) {
+            bucket++;
+        }
+        histogram.incrementAndGet(bucket);
+    }
+
+    public Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        snapshot.counters.put("pagesFetched", pagesFetched.sum());
+        snapshot.counters.put("pagesFailed", pagesFailed.sum());
+        snapshot.counters.put("pagesNotModified", pagesNotModified.sum());
+        snapshot.counters.put("imagesDownloaded", imagesDownloaded.sum());
+        snapshot.counters.put("bytesIn", bytesIn.sum());
+        snapshot.counters.put("bytesOut", bytesOut.sum());
+        for (Map.Entry<Phase, Timer> timer : timers.entrySet()) {
+            snapshot.timers.put(timer.getKey(), new long[] {timer.getValue().count.sum(), timer.getValue().totalNanos.sum()});
+        }
+        for (Map.Entry<Integer, LongAdder> status : statusCodes.entrySet()) {
+            snapshot.statusCodes.put(status.getKey(), status.getValue().sum());
+        }
+        for (Map.Entry<String, AtomicLongArray> host : hostLatencies.entrySet()) {
+            snapshot.hostLatencies.put(host.getKey(), histogram(host.getValue()));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Summarizes what was recorded since the snapshot was taken, as a map ready to be serialized to JSON.
+     */
+    public Map<String, Object> summarySince(Snapshot before) {
+        Snapshot now = snapshot();
+        Map<String, Object> summary = new LinkedHashMap<>();
+
+        long elapsedNanos = now.time - before.time;
+        summary.put("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        for (Map.Entry<String, Long> counter : now.counters.entrySet()) {
+            summary.put(counter.getKey(), counter.getValue() - before.counters.get(counter.getKey()));
+        }
+        long pages = now.counters.get("pagesFetched") - before.counters.get("pagesFetched");
+        summary.put("pagesPerSecond", elapsedNanos > 0 ? Math.round(pages * 1e10 / elapsedNanos) / 10.0 : 0);
+
+        Map<String, Object> phases = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            long count = now.timers.get(phase)[0] - before.timers.get(phase)[0];
+            long nanos = now.timers.get(phase)[1] - before.timers.get(phase)[1];
+            if (count > 0) {
+                Map<String, Long> timer = new LinkedHashMap<>();
+                timer.put("count", count);
+                timer.put("totalMillis", TimeUnit.NANOSECONDS.toMillis(nanos));
+                timer.put("averageMicros", TimeUnit.NANOSECONDS.toMicros(nanos / count));
+                phases.put(phase.name().toLowerCase(Locale.ROOT), timer);
+            }
+        }
+        summary.put("phases", phases);
+
+        Map<String, Long> codes = new TreeMap<>();
+        for (Map.Entry<Integer, Long> status : now.statusCodes.entrySet()) {
+            long count = status.getValue() - before.statusCodes.getOrDefault(status.getKey(), 0L);
+            if (count > 0) {
+                codes.put(String.valueOf(status.getKey()), count);
+            }
+        }
+        summary.put("statusCodes", codes);
+
+        Map<String, Object> hosts = new TreeMap<>();
+        for (Map.Entry<String, long[]> host : now.hostLatencies.entrySet()) {
+            long[] counts = host.getValue().clone();
+            long[] previous = before.hostLatencies.get(host.getKey());
+            long requests = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] -= previous != null ? previous[i] : 0;
+                requests += counts[i];
+            }
+            if (requests > 0) {
+                Map<String, Long> latency = new LinkedHashMap<>();
+                latency.put("requests", requests);
+                latency.put("p50Millis", percentile(counts, 50));
+                latency.put("p90Millis", percentile(counts, 90));
+                latency.put("p99Millis", percentile(counts, 99));
+                hosts.put(host.getKey(), latency);
+            }
+        }
+        summary.put("hosts", hosts);
+        return summary;
+    }
+
+    // upper bound of the bucket holding the percentile, -1 when it is in the unbounded bucket
+    private static long percentile(long[] counts, double percentile) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return BUCKETS[i] == Long.MAX_VALUE ? -1 : BUCKETS[i];
+            }
+        }
+        return 0;
+    }
+
+    private static long[] histogram(AtomicLongArray histogram) {
+        long[] counts = new long[histogram.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = histogram.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, in place of metrics registered under the same name until
+     * these are unregistered. Metrics registered under another name are unregistered from it first.
+     */
+    public void register(String name) {
+        synchronized (REGISTERED) {
+            unregister();
+            try {
+                ObjectName objectName = new ObjectName("com.mule.mulechain.crawler:type=CrawlMetrics,name=" + ObjectName.quote(name));
+                publish(objectName);
+                REGISTERED.computeIfAbsent(objectName, n -> new ArrayDeque<>()).addLast(this);
+                this.objectName = objectName;
+            } catch (JMException e) {
+                // metrics are still recorded and reported in the operation results
+                LOGGER.warn("Unable to register crawl metrics over JMX : " + e);
+            }
+        }
+    }
+
+    /**
+     * Unregisters these metrics. When they were the ones published under their name, the metrics they replaced are
+     * published again, and metrics registered since under the same name stay published.
+     */
+    public void unregister() {
+        synchronized (REGISTERED) {
+            if (objectName == null) {
+                return;
+            }
+            Deque<CrawlMetrics> registered = REGISTERED.get(objectName);
+            boolean published = registered != null && registered.peekLast() == this;
+            if (registered != null) {
+                registered.removeLastOccurrence(this);
+            }
+            try {
+                if (published && !registered.isEmpty()) {
+                    registered.peekLast().publish(objectName);
+                } else if (published) {
+                    REGISTERED.remove(objectName);
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+                }
+            } catch (JMException e) {
+                LOGGER.debug("Crawl metrics already unregistered : " + e);
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * The name these metrics are registered under, or null when they are not.
+     */
+    public String getRegisteredName() {
+        synchronized (REGISTERED) {
+            return objectName != null ? ObjectName.unquote(objectName.getKeyProperty("name")) : null;
+        }
+    }
+
+    private void publish(ObjectName objectName) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+        server.registerMBean(this, objectName);
+    }
+
+    @Override
+    public long getPagesFetched() {
+        return pagesFetched.sum();
+    }
+
+    @Override
+    public long getPagesFailed() {
+        return pagesFailed.sum();
+    }
+
+    @Override
+    public long getPagesNotModified() {
+        return pagesNotModified.sum();
+    }
+
+    @Override
+    public long getImagesDownloaded() {
+        return imagesDownloaded.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public int getFrontierSize() {
+        return frontierSize.get();
+    }
+
+    @Override
+    public int getPagesInFlight() {
+        return pagesInFlight.get();
+    }
+
+    @Override
+    public Map<String, Long> getStatusCodes() {
+        Map<String, Long> codes = new TreeMap<>();
+        for (Map.Entry<Integer, LongAdder> status : statusCodes.entrySet()) {
+            codes.put(String.valueOf(status.getKey()), status.getValue().sum());
+        }
+        return codes;
+    }
+
+    @Override
+    public Map<String, Long> getPhaseCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Map.Entry<Phase, Timer> timer : timers.entrySet()) {
+            counts.put(timer.getKey().name(), timer.getValue().count.sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getPhaseTotalMillis() {
+        Map<String, Long> totals = new LinkedHashMap<>();
+        for (Map.Entry<Phase, Timer> timer : timers.entrySet()) {
+            totals.put(timer.getKey().name(), TimeUnit.NANOSECONDS.toMillis(timer.getValue().totalNanos.sum()));
+        }
+        return totals;
+    }
+
+    @Override
+    public Map<String, Long> getPhaseMaxMillis() {
+        Map<String, Long> max = new LinkedHashMap<>();
+        for (Map.Entry<Phase, Timer> timer : timers.entrySet()) {
+            max.put(timer.getKey().name(), TimeUnit.NANOSECONDS.toMillis(timer.getValue().maxNanos.get()));
+        }
+        return max;
+    }
+
+    @Override
+    public Map<String, Long> getHostLatencyP50Millis() {
+        Map<String, Long> latencies = new TreeMap<>();
+        for (Map.Entry<String, AtomicLongArray> host : hostLatencies.entrySet()) {
+            latencies.put(host.getKey(), percentile(histogram(host.getValue()), 50));
+        }
+        return latencies;
+    }
+
+    @Override
+    public Map<String, Long> getHostLatencyP99Millis() {
+        Map<String, Long> latencies = new TreeMap<>();
+        for (Map.Entry<String, AtomicLongArray> host : hostLatencies.entrySet()) {
+            latencies.put(host.getKey(), percentile(histogram(host.getValue()), 99));
+        }
+        return latencies;
+    }
+}
@@ -0,0 +1,43 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link CrawlMetrics}. Values are cumulative since the connection was created.
+ */
+public interface CrawlMetricsMXBean {
+
+    long getPagesFetched();
+
+    long getPagesFailed();
+
+    long getPagesNotModified();
+
+    long getImagesDownloaded();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    /**
+     * Urls in the frontiers of the crawls running: the depth level each is crawling, or the queue of a best-first crawl.
+     */
+    int getFrontierSize();
+
+    /**
+     * Pages submitted to the workers and not finished yet.
+     */
+    int getPagesInFlight();
+
+    Map<String, Long> getStatusCodes();
+
+    Map<String, Long> getPhaseCounts();
+
+    Map<String, Long> getPhaseTotalMillis();
+
+    Map<String, Long> getPhaseMaxMillis();
+
+    Map<String, Long> getHostLatencyP50Millis();
+
+    Map<String, Long> getHostLatencyP99Millis();
+}
@@ -0,0 +1,227 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One shard of a crawl distributed over several nodes. Every url is owned by exactly one shard, chosen from a hash of
+ * its host or of the whole url, and only its owner fetches it, so each shard keeps the visited set and page memo of the
+ * urls it owns and no url is fetched twice across the cluster.
+ * <p>
+ * The shards crawl depth by depth in lock step. At the start of every depth each shard writes the links it found to
+ * the {@link CrawlStore}, one batch per owner, then waits until every shard has done the same and reads the batches
+ * addressed to it. Partitioning by host keeps the politeness of a single node, as every host is only requested from
+ * one node.
+ */
+public class CrawlPartition {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CrawlPartition.class);
+
+    private static final long MIN_POLL_MILLIS = 10;
+    private static final long MAX_POLL_MILLIS = 500;
+
+    public enum ShardBy {
+        HOST,
+        URL
+    }
+
+    private final CrawlStore store;
+    private final String crawlId;
+    private final int shard;
+    private final int shards;
+    private final ShardBy shardBy;
+    private final long timeoutMillis;
+    private int lastDepth = -1;
+    private boolean left;
+
+    /**
+     * @param timeoutMillis how long to wait for the other shards at every depth before failing the crawl
+     */
+    public CrawlPartition(CrawlStore store, String crawlId, int shard, int shards, ShardBy shardBy, long timeoutMillis) {
+        if (shards < 1 || shard < 0 || shard >= shards) {
+            throw new IllegalArgumentException("Shard index must be between 0 and " + (shards - 1) + ", was " + shard);
+        }
+        this.store = store;
+        this.crawlId = crawlId;
+        this.shard = shard;
+        this.shards = shards;
+        this.shardBy = shardBy;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    /**
+     * The last depth this shard reached.
+     */
+    public int getLastDepth() {
+        return lastDepth;
+    }
+
+    /**
+     * The shard that owns url.
+     */
+    public int owner(String url) {
+        String key = url;
+        if (shardBy == ShardBy.HOST) {
+            UrlParts parts = UrlParts.parse(url);
+            if (parts != null) {
+                key = parts.getHost();
+            }
+        }
+        return (int) Math.floorMod(UrlNormalizer.fingerprint(key), (long) shards);
+    }
+
+    /**
+     * Hands the entries found for depth to their owners, waits for the other shards to do the same, and returns the
+     * entries this shard owns, from all shards and possibly with duplicates. Returns null when no shard found any,
+     * which ends the crawl on every shard at the same depth.
+     *
+     * @param entries url and parent url pairs
+     */
+    @SuppressWarnings("unchecked")
+    public List<String[]> exchange(int depth, List<String[]> entries) throws IOException {
+        List<ArrayList<String[]>> outgoing = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            outgoing.add(new ArrayList<>());
+        }
+        for (String[] entry : entries) {
+            outgoing.get(owner(entry[0])).add(entry);
+        }
+        for (int to = 0; to < shards; to++) {
+            // a shard that left would never read its batch
+            if (!outgoing.get(to).isEmpty() && store.get(leftKey(to)) == null) {
+                store.put(frontierKey(depth, to, shard), outgoing.get(to));
+            }
+        }
+        // written after the batches, so a shard that sees it also sees them
+        store.put(levelKey(depth, shard), (long) entries.size());
+        lastDepth = depth;
+
+        long total = awaitShards(depth);
+        List<String[]> incoming = new ArrayList<>();
+        for (int from = 0; from < shards; from++) {
+            Serializable batch = store.remove(frontierKey(depth, shard, from));
+            if (batch != null) {
+                incoming.addAll((List<String[]>) batch);
+            }
+        }
+        return total > 0 ? incoming : null;
+    }
+
+    /**
+     * Takes this shard out of the crawl, e.g. when it ran out of budget or failed, so the others stop waiting for it.
+     */
+    public void leave() throws IOException {
+        if (!left) {
+            left = true;
+            store.put(leftKey(shard), lastDepth);
+        }
+    }
+
+    /**
+     * Publishes the result of this shard for the coordinator.
+     */
+    public void publishResult(String result) throws IOException {
+        store.put(resultKey(crawlId, shard), result);
+    }
+
+    /**
+     * Waits for the results of all shards of a crawl and returns them by shard index.
+     */
+    public static List<String> collectResults(CrawlStore store, String crawlId, int shards, long timeoutMillis) throws IOException {
+        List<String> results = new ArrayList<>(shards);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long poll = MIN_POLL_MILLIS;
+        for (int i = 0; i < shards; i++) {
+            Serializable result;
+            while ((result = store.get(resultKey(crawlId, i))) == null) {
+                if (System.nanoTime() - deadline >= 0) {
+                    throw new IOException("Timed out waiting for the result of shard " + i + " of crawl " + crawlId);
+                }
+                poll = sleep(poll);
+            }
+            results.add((String) result);
+        }
+        return results;
+    }
+
+    /**
+     * Removes what the shards of a crawl left in the store, once their results are collected.
+     *
+     * @param lastDepth the deepest depth any shard reached
+     */
+    public static void cleanUp(CrawlStore store, String crawlId, int shards, int lastDepth) throws IOException {
+        for (int i = 0; i < shards; i++) {
+            store.remove(resultKey(crawlId, i));
+            store.remove(crawlId + "/left/" + i);
+            for (int depth = 0; depth <= lastDepth; depth++) {
+                store.remove(crawlId + "/level/" + depth + "/" + i);
+                // batches addressed to a shard that left
+                for (int from = 0; from < shards; from++) {
+                    store.remove(crawlId + "/frontier/" + depth + "/" + i + "/" + from);
+                }
+            }
+        }
+    }
+
+    // waits until every shard reached depth or left, and returns the number of entries they handed off
+    private long awaitShards(int depth) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long total = 0;
+        long poll = MIN_POLL_MILLIS;
+        for (int i = 0; i < shards; i++) {
+            while (true) {
+                Serializable count = store.get(levelKey(depth, i));
+                if (count != null) {
+                    total += (Long) count;
+                    break;
+                }
+                if (store.get(leftKey(i)) != null) {
+                    break;
+                }
+                if (System.nanoTime() - deadline >= 0) {
+                    throw new IOException("Timed out at depth " + depth + " waiting for shard " + i + " of crawl " + crawlId);
+                }
+                poll = sleep(poll);
+            }
+        }
+        LOGGER.debug("Shard " + shard + " of crawl " + crawlId + " starts depth " + depth + ", " + total + " entries across shards");
+        return total;
+    }
+
+    private static long sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for other shards");
+        }
+        return Math.min(millis * 2, MAX_POLL_MILLIS);
+    }
+
+    private String frontierKey(int depth, int to, int from) {
+        return crawlId + "/frontier/" + depth + "/" + to + "/" + from;
+    }
+
+    private String levelKey(int depth, int shard) {
+        return crawlId + "/level/" + depth + "/" + shard;
+    }
+
+    private String leftKey(int shard) {
+        return crawlId + "/left/" + shard;
+    }
+
+    private static String resultKey(String crawlId, int shard) {
+        return crawlId + "/result/" + shard;
+    }
+}
@@ -1,15 +1,68 @@
 package com.mule.mulechain.crawler.internal.helpers;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.Map;
+
 public class CrawlResult extends SiteMapNode {
     private String fileName;
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private boolean unchanged;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String duplicateOf;
+    // kept for the journal of a resumable crawl, which restores them when the page is replayed
+    @JsonIgnore
+    private Long simHash;
+    @JsonIgnore
+    private Map<String, String> imageFiles;
 
     public CrawlResult(String url, String fileName) {
+        this(url, fileName, false);
+    }
+
+    public CrawlResult(String url, String fileName, boolean unchanged) {
         super(url);
         this.fileName = fileName;
+        this.unchanged = unchanged;
 
     }
 
+    public static CrawlResult nearDuplicate(String url, String duplicateOf) {
+        CrawlResult result = new CrawlResult(url, "Duplicate.");
+        result.duplicateOf = duplicateOf;
+        return result;
+    }
+
     public String getFileName() {
         return fileName;
     }
+
+    // true when the page was not modified since the previous crawl and its file was not rewritten
+    public boolean isUnchanged() {
+        return unchanged;
+    }
+
+    // url of the page this one is a near-duplicate of, its content was not saved again
+    public String getDuplicateOf() {
+        return duplicateOf;
+    }
+
+    // SimHash the page was added to the near duplicate index with, or null
+    public Long getSimHash() {
+        return simHash;
+    }
+
+    public void setSimHash(Long simHash) {
+        this.simHash = simHash;
+    }
+
+    // file names of the images downloaded for the page by url, or null
+    public Map<String, String> getImageFiles() {
+        return imageFiles;
+    }
+
+    public void setImageFiles(Map<String, String> imageFiles) {
+        this.imageFiles = imageFiles;
+    }
 }
@@ -0,0 +1,27 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Key value store shared by the nodes of a distributed crawl, through which they hand each other the urls they own
+ * and publish their results. Implementations must be safe for use from several threads and, to crawl on several
+ * nodes, visible to all of them.
+ */
+public interface CrawlStore {
+
+    /**
+     * Stores value under key, replacing any previous value.
+     */
+    void put(String key, Serializable value) throws IOException;
+
+    /**
+     * The value under key, or null if there is none.
+     */
+    Serializable get(String key) throws IOException;
+
+    /**
+     * Removes key and returns its value, or null if there was none.
+     */
+    Serializable remove(String key) throws IOException;
+}
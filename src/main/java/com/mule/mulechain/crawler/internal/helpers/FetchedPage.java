@@ -0,0 +1,51 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import org.jsoup.nodes.Document;
+
+/**
+ * A parsed page together with how it was obtained.
+ */
+public class FetchedPage {
+    private final Document document;
+    private final boolean unchanged;
+    private PageExtract extract;
+    private long bytesDownloaded;
+
+    public FetchedPage(Document document, boolean unchanged) {
+        this.document = document;
+        this.unchanged = unchanged;
+    }
+
+    public Document getDocument() {
+        return document;
+    }
+
+    /**
+     * Data extracted from the document during the crawl, or null when the page was fetched outside of a crawl.
+     */
+    public PageExtract getExtract() {
+        return extract;
+    }
+
+    void setExtract(PageExtract extract) {
+        this.extract = extract;
+    }
+
+    /**
+     * Size of the response body as received, 0 when the page was served from the local cache.
+     */
+    public long getBytesDownloaded() {
+        return bytesDownloaded;
+    }
+
+    void setBytesDownloaded(long bytesDownloaded) {
+        this.bytesDownloaded = bytesDownloaded;
+    }
+
+    /**
+     * True when the server answered 304 Not Modified and the page was served from the local cache.
+     */
+    public boolean isUnchanged() {
+        return unchanged;
+    }
+}
@@ -0,0 +1,78 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Writes every page to its own &lt;title&gt;_&lt;timestamp&gt;.json file.
+ */
+public class FilePerPageSink implements PageSink {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FilePerPageSink.class);
+
+    private final String downloadPath;
+    private final CrawlMetrics metrics;
+
+    public FilePerPageSink(String downloadPath, CrawlMetrics metrics) {
+        this.downloadPath = downloadPath;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public String write(String url, String title, Map<String, Object> pageData) throws IOException {
+
+        long start = System.nanoTime();
+        File file = createUniqueFile(title);
+
+        try {
+            // Write content to the file
+            crawlingHelper.writeJSON(pageData, file);
+            metrics.record(CrawlMetrics.Phase.WRITE, start);
+            metrics.bytesOut(file.length());
+            LOGGER.debug("Saved content to file: " + file.getName());
+        } catch (IOException e) {
+            LOGGER.error("An error occurred while writing to the file: " + e.getMessage());
+        }
+
+        return file.getName();
+    }
+
+    // Create a unique filename based on the sanitized title and the current timestamp. Pages sharing a title within
+    // the same millisecond get a numeric suffix instead of overwriting each other
+    private File createUniqueFile(String title) throws IOException {
+        String timestamp = new SimpleDateFormat("yyyyMMddHHmmssSSS").format(new Date());
+        String baseName = crawlingHelper.getSanitizedFilename(title) + "_" + timestamp;
+
+        File directory = new File(downloadPath);
+        // Ensure the directory exists
+        directory.mkdirs();
+
+        for (int attempt = 0; ; attempt++) {
+            File file = new File(directory, attempt == 0 ? baseName + ".json" : baseName + "_" + attempt + ".json");
+            try {
+                Files.createFile(file.toPath());
+                return file;
+            } catch (FileAlreadyExistsException e) {
+                // taken, try the next suffix
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        // every file is complete as soon as it is written
+    }
+
+    @Override
+    public void close() {
+        // every file is closed as soon as it is written
+    }
+}
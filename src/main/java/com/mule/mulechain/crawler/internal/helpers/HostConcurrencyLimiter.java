@@ -0,0 +1,154 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds the number of requests in flight to every host, adapting the bound to how the host responds (AIMD).
+ * <p>
+ * A host starts at {@link #INITIAL_LIMIT} requests and doubles its limit every round trip until it shows the first
+ * sign of congestion, then grows by one request per round trip. The limit is halved when the host answers 429 or
+ * 503, or when its latency climbs well above the fastest latency seen from it, and never exceeds maxLimit. A
+ * Retry-After from the host stops all requests to it until the time has passed.
+ */
+public class HostConcurrencyLimiter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HostConcurrencyLimiter.class);
+
+    private static final double INITIAL_LIMIT = 2;
+    private static final double DECREASE_FACTOR = 0.5;
+    // a response slower than twice the baseline, plus some slack for jitter on fast hosts, signals congestion
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final long LATENCY_SLACK = TimeUnit.MILLISECONDS.toNanos(20);
+    // the baseline creeps towards recent latencies, so a host that became slower for good is learned
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private final int maxLimit;
+    private final ConcurrentMap<String, Host> hosts = new ConcurrentHashMap<>();
+
+    public HostConcurrencyLimiter(int maxLimit) {
+        this.maxLimit = Math.max(1, maxLimit);
+    }
+
+    /**
+     * Blocks until a request to host may start. The returned permit must be released once the response is consumed.
+     */
+    public Host acquire(String host) throws InterruptedIOException {
+        Host state = hosts.computeIfAbsent(host, h -> new Host(h, Math.min(INITIAL_LIMIT, maxLimit)));
+        state.acquire();
+        return state;
+    }
+
+    /**
+     * Current limit of host, or maxLimit if nothing was requested from it yet.
+     */
+    public int getLimit(String host) {
+        Host state = hosts.get(host);
+        return state != null ? state.currentLimit() : maxLimit;
+    }
+
+    public class Host {
+        private final String name;
+        private double limit;
+        private int inFlight;
+        private boolean slowStart = true;
+        private long baselineNanos = Long.MAX_VALUE;
+        // System.nanoTime() before which no request may start, set from Retry-After
+        private long pausedUntil;
+        private boolean paused;
+        // responses to requests sent before the last decrease do not decrease the limit again
+        private long lastDecrease;
+        private long lastLatencyNanos;
+
+        private Host(String name, double limit) {
+            this.name = name;
+            this.limit = limit;
+        }
+
+        private synchronized void acquire() throws InterruptedIOException {
+            try {
+                while (true) {
+                    long pause = paused ? pausedUntil - System.nanoTime() : 0;
+                    if (pause > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(this, pause);
+                    } else if (inFlight >= currentLimit()) {
+                        paused = false;
+                        wait();
+                    } else {
+                        paused = false;
+                        inFlight++;
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for a connection to " + name);
+            }
+        }
+
+        private synchronized int currentLimit() {
+            return (int) limit;
+        }
+
+        /**
+         * Feeds the time the host took to answer with response headers.
+         */
+        public synchronized void onResponse(long latencyNanos) {
+            lastLatencyNanos = latencyNanos;
+            if (baselineNanos == Long.MAX_VALUE || latencyNanos < baselineNanos) {
+                baselineNanos = latencyNanos;
+            } else {
+                baselineNanos += (long) ((latencyNanos - baselineNanos) * BASELINE_DRIFT);
+            }
+
+            if (latencyNanos > baselineNanos * LATENCY_TOLERANCE + LATENCY_SLACK) {
+                decrease("latency of " + TimeUnit.NANOSECONDS.toMillis(latencyNanos) + " ms");
+            } else if (slowStart) {
+                // +1 per response doubles the limit every round trip
+                limit = Math.min(limit + 1, maxLimit);
+            } else {
+                // +1/limit per response adds one request per round trip
+                limit = Math.min(limit + 1 / limit, maxLimit);
+            }
+            notifyAll();
+        }
+
+        /**
+         * The host answered 429 or 503: backs off, and pauses requests for retryAfterMillis when it is positive.
+         */
+        public synchronized void onThrottled(long retryAfterMillis) {
+            decrease("throttled");
+            if (retryAfterMillis > 0) {
+                long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis);
+                if (!paused || until - pausedUntil > 0) {
+                    pausedUntil = until;
+                }
+                paused = true;
+            }
+        }
+
+        public synchronized void release() {
+            inFlight--;
+            notifyAll();
+        }
+
+        private void decrease(String reason) {
+            slowStart = false;
+            long now = System.nanoTime();
+            if (lastDecrease != 0 && now - lastDecrease < lastLatencyNanos) {
+                return;
+            }
+            lastDecrease = now;
+            double decreased = Math.max(1, limit * DECREASE_FACTOR);
+            if ((int) decreased < (int) limit) {
+                LOGGER.debug("Lowering concurrency for " + name + " to " + (int) decreased + " : " + reason);
+            }
+            limit = decreased;
+        }
+    }
+}
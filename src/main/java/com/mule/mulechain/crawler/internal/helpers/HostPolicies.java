@@ -0,0 +1,150 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import org.jsoup.HttpStatusException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+
+/**
+ * Fetches robots.txt once per host and caches the resulting {@link RobotsPolicy} for a day. Also spaces requests to a
+ * host according to its Crawl-delay.
+ */
+public class HostPolicies {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HostPolicies.class);
+
+    private static final long TIME_TO_LIVE = TimeUnit.HOURS.toMillis(24);
+    // same limit as the major search engines, the rest of the file is ignored
+    private static final int MAX_ROBOTS_BYTES = 500 * 1024;
+    // a larger Crawl-delay would stall the crawl, requests are spaced by at most this much
+    private static final long MAX_CRAWL_DELAY = TimeUnit.SECONDS.toMillis(60);
+
+    private final PageFetcher fetcher;
+    private final String userAgent;
+    private final ConcurrentMap<String, Entry> policies = new ConcurrentHashMap<>();
+
+    private static class Entry {
+        private final FutureTask<RobotsPolicy> policy;
+        private final long expires;
+        // earliest time the next request to the host may start, guarded by the entry
+        private long nextRequest;
+
+        private Entry(FutureTask<RobotsPolicy> policy, long expires) {
+            this.policy = policy;
+            this.expires = expires;
+        }
+    }
+
+    public HostPolicies(PageFetcher fetcher, String userAgent) {
+        this.fetcher = fetcher;
+        this.userAgent = userAgent;
+    }
+
+    /**
+     * Returns the policy of the host serving url, fetching its robots.txt if it is not cached.
+     */
+    public RobotsPolicy getPolicy(String url) throws IOException {
+        return get(entry(origin(url)));
+    }
+
+    public boolean isAllowed(String url) throws IOException {
+        URL parsed = new URL(url);
+        String path = parsed.getFile();
+        return getPolicy(url).isAllowed(path);
+    }
+
+    /**
+     * Blocks until the Crawl-delay of the host since the previous request has passed.
+     */
+    public void awaitTurn(String url) throws IOException {
+        Entry entry = entry(origin(url));
+        long delay = Math.min(get(entry).getCrawlDelayMillis(), MAX_CRAWL_DELAY);
+        if (delay <= 0) {
+            return;
+        }
+
+        long wait;
+        synchronized (entry) {
+            long now = System.currentTimeMillis();
+            long start = Math.max(now, entry.nextRequest);
+            entry.nextRequest = start + delay;
+            wait = start - now;
+        }
+        if (wait > 0) {
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the crawl delay of " + url);
+            }
+        }
+    }
+
+    private Entry entry(String origin) {
+        while (true) {
+            Entry entry = policies.get(origin);
+            if (entry != null && entry.expires > System.currentTimeMillis()) {
+                return entry;
+            }
+            Entry fresh = new Entry(new FutureTask<>(() -> fetchPolicy(origin)), System.currentTimeMillis() + TIME_TO_LIVE);
+            boolean installed = entry == null ? policies.putIfAbsent(origin, fresh) == null : policies.replace(origin, entry, fresh);
+            if (installed) {
+                if (entry != null) {
+                    fresh.nextRequest = entry.nextRequest;
+                }
+                // fetched by the first thread asking for the host, the others wait for it in get()
+                fresh.policy.run();
+                return fresh;
+            }
+        }
+    }
+
+    private static RobotsPolicy get(Entry entry) throws IOException {
+        try {
+            return entry.policy.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for robots.txt");
+        } catch (ExecutionException e) {
+            // fetchPolicy does not throw, anything else is unexpected
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private RobotsPolicy fetchPolicy(String origin) {
+        String robotsUrl = origin + "/robots.txt";
+        try (PageFetcher.Response response = fetcher.open(robotsUrl)) {
+            byte[] content = read(response.getBody());
+            LOGGER.debug("Fetched " + robotsUrl);
+            return RobotsPolicy.parse(new String(content, StandardCharsets.UTF_8), userAgent);
+        } catch (HttpStatusException e) {
+            LOGGER.debug("No robots.txt at " + origin + " : " + e.getStatusCode());
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read " + robotsUrl + ", crawling without restrictions : " + e);
+        }
+        return RobotsPolicy.ALLOW_ALL;
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while (content.size() < MAX_ROBOTS_BYTES && (read = in.read(buffer)) != -1) {
+            content.write(buffer, 0, Math.min(read, MAX_ROBOTS_BYTES - content.size()));
+        }
+        return content.toByteArray();
+    }
+
+    private static String origin(String url) throws MalformedURLException {
+        URL parsed = new URL(url);
+        return parsed.getProtocol() + "://" + parsed.getHost() + (parsed.getPort() != -1 ? ":" + parsed.getPort() : "");
+    }
+}
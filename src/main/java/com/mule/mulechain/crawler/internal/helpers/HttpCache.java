@@ -0,0 +1,170 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Persistent cache of fetched pages. For every url the body is stored next to a properties file holding its ETag and
+ * Last-Modified validators, so later crawls can revalidate with a conditional request instead of downloading again.
+ */
+public class HttpCache {
+
+    private static final String URL = "url";
+    private static final String FINAL_URL = "finalUrl";
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+    private static final String CHARSET = "charset";
+
+    private final Path directory;
+
+    public HttpCache(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    public Entry get(String url) throws IOException {
+        Path body = bodyFile(url);
+        Properties properties = readProperties(url);
+        if (properties == null || !Files.exists(body) || !url.equals(properties.getProperty(URL))) {
+            return null;
+        }
+        return new Entry(properties, body);
+    }
+
+    /**
+     * Stores the body of the response, together with its validators. The response body is fully consumed.
+     */
+    public Entry put(String url, PageFetcher.Response response) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(URL, url);
+        properties.setProperty(FINAL_URL, response.getUrl());
+        setIfPresent(properties, ETAG, response.getHeader("ETag"));
+        setIfPresent(properties, LAST_MODIFIED, response.getHeader("Last-Modified"));
+        setIfPresent(properties, CHARSET, response.getCharset());
+
+        Path body = bodyFile(url);
+        Path temp = Files.createTempFile(directory, "body", ".tmp");
+        try {
+            Files.copy(response.getBody(), temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, body, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        writeProperties(url, properties);
+        return new Entry(properties, body);
+    }
+
+    /**
+     * Returns a value previously attached to the cached url with {@link #setAttribute}.
+     */
+    public String getAttribute(String url, String name) throws IOException {
+        Properties properties = readProperties(url);
+        return properties != null ? properties.getProperty("attr." + name) : null;
+    }
+
+    public synchronized void setAttribute(String url, String name, String value) throws IOException {
+        Properties properties = readProperties(url);
+        if (properties != null) {
+            properties.setProperty("attr." + name, value);
+            writeProperties(url, properties);
+        }
+    }
+
+    private Properties readProperties(String url) throws IOException {
+        Path file = metaFile(url);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return properties;
+    }
+
+    private void writeProperties(String url, Properties properties) throws IOException {
+        Path temp = Files.createTempFile(directory, "meta", ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                properties.store(writer, null);
+            }
+            Files.move(temp, metaFile(url), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void setIfPresent(Properties properties, String name, String value) {
+        if (value != null) {
+            properties.setProperty(name, value);
+        }
+    }
+
+    private Path bodyFile(String url) {
+        return directory.resolve(key(url) + ".body");
+    }
+
+    private Path metaFile(String url) {
+        return directory.resolve(key(url) + ".properties");
+    }
+
+    private static String key(String url) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for (byte b : hash) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static class Entry {
+        private final Properties properties;
+        private final Path body;
+
+        private Entry(Properties properties, Path body) {
+            this.properties = properties;
+            this.body = body;
+        }
+
+        public String getFinalUrl() {
+            return properties.getProperty(FINAL_URL);
+        }
+
+        public String getCharset() {
+            return properties.getProperty(CHARSET);
+        }
+
+        public Path getBody() {
+            return body;
+        }
+
+        public boolean hasValidators() {
+            return properties.containsKey(ETAG) || properties.containsKey(LAST_MODIFIED);
+        }
+
+        /**
+         * Request headers that turn a GET for this url into a conditional request.
+         */
+        public Map<String, String> getConditionalHeaders() {
+            Map<String, String> headers = new LinkedHashMap<>();
+            if (properties.containsKey(ETAG)) {
+                headers.put("If-None-Match", properties.getProperty(ETAG));
+            }
+            if (properties.containsKey(LAST_MODIFIED)) {
+                headers.put("If-Modified-Since", properties.getProperty(LAST_MODIFIED));
+            }
+            return headers;
+        }
+    }
+}
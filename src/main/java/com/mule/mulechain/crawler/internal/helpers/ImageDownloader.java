@@ -0,0 +1,242 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Downloads images on a bounded pool. Each url is downloaded at most once per downloader (i.e. per crawl), and files
+ * are named after the SHA-256 of their content, so the same image referenced under different urls is stored once.
+ */
+public class ImageDownloader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImageDownloader.class);
+
+    private static final long TRANSFER_CHUNK = 1 << 20;
+
+    private final PageFetcher fetcher;
+    private final ExecutorService executor;
+    private final Path directory;
+    private final long maxImageBytes;
+    private final boolean imagesOnly;
+
+    private final ConcurrentMap<String, Future<String>> downloads = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxImageBytes images larger than this are skipped, 0 for no limit
+     * @param imagesOnly    skip responses whose Content-Type is not image/*
+     */
+    public ImageDownloader(PageFetcher fetcher, ExecutorService executor, String saveDirectory, long maxImageBytes, boolean imagesOnly) throws IOException {
+        this.fetcher = fetcher;
+        this.executor = executor;
+        this.directory = Files.createDirectories(Paths.get(saveDirectory));
+        this.maxImageBytes = maxImageBytes;
+        this.imagesOnly = imagesOnly;
+    }
+
+    /**
+     * Downloads all images in parallel and maps every url to its file name, or to an empty string if it was skipped
+     * or failed.
+     */
+    public Map<String, String> downloadAll(Collection<String> imageUrls) throws IOException {
+        Map<String, String> linkFileMap = new HashMap<>();
+        if (imageUrls == null) {
+            return linkFileMap;
+        }
+
+        LOGGER.debug("Number of img[src] elements found : " + imageUrls.size());
+        Map<String, Future<String>> pending = new LinkedHashMap<>();
+        for (String imageUrl : imageUrls) {
+            pending.put(imageUrl, downloads.computeIfAbsent(imageUrl, url -> executor.submit(() -> download(url))));
+        }
+
+        for (Map.Entry<String, Future<String>> entry : pending.entrySet()) {
+            try {
+                linkFileMap.put(entry.getKey(), entry.getValue().get());
+            } catch (ExecutionException e) {
+                LOGGER.error("Error saving image: " + entry.getKey() + " " + e.getCause());
+                linkFileMap.put(entry.getKey(), "");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while downloading images");
+            }
+        }
+        return linkFileMap;
+    }
+
+    /**
+     * Takes the images of pages crawled by an earlier run of a resumed crawl as downloaded, by url to file name.
+     */
+    public void restore(Map<String, String> imageFiles) {
+        for (Map.Entry<String, String> image : imageFiles.entrySet()) {
+            downloads.putIfAbsent(image.getKey(), CompletableFuture.completedFuture(image.getValue()));
+        }
+    }
+
+    /**
+     * Downloads a single image on the calling thread and returns its file name, or an empty string if it was skipped.
+     */
+    public String download(String imageUrl) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return fetch(imageUrl);
+        } finally {
+            fetcher.getMetrics().record(CrawlMetrics.Phase.IMAGE_DOWNLOAD, start);
+        }
+    }
+
+    private String fetch(String imageUrl) throws IOException {
+        LOGGER.debug("Found image : " + imageUrl);
+
+        // Check if the URL is a Data URL
+        if (imageUrl.startsWith("data:image/")) {
+            return saveDataImage(imageUrl);
+        }
+
+        try (PageFetcher.Response response = fetcher.open(imageUrl)) {
+
+            // decide from the headers, before any of the body is transferred
+            String contentType = response.getContentType();
+            if (imagesOnly && (contentType == null || !contentType.startsWith("image/"))) {
+                LOGGER.debug("Skipping " + imageUrl + ", content type is " + contentType);
+                response.abort();
+                return "";
+            }
+            if (maxImageBytes > 0 && response.getContentLength() > maxImageBytes) {
+                LOGGER.debug("Skipping " + imageUrl + ", " + response.getContentLength() + " bytes exceeds the limit");
+                response.abort();
+                return "";
+            }
+
+            MessageDigest digest = sha256();
+            Path temp = Files.createTempFile(directory, "image", ".tmp");
+            try {
+                try (ReadableByteChannel in = Channels.newChannel(new DigestInputStream(response.getBody(), digest));
+                     FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+
+                    long position = 0;
+                    long transferred;
+                    while ((transferred = out.transferFrom(in, position, TRANSFER_CHUNK)) > 0) {
+                        position += transferred;
+                        // servers may omit or understate Content-Length
+                        if (maxImageBytes > 0 && position > maxImageBytes) {
+                            LOGGER.debug("Skipping " + imageUrl + ", body exceeds the limit of " + maxImageBytes + " bytes");
+                            response.abort();
+                            return "";
+                        }
+                    }
+                }
+                return store(temp, digest, extensionOf(imageUrl, contentType));
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    private String saveDataImage(String imageUrl) throws IOException {
+        // Extract base64 data from the Data URL
+        String base64Data = imageUrl.substring(imageUrl.indexOf(",") + 1);
+
+        if (base64Data.isEmpty()) {
+            LOGGER.debug("Base64 data is empty for URL: " + imageUrl);
+            return "";
+        }
+
+        // Decode the base64 data
+        byte[] imageBytes;
+
+        try {
+            imageBytes = Base64.getDecoder().decode(base64Data);
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug("Error decoding base64 data: " + e.getMessage());
+            return "";
+        }
+
+        if (imageBytes.length == 0) {
+            LOGGER.debug("Decoded image bytes are empty for URL: " + imageUrl);
+            return "";
+        }
+
+        // Determine the file extension from the Data URL
+        String fileType = imageUrl.substring(5, imageUrl.indexOf(";"));
+        String fileExtension = fileType.split("/")[1];
+
+        MessageDigest digest = sha256();
+        digest.update(imageBytes);
+
+        Path temp = Files.createTempFile(directory, "image", ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(imageBytes);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            return store(temp, digest, fileExtension);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // move the downloaded file to its content addressed name, unless an identical image is already stored
+    private String store(Path temp, MessageDigest digest, String extension) throws IOException {
+        StringBuilder hash = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hash.append(String.format("%02x", b));
+        }
+        String fileName = hash + "." + extension;
+        Path target = directory.resolve(fileName);
+
+        if (!Files.exists(target)) {
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                fetcher.getMetrics().imageDownloaded(Files.size(target));
+                LOGGER.debug("Image saved: " + target);
+            } catch (FileAlreadyExistsException e) {
+                // stored concurrently by another download of the same content
+            }
+        }
+        return fileName;
+    }
+
+    private static String extensionOf(String imageUrl, String contentType) {
+        try {
+            // Extract the filename from the decoded URL
+            String fileName = crawlingHelper.extractFileNameFromUrl(crawlingHelper.extractAndDecodeUrl(imageUrl));
+            String extension = fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+            if (extension.matches("[a-z0-9]{1,5}") && !"jpg".equals(extension)) {
+                return extension;
+            }
+        } catch (IOException e) {
+            // fall back to the content type
+        }
+        if (contentType != null && contentType.startsWith("image/")) {
+            String subtype = contentType.substring(6).split("[;+]")[0].trim().toLowerCase(Locale.ROOT);
+            if (subtype.matches("[a-z0-9]{1,5}")) {
+                return "jpeg".equals(subtype) ? "jpg" : subtype;
+            }
+        }
+        // if no extension for image found, then use .jpg as default
+        return "jpg";
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link CrawlStore} in the memory of this node, for distributed crawls whose shards all run in one application,
+ * e.g. while testing.
+ */
+public class InMemoryCrawlStore implements CrawlStore {
+
+    private final ConcurrentMap<String, Serializable> values = new ConcurrentHashMap<>();
+
+    @Override
+    public void put(String key, Serializable value) {
+        values.put(key, value);
+    }
+
+    @Override
+    public Serializable get(String key) {
+        return values.get(key);
+    }
+
+    @Override
+    public Serializable remove(String key) {
+        return values.remove(key);
+    }
+}
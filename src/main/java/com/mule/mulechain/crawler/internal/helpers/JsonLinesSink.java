@@ -0,0 +1,123 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Appends pages as JSON Lines to segment files, pages_&lt;timestamp&gt;_00001.jsonl, pages_&lt;timestamp&gt;_00002.jsonl, ...
+ * A new segment is started once the current one reaches maxRecordsPerSegment records or maxSegmentBytes bytes, a limit
+ * of 0 or less meaning none.
+ * Every page is also listed in pages_&lt;timestamp&gt;.index as url, segment, offset and length separated by tabs.
+ * Offsets and lengths are in uncompressed bytes, also for gzip segments.
+ */
+public class JsonLinesSink implements PageSink {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JsonLinesSink.class);
+
+    private static final byte[] NEW_LINE = {'\n'};
+
+    public enum Compression {
+        NONE,
+        GZIP
+    }
+
+    private final Path directory;
+    private final String prefix;
+    private final int maxRecordsPerSegment;
+    private final long maxSegmentBytes;
+    private final Compression compression;
+    private final Writer index;
+    private final CrawlMetrics metrics;
+
+    private OutputStream segment;
+    private String segmentName;
+    private int segmentNumber;
+    private int segmentRecords;
+    private long segmentBytes;
+
+    public JsonLinesSink(String downloadPath, int maxRecordsPerSegment, long maxSegmentBytes, Compression compression, CrawlMetrics metrics) throws IOException {
+        this.directory = Files.createDirectories(Paths.get(downloadPath));
+        this.prefix = "pages_" + new SimpleDateFormat("yyyyMMddHHmmssSSS").format(new Date());
+        this.maxRecordsPerSegment = maxRecordsPerSegment;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.compression = compression;
+        this.index = Files.newBufferedWriter(directory.resolve(prefix + ".index"), StandardCharsets.UTF_8);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public String write(String url, String title, Map<String, Object> pageData) throws IOException {
+        // serialize outside of the lock so workers only queue up for the append itself
+        long start = System.nanoTime();
+        byte[] record = crawlingHelper.convertToJSONBytes(pageData);
+
+        synchronized (this) {
+            if (segment == null || isFull()) {
+                rotate();
+            }
+            long offset = segmentBytes;
+            segment.write(record);
+            segment.write(NEW_LINE);
+            segmentRecords++;
+            segmentBytes += record.length + 1;
+
+            index.write(url + "\t" + segmentName + "\t" + offset + "\t" + record.length + "\n");
+            metrics.record(CrawlMetrics.Phase.WRITE, start);
+            metrics.bytesOut(record.length + 1);
+            return segmentName + "#" + offset;
+        }
+    }
+
+    private boolean isFull() {
+        return (maxRecordsPerSegment > 0 && segmentRecords >= maxRecordsPerSegment)
+                || (maxSegmentBytes > 0 && segmentBytes >= maxSegmentBytes);
+    }
+
+    private void rotate() throws IOException {
+        closeSegment();
+        // the entries of a closed segment reach the index file with it, not only once the crawl ends
+        index.flush();
+        segmentNumber++;
+        segmentName = String.format("%s_%05d.jsonl%s", prefix, segmentNumber, compression == Compression.GZIP ? ".gz" : "");
+        OutputStream out = Files.newOutputStream(directory.resolve(segmentName));
+        segment = compression == Compression.GZIP ? new GZIPOutputStream(out, 65536, true) : new BufferedOutputStream(out, 65536);
+        segmentRecords = 0;
+        segmentBytes = 0;
+        LOGGER.info("Writing pages to segment: " + segmentName);
+    }
+
+    private void closeSegment() throws IOException {
+        if (segment != null) {
+            segment.close();
+            segment = null;
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        // gzip segments are sync flushed, so what was written so far can be read back before the segment is closed
+        if (segment != null) {
+            segment.flush();
+        }
+        index.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            closeSegment();
+        } finally {
+            index.close();
+        }
+    }
+}
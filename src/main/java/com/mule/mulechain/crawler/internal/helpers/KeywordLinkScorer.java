@@ -0,0 +1,104 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Scores links by the keywords in their url and anchor text and the boost paths they match, less a penalty for every
+ * segment of their path:
+ * <pre>
+ *   2 x keywords in the anchor text + 1 x keywords in the url + 5 x boost paths matched - penalty x path segments
+ * </pre>
+ * Keywords are matched case-insensitively anywhere in the url or text. Boost paths take the same prefixes, globs and
+ * regex: rules as the include paths of a {@link UrlScope}.
+ */
+public class KeywordLinkScorer implements LinkScorer {
+
+    private static final double ANCHOR_KEYWORD_WEIGHT = 2;
+    private static final double URL_KEYWORD_WEIGHT = 1;
+    private static final double BOOST_WEIGHT = 5;
+
+    private final List<String> keywords;
+    private final List<UrlScope> boosts;
+    private final double pathDepthPenalty;
+
+    private KeywordLinkScorer(List<String> keywords, List<UrlScope> boosts, double pathDepthPenalty) {
+        this.keywords = keywords;
+        this.boosts = boosts;
+        this.pathDepthPenalty = pathDepthPenalty;
+    }
+
+    /**
+     * Creates the scorer, or returns null when there are no keywords and no boost paths, so links are crawled in the
+     * order they are found.
+     *
+     * @throws IllegalArgumentException if a regular expression is invalid
+     */
+    public static KeywordLinkScorer create(List<String> keywords, List<String> boostPaths, double pathDepthPenalty) {
+        List<String> lowerCaseKeywords = new ArrayList<>();
+        if (keywords != null) {
+            for (String keyword : keywords) {
+                String trimmed = keyword.trim().toLowerCase(Locale.ROOT);
+                if (!trimmed.isEmpty()) {
+                    lowerCaseKeywords.add(trimmed);
+                }
+            }
+        }
+        List<UrlScope> boosts = new ArrayList<>();
+        if (boostPaths != null) {
+            for (String path : boostPaths) {
+                UrlScope boost = UrlScope.compile(null, Collections.singletonList(path), null);
+                if (boost != null) {
+                    boosts.add(boost);
+                }
+            }
+        }
+        if (lowerCaseKeywords.isEmpty() && boosts.isEmpty()) {
+            return null;
+        }
+        return new KeywordLinkScorer(lowerCaseKeywords, boosts, pathDepthPenalty);
+    }
+
+    @Override
+    public double score(String url, String anchorText, int depth) {
+        UrlParts parts = UrlParts.parse(url);
+        if (parts == null) {
+            return 0;
+        }
+        double score = 0;
+        if (!keywords.isEmpty()) {
+            String lowerCaseUrl = (parts.getPath() + (parts.getQuery() != null ? "?" + parts.getQuery() : "")).toLowerCase(Locale.ROOT);
+            String lowerCaseText = anchorText != null ? anchorText.toLowerCase(Locale.ROOT) : null;
+            for (String keyword : keywords) {
+                if (lowerCaseUrl.contains(keyword)) {
+                    score += URL_KEYWORD_WEIGHT;
+                }
+                if (lowerCaseText != null && lowerCaseText.contains(keyword)) {
+                    score += ANCHOR_KEYWORD_WEIGHT;
+                }
+            }
+        }
+        for (UrlScope boost : boosts) {
+            if (boost.isInScope(parts)) {
+                score += BOOST_WEIGHT;
+            }
+        }
+        return score - pathDepthPenalty * segments(parts.getPath());
+    }
+
+    // number of non-empty segments, 0 for the root path
+    static int segments(String path) {
+        int segments = 0;
+        boolean inSegment = false;
+        for (int i = 0; i < path.length(); i++) {
+            boolean slash = path.charAt(i) == '/';
+            if (!slash && !inSegment) {
+                segments++;
+            }
+            inSegment = !slash;
+        }
+        return segments;
+    }
+}
@@ -0,0 +1,14 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+/**
+ * Rates links for a best-first crawl, which expands the link with the highest score first. Called on the worker
+ * threads, so implementations must be thread safe.
+ */
+public interface LinkScorer {
+
+    /**
+     * @param anchorText text of the link on the page it was found on, null if it had none or is unknown
+     * @param depth      depth the link would be crawled at
+     */
+    double score(String url, String anchorText, int depth);
+}
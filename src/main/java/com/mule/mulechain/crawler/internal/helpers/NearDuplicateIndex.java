@@ -0,0 +1,77 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of page SimHashes answering "is there a page within Hamming distance k of this one". The 64 bits are split
+ * into k + 1 bands; two hashes within distance k must agree on at least one whole band, so only pages sharing a band
+ * value are compared.
+ */
+public class NearDuplicateIndex {
+
+    private final int maxDistance;
+    private final int[] bandOffsets;
+    private final long[] bandMasks;
+    private final Map<Long, List<Entry>> bands = new HashMap<>();
+
+    public NearDuplicateIndex(int maxDistance) {
+        this.maxDistance = Math.max(0, Math.min(maxDistance, 63));
+        int bandCount = this.maxDistance + 1;
+        bandOffsets = new int[bandCount];
+        bandMasks = new long[bandCount];
+        int width = 64 / bandCount;
+        for (int band = 0; band < bandCount; band++) {
+            bandOffsets[band] = band * width;
+            int bits = band == bandCount - 1 ? 64 - band * width : width;
+            bandMasks[band] = bits == 64 ? -1L : (1L << bits) - 1;
+        }
+    }
+
+    /**
+     * Returns the url of an indexed page within the distance of simHash, or indexes url and returns null.
+     */
+    public synchronized String findOrAdd(long simHash, String url) {
+        for (int band = 0; band < bandOffsets.length; band++) {
+            List<Entry> candidates = bands.get(bandKey(band, simHash));
+            if (candidates != null) {
+                for (Entry candidate : candidates) {
+                    if (SimHash.distance(candidate.simHash, simHash) <= maxDistance) {
+                        return candidate.url;
+                    }
+                }
+            }
+        }
+
+        add(simHash, url);
+        return null;
+    }
+
+    /**
+     * Indexes a page known not to be a near duplicate, e.g. one crawled by an earlier run of a resumed crawl.
+     */
+    public synchronized void add(long simHash, String url) {
+        Entry entry = new Entry(simHash, url);
+        for (int band = 0; band < bandOffsets.length; band++) {
+            bands.computeIfAbsent(bandKey(band, simHash), key -> new ArrayList<>(1)).add(entry);
+        }
+    }
+
+    private long bandKey(int band, long simHash) {
+        // band number in the top byte, band value below it. A single band spans all 64 bits and needs no band number
+        long value = (simHash >>> bandOffsets[band]) & bandMasks[band];
+        return bandOffsets.length == 1 ? value : ((long) band << 56) ^ value;
+    }
+
+    private static class Entry {
+        private final long simHash;
+        private final String url;
+
+        private Entry(long simHash, String url) {
+            this.simHash = simHash;
+            this.url = url;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What {@link PageExtractor} collected from a page. Outputs that were not requested are null.
+ */
+public class PageExtract {
+    Set<String> internalLinks;
+    Set<String> externalLinks;
+    Set<String> referenceLinks;
+    Set<String> images;
+    Map<String, String> linkTexts;
+    Map<String, String> metaTags;
+    Map<String, Integer> elementCounts;
+    String text;
+    int wordCount;
+
+    public Set<String> getInternalLinks() {
+        return internalLinks;
+    }
+
+    public Set<String> getExternalLinks() {
+        return externalLinks;
+    }
+
+    public Set<String> getReferenceLinks() {
+        return referenceLinks;
+    }
+
+    public Set<String> getImages() {
+        return images;
+    }
+
+    /**
+     * Anchor text of the links, by absolute url. Links whose anchors have no text are left out.
+     */
+    public Map<String, String> getLinkTexts() {
+        return linkTexts;
+    }
+
+    public Map<String, String> getMetaTags() {
+        return metaTags;
+    }
+
+    public Map<String, Integer> getElementCounts() {
+        return elementCounts;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public int getWordCount() {
+        return wordCount;
+    }
+}
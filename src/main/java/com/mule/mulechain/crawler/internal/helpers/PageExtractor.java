@@ -0,0 +1,313 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import org.jsoup.internal.StringUtil;
+import org.jsoup.nodes.*;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+import org.jsoup.select.QueryParser;
+
+import java.net.MalformedURLException;
+import java.util.*;
+
+/**
+ * Collects links, images, meta tags, element counts, text and word count from a document in a single traversal.
+ * Only the requested outputs are allocated.
+ */
+public class PageExtractor {
+
+    public enum Output {
+        INTERNAL_LINKS,
+        EXTERNAL_LINKS,
+        REFERENCE_LINKS,
+        IMAGES,
+        META_TAGS,
+        ELEMENT_COUNTS,
+        TEXT,
+        WORD_COUNT,
+        // text of the anchors of the links, collected with the links
+        LINK_TEXT
+    }
+
+    // default list of elements to retrieve stats for. Used if no specific tags provided
+    private static final List<String> DEFAULT_COUNTED_ELEMENTS = Arrays.asList("div", "p", "h1", "h2", "h3", "h4", "h5");
+
+    /**
+     * @param tags css selectors. When present, text is only taken from matching elements and only those elements are
+     *             counted, as in {@link crawlingHelper#getPageContent} and {@link crawlingHelper#getPageInsights}
+     */
+    public static PageExtract extract(Document document, Set<Output> outputs, List<String> tags) throws MalformedURLException {
+        Visitor visitor = new Visitor(document, outputs, tags);
+        NodeTraversor.traverse(visitor, document);
+        return visitor.finish();
+    }
+
+    private static class Visitor implements NodeVisitor {
+        private final Document document;
+        private final String baseUrl;
+        private final UrlParts base;
+        private final PageExtract extract = new PageExtract();
+
+        private final boolean links;
+        private final boolean images;
+        private final boolean metaTags;
+
+        private final List<String> countedSelectors;
+        private final Evaluator[] countedEvaluators;
+        private final int[] counts;
+
+        // text either comes from the whole document or, when tags are given, from the elements matching each tag
+        private final StringBuilder text;
+        private final Evaluator[] textEvaluators;
+        private final StringBuilder[] textByTag;
+
+        private MalformedURLException linkError;
+
+        private Visitor(Document document, Set<Output> outputs, List<String> tags) {
+            this.document = document;
+            this.baseUrl = document.baseUri();
+            this.base = UrlParts.parse(baseUrl);
+            boolean hasTags = tags != null && !tags.isEmpty();
+
+            links = outputs.contains(Output.INTERNAL_LINKS) || outputs.contains(Output.EXTERNAL_LINKS) || outputs.contains(Output.REFERENCE_LINKS);
+            if (outputs.contains(Output.INTERNAL_LINKS)) {
+                extract.internalLinks = new LinkedHashSet<>();
+            }
+            if (outputs.contains(Output.EXTERNAL_LINKS)) {
+                extract.externalLinks = new LinkedHashSet<>();
+            }
+            if (outputs.contains(Output.REFERENCE_LINKS)) {
+                extract.referenceLinks = new LinkedHashSet<>();
+            }
+            if (links && outputs.contains(Output.LINK_TEXT)) {
+                extract.linkTexts = new HashMap<>();
+            }
+
+            images = outputs.contains(Output.IMAGES);
+            if (images) {
+                extract.images = new LinkedHashSet<>();
+            }
+
+            metaTags = outputs.contains(Output.META_TAGS);
+            if (metaTags) {
+                extract.metaTags = new HashMap<>();
+            }
+
+            boolean needsText = outputs.contains(Output.TEXT) || outputs.contains(Output.WORD_COUNT);
+            boolean needsCounts = outputs.contains(Output.ELEMENT_COUNTS);
+            Evaluator[] tagEvaluators = hasTags && (needsText || needsCounts) ? compile(tags) : null;
+
+            if (needsCounts) {
+                countedSelectors = hasTags ? tags : DEFAULT_COUNTED_ELEMENTS;
+                countedEvaluators = hasTags ? tagEvaluators : compile(countedSelectors);
+                counts = new int[countedEvaluators.length];
+            } else {
+                countedSelectors = null;
+                countedEvaluators = null;
+                counts = null;
+            }
+
+            if (needsText && hasTags) {
+                text = null;
+                textEvaluators = tagEvaluators;
+                textByTag = new StringBuilder[textEvaluators.length];
+                for (int i = 0; i < textByTag.length; i++) {
+                    textByTag[i] = new StringBuilder();
+                }
+            } else {
+                text = needsText ? new StringBuilder() : null;
+                textEvaluators = null;
+                textByTag = null;
+            }
+        }
+
+        @Override
+        public void head(Node node, int depth) {
+            if (node instanceof TextNode) {
+                if (text != null) {
+                    appendNormalisedText((TextNode) node);
+                }
+                return;
+            }
+            if (!(node instanceof Element)) {
+                return;
+            }
+
+            Element element = (Element) node;
+            String name = element.normalName();
+
+            if (text != null && text.length() > 0 && (element.isBlock() || "br".equals(name)) && !lastCharIsWhitespace(text)) {
+                text.append(' ');
+            }
+
+            if (links && "a".equals(name) && element.hasAttr("href")) {
+                String href = element.absUrl("href");
+                addLink(href);
+                if (extract.linkTexts != null) {
+                    addLinkText(href, element);
+                }
+            } else if (images && "img".equals(name) && element.hasAttr("src")) {
+                extract.images.add(element.absUrl("src"));
+            } else if (metaTags && "meta".equals(name)) {
+                addMetaTag(element);
+            }
+
+            if (countedEvaluators != null) {
+                for (int i = 0; i < countedEvaluators.length; i++) {
+                    if (countedEvaluators[i].matches(document, element)) {
+                        counts[i]++;
+                    }
+                }
+            }
+
+            if (textEvaluators != null) {
+                for (int i = 0; i < textEvaluators.length; i++) {
+                    if (textEvaluators[i].matches(document, element)) {
+                        textByTag[i].append(element.text()).append(" ");
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void tail(Node node, int depth) {
+            // make sure there is a space between block tags and immediately following text nodes, as Element.text() does
+            if (text != null && node instanceof Element && ((Element) node).isBlock()
+                    && node.nextSibling() instanceof TextNode && !lastCharIsWhitespace(text)) {
+                text.append(' ');
+            }
+        }
+
+        private void addLink(String href) {
+            if (base == null) {
+                linkError = new MalformedURLException("no host in base url: " + baseUrl);
+                return;
+            }
+            // each link is parsed once, and compared with the base url parsed when the visit started
+            UrlParts link = UrlParts.parse(href);
+            if (link == null || !link.isOnSite(base)) {
+                if (extract.externalLinks != null) {
+                    extract.externalLinks.add(href);
+                }
+            } else if (link.isReferenceTo(base)) {
+                if (extract.referenceLinks != null) {
+                    extract.referenceLinks.add(href);
+                }
+            } else if (extract.internalLinks != null) {
+                extract.internalLinks.add(href);
+            }
+        }
+
+        // the first anchor with text names the link, an image link is named by its title
+        private void addLinkText(String href, Element anchor) {
+            if (extract.linkTexts.containsKey(href)) {
+                return;
+            }
+            String linkText = anchor.text();
+            if (linkText.isEmpty()) {
+                linkText = anchor.attr("title");
+            }
+            if (!linkText.isEmpty()) {
+                extract.linkTexts.put(href, linkText);
+            }
+        }
+
+        private void addMetaTag(Element metaTag) {
+            // Extract the 'name' or 'property' attribute and 'content' attribute
+            String name = metaTag.attr("name");
+            if (name.isEmpty()) {
+                // If 'name' is not present, check for 'property' (e.g., Open Graph meta tags)
+                name = metaTag.attr("property");
+            }
+            String content = metaTag.attr("content");
+
+            // Only add to map if 'name' or 'property' and 'content' are present
+            if (!name.isEmpty() && !content.isEmpty()) {
+                extract.metaTags.put(name, content);
+            }
+        }
+
+        private void appendNormalisedText(TextNode textNode) {
+            String wholeText = textNode.getWholeText();
+            if (preserveWhitespace(textNode.parentNode()) || textNode instanceof CDataNode) {
+                text.append(wholeText);
+            } else {
+                StringUtil.appendNormalisedWhitespace(text, wholeText, lastCharIsWhitespace(text));
+            }
+        }
+
+        private PageExtract finish() throws MalformedURLException {
+            if (linkError != null) {
+                throw linkError;
+            }
+
+            if (counts != null) {
+                extract.elementCounts = new HashMap<>();
+                for (int i = 0; i < counts.length; i++) {
+                    extract.elementCounts.put(countedSelectors.get(i), counts[i]);
+                }
+            }
+
+            String collected = null;
+            if (text != null) {
+                collected = text.toString().trim();
+            } else if (textByTag != null) {
+                StringBuilder joined = new StringBuilder();
+                for (StringBuilder tagText : textByTag) {
+                    joined.append(tagText);
+                }
+                collected = joined.toString().trim();
+            }
+            if (collected != null) {
+                extract.text = collected;
+                extract.wordCount = countWords(collected);
+            }
+            return extract;
+        }
+    }
+
+    private static Evaluator[] compile(List<String> selectors) {
+        Evaluator[] evaluators = new Evaluator[selectors.size()];
+        for (int i = 0; i < evaluators.length; i++) {
+            evaluators[i] = QueryParser.parse(selectors.get(i));
+        }
+        return evaluators;
+    }
+
+    // looks only at this element and five levels up, like jsoup does
+    private static boolean preserveWhitespace(Node node) {
+        if (node instanceof Element) {
+            Element element = (Element) node;
+            int i = 0;
+            do {
+                if (element.tag().preserveWhitespace()) {
+                    return true;
+                }
+                element = element.parent();
+                i++;
+            } while (i < 6 && element != null);
+        }
+        return false;
+    }
+
+    private static boolean lastCharIsWhitespace(StringBuilder sb) {
+        return sb.length() != 0 && sb.charAt(sb.length() - 1) == ' ';
+    }
+
+    /**
+     * Number of whitespace separated words, without splitting the text into an array.
+     */
+    static int countWords(CharSequence text) {
+        int words = 0;
+        boolean inWord = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            boolean whitespace = c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+            if (!whitespace && !inWord) {
+                words++;
+            }
+            inWord = !whitespace;
+        }
+        return words;
+    }
+}
@@ -0,0 +1,459 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+import org.jsoup.UnsupportedMimeTypeException;
+import org.jsoup.nodes.Document;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Shared HTTP fetcher used by all operations. Connections are kept alive and reused by the JDK connection cache as long
+ * as every response body is fully read and closed, which is what {@link Response#close()} guarantees.
+ * The number of requests in flight to a single host adapts to how the host responds, up to maxConnectionsPerHost, see
+ * {@link HostConcurrencyLimiter}. Requests answered with 429 or 503 are retried after the Retry-After of the host.
+ */
+public class PageFetcher {
+
+    private static final int MAX_REDIRECTS = 10;
+    private static final Pattern CHARSET_PATTERN = Pattern.compile("(?i)\\bcharset=\\s*[\"']?([^\\s,;\"']*)");
+    // same rule jsoup applies when deciding whether a response can be parsed
+    private static final Pattern XML_CONTENT_TYPE = Pattern.compile("(application|text)/\\w*\\+?xml.*");
+    private static final int MAX_THROTTLED_RETRIES = 2;
+    // pause when a throttling host does not say how long to wait
+    private static final long DEFAULT_RETRY_AFTER = TimeUnit.SECONDS.toMillis(1);
+    // a longer Retry-After fails the request instead of stalling the crawl, the host is still paused this long
+    private static final long MAX_RETRY_AFTER = TimeUnit.SECONDS.toMillis(120);
+
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final String userAgent;
+    private final boolean compression;
+    private final HttpCache cache;
+    private final long maxBodyBytes;
+    private final HostPolicies hostPolicies;
+    private final CrawlMetrics metrics = new CrawlMetrics();
+    private final HostConcurrencyLimiter hostLimiter;
+
+    /**
+     * @param cache        optional on-disk cache used to revalidate pages with conditional requests, may be null
+     * @param maxBodyBytes pages larger than this are not downloaded, 0 for no limit
+     */
+    public PageFetcher(int connectTimeout, int readTimeout, String userAgent, int maxConnectionsPerHost, boolean compression, HttpCache cache, long maxBodyBytes) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.userAgent = userAgent;
+        this.hostLimiter = new HostConcurrencyLimiter(maxConnectionsPerHost);
+        this.compression = compression;
+        this.cache = cache;
+        this.maxBodyBytes = maxBodyBytes;
+        this.hostPolicies = new HostPolicies(this, userAgent);
+    }
+
+    public HttpCache getCache() {
+        return cache;
+    }
+
+    public HostConcurrencyLimiter getHostLimiter() {
+        return hostLimiter;
+    }
+
+    public CrawlMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * robots.txt policies of the hosts fetched from, cached for as long as this fetcher lives.
+     */
+    public HostPolicies getHostPolicies() {
+        return hostPolicies;
+    }
+
+    public Document getDocument(String url) throws IOException {
+        return fetch(url).getDocument();
+    }
+
+    /**
+     * Fetches and parses a page. When a cache is configured and holds validators for the url, a conditional request
+     * is sent and a 304 answer is served from disk.
+     * <p>
+     * Responses that are not text or XML, or that announce a Content-Length over the size limit, are rejected from
+     * their headers and the connection is dropped without reading the body. Other bodies are parsed as they stream in,
+     * and dropped as soon as they exceed the limit, whether or not they announced their length.
+     */
+    public FetchedPage fetch(String url) throws IOException {
+        HttpCache.Entry cached = cache != null ? cache.get(url) : null;
+        Map<String, String> headers = cached != null && cached.hasValidators() ? cached.getConditionalHeaders() : Collections.<String, String>emptyMap();
+
+        try (Response response = open(url, headers)) {
+            long start = System.nanoTime();
+            if (cached != null && response.getStatus() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                FetchedPage page = new FetchedPage(Jsoup.parse(cached.getBody().toFile(), cached.getCharset(), cached.getFinalUrl()), true);
+                metrics.record(CrawlMetrics.Phase.DOWNLOAD_PARSE, start);
+                metrics.pageFetched(true);
+                return page;
+            }
+
+            String contentType = response.getContentType();
+            if (contentType != null && !contentType.startsWith("text/") && !XML_CONTENT_TYPE.matcher(contentType).matches()) {
+                response.abort();
+                throw new UnsupportedMimeTypeException("Unhandled content type. Must be text/*, application/xml, or application/*+xml", contentType, url);
+            }
+            if (maxBodyBytes > 0 && response.getContentLength() > maxBodyBytes) {
+                response.abort();
+                throw new BodyTooLargeException(url, maxBodyBytes);
+            }
+            response.limitBody(maxBodyBytes);
+
+            FetchedPage page;
+            try {
+                if (cache != null && (response.getHeader("ETag") != null || response.getHeader("Last-Modified") != null)) {
+                    HttpCache.Entry entry = cache.put(url, response);
+                    page = new FetchedPage(Jsoup.parse(entry.getBody().toFile(), entry.getCharset(), entry.getFinalUrl()), false);
+                } else {
+                    page = new FetchedPage(Jsoup.parse(response.getBody(), response.getCharset(), response.getUrl()), false);
+                }
+            } catch (BodyTooLargeException e) {
+                // reading the rest of the body to reuse the connection would defeat the limit
+                response.abort();
+                throw e;
+            }
+            page.setBytesDownloaded(response.getBytesRead());
+            metrics.record(CrawlMetrics.Phase.DOWNLOAD_PARSE, start);
+            metrics.pageFetched(false);
+            return page;
+        }
+    }
+
+    /**
+     * Opens a GET request, following redirects. The returned response holds a per-host permit until it is closed.
+     */
+    public Response open(String url) throws IOException {
+        return open(url, Collections.<String, String>emptyMap());
+    }
+
+    public Response open(String url, Map<String, String> headers) throws IOException {
+        URL current = new URL(url);
+        int throttled = 0;
+
+        for (int redirects = 0; ; redirects++) {
+            HostConcurrencyLimiter.Host permit = hostLimiter.acquire(current.getHost());
+            boolean handedOff = false;
+            try {
+                long start = System.nanoTime();
+                HttpURLConnection connection = connect(current, headers);
+                int status = connection.getResponseCode();
+                metrics.response(current.getHost(), status, start);
+
+                if (status == 429 || status == HttpURLConnection.HTTP_UNAVAILABLE) {
+                    long retryAfter = retryAfter(connection);
+                    permit.onThrottled(Math.min(retryAfter, MAX_RETRY_AFTER));
+                    if (throttled++ < MAX_THROTTLED_RETRIES && retryAfter <= MAX_RETRY_AFTER) {
+                        drain(connection);
+                        // the next acquire waits until the host is no longer paused
+                        redirects--;
+                        continue;
+                    }
+                } else {
+                    permit.onResponse(System.nanoTime() - start);
+                }
+
+                if (status >= 300 && status < 400 && connection.getHeaderField("Location") != null) {
+                    URL location = new URL(current, connection.getHeaderField("Location"));
+                    drain(connection);
+                    if (redirects >= MAX_REDIRECTS) {
+                        throw new IOException("Too many redirects occurred trying to load URL " + url);
+                    }
+                    current = location;
+                    continue;
+                }
+
+                if (status >= 400) {
+                    drain(connection);
+                    throw new HttpStatusException("HTTP error fetching URL", status, current.toString());
+                }
+
+                handedOff = true;
+                return new Response(connection, permit, metrics);
+            } finally {
+                if (!handedOff) {
+                    permit.release();
+                }
+            }
+        }
+    }
+
+    private HttpURLConnection connect(URL url, Map<String, String> headers) throws IOException {
+        URLConnection urlConnection = url.openConnection();
+        if (!(urlConnection instanceof HttpURLConnection)) {
+            throw new IOException("Only http & https protocols supported: " + url);
+        }
+        HttpURLConnection connection = (HttpURLConnection) urlConnection;
+        connection.setInstanceFollowRedirects(false);
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setRequestProperty("User-Agent", userAgent);
+        if (compression) {
+            connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        connection.connect();
+        return connection;
+    }
+
+    // Retry-After holds either a number of seconds or an HTTP date
+    private static long retryAfter(HttpURLConnection connection) {
+        String value = connection.getHeaderField("Retry-After");
+        if (value == null) {
+            return DEFAULT_RETRY_AFTER;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            long date = connection.getHeaderFieldDate("Retry-After", -1);
+            return date > 0 ? Math.max(0, date - System.currentTimeMillis()) : DEFAULT_RETRY_AFTER;
+        }
+    }
+
+    // read and discard the remaining body so the underlying socket can go back to the keep-alive cache
+    private static void drain(HttpURLConnection connection) {
+        try {
+            InputStream in = connection.getResponseCode() >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            if (in != null) {
+                try (InputStream body = in) {
+                    byte[] buffer = new byte[4096];
+                    while (body.read(buffer) != -1) {
+                        // discard
+                    }
+                }
+            }
+        } catch (IOException e) {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * An open HTTP response. Closing it drains the body so the connection can be reused, and releases the host permit.
+     */
+    public static class Response implements Closeable {
+        private final HttpURLConnection connection;
+        private final HostConcurrencyLimiter.Host permit;
+        private final CrawlMetrics metrics;
+        private InputStream body;
+        private CountingInputStream counter;
+        private long maxBodyBytes;
+        private boolean closed;
+
+        private Response(HttpURLConnection connection, HostConcurrencyLimiter.Host permit, CrawlMetrics metrics) {
+            this.connection = connection;
+            this.permit = permit;
+            this.metrics = metrics;
+        }
+
+        public String getUrl() {
+            return connection.getURL().toString();
+        }
+
+        public int getStatus() throws IOException {
+            return connection.getResponseCode();
+        }
+
+        public String getContentType() {
+            return connection.getContentType();
+        }
+
+        public long getContentLength() {
+            return connection.getContentLengthLong();
+        }
+
+        public String getHeader(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        public String getCharset() {
+            String contentType = getContentType();
+            if (contentType == null) {
+                return null;
+            }
+            Matcher matcher = CHARSET_PATTERN.matcher(contentType);
+            if (matcher.find()) {
+                String charset = matcher.group(1).trim();
+                try {
+                    if (Charset.isSupported(charset)) {
+                        return charset;
+                    }
+                } catch (IllegalArgumentException e) {
+                    // illegal charset name, let jsoup detect it from the document
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Makes the body fail with {@link BodyTooLargeException} once more than maxBodyBytes have been read from it,
+         * after decompression. 0 for no limit. Must be called before the body is first read.
+         */
+        public void limitBody(long maxBodyBytes) {
+            this.maxBodyBytes = maxBodyBytes;
+        }
+
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                counter = new CountingInputStream(connection.getInputStream(), metrics);
+                InputStream in = new BufferedInputStream(counter);
+                String encoding = connection.getContentEncoding();
+                if ("gzip".equalsIgnoreCase(encoding)) {
+                    in = new GZIPInputStream(in);
+                } else if ("deflate".equalsIgnoreCase(encoding)) {
+                    in = new InflaterInputStream(in);
+                }
+                body = maxBodyBytes > 0 ? new LimitedInputStream(in, maxBodyBytes, getUrl()) : in;
+            }
+            return body;
+        }
+
+        /**
+         * Bytes of the body received so far, as sent on the wire.
+         */
+        public long getBytesRead() {
+            return counter != null ? counter.count : 0;
+        }
+
+        /**
+         * Drops the connection without reading the rest of the body, for responses that will not be consumed.
+         */
+        public void abort() {
+            if (!closed) {
+                closed = true;
+                connection.disconnect();
+                permit.release();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (body != null) {
+                    byte[] buffer = new byte[4096];
+                    while (body.read(buffer) != -1) {
+                        // discard
+                    }
+                    body.close();
+                } else {
+                    drain(connection);
+                }
+            } catch (IOException e) {
+                connection.disconnect();
+            } finally {
+                permit.release();
+            }
+        }
+    }
+
+    /**
+     * A response body over the size limit.
+     */
+    public static class BodyTooLargeException extends IOException {
+        public BodyTooLargeException(String url, long maxBodyBytes) {
+            super("Body of " + url + " exceeds the limit of " + maxBodyBytes + " bytes");
+        }
+    }
+
+    // fails once more than the limit has been read, which also bounds what a compressed body can expand to
+    private static class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private final String url;
+        private long remaining;
+
+        private LimitedInputStream(InputStream in, long limit, String url) {
+            super(in);
+            this.limit = limit;
+            this.url = url;
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1 && --remaining < 0) {
+                throw new BodyTooLargeException(url, limit);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                remaining -= read;
+                if (remaining < 0) {
+                    throw new BodyTooLargeException(url, limit);
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            remaining -= skipped;
+            if (remaining < 0) {
+                throw new BodyTooLargeException(url, limit);
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    // counts the bytes received on the wire, before decompression
+    private static class CountingInputStream extends FilterInputStream {
+        private final CrawlMetrics metrics;
+        private long count;
+
+        private CountingInputStream(InputStream in, CrawlMetrics metrics) {
+            super(in);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                metrics.bytesIn(1);
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                metrics.bytesIn(read);
+                count += read;
+            }
+            return read;
+        }
+    }
+}
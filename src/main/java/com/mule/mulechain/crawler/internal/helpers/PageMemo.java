@@ -0,0 +1,37 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-crawl memo of the links found on already fetched pages, keyed by url fingerprint, so a page reached again at
+ * another depth is expanded without fetching and parsing it a second time. Least recently used entries are evicted
+ * once the capacity is reached, after which such a page is simply fetched again.
+ */
+public class PageMemo {
+
+    // marks a page that could not be fetched, so it is not retried within the same crawl
+    public static final List<String> FAILED = Collections.unmodifiableList(new ArrayList<String>());
+
+    private final Map<Long, List<String>> links;
+
+    public PageMemo(final int capacity) {
+        this.links = new LinkedHashMap<Long, List<String>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, List<String>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public synchronized List<String> get(long fingerprint) {
+        return links.get(fingerprint);
+    }
+
+    public synchronized void put(long fingerprint, List<String> pageLinks) {
+        links.put(fingerprint, pageLinks);
+    }
+}
@@ -0,0 +1,19 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import java.util.Map;
+
+/**
+ * A crawled page carrying its extracted data, used when results are streamed instead of saved to files.
+ */
+public class PageRecord extends SiteMapNode {
+    private Map<String, Object> pageData;
+
+    public PageRecord(String url, Map<String, Object> pageData) {
+        super(url);
+        this.pageData = pageData;
+    }
+
+    public Map<String, Object> getPageData() {
+        return pageData;
+    }
+}
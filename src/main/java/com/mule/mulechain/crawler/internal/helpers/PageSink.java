@@ -0,0 +1,23 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Destination for the data of crawled pages. Implementations must be safe to call from several crawl workers at once.
+ */
+public interface PageSink extends Closeable, Flushable {
+
+    /**
+     * Stores the page and returns where it was written, which becomes the fileName of its {@link CrawlResult}.
+     */
+    String write(String url, String title, Map<String, Object> pageData) throws IOException;
+
+    /**
+     * Hands every page written so far to the OS, so none is lost if the process dies after a journal has recorded it.
+     */
+    @Override
+    void flush() throws IOException;
+}
@@ -0,0 +1,182 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * The rules of a robots.txt file that apply to one user agent.
+ * <p>
+ * The group whose User-agent token is the longest match for the user agent is used, or the * group when none matches.
+ * Allow and Disallow patterns support * and a trailing $, the longest matching pattern decides and Allow wins a tie.
+ */
+public class RobotsPolicy {
+
+    /**
+     * Used when a host has no robots.txt, or it could not be read.
+     */
+    public static final RobotsPolicy ALLOW_ALL = new RobotsPolicy(Collections.<Rule>emptyList(), 0, Collections.<String>emptyList());
+
+    private final List<Rule> rules;
+    private final long crawlDelayMillis;
+    private final List<String> sitemaps;
+
+    private RobotsPolicy(List<Rule> rules, long crawlDelayMillis, List<String> sitemaps) {
+        this.rules = rules;
+        this.crawlDelayMillis = crawlDelayMillis;
+        this.sitemaps = sitemaps;
+    }
+
+    private static class Rule {
+        private final boolean allow;
+        private final int length;
+        private final Pattern pattern;
+
+        private Rule(boolean allow, String path) {
+            this.allow = allow;
+            this.length = path.length();
+
+            StringBuilder regex = new StringBuilder();
+            boolean anchored = path.endsWith("$");
+            String body = anchored ? path.substring(0, path.length() - 1) : path;
+            int start = 0;
+            for (int star = body.indexOf('*'); star != -1; star = body.indexOf('*', start)) {
+                regex.append(Pattern.quote(body.substring(start, star))).append(".*");
+                start = star + 1;
+            }
+            regex.append(Pattern.quote(body.substring(start)));
+            if (!anchored) {
+                regex.append(".*");
+            }
+            this.pattern = Pattern.compile(regex.toString(), Pattern.DOTALL);
+        }
+    }
+
+    /**
+     * @param userAgent the full User-Agent header sent by the crawler
+     */
+    public static RobotsPolicy parse(String robotsTxt, String userAgent) throws IOException {
+        String agent = userAgent.toLowerCase(Locale.ROOT);
+
+        List<String> sitemaps = new ArrayList<>();
+        List<Rule> bestRules = null;
+        long bestDelay = 0;
+        int bestMatch = -1;
+
+        List<Rule> groupRules = new ArrayList<>();
+        long groupDelay = 0;
+        int groupMatch = -1;
+        boolean inAgentLines = false;
+
+        try (BufferedReader reader = new BufferedReader(new StringReader(robotsTxt))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comment = line.indexOf('#');
+                if (comment != -1) {
+                    line = line.substring(0, comment);
+                }
+                int colon = line.indexOf(':');
+                if (colon == -1) {
+                    continue;
+                }
+                String field = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                String value = line.substring(colon + 1).trim();
+
+                if ("sitemap".equals(field)) {
+                    // not part of any group
+                    if (!value.isEmpty()) {
+                        sitemaps.add(value);
+                    }
+                    continue;
+                }
+
+                if ("user-agent".equals(field)) {
+                    if (!inAgentLines) {
+                        // a new group starts, keep the previous one if it matches better
+                        if (groupMatch > bestMatch) {
+                            bestRules = groupRules;
+                            bestDelay = groupDelay;
+                            bestMatch = groupMatch;
+                        } else if (groupMatch == bestMatch && groupMatch >= 0) {
+                            // groups for the same agent are combined
+                            bestRules.addAll(groupRules);
+                            bestDelay = Math.max(bestDelay, groupDelay);
+                        }
+                        groupRules = new ArrayList<>();
+                        groupDelay = 0;
+                        groupMatch = -1;
+                        inAgentLines = true;
+                    }
+                    String token = value.toLowerCase(Locale.ROOT);
+                    if ("*".equals(token)) {
+                        groupMatch = Math.max(groupMatch, 0);
+                    } else if (!token.isEmpty() && agent.contains(token)) {
+                        groupMatch = Math.max(groupMatch, token.length());
+                    }
+                    continue;
+                }
+
+                inAgentLines = false;
+                if ("allow".equals(field) || "disallow".equals(field)) {
+                    // an empty Disallow allows everything, so it adds no rule
+                    if (!value.isEmpty()) {
+                        groupRules.add(new Rule("allow".equals(field), value));
+                    }
+                } else if ("crawl-delay".equals(field)) {
+                    try {
+                        groupDelay = (long) (Double.parseDouble(value) * 1000);
+                    } catch (NumberFormatException e) {
+                        // ignore malformed delays
+                    }
+                }
+            }
+        }
+
+        if (groupMatch > bestMatch) {
+            bestRules = groupRules;
+            bestDelay = groupDelay;
+        } else if (groupMatch == bestMatch && groupMatch >= 0) {
+            bestRules.addAll(groupRules);
+            bestDelay = Math.max(bestDelay, groupDelay);
+        }
+
+        return new RobotsPolicy(bestRules != null ? bestRules : Collections.<Rule>emptyList(), Math.max(0, bestDelay), sitemaps);
+    }
+
+    /**
+     * @param path the path and query of a url on this host
+     */
+    public boolean isAllowed(String path) {
+        if (path.isEmpty()) {
+            path = "/";
+        }
+        // robots.txt is always allowed
+        if ("/robots.txt".equals(path)) {
+            return true;
+        }
+        Rule decision = null;
+        for (Rule rule : rules) {
+            if ((decision == null || rule.length > decision.length || (rule.length == decision.length && rule.allow))
+                    && rule.pattern.matcher(path).matches()) {
+                decision = rule;
+            }
+        }
+        return decision == null || decision.allow;
+    }
+
+    public long getCrawlDelayMillis() {
+        return crawlDelayMillis;
+    }
+
+    /**
+     * Sitemap urls listed in robots.txt.
+     */
+    public List<String> getSitemaps() {
+        return sitemaps;
+    }
+}
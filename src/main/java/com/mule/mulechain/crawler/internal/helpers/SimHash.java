@@ -0,0 +1,77 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+/**
+ * 64-bit SimHash of a text, computed over overlapping 3-word shingles. Texts that differ in a few places have
+ * fingerprints that differ in a few bits, so near-duplicates can be found by Hamming distance.
+ */
+public class SimHash {
+
+    private static final int SHINGLE_SIZE = 3;
+
+    public static long of(CharSequence text) {
+        int[] weights = new int[64];
+        long[] window = new long[SHINGLE_SIZE];
+        int tokens = 0;
+
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            // skip to the next token
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            long tokenHash = 0xcbf29ce484222325L;
+            while (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+                tokenHash ^= Character.toLowerCase(text.charAt(i));
+                tokenHash *= 0x100000001b3L;
+                i++;
+            }
+
+            window[tokens % SHINGLE_SIZE] = tokenHash;
+            tokens++;
+            if (tokens >= SHINGLE_SIZE) {
+                long shingle = 0;
+                for (int j = 0; j < SHINGLE_SIZE; j++) {
+                    // rotate by position in the shingle so word order matters
+                    shingle ^= Long.rotateLeft(window[(tokens - SHINGLE_SIZE + j) % SHINGLE_SIZE], j);
+                }
+                addFeature(weights, mix(shingle));
+            }
+        }
+
+        // texts shorter than a shingle are hashed as single words
+        for (int j = 0; j < tokens && tokens < SHINGLE_SIZE; j++) {
+            addFeature(weights, mix(window[j]));
+        }
+
+        long simHash = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                simHash |= 1L << bit;
+            }
+        }
+        return simHash;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    private static void addFeature(int[] weights, long feature) {
+        for (int bit = 0; bit < 64; bit++) {
+            weights[bit] += ((feature >>> bit) & 1) != 0 ? 1 : -1;
+        }
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,421 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Site tree and link graph of a crawl in a handful of int arrays, instead of an object with its own list per page.
+ * <p>
+ * Every url is interned once and known by its index, in an open addressing table of ids. The tree is kept as the url, parent and depth of every node, in
+ * the order the nodes were added, and turned into CSR adjacency arrays, an offsets array and a children array, when it
+ * is written. The links of every crawled page are appended to one array as they arrive, so they are in CSR form
+ * already. The tree is written without recursion, so its depth is not limited by the stack.
+ * <p>
+ * Not thread safe, pages are added on the thread that runs the crawl.
+ */
+public class SiteGraph {
+
+    public enum Format {
+        JSON_TREE,
+        EDGE_LIST,
+        SITEMAP_XML
+    }
+
+    private static final double DAMPING = 0.85;
+    private static final int MAX_ITERATIONS = 50;
+    private static final double TOLERANCE = 1e-6;
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    // interned urls, the id of a url is its index
+    private String[] urls = new String[256];
+    private int urlCount;
+    // id + 1 of the url hashed to every slot, 0 marks a free slot
+    private int[] urlSlots = new int[512];
+
+    // nodes of the tree, a url appears once per depth it was crawled at
+    private int[] nodeUrls = new int[256];
+    private int[] nodeParents = new int[256];
+    private int[] nodeDepths = new int[256];
+    // the node added before it for the same url, -1 for the first
+    private int[] nodeSameUrl = new int[256];
+    private int nodeCount;
+    // the node added last for every url, by url id, -1 if none
+    private int[] urlNodes = new int[256];
+
+    // the links of the page in row r are linkTargets[linkOffsets[r]] to linkTargets[linkOffsets[r + 1] - 1]
+    private int[] pageUrls = new int[256];
+    private int[] linkOffsets = new int[257];
+    private int[] linkTargets = new int[1024];
+    private int pageCount;
+    private int linkCount;
+    private final BitSet linkedUrls = new BitSet();
+
+    /**
+     * Adds a node of the tree under the node of parentUrl one depth above. Nodes whose parent is not in the tree are
+     * ignored.
+     *
+     * @param parentUrl null for the root
+     * @return the node, or -1 if it was ignored
+     */
+    public int addNode(String url, String parentUrl, int depth) {
+        int parent = -1;
+        if (parentUrl != null) {
+            int parentUrlId = find(parentUrl);
+            parent = parentUrlId >= 0 ? urlNodes[parentUrlId] : -1;
+            while (parent >= 0 && nodeDepths[parent] != depth - 1) {
+                parent = nodeSameUrl[parent];
+            }
+            if (parent < 0) {
+                return -1;
+            }
+        } else if (nodeCount > 0) {
+            return -1;
+        }
+        int urlId = intern(url);
+        if (nodeCount == nodeUrls.length) {
+            int capacity = nodeCount * 2;
+            nodeUrls = Arrays.copyOf(nodeUrls, capacity);
+            nodeParents = Arrays.copyOf(nodeParents, capacity);
+            nodeDepths = Arrays.copyOf(nodeDepths, capacity);
+            nodeSameUrl = Arrays.copyOf(nodeSameUrl, capacity);
+        }
+        int node = nodeCount++;
+        nodeUrls[node] = urlId;
+        nodeParents[node] = parent;
+        nodeDepths[node] = depth;
+        nodeSameUrl[node] = urlNodes[urlId];
+        urlNodes[urlId] = node;
+        return node;
+    }
+
+    /**
+     * Records the links found on the page at url. A page links to each other url once, and is only recorded the first
+     * time.
+     */
+    public void addLinks(String url, Collection<String> links) {
+        int urlId = intern(url);
+        if (linkedUrls.get(urlId)) {
+            return;
+        }
+        if (pageCount == pageUrls.length) {
+            pageUrls = Arrays.copyOf(pageUrls, pageCount * 2);
+            linkOffsets = Arrays.copyOf(linkOffsets, pageCount * 2 + 1);
+        }
+        if (linkCount + links.size() > linkTargets.length) {
+            linkTargets = Arrays.copyOf(linkTargets, Math.max(linkTargets.length * 2, linkCount + links.size()));
+        }
+        int start = linkCount;
+        for (String link : links) {
+            int target = intern(link);
+            if (target != urlId) {
+                linkTargets[linkCount++] = target;
+            }
+        }
+        // sorted by id, the order urls were first seen in, to drop repeated links
+        Arrays.sort(linkTargets, start, linkCount);
+        int end = start;
+        for (int i = start; i < linkCount; i++) {
+            if (i == start || linkTargets[i] != linkTargets[i - 1]) {
+                linkTargets[end++] = linkTargets[i];
+            }
+        }
+        linkCount = end;
+        linkedUrls.set(urlId);
+        pageUrls[pageCount] = urlId;
+        linkOffsets[++pageCount] = linkCount;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getUrlCount() {
+        return urlCount;
+    }
+
+    public int getLinkCount() {
+        return linkCount;
+    }
+
+    /**
+     * Number of crawled pages linking to every url, by url id.
+     */
+    public int[] inDegrees() {
+        int[] inDegrees = new int[urlCount];
+        for (int i = 0; i < linkCount; i++) {
+            inDegrees[linkTargets[i]]++;
+        }
+        return inDegrees;
+    }
+
+    /**
+     * PageRank of every url by url id, summing to 1, computed by power iteration over the links. Urls that were not
+     * crawled have no links, their rank is spread over all urls.
+     */
+    public double[] pageRank() {
+        int n = urlCount;
+        double[] rank = new double[n];
+        double[] next = new double[n];
+        Arrays.fill(rank, 1.0 / n);
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            Arrays.fill(next, 0);
+            double linked = 0;
+            for (int row = 0; row < pageCount; row++) {
+                int start = linkOffsets[row];
+                int end = linkOffsets[row + 1];
+                if (end > start) {
+                    double pageRank = rank[pageUrls[row]];
+                    linked += pageRank;
+                    double share = pageRank / (end - start);
+                    for (int i = start; i < end; i++) {
+                        next[linkTargets[i]] += share;
+                    }
+                }
+            }
+            // random jumps, and the rank of pages without links, go to every url alike
+            double base = ((1 - DAMPING) + DAMPING * Math.max(0, 1 - linked)) / n;
+            double change = 0;
+            for (int i = 0; i < n; i++) {
+                next[i] = base + DAMPING * next[i];
+                change += Math.abs(next[i] - rank[i]);
+            }
+            double[] swap = rank;
+            rank = next;
+            next = swap;
+            if (change < TOLERANCE) {
+                break;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Writes the graph in format.
+     *
+     * @param statistics add the in-degree and PageRank of every node to the JSON tree, and a priority from the PageRank
+     *                   to every url of the sitemap.xml
+     * @param appended   fields added to the root of the JSON tree, after its children
+     */
+    public void write(Format format, Writer out, boolean statistics, Map<String, Object> appended) throws IOException {
+        switch (format) {
+            case EDGE_LIST:
+                writeEdgeList(out);
+                break;
+            case SITEMAP_XML:
+                writeSitemapXml(out, statistics);
+                break;
+            default:
+                writeJsonTree(out, statistics, appended);
+        }
+    }
+
+    /**
+     * Writes the tree as nested objects with a url and children, as {@link SiteMapNode} is serialized, or null if it
+     * has no root.
+     */
+    public void writeJsonTree(Writer out, boolean statistics, Map<String, Object> appended) throws IOException {
+        JsonGenerator json = crawlingHelper.createGenerator(out);
+        if (nodeCount == 0) {
+            json.writeNull();
+            json.flush();
+            return;
+        }
+        int[] inDegrees = statistics ? inDegrees() : null;
+        double[] ranks = statistics ? pageRank() : null;
+
+        int[] offsets = new int[nodeCount + 1];
+        int[] children = children(offsets);
+        int maxDepth = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            maxDepth = Math.max(maxDepth, nodeDepths[i]);
+        }
+        // the open nodes from the root down, and the next child of each to write
+        int[] openNodes = new int[maxDepth + 1];
+        int[] nextChild = new int[maxDepth + 1];
+        int open = 0;
+        openNodes[0] = 0;
+        nextChild[0] = offsets[0];
+        startNode(json, 0, inDegrees, ranks);
+        while (open >= 0) {
+            int node = openNodes[open];
+            if (nextChild[open] < offsets[node + 1]) {
+                int child = children[nextChild[open]++];
+                startNode(json, child, inDegrees, ranks);
+                open++;
+                openNodes[open] = child;
+                nextChild[open] = offsets[child];
+            } else {
+                json.writeEndArray();
+                if (open == 0 && appended != null) {
+                    for (Map.Entry<String, Object> field : appended.entrySet()) {
+                        json.writeObjectField(field.getKey(), field.getValue());
+                    }
+                }
+                json.writeEndObject();
+                open--;
+            }
+        }
+        json.flush();
+    }
+
+    /**
+     * Writes every link as a line with the url of the page and the url it links to, separated by a tab.
+     */
+    public void writeEdgeList(Writer out) throws IOException {
+        for (int row = 0; row < pageCount; row++) {
+            String from = urls[pageUrls[row]];
+            for (int i = linkOffsets[row]; i < linkOffsets[row + 1]; i++) {
+                out.write(from);
+                out.write('\t');
+                out.write(urls[linkTargets[i]]);
+                out.write('\n');
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the urls of the tree as a sitemap.xml urlset, each once.
+     */
+    public void writeSitemapXml(Writer out, boolean statistics) throws IOException {
+        double[] ranks = statistics ? pageRank() : null;
+        double maxRank = 0;
+        if (ranks != null) {
+            for (int i = 0; i < nodeCount; i++) {
+                maxRank = Math.max(maxRank, ranks[nodeUrls[i]]);
+            }
+        }
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
+        boolean[] written = new boolean[urlCount];
+        for (int i = 0; i < nodeCount; i++) {
+            int urlId = nodeUrls[i];
+            if (written[urlId]) {
+                continue;
+            }
+            written[urlId] = true;
+            out.write("<url><loc>");
+            writeEscaped(out, urls[urlId]);
+            out.write("</loc>");
+            if (ranks != null && maxRank > 0) {
+                out.write("<priority>");
+                out.write(String.format(Locale.ROOT, "%.1f", ranks[urlId] / maxRank));
+                out.write("</priority>");
+            }
+            out.write("</url>\n");
+        }
+        out.write("</urlset>\n");
+        out.flush();
+    }
+
+    private void startNode(JsonGenerator json, int node, int[] inDegrees, double[] ranks) throws IOException {
+        int urlId = nodeUrls[node];
+        json.writeStartObject();
+        json.writeStringField("url", urls[urlId]);
+        if (inDegrees != null) {
+            json.writeNumberField("inDegree", inDegrees[urlId]);
+            json.writeNumberField("pageRank", ranks[urlId]);
+        }
+        json.writeArrayFieldStart("children");
+    }
+
+    // children of every node in the order they were added, the children of node n are at offsets[n] to offsets[n + 1] - 1
+    private int[] children(int[] offsets) {
+        for (int i = 1; i < nodeCount; i++) {
+            offsets[nodeParents[i] + 1]++;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] children = new int[Math.max(0, nodeCount - 1)];
+        // offsets[n] moves to the end of the children of n while they are placed, then every offset shifts back by one
+        for (int i = 1; i < nodeCount; i++) {
+            children[offsets[nodeParents[i]]++] = i;
+        }
+        System.arraycopy(offsets, 0, offsets, 1, nodeCount);
+        offsets[0] = 0;
+        return children;
+    }
+
+    private int intern(String url) {
+        int slot = slot(url);
+        if (urlSlots[slot] != 0) {
+            return urlSlots[slot] - 1;
+        }
+        if (urlCount == urls.length) {
+            urls = Arrays.copyOf(urls, urlCount * 2);
+            urlNodes = Arrays.copyOf(urlNodes, urlCount * 2);
+        }
+        int id = urlCount++;
+        urls[id] = url;
+        urlNodes[id] = -1;
+        urlSlots[slot] = id + 1;
+        if (urlCount > urlSlots.length * LOAD_FACTOR) {
+            rehash();
+        }
+        return id;
+    }
+
+    private int find(String url) {
+        return urlSlots[slot(url)] - 1;
+    }
+
+    // the slot of url, or the free slot it would take
+    private int slot(String url) {
+        int mask = urlSlots.length - 1;
+        int slot = mix(url.hashCode()) & mask;
+        while (urlSlots[slot] != 0 && !urls[urlSlots[slot] - 1].equals(url)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        urlSlots = new int[urlSlots.length * 2];
+        int mask = urlSlots.length - 1;
+        for (int id = 0; id < urlCount; id++) {
+            int slot = mix(urls[id].hashCode()) & mask;
+            while (urlSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            urlSlots[slot] = id + 1;
+        }
+    }
+
+    private static int mix(int hash) {
+        int mixed = hash * 0x9E3779B9;
+        return mixed ^ (mixed >>> 16);
+    }
+
+    private static void writeEscaped(Writer out, String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    out.write("&amp;");
+                    break;
+                case '<':
+                    out.write("&lt;");
+                    break;
+                case '>':
+                    out.write("&gt;");
+                    break;
+                case '"':
+                    out.write("&quot;");
+                    break;
+                case '\'':
+                    out.write("&apos;");
+                    break;
+                default:
+                    out.write(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import org.jsoup.HttpStatusException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the page urls listed in sitemap.xml files. Files are parsed as a stream, so a 50,000 url sitemap is never held
+ * in memory, and may be gzipped. Sitemap index files are followed to the sitemaps they list.
+ */
+public class SitemapReader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SitemapReader.class);
+
+    // bounds the work a sitemap index can cause, sitemap indexes may not nest per the protocol anyway
+    private static final int MAX_SITEMAPS = 1000;
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+    }
+
+    private final PageFetcher fetcher;
+
+    public SitemapReader(PageFetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    /**
+     * Reads the sitemaps of the site hosting url: the ones listed in its robots.txt, or /sitemap.xml when there are
+     * none. Returns the normalized urls of the pages on the same site, in the order listed and without duplicates,
+     * or null if the site has no readable sitemap.
+     *
+     * @param scope         leave out pages out of scope, null to keep every page of the site
+     * @param respectRobots leave out pages robots.txt does not allow to be crawled
+     */
+    public List<String> readSite(String url, UrlNormalizer normalizer, UrlScope scope, boolean respectRobots) throws IOException {
+        HostPolicies hostPolicies = fetcher.getHostPolicies();
+        List<String> sitemaps = hostPolicies.getPolicy(url).getSitemaps();
+        if (sitemaps.isEmpty()) {
+            sitemaps = Collections.singletonList(new URL(new URL(url), "/sitemap.xml").toString());
+        }
+
+        List<String> pages = new ArrayList<>();
+        LongHashSet seen = new LongHashSet();
+        seen.add(UrlNormalizer.fingerprint(normalizer.normalize(url)));
+        IOException[] failure = new IOException[1];
+
+        boolean found = read(sitemaps, page -> {
+            if (failure[0] != null) {
+                return;
+            }
+            try {
+                String normalized = normalizer.normalize(page);
+                boolean onSite = scope != null && scope.hasHostRules() || !crawlingHelper.isExternalLink(url, normalized);
+                if (!onSite || (scope != null && !scope.isInScope(normalized)) || !seen.add(UrlNormalizer.fingerprint(normalized))) {
+                    return;
+                }
+                if (respectRobots && !hostPolicies.isAllowed(normalized)) {
+                    return;
+                }
+                pages.add(normalized);
+            } catch (MalformedURLException e) {
+                LOGGER.debug("Skipping sitemap entry " + page + " : " + e.getMessage());
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return found ? pages : null;
+    }
+
+    /**
+     * Reads the given sitemaps, following sitemap indexes.
+     *
+     * @return false if none of them could be read
+     */
+    public boolean read(Collection<String> sitemapUrls, Consumer<String> consumer) throws IOException {
+        Deque<String> pending = new ArrayDeque<>(sitemapUrls);
+        Set<String> seen = new HashSet<>(sitemapUrls);
+        int attempted = 0;
+        int read = 0;
+
+        while (!pending.isEmpty() && attempted++ < MAX_SITEMAPS) {
+            String sitemapUrl = pending.poll();
+            try {
+                readSitemap(sitemapUrl, consumer, nested -> {
+                    if (seen.add(nested)) {
+                        pending.add(nested);
+                    }
+                });
+                read++;
+            } catch (HttpStatusException e) {
+                LOGGER.info("No sitemap at " + sitemapUrl + " : " + e.getStatusCode());
+            } catch (XMLStreamException e) {
+                LOGGER.warn("Invalid sitemap " + sitemapUrl + " : " + e.getMessage());
+            }
+        }
+        return read > 0;
+    }
+
+    private void readSitemap(String sitemapUrl, Consumer<String> pages, Consumer<String> sitemaps) throws IOException, XMLStreamException {
+        LOGGER.debug("Reading sitemap : " + sitemapUrl);
+
+        try (PageFetcher.Response response = fetcher.open(sitemapUrl)) {
+            InputStream body = new BufferedInputStream(response.getBody());
+
+            // sitemap.xml.gz is usually served as a gzip file rather than with a gzip Content-Encoding
+            body.mark(2);
+            int first = body.read();
+            int second = body.read();
+            body.reset();
+            if (first == 0x1f && second == 0x8b) {
+                body = new GZIPInputStream(body);
+            }
+
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(body);
+            try {
+                boolean index = false;
+                boolean inLoc = false;
+                StringBuilder loc = new StringBuilder();
+                // enclosing elements, so the loc of an extension such as image:loc is not taken for a page
+                Deque<String> path = new ArrayDeque<>();
+
+                while (reader.hasNext()) {
+                    switch (reader.next()) {
+                        case XMLStreamConstants.START_ELEMENT:
+                            String name = localName(reader.getLocalName());
+                            String parent = path.peek();
+                            path.push(name);
+                            if ("sitemapindex".equals(name) && parent == null) {
+                                index = true;
+                            } else if ("loc".equals(name) && ("url".equals(parent) || "sitemap".equals(parent))) {
+                                inLoc = true;
+                                loc.setLength(0);
+                            }
+                            break;
+                        case XMLStreamConstants.CHARACTERS:
+                        case XMLStreamConstants.CDATA:
+                            if (inLoc) {
+                                loc.append(reader.getText());
+                            }
+                            break;
+                        case XMLStreamConstants.END_ELEMENT:
+                            path.pop();
+                            if (inLoc && "loc".equals(localName(reader.getLocalName()))) {
+                                inLoc = false;
+                                String location = loc.toString().trim();
+                                if (!location.isEmpty()) {
+                                    (index ? sitemaps : pages).accept(location);
+                                }
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    // the parser is not namespace aware, so a prefixed element keeps its prefix
+    private static String localName(String name) {
+        return name.substring(name.indexOf(':') + 1);
+    }
+}
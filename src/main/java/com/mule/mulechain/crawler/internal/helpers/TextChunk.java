@@ -0,0 +1,73 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A piece of the text of a page, sized for embedding, with where it came from.
+ */
+public class TextChunk {
+    private final String url;
+    private final String title;
+    private final List<String> headingPath;
+    private final int index;
+    private final String content;
+    private final int size;
+
+    public TextChunk(String url, String title, List<String> headingPath, int index, String content, int size) {
+        this.url = url;
+        this.title = title;
+        this.headingPath = headingPath;
+        this.index = index;
+        this.content = content;
+        this.size = size;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Texts of the headings the chunk is under, outermost first.
+     */
+    public List<String> getHeadingPath() {
+        return headingPath;
+    }
+
+    /**
+     * Position of the chunk within its page, starting at 0.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * Size of the content in the unit it was chunked by.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * The chunk as a record for the JSON output.
+     */
+    public Map<String, Object> toRecord() {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("url", url);
+        record.put("title", title);
+        record.put("headingPath", headingPath);
+        record.put("chunkIndex", index);
+        record.put("content", content);
+        record.put("size", size);
+        return record;
+    }
+}
@@ -0,0 +1,351 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import org.jsoup.nodes.*;
+import org.jsoup.select.Elements;
+
+import java.util.*;
+
+/**
+ * Splits the text of a document into chunks of at most maxSize characters, words or approximate tokens, for embedding.
+ * <p>
+ * The document is walked node by node and words are packed into the current chunk as they are met, so the text of the
+ * whole page is never assembled and chunks are produced only as fast as they are consumed. Headings start a new chunk
+ * and give the chunks below them their heading path. When a chunk is full it is cut at the last paragraph start, or
+ * else the last sentence end, in its second half, and the next chunk repeats up to overlap of its tail, less what does
+ * not fit beside the words carried over from the cut. Only a single word longer than maxSize makes a larger chunk.
+ */
+public class TextChunker implements Iterator<TextChunk> {
+
+    public enum Unit {
+        CHARACTERS,
+        WORDS,
+        // about 4 characters per token for English text, close enough to budget for embedding models
+        TOKENS
+    }
+
+    private static final Set<String> SKIPPED_ELEMENTS = new HashSet<>(Arrays.asList("noscript", "template", "svg"));
+
+    private final String url;
+    private final String title;
+    private final Unit unit;
+    private final int maxSize;
+    private final int overlap;
+
+    // resumable depth first walk over the roots, next is the node whose head comes next
+    private final Deque<Element> roots;
+    private Node root;
+    private Node next;
+
+    private final Deque<TextChunk> ready = new ArrayDeque<>();
+    private final List<String> headingPath = new ArrayList<>();
+    private final List<Integer> headingLevels = new ArrayList<>();
+    private int headingLevel;
+    private final StringBuilder headingText = new StringBuilder();
+
+    private final List<Word> words = new ArrayList<>();
+    private int size;
+    // words in the chunk not repeated from the previous one, and how many of them are outside headings
+    private int freshWords;
+    private int bodyWords;
+    private final StringBuilder pendingWord = new StringBuilder();
+    private boolean paragraphStart = true;
+    private int chunkIndex;
+
+    private static class Word {
+        private final String text;
+        private final boolean paragraphStart;
+        private final boolean heading;
+        private final int size;
+
+        private Word(String text, boolean paragraphStart, boolean heading, int size) {
+            this.text = text;
+            this.paragraphStart = paragraphStart;
+            this.heading = heading;
+            this.size = size;
+        }
+
+        private boolean endsSentence() {
+            char last = text.charAt(text.length() - 1);
+            return last == '.' || last == '!' || last == '?' || last == ':';
+        }
+    }
+
+    /**
+     * @param tags css selectors. When present, only the text of matching elements is chunked, as in
+     *             {@link crawlingHelper#getPageContent}
+     */
+    public TextChunker(Document document, List<String> tags, Unit unit, int maxSize, int overlap) {
+        this.url = document.location();
+        this.title = document.title();
+        this.unit = unit;
+        this.maxSize = Math.max(1, maxSize);
+        // the next chunk has to make progress, so at most half of it repeats the previous one
+        this.overlap = Math.max(0, Math.min(overlap, this.maxSize / 2));
+
+        roots = new ArrayDeque<>();
+        if (tags != null && !tags.isEmpty()) {
+            for (String tag : tags) {
+                Elements selected = document.select(tag);
+                roots.addAll(selected);
+            }
+        } else if (document.body() != null) {
+            roots.add(document.body());
+        }
+        nextRoot();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (ready.isEmpty() && next != null) {
+            step();
+        }
+        if (ready.isEmpty() && next == null && root == null) {
+            finish();
+        }
+        return !ready.isEmpty();
+    }
+
+    @Override
+    public TextChunk next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return ready.poll();
+    }
+
+    private void nextRoot() {
+        root = roots.poll();
+        next = root;
+    }
+
+    // visits the head of next, then the tails of the nodes it completes, and moves next on
+    private void step() {
+        Node node = next;
+        boolean descend = head(node);
+        if (descend && node.childNodeSize() > 0) {
+            next = node.childNode(0);
+            return;
+        }
+        while (true) {
+            tail(node);
+            if (node == root) {
+                nextRoot();
+                return;
+            }
+            Node sibling = node.nextSibling();
+            if (sibling != null) {
+                next = sibling;
+                return;
+            }
+            node = node.parentNode();
+        }
+    }
+
+    private boolean head(Node node) {
+        if (node instanceof TextNode) {
+            String text = ((TextNode) node).getWholeText();
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c) || c == '\u00a0') {
+                    endWord();
+                } else {
+                    pendingWord.append(c);
+                }
+            }
+            if (headingLevel > 0) {
+                headingText.append(text);
+            }
+            return false;
+        }
+        if (!(node instanceof Element)) {
+            return false;
+        }
+
+        Element element = (Element) node;
+        String name = element.normalName();
+        if (SKIPPED_ELEMENTS.contains(name)) {
+            return false;
+        }
+        int level = headingLevel(name);
+        if (level > 0 && headingLevel == 0) {
+            endParagraph();
+            // a heading starts a new section, unless nothing but headings has been collected since the last one
+            if (bodyWords > 0) {
+                emit(words.size());
+                clear();
+            } else if (freshWords == 0) {
+                // only the overlap of the previous section, which is not repeated across sections
+                clear();
+            }
+            headingLevel = level;
+            headingText.setLength(0);
+        } else if (element.isBlock() || "br".equals(name)) {
+            endParagraph();
+        }
+        return true;
+    }
+
+    private void tail(Node node) {
+        if (!(node instanceof Element)) {
+            return;
+        }
+        Element element = (Element) node;
+        if (headingLevel > 0 && headingLevel(element.normalName()) == headingLevel) {
+            // the path changes before the heading's own words join the chunk, they belong to the new section
+            String heading = headingText.toString().trim().replaceAll("\\s+", " ");
+            while (!headingLevels.isEmpty() && headingLevels.get(headingLevels.size() - 1) >= headingLevel) {
+                headingLevels.remove(headingLevels.size() - 1);
+                headingPath.remove(headingPath.size() - 1);
+            }
+            headingLevels.add(headingLevel);
+            headingPath.add(heading);
+            endParagraph();
+            headingLevel = 0;
+        } else if (element.isBlock()) {
+            endParagraph();
+        }
+    }
+
+    private void endParagraph() {
+        endWord();
+        paragraphStart = true;
+    }
+
+    private void endWord() {
+        if (pendingWord.length() == 0) {
+            return;
+        }
+        String text = pendingWord.toString();
+        pendingWord.setLength(0);
+        Word word = new Word(text, paragraphStart, headingLevel > 0, measure(text));
+        paragraphStart = false;
+
+        // the words carried over from a cut may not leave room either, then they are cut again
+        while (!words.isEmpty() && size + separatorSize() + word.size > maxSize) {
+            split(word.size);
+        }
+        add(word, true);
+    }
+
+    private void add(Word word, boolean fresh) {
+        if (!words.isEmpty()) {
+            size += separatorSize();
+        }
+        words.add(word);
+        size += word.size;
+        if (fresh) {
+            freshWords++;
+            if (!word.heading) {
+                bodyWords++;
+            }
+        }
+    }
+
+    // emits the full chunk up to the best boundary, the rest starts the next chunk after the overlap, less the oldest
+    // repeated words where the rest and the incoming word would not fit beside them
+    private void split(int incoming) {
+        int cut = words.size();
+        int paragraphCut = -1;
+        int sentenceCut = -1;
+        // the chunk starts with the words repeated from the previous one, the cut comes after them
+        int repeated = words.size() - freshWords;
+        for (int i = words.size() - 1; i > Math.max(words.size() / 4, repeated); i--) {
+            if (paragraphCut < 0 && words.get(i).paragraphStart) {
+                paragraphCut = i;
+            }
+            if (sentenceCut < 0 && i > words.size() / 2 && words.get(i - 1).endsSentence()) {
+                sentenceCut = i;
+            }
+        }
+        if (paragraphCut > 0) {
+            cut = paragraphCut;
+        } else if (sentenceCut > 0) {
+            cut = sentenceCut;
+        }
+
+        List<Word> rest = new ArrayList<>(words.subList(cut, words.size()));
+        List<Word> overlapping = overlapOf(words.subList(0, cut));
+        emit(cut);
+        clear();
+        for (Word word : overlapping) {
+            add(word, false);
+        }
+        for (Word word : rest) {
+            add(word, true);
+        }
+        while (freshWords < words.size() && size + separatorSize() + incoming > maxSize) {
+            Word dropped = words.remove(0);
+            size -= dropped.size + (words.isEmpty() ? 0 : separatorSize());
+        }
+    }
+
+    // the last words of the emitted chunk within the overlap, never its first word so chunks always move forward
+    private List<Word> overlapOf(List<Word> emitted) {
+        int start = emitted.size();
+        int repeated = 0;
+        while (start > 1) {
+            int wordSize = emitted.get(start - 1).size + (repeated > 0 ? separatorSize() : 0);
+            if (repeated + wordSize > overlap) {
+                break;
+            }
+            repeated += wordSize;
+            start--;
+        }
+        return new ArrayList<>(emitted.subList(start, emitted.size()));
+    }
+
+    private void emit(int count) {
+        if (count == 0 || freshWords == 0) {
+            return;
+        }
+        StringBuilder content = new StringBuilder();
+        int chunkSize = 0;
+        for (int i = 0; i < count; i++) {
+            Word word = words.get(i);
+            if (i > 0) {
+                content.append(word.paragraphStart ? "\n\n" : " ");
+                chunkSize += separatorSize();
+            }
+            content.append(word.text);
+            chunkSize += word.size;
+        }
+        ready.add(new TextChunk(url, title, new ArrayList<>(headingPath), chunkIndex++, content.toString(), chunkSize));
+    }
+
+    private void clear() {
+        words.clear();
+        size = 0;
+        freshWords = 0;
+        bodyWords = 0;
+    }
+
+    private void finish() {
+        endParagraph();
+        if (bodyWords > 0) {
+            emit(words.size());
+        }
+        clear();
+    }
+
+    private int measure(String word) {
+        switch (unit) {
+            case CHARACTERS:
+                return word.length();
+            case WORDS:
+                return 1;
+            default:
+                return Math.max(1, (word.length() + 3) / 4);
+        }
+    }
+
+    private int separatorSize() {
+        return unit == Unit.CHARACTERS ? 1 : 0;
+    }
+
+    private static int headingLevel(String name) {
+        if (name.length() == 2 && name.charAt(0) == 'h' && name.charAt(1) >= '1' && name.charAt(1) <= '6') {
+            return name.charAt(1) - '0';
+        }
+        return 0;
+    }
+}
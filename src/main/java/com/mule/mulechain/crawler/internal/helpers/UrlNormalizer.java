@@ -0,0 +1,125 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Brings urls to a canonical form so that variants of the same page are crawled once:
+ * lower-case scheme and host, no default port, no fragment, no trailing slash and no ignored query parameters.
+ * e.g. "HTTPS://Docs.example.com:443/docs/?utm_source=x#intro" becomes "https://docs.example.com/docs"
+ */
+public class UrlNormalizer {
+
+    private final List<String> ignoredQueryParameters;
+
+    /**
+     * @param ignoredQueryParameters names of query parameters to drop. A trailing * matches any suffix, e.g. utm_*
+     */
+    public UrlNormalizer(List<String> ignoredQueryParameters) {
+        this.ignoredQueryParameters = ignoredQueryParameters != null ? ignoredQueryParameters : Collections.<String>emptyList();
+    }
+
+    public String normalize(String url) {
+        URI uri;
+        try {
+            uri = new URI(url.trim()).normalize();
+        } catch (URISyntaxException e) {
+            return stripFragment(url);
+        }
+
+        if (uri.getScheme() == null || uri.getHost() == null) {
+            return stripFragment(url);
+        }
+
+        String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+
+        int port = uri.getPort();
+        if ((port == 80 && "http".equals(scheme)) || (port == 443 && "https".equals(scheme))) {
+            port = -1;
+        }
+
+        String path = uri.getRawPath();
+        if (path == null || path.isEmpty()) {
+            path = "/";
+        } else if (path.length() > 1 && path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+
+        StringBuilder normalized = new StringBuilder(url.length());
+        normalized.append(scheme).append("://");
+        if (uri.getRawUserInfo() != null) {
+            normalized.append(uri.getRawUserInfo()).append('@');
+        }
+        normalized.append(host);
+        if (port != -1) {
+            normalized.append(':').append(port);
+        }
+        normalized.append(path);
+
+        String query = filterQuery(uri.getRawQuery());
+        if (!query.isEmpty()) {
+            normalized.append('?').append(query);
+        }
+        return normalized.toString();
+    }
+
+    private String filterQuery(String query) {
+        if (query == null || query.isEmpty()) {
+            return "";
+        }
+        if (ignoredQueryParameters.isEmpty()) {
+            return query;
+        }
+
+        StringBuilder filtered = new StringBuilder(query.length());
+        for (String parameter : query.split("&")) {
+            if (parameter.isEmpty()) {
+                continue;
+            }
+            int equals = parameter.indexOf('=');
+            String name = equals >= 0 ? parameter.substring(0, equals) : parameter;
+            if (!isIgnored(name)) {
+                if (filtered.length() > 0) {
+                    filtered.append('&');
+                }
+                filtered.append(parameter);
+            }
+        }
+        return filtered.toString();
+    }
+
+    private boolean isIgnored(String name) {
+        for (String ignored : ignoredQueryParameters) {
+            if (ignored.endsWith("*") ? name.startsWith(ignored.substring(0, ignored.length() - 1)) : name.equals(ignored)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripFragment(String url) {
+        int hash = url.indexOf('#');
+        return hash >= 0 ? url.substring(0, hash) : url;
+    }
+
+    /**
+     * 64-bit fingerprint of a (normalized) url: FNV-1a over the characters followed by a murmur3 finalizer.
+     */
+    public static long fingerprint(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
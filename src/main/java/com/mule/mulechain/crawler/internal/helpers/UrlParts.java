@@ -0,0 +1,139 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import java.util.Locale;
+
+/**
+ * The parts of an absolute hierarchical url such as https://user@host:8080/path?query#fragment, found in a single
+ * scan and without the validation of java.net.URL or URI, for classifying the many links of a page cheaply.
+ */
+public final class UrlParts {
+
+    private final String scheme;
+    private final String host;
+    private final String path;
+    private final String query;
+    private final String fragment;
+
+    private UrlParts(String scheme, String host, String path, String query, String fragment) {
+        this.scheme = scheme;
+        this.host = host;
+        this.path = path;
+        this.query = query;
+        this.fragment = fragment;
+    }
+
+    /**
+     * Splits url, or returns null when it has no scheme followed by // and a host, e.g. mailto: or relative links.
+     */
+    public static UrlParts parse(String url) {
+        if (url == null) {
+            return null;
+        }
+        int colon = url.indexOf(':');
+        if (colon <= 0 || !url.startsWith("//", colon + 1)) {
+            return null;
+        }
+        for (int i = 0; i < colon; i++) {
+            char c = url.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || c == '+' || c == '-' || c == '.')) {
+                return null;
+            }
+        }
+
+        int authorityStart = colon + 3;
+        int authorityEnd = url.length();
+        for (int i = authorityStart; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                authorityEnd = i;
+                break;
+            }
+        }
+        int hostStart = url.lastIndexOf('@', authorityEnd - 1) + 1;
+        if (hostStart < authorityStart) {
+            hostStart = authorityStart;
+        }
+        int hostEnd = authorityEnd;
+        if (hostStart < authorityEnd && url.charAt(hostStart) == '[') {
+            // ipv6 literal, its colons are not a port
+            int bracket = url.indexOf(']', hostStart);
+            hostEnd = bracket > 0 && bracket < authorityEnd ? bracket + 1 : authorityEnd;
+        } else {
+            int port = url.indexOf(':', hostStart);
+            if (port >= 0 && port < authorityEnd) {
+                hostEnd = port;
+            }
+        }
+        if (hostEnd <= hostStart) {
+            return null;
+        }
+
+        int fragmentStart = url.indexOf('#', authorityEnd);
+        int end = fragmentStart >= 0 ? fragmentStart : url.length();
+        int queryStart = url.indexOf('?', authorityEnd);
+        if (queryStart > end) {
+            queryStart = -1;
+        }
+        int pathEnd = queryStart >= 0 ? queryStart : end;
+
+        String path = pathEnd > authorityEnd ? url.substring(authorityEnd, pathEnd) : "/";
+        return new UrlParts(
+                url.substring(0, colon).toLowerCase(Locale.ROOT),
+                url.substring(hostStart, hostEnd).toLowerCase(Locale.ROOT),
+                path,
+                queryStart >= 0 ? url.substring(queryStart + 1, end) : null,
+                fragmentStart >= 0 ? url.substring(fragmentStart + 1) : null);
+    }
+
+    public String getScheme() {
+        return scheme;
+    }
+
+    /**
+     * Host in lower case, without user info or port.
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Path as it appears in the url, / when it has none.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Query without the ?, or null.
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * Fragment without the #, or null.
+     */
+    public String getFragment() {
+        return fragment;
+    }
+
+    /**
+     * Whether this url is on the host of site or one of its subdomains, e.g. docs.example.com is on example.com but
+     * example.com.evil.org is not.
+     */
+    public boolean isOnSite(UrlParts site) {
+        return isSameOrSubdomain(host, site.host);
+    }
+
+    /**
+     * Whether this url points into the page site itself: same scheme, host and path, with a fragment.
+     */
+    public boolean isReferenceTo(UrlParts page) {
+        return fragment != null && scheme.equals(page.scheme) && host.equals(page.host) && path.equals(page.path);
+    }
+
+    static boolean isSameOrSubdomain(String host, String domain) {
+        int prefix = host.length() - domain.length();
+        return host.endsWith(domain) && (prefix == 0 || (prefix > 0 && host.charAt(prefix - 1) == '.'));
+    }
+}
@@ -0,0 +1,269 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Decides which urls a crawl may follow, from host and path rules compiled once so that every link is checked in a
+ * single pass over its host and path.
+ * <p>
+ * Hosts are names such as docs.example.com, or *.example.com for any subdomain of example.com. Path rules are
+ * <ul>
+ *   <li>prefixes, matched at segment boundaries: /docs matches /docs and /docs/guide, not /docs-old</li>
+ *   <li>globs, when they contain * or ?: * matches within a segment, ** across segments, so /docs/**.html matches
+ *       html pages anywhere under /docs. A glob that does not start with / matches at any depth, e.g. *.pdf</li>
+ *   <li>regular expressions, prefixed with regex:, found anywhere in the path and query, e.g. regex:[?&amp;]page=\d+</li>
+ * </ul>
+ * A url is in scope when its host is allowed, it matches an include rule if there are any, and it matches no exclude
+ * rule. Prefixes, and globs that are a prefix followed by /**, are looked up in a trie, the other globs and the
+ * regular expressions are each combined into one pattern.
+ */
+public class UrlScope {
+
+    private static final String REGEX_PREFIX = "regex:";
+
+    private final Set<String> hosts;
+    private final Set<String> domains;
+    private final PathRules includes;
+    private final PathRules excludes;
+
+    private UrlScope(Set<String> hosts, Set<String> domains, PathRules includes, PathRules excludes) {
+        this.hosts = hosts;
+        this.domains = domains;
+        this.includes = includes;
+        this.excludes = excludes;
+    }
+
+    /**
+     * Compiles the rules, or returns null when there are none and every link of the site is in scope.
+     *
+     * @throws IllegalArgumentException if a regular expression is invalid
+     */
+    public static UrlScope compile(List<String> allowedHosts, List<String> includePaths, List<String> excludePaths) {
+        Set<String> hosts = new HashSet<>();
+        Set<String> domains = new HashSet<>();
+        if (allowedHosts != null) {
+            for (String host : allowedHosts) {
+                String name = host.trim().toLowerCase(Locale.ROOT);
+                if (name.startsWith("*.")) {
+                    domains.add(name.substring(2));
+                } else if (!name.isEmpty()) {
+                    hosts.add(name);
+                }
+            }
+        }
+        PathRules includes = PathRules.compile(includePaths);
+        PathRules excludes = PathRules.compile(excludePaths);
+        if (hosts.isEmpty() && domains.isEmpty() && includes == null && excludes == null) {
+            return null;
+        }
+        return new UrlScope(hosts, domains, includes, excludes);
+    }
+
+    /**
+     * Whether hosts are allowed explicitly, which lets a crawl follow links to other sites. Without, only links to the
+     * site of the start page and its subdomains are followed.
+     */
+    public boolean hasHostRules() {
+        return !hosts.isEmpty() || !domains.isEmpty();
+    }
+
+    public boolean isInScope(String url) {
+        UrlParts parts = UrlParts.parse(url);
+        return parts != null && isInScope(parts);
+    }
+
+    public boolean isInScope(UrlParts url) {
+        if (hasHostRules() && !isHostAllowed(url.getHost())) {
+            return false;
+        }
+        String path = url.getPath();
+        if (includes != null && !includes.matches(path, url.getQuery())) {
+            return false;
+        }
+        return excludes == null || !excludes.matches(path, url.getQuery());
+    }
+
+    private boolean isHostAllowed(String host) {
+        if (hosts.contains(host)) {
+            return true;
+        }
+        // every parent domain of host, from the closest, e.g. example.com then com for docs.example.com
+        for (int dot = host.indexOf('.'); dot >= 0 && !domains.isEmpty(); dot = host.indexOf('.', dot + 1)) {
+            if (domains.contains(host.substring(dot + 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class PathRules {
+        private final PrefixTrie prefixes;
+        private final Pattern globs;
+        private final Pattern patterns;
+
+        private PathRules(PrefixTrie prefixes, Pattern globs, Pattern patterns) {
+            this.prefixes = prefixes;
+            this.globs = globs;
+            this.patterns = patterns;
+        }
+
+        private static PathRules compile(List<String> rules) {
+            if (rules == null || rules.isEmpty()) {
+                return null;
+            }
+            PrefixTrie prefixes = new PrefixTrie();
+            List<String> globs = new ArrayList<>();
+            List<String> patterns = new ArrayList<>();
+            for (String rule : rules) {
+                String trimmed = rule.trim();
+                if (trimmed.startsWith(REGEX_PREFIX)) {
+                    String regex = trimmed.substring(REGEX_PREFIX.length());
+                    try {
+                        Pattern.compile(regex);
+                    } catch (PatternSyntaxException e) {
+                        throw new IllegalArgumentException("Invalid path rule " + rule + " : " + e.getDescription(), e);
+                    }
+                    patterns.add(regex);
+                } else if (trimmed.isEmpty()) {
+                    continue;
+                } else if (isPrefixGlob(trimmed)) {
+                    prefixes.add(trimmed.substring(0, trimmed.length() - 3));
+                } else if (trimmed.indexOf('*') >= 0 || trimmed.indexOf('?') >= 0) {
+                    globs.add(globToRegex(trimmed));
+                } else {
+                    prefixes.add(trimmed);
+                }
+            }
+            if (prefixes.isEmpty() && globs.isEmpty() && patterns.isEmpty()) {
+                return null;
+            }
+            return new PathRules(prefixes.isEmpty() ? null : prefixes, combine(globs), combine(patterns));
+        }
+
+        private boolean matches(String path, String query) {
+            if (prefixes != null && prefixes.matches(path)) {
+                return true;
+            }
+            if (globs != null && globs.matcher(path).matches()) {
+                return true;
+            }
+            return patterns != null && patterns.matcher(query != null ? path + "?" + query : path).find();
+        }
+
+        // /docs/** has no other wildcard, so it is the prefix /docs
+        private static boolean isPrefixGlob(String glob) {
+            if (!glob.startsWith("/") || !glob.endsWith("/**")) {
+                return false;
+            }
+            String prefix = glob.substring(0, glob.length() - 3);
+            return prefix.indexOf('*') < 0 && prefix.indexOf('?') < 0;
+        }
+
+        // one alternation is matched in a single pass, instead of a pass per rule
+        private static Pattern combine(List<String> regexes) {
+            if (regexes.isEmpty()) {
+                return null;
+            }
+            StringBuilder combined = new StringBuilder();
+            for (String regex : regexes) {
+                if (combined.length() > 0) {
+                    combined.append('|');
+                }
+                combined.append("(?:").append(regex).append(')');
+            }
+            return Pattern.compile(combined.toString());
+        }
+
+        static String globToRegex(String glob) {
+            StringBuilder regex = new StringBuilder();
+            int i = 0;
+            if (!glob.startsWith("/")) {
+                regex.append("(?:.*/)?");
+            }
+            while (i < glob.length()) {
+                char c = glob.charAt(i);
+                if (c == '*' && glob.startsWith("**", i)) {
+                    if (i > 0 && glob.charAt(i - 1) == '/' && i + 2 == glob.length()) {
+                        // a trailing /** also matches the directory itself, whose url has no trailing slash
+                        regex.setLength(regex.length() - 1);
+                        regex.append("(?:/.*)?");
+                        i += 2;
+                    } else if (glob.startsWith("**/", i)) {
+                        // any number of whole segments, including none
+                        regex.append("(?:.*/)?");
+                        i += 3;
+                    } else {
+                        regex.append(".*");
+                        i += 2;
+                    }
+                    continue;
+                }
+                if (c == '*') {
+                    regex.append("[^/]*");
+                } else if (c == '?') {
+                    regex.append("[^/]");
+                } else if ("\\.[]{}()+-^$|".indexOf(c) >= 0) {
+                    regex.append('\\').append(c);
+                } else {
+                    regex.append(c);
+                }
+                i++;
+            }
+            return regex.toString();
+        }
+    }
+
+    /**
+     * Path prefixes as a trie of characters, so a path is checked against all of them in one walk.
+     */
+    private static class PrefixTrie {
+        private final Node root = new Node();
+        private boolean empty = true;
+
+        private static class Node {
+            private final Map<Character, Node> children = new HashMap<>(4);
+            private boolean terminal;
+        }
+
+        private void add(String prefix) {
+            // urls are compared without their trailing slash, /docs/ and /docs are the same prefix
+            String normalized = prefix.length() > 1 && prefix.endsWith("/") ? prefix.substring(0, prefix.length() - 1) : prefix;
+            if (normalized.isEmpty()) {
+                normalized = "/";
+            }
+            Node node = root;
+            for (int i = 0; i < normalized.length(); i++) {
+                node = node.children.computeIfAbsent(normalized.charAt(i), c -> new Node());
+            }
+            node.terminal = true;
+            empty = false;
+        }
+
+        private boolean isEmpty() {
+            return empty;
+        }
+
+        private boolean matches(String path) {
+            Node node = root;
+            for (int i = 0; i < path.length(); i++) {
+                node = node.children.get(path.charAt(i));
+                if (node == null) {
+                    return false;
+                }
+                // a prefix matches up to the end of a segment, or ends with / itself, as "/" does
+                if (node.terminal && (i + 1 == path.length() || path.charAt(i + 1) == '/' || path.charAt(i) == '/')) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.mule.mulechain.crawler.internal.helpers;
+
+/**
+ * Set of visited urls, tracked by their 64-bit {@link UrlNormalizer#fingerprint fingerprint}.
+ */
+public interface VisitedUrlSet {
+
+    /**
+     * Adds the fingerprint, returning true if it was not in the set yet.
+     */
+    boolean add(long fingerprint);
+
+    boolean contains(long fingerprint);
+
+    int size();
+}
@@ -1,24 +1,34 @@
 package com.mule.mulechain.crawler.internal.helpers;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.jsoup.Jsoup;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.io.UnsupportedEncodingException;
 import java.net.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.*;
 
 public class crawlingHelper {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(crawlingHelper.class);
 
+    // mappers are thread safe and expensive to create, so one is shared by all operations
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectWriter JSON_WRITER = MAPPER.writer();
+
     public enum PageInsightType {
         ALL,
         INTERNALLINKS,
@@ -29,14 +39,14 @@ public class crawlingHelper {
     }
 
 
-    public static Document getDocument(String url) throws IOException {
-        // use jsoup to fetch the current page elements
-        Document document = Jsoup.connect(url)
-                //.userAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/58.0.3029.110 Safari/537.3")
-                //.referrer("http://www.google.com")  // to prevent "HTTP error fetching URL. Status=403" error
-                .get();
+    public static Document getDocument(PageFetcher fetcher, String url) throws IOException {
+        // fetch the current page through the shared, keep-alive fetcher and parse it with jsoup
+        return fetcher.getDocument(url);
+    }
 
-        return document;
+    public static FetchedPage fetchPage(PageFetcher fetcher, String url) throws IOException {
+        // same as getDocument, but also tells whether the page was revalidated from the local cache
+        return fetcher.fetch(url);
     }
 
 
@@ -77,114 +87,130 @@ public class crawlingHelper {
 
     public static String convertToJSON(Object contentToSerialize) throws JsonProcessingException{
         // Convert the result to JSON
-        ObjectMapper mapper = new ObjectMapper();
-        //return mapper.writerWithDefaultPrettyPrinter().writeValueAsString(contentToSerialize);
-        return mapper.writeValueAsString(contentToSerialize);
+        //return MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(contentToSerialize);
+        return JSON_WRITER.writeValueAsString(contentToSerialize);
     }
 
+    // the object serialized as a JSON object, with the appended fields added after its own
+    public static String convertToJSON(Object contentToSerialize, Map<String, Object> appended) throws JsonProcessingException {
+        ObjectNode node = MAPPER.valueToTree(contentToSerialize);
+        for (Map.Entry<String, Object> field : appended.entrySet()) {
+            node.set(field.getKey(), MAPPER.valueToTree(field.getValue()));
+        }
+        return JSON_WRITER.writeValueAsString(node);
+    }
 
+    // a page crawled by one shard of a distributed crawl, without its children, which other shards may have crawled
+    public static ObjectNode toShardRecord(SiteMapNode node, String parentUrl, int depth) {
+        ObjectNode record = MAPPER.valueToTree(node);
+        record.remove("children");
+        record.put("parentUrl", parentUrl);
+        record.put("depth", depth);
+        return record;
+    }
 
-    public static Map<String, String> getPageMetaTags(Document document) {
-        // Map to store meta tag data
-        Map<String, String> metaTagData = new HashMap<>();
-
-        // Select all meta tags
-        Elements metaTags = document.select("meta");
-
-        // Iterate through each meta tag
-        for (Element metaTag : metaTags) {
-            // Extract the 'name' or 'property' attribute and 'content' attribute
-            String name = metaTag.attr("name");
-            if (name.isEmpty()) {
-                // If 'name' is not present, check for 'property' (e.g., Open Graph meta tags)
-                name = metaTag.attr("property");
-            }
-            String content = metaTag.attr("content");
-
-            // Only add to map if 'name' or 'property' and 'content' are present
-            if (!name.isEmpty() && !content.isEmpty()) {
-                metaTagData.put(name, content);
+    // the site tree assembled from the pages recorded by all shards of a distributed crawl, or null if the start page failed
+    public static JsonNode mergeShardRecords(List<JsonNode> pages) {
+        List<ObjectNode> records = new ArrayList<>(pages.size());
+        for (JsonNode page : pages) {
+            records.add((ObjectNode) page);
+        }
+        // parents are one depth above their children, a stable sort keeps the order of each shard
+        records.sort(Comparator.comparingInt(record -> record.path("depth").asInt()));
+
+        Map<String, ArrayNode> childrenByPage = new HashMap<>();
+        ObjectNode root = null;
+        for (ObjectNode record : records) {
+            int depth = record.remove("depth").asInt();
+            JsonNode parentUrl = record.remove("parentUrl");
+            ArrayNode children = record.putArray("children");
+            // a url is crawled once per depth, so depth and url identify a node of the tree
+            childrenByPage.put(depth + " " + record.path("url").asText(), children);
+            if (depth == 0) {
+                root = record;
+            } else if (parentUrl != null) {
+                ArrayNode siblings = childrenByPage.get((depth - 1) + " " + parentUrl.asText());
+                if (siblings != null) {
+                    siblings.add(record);
+                }
             }
         }
-        return metaTagData;
+        return root;
     }
 
-    public static Map<String, Object> getPageInsights(Document document, List<String> tags, PageInsightType insight) throws MalformedURLException{
-        // Map to store page analysis
-        Map<String, Object> pageInsightData = new HashMap<>();
-
-
-        // links set
-        Set<String> internalLinks = new HashSet<>();
-        Set<String> externalLinks = new HashSet<>();
-        Set<String> referenceLinks = new HashSet<>();
-
-        // image-links set
-        Set<String> imageLinks = new HashSet<>();
-
-        // All links Map
-        Map<String, Set> linksMap = new HashMap<>();
-
-        // Map to store the element counts
-        Map<String, Integer> elementCounts = new HashMap<>();
-
+    // UTF-8 encoded JSON, for writers that append raw bytes
+    public static byte[] convertToJSONBytes(Object contentToSerialize) throws JsonProcessingException {
+        return JSON_WRITER.writeValueAsBytes(contentToSerialize);
+    }
 
-        String baseUrl = document.baseUri();
+    // JSON written straight to out as it is generated, the caller closes out
+    public static JsonGenerator createGenerator(Writer out) throws IOException {
+        return MAPPER.getFactory().createGenerator(out);
+    }
 
-        if (insight == PageInsightType.ALL || insight == PageInsightType.INTERNALLINKS || insight == PageInsightType.REFERENCELINKS || insight == PageInsightType.EXTERNALLINKS) {
-            // Select all anchor tags with href attributes
-            Elements links = document.select("a[href]");
-            for (Element link : links) {
-                String href = link.absUrl("href"); // get absolute URLs
-                if (isExternalLink(baseUrl, href)) {
-                    externalLinks.add(href);
-                } else if (isReferenceLink(baseUrl, href)) {
-                    referenceLinks.add(href);
-                } else {
-                    internalLinks.add(href);
-                }
-            }
+    public static JsonNode parseJSON(byte[] json) throws IOException {
+        return MAPPER.readTree(json);
+    }
 
-            if (insight == PageInsightType.ALL || insight == PageInsightType.INTERNALLINKS)
-                linksMap.put("internal", internalLinks);
-            if (insight == PageInsightType.ALL || insight == PageInsightType.EXTERNALLINKS)
-                linksMap.put("external", externalLinks);
-            if (insight == PageInsightType.ALL || insight == PageInsightType.REFERENCELINKS)
-                linksMap.put("reference", referenceLinks);
+    // Serialize straight to the file as UTF-8, without building the JSON as a String first
+    public static void writeJSON(Object contentToSerialize, File file) throws IOException {
+        try (JsonGenerator generator = MAPPER.getFactory().createGenerator(Files.newOutputStream(file.toPath()), JsonEncoding.UTF8)) {
+            JSON_WRITER.writeValue(generator, contentToSerialize);
         }
+    }
 
 
-        if (insight == PageInsightType.ALL || insight == PageInsightType.IMAGELINKS) {
-                // images
 
-            Elements images = document.select("img[src]");
-            for (Element img : images) {
-                String imageUrl = img.absUrl("src");
-                imageLinks.add(imageUrl);
-            }
+    public static Map<String, String> getPageMetaTags(Document document) throws MalformedURLException {
+        // Map to store meta tag data
+        return PageExtractor.extract(document, EnumSet.of(PageExtractor.Output.META_TAGS), null).getMetaTags();
+    }
 
-            linksMap.put("images", imageLinks);
+    public static Map<String, Object> getPageInsights(Document document, List<String> tags, PageInsightType insight) throws MalformedURLException{
+        // Map to store page analysis
+        Map<String, Object> pageInsightData = new HashMap<>();
 
+        boolean all = insight == PageInsightType.ALL;
+        boolean anyLinks = all || insight == PageInsightType.INTERNALLINKS || insight == PageInsightType.REFERENCELINKS || insight == PageInsightType.EXTERNALLINKS;
+
+        // only extract what the requested insight needs, in one pass over the document
+        EnumSet<PageExtractor.Output> outputs = EnumSet.noneOf(PageExtractor.Output.class);
+        if (all || insight == PageInsightType.INTERNALLINKS)
+            outputs.add(PageExtractor.Output.INTERNAL_LINKS);
+        if (all || insight == PageInsightType.EXTERNALLINKS)
+            outputs.add(PageExtractor.Output.EXTERNAL_LINKS);
+        if (all || insight == PageInsightType.REFERENCELINKS)
+            outputs.add(PageExtractor.Output.REFERENCE_LINKS);
+        if (all || insight == PageInsightType.IMAGELINKS)
+            outputs.add(PageExtractor.Output.IMAGES);
+        if (all || insight == PageInsightType.ELEMENTCOUNTSTATS) {
+            outputs.add(PageExtractor.Output.ELEMENT_COUNTS);
+            outputs.add(PageExtractor.Output.WORD_COUNT);
         }
 
-        if (insight == PageInsightType.ALL || insight == PageInsightType.ELEMENTCOUNTSTATS) {
-            String[] elementsToCount = {"div", "p", "h1", "h2", "h3", "h4", "h5"}; // default list of elements to retrieve stats for. Used if no specific tags provided
-
-            if (tags != null && !tags.isEmpty()) {
-                elementsToCount = tags.toArray(new String[tags.size()]);
-            }
+        PageExtract extract = PageExtractor.extract(document, outputs, tags);
 
-            // Loop through each element type and count its occurrences
-            for (String tag : elementsToCount) {
-                Elements elements = document.select(tag);
-                elementCounts.put(tag, elements.size());
-            }
+        // All links Map
+        Map<String, Set> linksMap = new HashMap<>();
 
-            elementCounts.put("internal", internalLinks.size());
-            elementCounts.put("external", externalLinks.size());
-            elementCounts.put("reference", referenceLinks.size());
-            elementCounts.put("images", imageLinks.size());
-            elementCounts.put("wordCount", countWords(getPageContent(document,tags)));
+        if (extract.getInternalLinks() != null)
+            linksMap.put("internal", extract.getInternalLinks());
+        if (extract.getExternalLinks() != null)
+            linksMap.put("external", extract.getExternalLinks());
+        if (extract.getReferenceLinks() != null)
+            linksMap.put("reference", extract.getReferenceLinks());
+        if (extract.getImages() != null)
+            linksMap.put("images", extract.getImages());
+
+        if (extract.getElementCounts() != null) {
+            // Map to store the element counts
+            Map<String, Integer> elementCounts = extract.getElementCounts();
+
+            elementCounts.put("internal", sizeOf(extract.getInternalLinks()));
+            elementCounts.put("external", sizeOf(extract.getExternalLinks()));
+            elementCounts.put("reference", sizeOf(extract.getReferenceLinks()));
+            elementCounts.put("images", sizeOf(extract.getImages()));
+            elementCounts.put("wordCount", extract.getWordCount());
 
             pageInsightData.put("pageStats", elementCounts);
         }
@@ -193,42 +219,27 @@ public class crawlingHelper {
         pageInsightData.put("title", document.title());
 
         // only add links if any of the types in condition has been requested
-        if (insight == PageInsightType.ALL || insight == PageInsightType.INTERNALLINKS || insight == PageInsightType.REFERENCELINKS || insight == PageInsightType.EXTERNALLINKS || insight == PageInsightType.IMAGELINKS)
+        if (anyLinks || insight == PageInsightType.IMAGELINKS)
             pageInsightData.put("links", linksMap);
 
         return pageInsightData;
     }
 
-    public static String getPageContent(Document document, List<String> tags) {
-
-        StringBuilder collectedText = new StringBuilder();
+    private static int sizeOf(Set<String> set) {
+        return set != null ? set.size() : 0;
+    }
 
+    public static String getPageContent(Document document, List<String> tags) throws MalformedURLException {
         // check if crawl should only iterate over specified tags and extract contents from these tags only
-        if (tags != null && !tags.isEmpty()) {
-            for (String selector : tags) {
-                Elements elements = document.select(selector);
-                for (Element element : elements) {
-                    collectedText.append(element.text()).append(" ");
-                }
-            }
-        }
-        else {
-            // Extract the text content of the page and add it to the collected text
-            String textContent = document.text();
-            collectedText.append(textContent);
-        }
-
-        return collectedText.toString().trim();
+        return PageExtractor.extract(document, EnumSet.of(PageExtractor.Output.TEXT), tags).getText();
     }
 
     // Method to count words in a given text
-    private static int countWords(String text) {
-        if (text == null || text.trim().isEmpty()) {
+    public static int countWords(String text) {
+        if (text == null) {
             return 0;
         }
-        // Split the text by whitespace and count the words
-        String[] words = text.trim().split("\\s+");
-        return words.length;
+        return PageExtractor.countWords(text);
     }
 
 
@@ -241,29 +252,20 @@ public class crawlingHelper {
     // baseUrl: "https://docs.mulesoft.com/cloudhub-2/ch2-architecture"
     // linkToCheck: "https://docs.mulesoft.com/cloudhub-2/ch2-architecture#cluster-nodes"
     // If current page has a reference link to another page, this link will not be considered as a reference link
-    private static boolean isReferenceLink(String baseUrl, String linkToCheck) {
-        try {
-            URI baseUri = new URI(baseUrl);
-            URI linkUri = new URI(linkToCheck);
-
-            // Check if the scheme, host, and path are the same, and the link has a fragment
-            return baseUri.getScheme().equals(linkUri.getScheme()) &&
-                    baseUri.getHost().equals(linkUri.getHost()) &&
-                    baseUri.getPath().equals(linkUri.getPath()) &&
-                    linkUri.getFragment() != null;
-
-        } catch (URISyntaxException e) {
-            LOGGER.error(e.toString());
-            return false;
-        }
+    static boolean isReferenceLink(String baseUrl, String linkToCheck) {
+        UrlParts base = UrlParts.parse(baseUrl);
+        UrlParts link = UrlParts.parse(linkToCheck);
+        // Check if the scheme, host, and path are the same, and the link has a fragment
+        return base != null && link != null && link.isReferenceTo(base);
     }
 
-    private static boolean isExternalLink(String baseUrl, String linkToCheck) throws MalformedURLException {
-        // Extract the base domain from the base URI
-        URL parsedUrl = new URL(baseUrl);
-        String baseDomain = parsedUrl.getHost();
-
-        return !linkToCheck.contains(baseDomain);
-
+    static boolean isExternalLink(String baseUrl, String linkToCheck) throws MalformedURLException {
+        // links are internal when on the host of the base url or one of its subdomains, anywhere else in the url does not count
+        UrlParts base = UrlParts.parse(baseUrl);
+        if (base == null) {
+            throw new MalformedURLException("no host in base url: " + baseUrl);
+        }
+        UrlParts link = UrlParts.parse(linkToCheck);
+        return link == null || !link.isOnSite(base);
     }
 }
@@ -0,0 +1,65 @@
+package com.mule.mulechain.crawler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import com.mule.mulechain.crawler.internal.helpers.ChangeDetector;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ChangeDetectorTestCase {
+
+  @Test
+  public void reportsNewChangedAndRemovedPages() {
+    Map<String, Long> previous = new HashMap<>();
+    previous.put("https://example.com/a", ChangeDetector.hash("A", "first"));
+    previous.put("https://example.com/b", ChangeDetector.hash("B", "second"));
+    previous.put("https://example.com/c", ChangeDetector.hash("C", "third"));
+    ChangeDetector changes = new ChangeDetector(previous);
+
+    assertThat(changes.check("https://example.com/a", ChangeDetector.hash("A", "first")) == null, is(true));
+    assertThat(changes.check("https://example.com/b", ChangeDetector.hash("B", "edited")), is(ChangeDetector.Change.CHANGED));
+    assertThat(changes.check("https://example.com/d", ChangeDetector.hash("D", "fourth")), is(ChangeDetector.Change.NEW));
+    assertThat(changes.getRemoved(), is(Collections.singletonList("https://example.com/c")));
+    assertThat(changes.getState().size(), is(3));
+  }
+
+  @Test
+  public void undeliveredChangesAreReportedAgain() {
+    Map<String, Long> previous = new HashMap<>();
+    previous.put("https://example.com/a", ChangeDetector.hash("A", "first"));
+    ChangeDetector changes = new ChangeDetector(previous);
+    changes.check("https://example.com/a", ChangeDetector.hash("A", "edited"));
+    changes.check("https://example.com/b", ChangeDetector.hash("B", "second"));
+    changes.revert("https://example.com/a");
+    changes.revert("https://example.com/b");
+
+    ChangeDetector next = new ChangeDetector(changes.getState());
+    assertThat(next.check("https://example.com/a", ChangeDetector.hash("A", "edited")), is(ChangeDetector.Change.CHANGED));
+    assertThat(next.check("https://example.com/b", ChangeDetector.hash("B", "second")), is(ChangeDetector.Change.NEW));
+  }
+
+  @Test
+  public void unseenPagesOfAnIncompleteCrawlAreKept() {
+    Map<String, Long> previous = new HashMap<>();
+    for (String page : Arrays.asList("a", "b", "c")) {
+      previous.put("https://example.com/" + page, ChangeDetector.hash(page, page));
+    }
+    ChangeDetector changes = new ChangeDetector(previous);
+    changes.check("https://example.com/a", ChangeDetector.hash("a", "a"));
+    changes.carryOverUnseen();
+
+    assertThat(changes.getState(), is((Object) new HashMap<>(previous)));
+
+    // except the pages known to be gone
+    changes = new ChangeDetector(previous);
+    changes.check("https://example.com/a", ChangeDetector.hash("a", "a"));
+    changes.carryOverUnseen(Collections.singleton("https://example.com/b"));
+    assertThat(changes.getRemoved(), is(Collections.singletonList("https://example.com/b")));
+    assertThat(changes.getState().containsKey("https://example.com/c"), is(true));
+  }
+}
@@ -0,0 +1,166 @@
+package com.mule.mulechain.crawler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import com.mule.mulechain.crawler.internal.helpers.CrawlBudget;
+import com.mule.mulechain.crawler.internal.helpers.CrawlEngine;
+import com.mule.mulechain.crawler.internal.helpers.LongHashSet;
+import com.mule.mulechain.crawler.internal.helpers.PageFetcher;
+import com.mule.mulechain.crawler.internal.helpers.SiteMapNode;
+import com.mule.mulechain.crawler.internal.helpers.UrlNormalizer;
+import com.mule.mulechain.crawler.internal.helpers.crawlingHelper;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class CrawlEngineTestCase {
+
+  // / links to a and c, and to a twice, a links back to /, b is reached from / and from a, d from a and from b
+  private static LocalSite site() throws Exception {
+    return new LocalSite()
+        .page("/", links("/a", "/b", "/a", "/c"))
+        .page("/a", links("/b", "/d", "/"))
+        .page("/b", links("/d", "/e"))
+        .page("/c", links())
+        .page("/d", links("/a"))
+        .page("/e", links());
+  }
+
+  @Test
+  public void pagesAreCrawledBreadthFirstInLinkOrder() throws Exception {
+    try (LocalSite site = site()) {
+      SiteMapNode root = crawl(site, 2, 4);
+      // within a depth a url is listed once, under the first page linking to it, and pages seen at a lower depth are
+      // listed again without being fetched again
+      assertThat(tree(site, root), is("{\"url\":\"/\",\"children\":["
+          + "{\"url\":\"/a\",\"children\":[{\"url\":\"/b\",\"children\":[]},{\"url\":\"/d\",\"children\":[]},{\"url\":\"/\",\"children\":[]}]},"
+          + "{\"url\":\"/b\",\"children\":[{\"url\":\"/e\",\"children\":[]}]},"
+          + "{\"url\":\"/c\",\"children\":[]}]}"));
+      for (String path : Arrays.asList("/", "/a", "/b", "/c", "/d", "/e")) {
+        assertThat(path, site.requests(path), is(1));
+      }
+    }
+  }
+
+  @Test
+  public void treeDoesNotDependOnTheOrderPagesComplete() throws Exception {
+    try (LocalSite site = site()) {
+      String inOrder = tree(site, crawl(site, 3, 1));
+      // the first links of every page are the slowest to load
+      site.delay("/a", 300).delay("/b", 150).delay("/d", 200);
+      assertThat(tree(site, crawl(site, 3, 8)), is(inOrder));
+      assertThat(tree(site, crawl(site, 3, 8)), is(inOrder));
+    }
+  }
+
+  @Test
+  public void listenerReceivesPagesInFrontierOrder() throws Exception {
+    try (LocalSite site = site()) {
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try {
+        site.delay("/a", 200);
+        List<String> pages = new ArrayList<>();
+        engine(executor).crawl(site.url("/"), 2, (url, depth, page, firstVisit) -> new SiteMapNode(url),
+                               (node, parentUrl, depth) -> pages.add(depth + " " + path(site, node.getUrl())));
+        assertThat(pages, is(Arrays.asList("0 /", "1 /a", "1 /b", "1 /c", "2 /b", "2 /d", "2 /", "2 /e")));
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  @Test
+  public void depthLimitsTheCrawl() throws Exception {
+    try (LocalSite site = site()) {
+      assertThat(tree(site, crawl(site, 0, 2)), is("{\"url\":\"/\",\"children\":[]}"));
+      assertThat(tree(site, crawl(site, 1, 2)), is("{\"url\":\"/\",\"children\":["
+          + "{\"url\":\"/a\",\"children\":[]},{\"url\":\"/b\",\"children\":[]},{\"url\":\"/c\",\"children\":[]}]}"));
+      // pages one depth past the limit are never requested
+      assertThat(site.requests("/d"), is(0));
+      assertThat(site.requests("/e"), is(0));
+    }
+  }
+
+  @Test
+  public void pagesSeenBeforeAreNotFetchedAgain() throws Exception {
+    try (LocalSite site = site()) {
+      List<String> visits = Collections.synchronizedList(new ArrayList<>());
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try {
+        engine(executor).crawl(site.url("/"), 3, (url, depth, page, firstVisit) -> {
+          if (firstVisit != (page != null)) {
+            throw new IllegalStateException("Page fetched on a revisit of " + url);
+          }
+          visits.add(path(site, url) + (firstVisit ? "" : " again"));
+          return new SiteMapNode(url);
+        });
+      } finally {
+        executor.shutdownNow();
+      }
+      assertThat(visits.size(), is(13));
+      assertThat(visits.stream().filter(visit -> !visit.endsWith("again")).count(), is(6L));
+      for (String path : Arrays.asList("/", "/a", "/b", "/c", "/d", "/e")) {
+        assertThat(path, site.requests(path), is(1));
+      }
+    }
+  }
+
+  @Test
+  public void pagesBudgetStopsTheCrawlAtTheSamePage() throws Exception {
+    try (LocalSite site = site()) {
+      // the first links of every page are the slowest to load, so the pages completing first are not the ones kept
+      site.delay("/a", 300).delay("/b", 150).delay("/d", 200);
+      for (int run = 0; run < 3; run++) {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+          CrawlEngine engine = engine(executor);
+          engine.setBudget(new CrawlBudget(5, 0, 0, 0));
+          SiteMapNode root = engine.crawl(site.url("/"), 3, (url, depth, page, firstVisit) -> new SiteMapNode(url));
+          // /, the pages it links to, then the first page linked from /a
+          assertThat(tree(site, root), is("{\"url\":\"/\",\"children\":["
+              + "{\"url\":\"/a\",\"children\":[{\"url\":\"/b\",\"children\":[]}]},"
+              + "{\"url\":\"/b\",\"children\":[]},{\"url\":\"/c\",\"children\":[]}]}"));
+          assertThat(engine.getExhaustedBudget(), is(CrawlBudget.Limit.MAX_PAGES));
+        } finally {
+          executor.shutdownNow();
+        }
+      }
+    }
+  }
+
+  private static SiteMapNode crawl(LocalSite site, int maxDepth, int threads) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      return engine(executor).crawl(site.url("/"), maxDepth, (url, depth, page, firstVisit) -> new SiteMapNode(url));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static CrawlEngine engine(ExecutorService executor) {
+    PageFetcher fetcher = new PageFetcher(5000, 5000, "test", 8, true, null, 0);
+    return new CrawlEngine(executor, fetcher, new UrlNormalizer(null), LongHashSet::new);
+  }
+
+  private static String tree(LocalSite site, SiteMapNode root) throws Exception {
+    return crawlingHelper.convertToJSON(root).replace(site.url(""), "");
+  }
+
+  private static String path(LocalSite site, String url) {
+    return url.replace(site.url(""), "");
+  }
+
+  static String links(String... paths) {
+    StringBuilder html = new StringBuilder("<html><head><title>Page</title></head><body>");
+    for (String path : paths) {
+      html.append("<a href=\"").append(path).append("\">").append(path).append("</a> ");
+    }
+    return html.append("</body></html>").toString();
+  }
+}
@@ -0,0 +1,172 @@
+package com.mule.mulechain.crawler;
+
+import static com.mule.mulechain.crawler.PageFetcherTestCase.deleteRecursively;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import com.mule.mulechain.crawler.internal.helpers.CrawlJournal;
+import com.mule.mulechain.crawler.internal.helpers.CrawlResult;
+import com.mule.mulechain.crawler.internal.helpers.SiteMapNode;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class CrawlJournalTestCase {
+
+  private static final String URL = "https://example.com/";
+
+  @Test
+  public void recordedPagesAreReplayed() throws Exception {
+    Path directory = Files.createTempDirectory("journal");
+    try {
+      record(directory);
+
+      try (CrawlJournal journal = CrawlJournal.open(directory, "crawl", URL, 2)) {
+        assertThat(journal.getRecordedPages().size(), is(3));
+        journal.startLevel(0, 1, 11);
+        CrawlJournal.Page root = journal.getRecordedPage(0, 0);
+        CrawlResult result = (CrawlResult) root.getNode();
+        assertThat(result.getUrl(), is(URL));
+        assertThat(result.getFileName(), is("pages_1_00001.jsonl#0"));
+        assertThat(result.getSimHash(), is(42L));
+        assertThat(result.getImageFiles(), is(Collections.singletonMap(URL + "logo.png", "abc.png")));
+        assertThat(root.getLinks(), is(Arrays.asList(URL + "a", URL + "b")));
+        // handed out once
+        assertThat(journal.getRecordedPage(0, 0), is((CrawlJournal.Page) null));
+        journal.endLevel(0);
+
+        journal.startLevel(1, 3, 22);
+        CrawlResult duplicate = (CrawlResult) journal.getRecordedPage(1, 0).getNode();
+        assertThat(duplicate.getDuplicateOf(), is(URL));
+        assertThat(duplicate.getSimHash(), is((Long) null));
+        assertThat(journal.getRecordedPage(1, 1).getNode(), is((SiteMapNode) null));
+        // not reached before the interruption, so crawled again
+        assertThat(journal.getRecordedPage(1, 2), is((CrawlJournal.Page) null));
+      }
+    } finally {
+      deleteRecursively(directory.toFile());
+    }
+  }
+
+  @Test
+  public void changedCrawlIsRejected() throws Exception {
+    Path directory = Files.createTempDirectory("journal");
+    try {
+      record(directory);
+
+      // a level that no longer has the same urls
+      try (CrawlJournal journal = CrawlJournal.open(directory, "crawl", URL, 2)) {
+        journal.startLevel(0, 1, 11);
+        try {
+          journal.startLevel(1, 3, 23);
+          throw new AssertionError("Expected the digest of the level to be checked");
+        } catch (IOException e) {
+          assertThat(e.getMessage().contains("does not match the crawl at depth 1"), is(true));
+        }
+      }
+      // another site or depth under the same id
+      for (String url : Arrays.asList(URL + "other", URL)) {
+        try {
+          CrawlJournal.open(directory, "crawl", url, url.equals(URL) ? 3 : 2).close();
+          throw new AssertionError("Expected the journal to be rejected for " + url);
+        } catch (IOException e) {
+          assertThat(e.getMessage().startsWith("Crawl crawl was started for " + URL), is(true));
+        }
+      }
+    } finally {
+      deleteRecursively(directory.toFile());
+    }
+  }
+
+  @Test
+  public void tornLastLineIsDropped() throws Exception {
+    Path directory = Files.createTempDirectory("journal");
+    try {
+      record(directory);
+      Path file = directory.resolve("crawl.journal");
+      long recorded = Files.size(file);
+      // the process died while writing a page
+      Files.write(file, "{\"depth\":1,\"index\":2,\"no".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+      try (CrawlJournal journal = CrawlJournal.open(directory, "crawl", URL, 2)) {
+        assertThat(Files.size(file), is(recorded));
+        assertThat(journal.getRecordedPages().size(), is(3));
+        journal.startLevel(0, 1, 11);
+        journal.endLevel(0);
+        journal.startLevel(1, 3, 22);
+        journal.recordPage(1, 2, new CrawlResult(URL + "c", "pages_1_00001.jsonl#120"), Collections.<String>emptyList());
+      }
+
+      // records written after the cut follow on from the last complete line
+      try (CrawlJournal journal = CrawlJournal.open(directory, "crawl", URL, 2)) {
+        journal.startLevel(0, 1, 11);
+        journal.startLevel(1, 3, 22);
+        assertThat(((CrawlResult) journal.getRecordedPage(1, 2).getNode()).getFileName(), is("pages_1_00001.jsonl#120"));
+      }
+    } finally {
+      deleteRecursively(directory.toFile());
+    }
+  }
+
+  @Test
+  public void pagesAreRecordedOnceTheirOutputIsFlushed() throws Exception {
+    Path directory = Files.createTempDirectory("journal");
+    try {
+      Path file = directory.resolve("crawl.journal");
+      List<Integer> linesAtFlush = new ArrayList<>();
+      try (CrawlJournal journal = CrawlJournal.open(directory, "crawl", URL, 1)) {
+        journal.setPageOutput(() -> linesAtFlush.add(Files.readAllLines(file).size()));
+        journal.startLevel(0, 2, 7);
+        journal.recordPage(0, 0, new SiteMapNode(URL), Collections.<String>emptyList());
+        journal.recordPage(0, 1, new SiteMapNode(URL + "a"), Collections.<String>emptyList());
+      }
+      // the header and the level, then the first page, when the output is flushed for each page
+      assertThat(linesAtFlush, is(Arrays.asList(2, 3)));
+    } finally {
+      deleteRecursively(directory.toFile());
+    }
+  }
+
+  @Test
+  public void completedJournalIsDeleted() throws Exception {
+    Path directory = Files.createTempDirectory("journal");
+    try {
+      CrawlJournal journal = CrawlJournal.open(directory, "crawl", URL, 0);
+      journal.startLevel(0, 1, 3);
+      journal.recordPage(0, 0, new SiteMapNode(URL), Collections.<String>emptyList());
+      journal.endLevel(0);
+      journal.complete();
+      assertThat(Files.exists(directory.resolve("crawl.journal")), is(false));
+      // the next run under the id starts over
+      try (CrawlJournal next = CrawlJournal.open(directory, "crawl", URL, 0)) {
+        assertThat(next.getRecordedPages().size(), is(0));
+      }
+    } finally {
+      deleteRecursively(directory.toFile());
+    }
+  }
+
+  // a crawl of depth 2 interrupted after two of the three pages at depth 1
+  private static void record(Path directory) throws IOException {
+    try (CrawlJournal journal = CrawlJournal.open(directory, "crawl", URL, 2)) {
+      journal.startLevel(0, 1, 11);
+      CrawlResult root = new CrawlResult(URL, "pages_1_00001.jsonl#0");
+      root.setSimHash(42L);
+      root.setImageFiles(Collections.singletonMap(URL + "logo.png", "abc.png"));
+      journal.recordPage(0, 0, root, Arrays.asList(URL + "a", URL + "b"));
+      journal.endLevel(0);
+
+      journal.startLevel(1, 3, 22);
+      journal.recordPage(1, 0, CrawlResult.nearDuplicate(URL + "a", URL), Collections.<String>emptyList());
+      journal.recordPage(1, 1, null, null);
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package com.mule.mulechain.crawler;
+
+import static com.mule.mulechain.crawler.CrawlEngineTestCase.links;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import com.mule.mulechain.crawler.internal.helpers.CrawlEngine;
+import com.mule.mulechain.crawler.internal.helpers.CrawlMetrics;
+import com.mule.mulechain.crawler.internal.helpers.LongHashSet;
+import com.mule.mulechain.crawler.internal.helpers.PageFetcher;
+import com.mule.mulechain.crawler.internal.helpers.SiteMapNode;
+import com.mule.mulechain.crawler.internal.helpers.UrlNormalizer;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class CrawlMetricsTestCase {
+
+  private static final CrawlEngine.PageProcessor URLS_ONLY = (url, depth, page, firstVisit) -> new SiteMapNode(url);
+
+  @Test
+  public void replacedMetricsLeaveTheirReplacementRegistered() throws Exception {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("com.mule.mulechain.crawler:type=CrawlMetrics,name=" + ObjectName.quote("metrics-test"));
+    CrawlMetrics replaced = new CrawlMetrics();
+    CrawlMetrics replacement = new CrawlMetrics();
+    try {
+      replaced.register("metrics-test");
+      // a new connection of the same configuration, before the old one is invalidated
+      replacement.register("metrics-test");
+      replacement.pageFetched(false);
+      replaced.unregister();
+      assertThat(server.isRegistered(name), is(true));
+      assertThat(server.getAttribute(name, "PagesFetched"), is((Object) 1L));
+
+      replacement.unregister();
+      assertThat(server.isRegistered(name), is(false));
+    } finally {
+      replaced.unregister();
+      replacement.unregister();
+    }
+  }
+
+  @Test
+  public void metricsMovedToAnotherNameLeaveTheReplacedOnesPublished() throws Exception {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("com.mule.mulechain.crawler:type=CrawlMetrics,name=" + ObjectName.quote("moved-test"));
+    ObjectName source = new ObjectName("com.mule.mulechain.crawler:type=CrawlMetrics,name=" + ObjectName.quote("moved-test/source"));
+    CrawlMetrics operations = new CrawlMetrics();
+    CrawlMetrics polling = new CrawlMetrics();
+    try {
+      operations.register("moved-test");
+      operations.pageFetched(false);
+      // the connection of a source is registered under the configuration name, then moves aside
+      polling.register("moved-test");
+      assertThat(polling.getRegisteredName(), is("moved-test"));
+      polling.register(polling.getRegisteredName() + "/source");
+      assertThat(server.getAttribute(name, "PagesFetched"), is((Object) 1L));
+      assertThat(server.getAttribute(source, "PagesFetched"), is((Object) 0L));
+
+      polling.unregister();
+      assertThat(server.isRegistered(source), is(false));
+      assertThat(server.isRegistered(name), is(true));
+    } finally {
+      operations.unregister();
+      polling.unregister();
+    }
+    assertThat(server.isRegistered(name), is(false));
+  }
+
+  @Test
+  public void frontierSizeSumsTheCrawlsRunning() throws Exception {
+    try (LocalSite site = new LocalSite()) {
+      site.page("/", links("/a", "/b", "/c")).page("/a", links()).page("/b", links()).page("/c", links())
+          .page("/other", links("/a", "/b"));
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try {
+        PageFetcher fetcher = new PageFetcher(5000, 5000, "test", 8, true, null, 0);
+        CrawlMetrics metrics = fetcher.getMetrics();
+        List<String> sizes = new ArrayList<>();
+        // a second crawl on the same connection runs while the first is at depth 1
+        engine(executor, fetcher).crawl(site.url("/"), 1, URLS_ONLY, (node, parentUrl, depth) -> {
+          if (node.getUrl().equals(site.url("/a"))) {
+            sizes.add("first " + metrics.getFrontierSize());
+            engine(executor, fetcher).crawl(site.url("/other"), 1, URLS_ONLY, (inner, innerParent, innerDepth) -> {
+              if (innerDepth == 1 && inner.getUrl().equals(site.url("/a"))) {
+                sizes.add("both " + metrics.getFrontierSize());
+              }
+            });
+            sizes.add("after second " + metrics.getFrontierSize());
+          }
+        });
+        assertThat(sizes, is(Arrays.asList("first 3", "both 5", "after second 3")));
+        assertThat(metrics.getFrontierSize(), is(0));
+
+        // a failed crawl takes its frontier with it
+        try {
+          engine(executor, fetcher).crawl(site.url("/"), 1, URLS_ONLY, (node, parentUrl, depth) -> {
+            if (depth == 1) {
+              throw new IOException("Listener failed");
+            }
+          });
+          throw new AssertionError("Expected the crawl to fail");
+        } catch (IOException e) {
+          assertThat(metrics.getFrontierSize(), is(0));
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  @Test
+  public void interruptedCrawlLeavesNoPageInFlight() throws Exception {
+    String[] paths = new String[20];
+    for (int i = 0; i < paths.length; i++) {
+      paths[i] = "/p" + i;
+    }
+    try (LocalSite site = new LocalSite().page("/", links(paths))) {
+      for (String path : paths) {
+        site.page(path, links()).delay(path, 100);
+      }
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try {
+        PageFetcher fetcher = new PageFetcher(5000, 5000, "test", 8, true, null, 0);
+        CrawlMetrics metrics = fetcher.getMetrics();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread crawl = new Thread(() -> {
+          try {
+            engine(executor, fetcher).crawl(site.url("/"), 1, URLS_ONLY);
+          } catch (Throwable e) {
+            failure.set(e);
+          }
+        });
+        crawl.start();
+        // the pages at depth 1 are queued behind the two workers
+        while (site.requests("/p0") == 0) {
+          Thread.sleep(10);
+        }
+        crawl.interrupt();
+        crawl.join(5000);
+        assertThat(failure.get() instanceof InterruptedIOException, is(true));
+
+        // the pages cancelled before they started, and the ones interrupted while running, are all finished
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+        assertThat(metrics.getPagesInFlight(), is(0));
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  private static CrawlEngine engine(ExecutorService executor, PageFetcher fetcher) {
+    return new CrawlEngine(executor, fetcher, new UrlNormalizer(null), LongHashSet::new);
+  }
+}
@@ -0,0 +1,205 @@
+package com.mule.mulechain.crawler;
+
+import static com.mule.mulechain.crawler.CrawlEngineTestCase.links;
+import static com.mule.mulechain.crawler.MulechainwebcrawlerOperationsTestCase.withDefaults;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mule.mulechain.crawler.internal.CrawlPagingProvider;
+import com.mule.mulechain.crawler.internal.MulechainwebcrawlerConfiguration;
+import com.mule.mulechain.crawler.internal.MulechainwebcrawlerConnection;
+import com.mule.mulechain.crawler.internal.MulechainwebcrawlerConnectionProvider;
+import com.mule.mulechain.crawler.internal.helpers.CrawlEngine;
+import com.mule.mulechain.crawler.internal.helpers.PageExtractor;
+import com.mule.mulechain.crawler.internal.helpers.PageRecord;
+import com.mule.mulechain.crawler.internal.helpers.SiteMapNode;
+import com.mule.mulechain.crawler.internal.helpers.TextChunk;
+import com.mule.mulechain.crawler.internal.helpers.crawlingHelper;
+import org.junit.Test;
+import org.mule.runtime.api.exception.MuleRuntimeException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CrawlPagingProviderTestCase {
+
+  private static final CrawlEngine.PageProcessor URLS_ONLY = (url, depth, page, firstVisit) -> new SiteMapNode(url);
+
+  @Test
+  public void recordsAreHandedOverInCrawlOrder() throws Exception {
+    // more pages than the queue between the crawl and the consumer holds
+    String[] paths = paths("/p", 150);
+    try (LocalSite site = new LocalSite().page("/", links(paths))) {
+      for (String path : paths) {
+        site.page(path, links());
+      }
+      MulechainwebcrawlerConfiguration configuration = configuration();
+      try {
+        CrawlPagingProvider provider = provider(configuration, site, 1, URLS_ONLY);
+        MulechainwebcrawlerConnection connection = connection();
+        List<String> urls = new ArrayList<>();
+        List<String> pages;
+        while (!(pages = provider.getPage(connection)).isEmpty()) {
+          assertThat(pages.size() <= 25, is(true));
+          for (String record : pages) {
+            JsonNode node = crawlingHelper.parseJSON(record.getBytes(StandardCharsets.UTF_8));
+            urls.add(node.path("url").asText().replace(site.url(""), "") + " " + node.path("depth").asInt());
+          }
+        }
+        List<String> expected = new ArrayList<>(Collections.singletonList("/ 0"));
+        for (String path : paths) {
+          expected.add(path + " 1");
+        }
+        assertThat(urls, is(expected));
+        assertThat(provider.getPage(connection).isEmpty(), is(true));
+        provider.close(connection);
+      } finally {
+        configuration.dispose();
+      }
+    }
+  }
+
+  @Test
+  public void failureAfterTheLastRecordsIsThrown() throws Exception {
+    try (LocalSite site = new LocalSite().page("/", links("/a", "/b", "/c")).page("/a", links()).page("/b", links()).page("/c", links())) {
+      MulechainwebcrawlerConfiguration configuration = configuration();
+      try {
+        // the record of the last page cannot be written, which ends the crawl right after the others
+        CrawlPagingProvider provider = provider(configuration, site, 1, (url, depth, page, firstVisit) ->
+            url.endsWith("/c") ? new PageRecord(url, Collections.<String, Object>singletonMap("content", new Object())) : new SiteMapNode(url));
+        MulechainwebcrawlerConnection connection = connection();
+        List<String> records = new ArrayList<>(provider.getPage(connection));
+        awaitIdle(configuration);
+        // the end of the crawl is now queued right behind the records
+        List<String> last = records;
+        try {
+          while (true) {
+            last = provider.getPage(connection);
+            records.addAll(last);
+          }
+        } catch (MuleRuntimeException e) {
+          assertThat(e.getMessage().contains("Crawl of " + site.url("/") + " failed"), is(true));
+        }
+        assertThat(records.size(), is(3));
+        assertThat(last.isEmpty(), is(false));
+        // and again on every call after it, instead of an empty page that reads as the end of the stream
+        try {
+          provider.getPage(connection);
+          throw new AssertionError("Expected the failure of the crawl to be thrown");
+        } catch (MuleRuntimeException e) {
+          // expected
+        }
+      } finally {
+        configuration.dispose();
+      }
+    }
+  }
+
+  @Test
+  public void closeStopsTheCrawl() throws Exception {
+    String[] paths = paths("/p", 150);
+    try (LocalSite site = new LocalSite().page("/", links(paths))) {
+      for (int i = 0; i < paths.length; i++) {
+        site.page(paths[i], links("/q" + i)).page("/q" + i, links());
+      }
+      MulechainwebcrawlerConfiguration configuration = configuration();
+      try {
+        CrawlPagingProvider provider = provider(configuration, site, 2, URLS_ONLY);
+        MulechainwebcrawlerConnection connection = connection();
+        // the start page, then the first of the pages it links to
+        assertThat(provider.getPage(connection).isEmpty(), is(false));
+        assertThat(provider.getPage(connection).isEmpty(), is(false));
+        provider.close(connection);
+        // the crawl was waiting for the consumer to catch up, and is stopped before going a depth further
+        awaitIdle(configuration);
+        assertThat(site.requests("/q0"), is(0));
+      } finally {
+        configuration.dispose();
+      }
+    }
+  }
+
+  @Test
+  public void chunksAreStreamedAsTheyAreCut() throws Exception {
+    try (LocalSite site = new LocalSite().page("/", links())) {
+      MulechainwebcrawlerConfiguration configuration = configuration();
+      try {
+        // far more chunks than the queue between the crawl and the consumer holds
+        AtomicInteger cut = new AtomicInteger();
+        Iterator<TextChunk> chunks = new Iterator<TextChunk>() {
+          @Override
+          public boolean hasNext() {
+            return cut.get() < 1000;
+          }
+
+          @Override
+          public TextChunk next() {
+            int index = cut.getAndIncrement();
+            return new TextChunk(site.url("/"), "Page", Collections.<String>emptyList(), index, "chunk " + index, 2);
+          }
+        };
+        CrawlPagingProvider provider = provider(configuration, site, 0, (url, depth, page, firstVisit) -> CrawlPagingProvider.chunksOf(url, chunks));
+        MulechainwebcrawlerConnection connection = connection();
+        List<String> records = new ArrayList<>(provider.getPage(connection));
+        Thread.sleep(200);
+        // the page stops being chunked while the consumer is behind
+        assertThat(cut.get() < 200, is(true));
+
+        List<String> page;
+        while (!(page = provider.getPage(connection)).isEmpty()) {
+          records.addAll(page);
+        }
+        assertThat(records.size(), is(1000));
+        for (int i = 0; i < records.size(); i++) {
+          JsonNode record = crawlingHelper.parseJSON(records.get(i).getBytes(StandardCharsets.UTF_8));
+          assertThat(record.path("chunkIndex").asInt(), is(i));
+          assertThat(record.path("depth").asInt(), is(0));
+        }
+        provider.close(connection);
+      } finally {
+        configuration.dispose();
+      }
+    }
+  }
+
+  private static CrawlPagingProvider provider(MulechainwebcrawlerConfiguration configuration, LocalSite site, int maxDepth, CrawlEngine.PageProcessor processor) {
+    return new CrawlPagingProvider(configuration, site.url("/"), maxDepth, EnumSet.noneOf(PageExtractor.Output.class), processor);
+  }
+
+  // waits for the streaming crawls to end, failing the test when one does not
+  private static void awaitIdle(MulechainwebcrawlerConfiguration configuration) throws InterruptedException {
+    ThreadPoolExecutor executor = (ThreadPoolExecutor) configuration.getStreamExecutor();
+    long deadline = System.currentTimeMillis() + 10000;
+    while (executor.getActiveCount() > 0) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new AssertionError("Streaming crawl still running");
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  private static String[] paths(String prefix, int count) {
+    String[] paths = new String[count];
+    for (int i = 0; i < count; i++) {
+      paths[i] = prefix + i;
+    }
+    return paths;
+  }
+
+  private static MulechainwebcrawlerConfiguration configuration() throws Exception {
+    MulechainwebcrawlerConfiguration configuration = withDefaults(new MulechainwebcrawlerConfiguration());
+    configuration.initialise();
+    return configuration;
+  }
+
+  private static MulechainwebcrawlerConnection connection() throws Exception {
+    return withDefaults(new MulechainwebcrawlerConnectionProvider()).connect();
+  }
+}
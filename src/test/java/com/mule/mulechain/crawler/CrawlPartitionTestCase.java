@@ -0,0 +1,79 @@
+package com.mule.mulechain.crawler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import com.mule.mulechain.crawler.internal.helpers.CrawlPartition;
+import com.mule.mulechain.crawler.internal.helpers.InMemoryCrawlStore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class CrawlPartitionTestCase {
+
+  private static final String[] URLS = {
+      "https://a.example.com/1", "https://a.example.com/2", "https://b.example.com/1", "https://c.example.com/1", "https://d.example.com/1"
+  };
+
+  @Test
+  public void entriesReachTheirOwnerOnly() throws Exception {
+    InMemoryCrawlStore store = new InMemoryCrawlStore();
+    CrawlPartition first = new CrawlPartition(store, "crawl", 0, 2, CrawlPartition.ShardBy.HOST, 10000);
+    CrawlPartition second = new CrawlPartition(store, "crawl", 1, 2, CrawlPartition.ShardBy.HOST, 10000);
+
+    // every url is found by the first shard, the second found nothing
+    List<String[]> found = new ArrayList<>();
+    for (String url : URLS) {
+      found.add(new String[]{url, "https://a.example.com/"});
+    }
+    CompletableFuture<List<String[]>> received = CompletableFuture.supplyAsync(() -> exchange(second, 1, Collections.<String[]>emptyList()));
+    List<String[]> kept = first.exchange(1, found);
+
+    assertThat(kept.size() + received.get().size(), is(URLS.length));
+    for (String[] entry : kept) {
+      assertThat(first.owner(entry[0]), is(0));
+    }
+    for (String[] entry : received.get()) {
+      assertThat(second.owner(entry[0]), is(1));
+      assertThat(entry[1], is("https://a.example.com/"));
+    }
+    // a host belongs to one shard
+    assertThat(first.owner(URLS[0]), is(first.owner(URLS[1])));
+  }
+
+  @Test
+  public void crawlEndsWhenNoShardHasEntries() throws Exception {
+    InMemoryCrawlStore store = new InMemoryCrawlStore();
+    CrawlPartition first = new CrawlPartition(store, "crawl", 0, 2, CrawlPartition.ShardBy.URL, 10000);
+    CrawlPartition second = new CrawlPartition(store, "crawl", 1, 2, CrawlPartition.ShardBy.URL, 10000);
+
+    CompletableFuture<List<String[]>> other = CompletableFuture.supplyAsync(() -> exchange(second, 0, Collections.<String[]>emptyList()));
+    assertThat(first.exchange(0, Collections.<String[]>emptyList()) == null, is(true));
+    assertThat(other.get() == null, is(true));
+  }
+
+  @Test
+  public void shardsThatLeftAreNotWaitedFor() throws Exception {
+    InMemoryCrawlStore store = new InMemoryCrawlStore();
+    CrawlPartition first = new CrawlPartition(store, "crawl", 0, 2, CrawlPartition.ShardBy.URL, 10000);
+    CrawlPartition second = new CrawlPartition(store, "crawl", 1, 2, CrawlPartition.ShardBy.URL, 10000);
+
+    second.leave();
+    List<String[]> kept = first.exchange(0, Arrays.<String[]>asList(new String[]{URLS[0], null}, new String[]{URLS[3], null}));
+    for (String[] entry : kept) {
+      assertThat(first.owner(entry[0]), is(0));
+    }
+  }
+
+  private static List<String[]> exchange(CrawlPartition partition, int depth, List<String[]> entries) {
+    try {
+      return partition.exchange(depth, entries);
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package com.mule.mulechain.crawler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import com.mule.mulechain.crawler.internal.helpers.HostConcurrencyLimiter;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class HostConcurrencyLimiterTestCase {
+
+  private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+  @Test
+  public void limitDoublesEveryRoundTripUntilTheHostSlowsDown() throws Exception {
+    HostConcurrencyLimiter limiter = new HostConcurrencyLimiter(16);
+    assertThat(limiter.getLimit("example.com"), is(16));
+    HostConcurrencyLimiter.Host host = limiter.acquire("example.com");
+    try {
+      assertThat(limiter.getLimit("example.com"), is(2));
+      respond(host, FAST, 2);
+      assertThat(limiter.getLimit("example.com"), is(4));
+      respond(host, FAST, 4);
+      assertThat(limiter.getLimit("example.com"), is(8));
+
+      // well above twice the fastest latency
+      host.onResponse(SLOW);
+      assertThat(limiter.getLimit("example.com"), is(4));
+      // sent before the decrease, so not counted again
+      host.onResponse(SLOW);
+      assertThat(limiter.getLimit("example.com"), is(4));
+
+      // then one more request per round trip
+      respond(host, FAST, 4);
+      assertThat(limiter.getLimit("example.com"), is(4));
+      respond(host, FAST, 1);
+      assertThat(limiter.getLimit("example.com"), is(5));
+      // never above the maximum
+      respond(host, FAST, 1000);
+      assertThat(limiter.getLimit("example.com"), is(16));
+    } finally {
+      host.release();
+    }
+  }
+
+  @Test
+  public void throttledHostHalvesItsLimit() throws Exception {
+    HostConcurrencyLimiter limiter = new HostConcurrencyLimiter(16);
+    HostConcurrencyLimiter.Host host = limiter.acquire("example.com");
+    try {
+      respond(host, FAST, 6);
+      assertThat(limiter.getLimit("example.com"), is(8));
+      host.onThrottled(0);
+      assertThat(limiter.getLimit("example.com"), is(4));
+      // the other requests in flight answered before the decrease took effect
+      host.onThrottled(0);
+      assertThat(limiter.getLimit("example.com"), is(4));
+
+      for (int expected : new int[] {2, 1, 1}) {
+        Thread.sleep(20);
+        host.onThrottled(0);
+        assertThat(limiter.getLimit("example.com"), is(expected));
+      }
+      // out of slow start, growing by one per round trip
+      respond(host, FAST, 1);
+      assertThat(limiter.getLimit("example.com"), is(2));
+      respond(host, FAST, 2);
+      assertThat(limiter.getLimit("example.com"), is(2));
+      respond(host, FAST, 1);
+      assertThat(limiter.getLimit("example.com"), is(3));
+    } finally {
+      host.release();
+    }
+  }
+
+  @Test
+  public void retryAfterPausesTheHost() throws Exception {
+    HostConcurrencyLimiter limiter = new HostConcurrencyLimiter(4);
+    HostConcurrencyLimiter.Host host = limiter.acquire("example.com");
+    host.onThrottled(300);
+    host.release();
+
+    long start = System.nanoTime();
+    // other hosts are not paused
+    limiter.acquire("other.example.com").release();
+    assertThat(elapsedMillis(start) < 200, is(true));
+    host = limiter.acquire("example.com");
+    assertThat(elapsedMillis(start) >= 250, is(true));
+
+    // a shorter Retry-After does not cut the pause short
+    host.onThrottled(500);
+    host.onThrottled(50);
+    host.release();
+    start = System.nanoTime();
+    host = limiter.acquire("example.com");
+    assertThat(elapsedMillis(start) >= 450, is(true));
+
+    // without a Retry-After only the limit is lowered
+    host.onThrottled(0);
+    host.release();
+    start = System.nanoTime();
+    limiter.acquire("example.com").release();
+    assertThat(elapsedMillis(start) < 200, is(true));
+  }
+
+  private static void respond(HostConcurrencyLimiter.Host host, long latencyNanos, int responses) {
+    for (int i = 0; i < responses; i++) {
+      host.onResponse(latencyNanos);
+    }
+  }
+
+  private static long elapsedMillis(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+}
@@ -0,0 +1,119 @@
+package com.mule.mulechain.crawler;
+
+import static com.mule.mulechain.crawler.PageFetcherTestCase.deleteRecursively;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import com.mule.mulechain.crawler.internal.helpers.CrawlMetrics;
+import com.mule.mulechain.crawler.internal.helpers.JsonLinesSink;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+public class JsonLinesSinkTestCase {
+
+  @Test
+  public void segmentsRotateAtTheRecordLimit() throws Exception {
+    Path directory = Files.createTempDirectory("json-lines");
+    try {
+      try (JsonLinesSink sink = new JsonLinesSink(directory.toString(), 2, 0, JsonLinesSink.Compression.NONE, new CrawlMetrics())) {
+        for (int i = 0; i < 5; i++) {
+          write(sink, i);
+        }
+        assertThat(segments(directory).size(), is(3));
+        // the entries of the segments already closed are on disk while the crawl goes on
+        assertThat(index(directory).size(), is(4));
+      }
+      List<String> index = index(directory);
+      assertThat(index.size(), is(5));
+      for (int i = 0; i < 5; i++) {
+        assertThat(read(directory, index.get(i), false), is(record(i)));
+      }
+    } finally {
+      deleteRecursively(directory.toFile());
+    }
+  }
+
+  @Test
+  public void limitsOfZeroKeepASingleSegment() throws Exception {
+    Path directory = Files.createTempDirectory("json-lines");
+    try {
+      try (JsonLinesSink sink = new JsonLinesSink(directory.toString(), 0, 0, JsonLinesSink.Compression.NONE, new CrawlMetrics())) {
+        for (int i = 0; i < 5; i++) {
+          write(sink, i);
+        }
+      }
+      assertThat(segments(directory).size(), is(1));
+      assertThat(index(directory).size(), is(5));
+    } finally {
+      deleteRecursively(directory.toFile());
+    }
+  }
+
+  @Test
+  public void segmentsRotateAtTheSizeLimit() throws Exception {
+    Path directory = Files.createTempDirectory("json-lines");
+    try {
+      int recordBytes = record(0).getBytes(StandardCharsets.UTF_8).length + 1;
+      try (JsonLinesSink sink = new JsonLinesSink(directory.toString(), 0, 3L * recordBytes, JsonLinesSink.Compression.GZIP, new CrawlMetrics())) {
+        for (int i = 0; i < 5; i++) {
+          write(sink, i);
+        }
+      }
+      assertThat(segments(directory).size(), is(2));
+      // offsets and lengths are in uncompressed bytes
+      List<String> index = index(directory);
+      assertThat(index.get(4).split("\t")[2], is(String.valueOf(recordBytes)));
+      for (int i = 0; i < 5; i++) {
+        assertThat(read(directory, index.get(i), true), is(record(i)));
+      }
+    } finally {
+      deleteRecursively(directory.toFile());
+    }
+  }
+
+  private static void write(JsonLinesSink sink, int page) throws IOException {
+    Map<String, Object> data = Collections.<String, Object>singletonMap("content", "page " + page);
+    sink.write("https://example.com/" + page, "Page", data);
+  }
+
+  private static String record(int page) {
+    return "{\"content\":\"page " + page + "\"}";
+  }
+
+  private static List<String> segments(Path directory) {
+    String[] names = directory.toFile().list((dir, name) -> name.contains(".jsonl"));
+    Arrays.sort(names);
+    return Arrays.asList(names);
+  }
+
+  private static List<String> index(Path directory) throws IOException {
+    String[] names = directory.toFile().list((dir, name) -> name.endsWith(".index"));
+    return Files.readAllLines(directory.resolve(names[0]), StandardCharsets.UTF_8);
+  }
+
+  // the record an index line points to, read back from its segment
+  private static String read(Path directory, String indexLine, boolean gzip) throws IOException {
+    String[] fields = indexLine.split("\t");
+    try (InputStream file = Files.newInputStream(directory.resolve(fields[1]));
+         InputStream in = gzip ? new GZIPInputStream(file) : file) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return new String(out.toByteArray(), Integer.parseInt(fields[2]), Integer.parseInt(fields[3]), StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package com.mule.mulechain.crawler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import com.mule.mulechain.crawler.internal.helpers.KeywordLinkScorer;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class KeywordLinkScorerTestCase {
+
+  @Test
+  public void keywordsCountMoreInAnchorTextThanInUrls() {
+    KeywordLinkScorer scorer = KeywordLinkScorer.create(Arrays.asList("Connector", "api"), null, 0);
+
+    assertThat(scorer.score("https://example.com/docs/connector", null, 1), is(1.0));
+    assertThat(scorer.score("https://example.com/docs/connector", "Connector API reference", 1), is(5.0));
+    assertThat(scorer.score("https://example.com/blog", "Company news", 1), is(0.0));
+    // the host is not matched, every link of the site would share it
+    assertThat(scorer.score("https://api.example.com/", null, 1), is(0.0));
+  }
+
+  @Test
+  public void boostPathsAndPathDepthPenalty() {
+    KeywordLinkScorer scorer = KeywordLinkScorer.create(null, Arrays.asList("/docs", "regex:[?&]lang=en"), 0.5);
+
+    assertThat(scorer.score("https://example.com/docs/guide/intro", null, 1), is(3.5));
+    assertThat(scorer.score("https://example.com/docs?lang=en", null, 1), is(9.5));
+    assertThat(scorer.score("https://example.com/blog/2024/post", null, 1), is(-1.5));
+    assertThat(scorer.score("https://example.com/", null, 1), is(0.0));
+  }
+
+  @Test
+  public void noKeywordsOrBoostsMeansBreadthFirst() {
+    assertThat(KeywordLinkScorer.create(null, null, 1) == null, is(true));
+    assertThat(KeywordLinkScorer.create(Collections.singletonList(" "), Collections.<String>emptyList(), 1) == null, is(true));
+  }
+}
@@ -0,0 +1,118 @@
+package com.mule.mulechain.crawler;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local HTTP server for tests, serving fixed pages and custom handlers by path. Counts the requests to every path and
+ * remembers the client ports they came from, to tell whether connections were reused.
+ */
+class LocalSite implements AutoCloseable {
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final Map<String, HttpHandler> handlers = new ConcurrentHashMap<>();
+  private final Map<String, Integer> delays = new ConcurrentHashMap<>();
+  private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+  private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+  LocalSite() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 64);
+    executor = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "local-site");
+      thread.setDaemon(true);
+      return thread;
+    });
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    server.start();
+  }
+
+  /**
+   * Serves html at path, with links written as href="/a" resolved against this site.
+   */
+  LocalSite page(String path, String html) {
+    return handler(path, exchange -> send(exchange, 200, "text/html; charset=UTF-8", html));
+  }
+
+  LocalSite handler(String path, HttpHandler handler) {
+    handlers.put(path, handler);
+    return this;
+  }
+
+  /**
+   * Answers requests to path only after millis, to make pages complete out of order.
+   */
+  LocalSite delay(String path, int millis) {
+    delays.put(path, millis);
+    return this;
+  }
+
+  String url(String path) {
+    return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path;
+  }
+
+  int requests(String path) {
+    AtomicInteger count = requests.get(path);
+    return count != null ? count.get() : 0;
+  }
+
+  int clientPortCount() {
+    return clientPorts.size();
+  }
+
+  static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+    send(exchange, status, contentType, body.getBytes(StandardCharsets.UTF_8));
+  }
+
+  static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+    if (contentType != null) {
+      exchange.getResponseHeaders().set("Content-Type", contentType);
+    }
+    exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    String path = exchange.getRequestURI().getRawPath();
+    requests.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+    clientPorts.add(exchange.getRemoteAddress().getPort());
+    try {
+      Integer delay = delays.get(path);
+      if (delay != null) {
+        Thread.sleep(delay);
+      }
+      HttpHandler handler = handlers.get(path);
+      if (handler != null) {
+        handler.handle(exchange);
+      } else {
+        send(exchange, 404, "text/plain", "Not found");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      exchange.close();
+    }
+  }
+}
@@ -1,36 +1,232 @@
 package com.mule.mulechain.crawler;
 
+import static com.mule.mulechain.crawler.CrawlEngineTestCase.links;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
-import org.mule.functional.junit4.MuleArtifactFunctionalTestCase;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mule.mulechain.crawler.internal.CrawlBudgetSettings;
+import com.mule.mulechain.crawler.internal.CrawlOutputSettings;
+import com.mule.mulechain.crawler.internal.MulechainwebcrawlerConfiguration;
+import com.mule.mulechain.crawler.internal.MulechainwebcrawlerConnection;
+import com.mule.mulechain.crawler.internal.MulechainwebcrawlerConnectionProvider;
+import com.mule.mulechain.crawler.internal.MulechainwebcrawlerOperations;
+import com.mule.mulechain.crawler.internal.helpers.SiteGraph;
+import com.mule.mulechain.crawler.internal.helpers.crawlingHelper;
 import org.junit.Test;
+import org.mule.runtime.extension.api.annotation.param.Optional;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
-public class MulechainwebcrawlerOperationsTestCase extends MuleArtifactFunctionalTestCase {
+/**
+ * Runs the operations against a local site, with their parameters set to the defaults the runtime would inject.
+ */
+public class MulechainwebcrawlerOperationsTestCase {
 
-  /**
-   * Specifies the mule config xml with the flows that are going to be executed in the tests, this file lives in the test resources.
-   */
-  @Override
-  protected String getConfigFile() {
-    return "test-mule-config.xml";
+  private static LocalSite site() throws Exception {
+    return new LocalSite()
+        .page("/", links("/a", "/b"))
+        .page("/a", links("/b", "/c"))
+        .page("/b", links("/a"))
+        .page("/c", links("/"));
   }
 
   @Test
-  public void executeSayHiOperation() throws Exception {
-    String payloadValue = ((String) flowRunner("sayHiFlow").run()
-                                      .getMessage()
-                                      .getPayload()
-                                      .getValue());
-    assertThat(payloadValue, is("Hello Mariano Gonzalez!!!"));
+  public void sitemapIsTheTreeOfInternalLinks() throws Exception {
+    try (LocalSite site = site()) {
+      MulechainwebcrawlerConfiguration configuration = configuration();
+      try {
+        String sitemap = new MulechainwebcrawlerOperations().getSiteMap(configuration, connection(), site.url("/"), 2, null, false, false,
+                                                                         SiteGraph.Format.JSON_TREE, null, false, budget(0));
+        assertThat(sitemap.replace(site.url(""), ""), is("{\"url\":\"/\",\"children\":["
+            + "{\"url\":\"/a\",\"children\":[{\"url\":\"/b\",\"children\":[]},{\"url\":\"/c\",\"children\":[]}]},"
+            + "{\"url\":\"/b\",\"children\":[{\"url\":\"/a\",\"children\":[]}]}]}"));
+      } finally {
+        configuration.dispose();
+      }
+    }
   }
 
   @Test
-  public void executeRetrieveInfoOperation() throws Exception {
-    String payloadValue = ((String) flowRunner("retrieveInfoFlow")
-                                      .run()
-                                      .getMessage()
-                                      .getPayload()
-                                      .getValue());
-    assertThat(payloadValue, is("Using Configuration [configId] with Connection id [aValue:100]"));
+  public void sitemapStopsAtTheBudget() throws Exception {
+    try (LocalSite site = site()) {
+      MulechainwebcrawlerConfiguration configuration = configuration();
+      try {
+        JsonNode sitemap = crawlingHelper.parseJSON(new MulechainwebcrawlerOperations().getSiteMap(configuration, connection(), site.url("/"), 2, null, false, false,
+                                                                                                  SiteGraph.Format.JSON_TREE, null, false, budget(2))
+                                                        .getBytes(StandardCharsets.UTF_8));
+        assertThat(sitemap.path("budgetExhausted").asText(), is("MAX_PAGES"));
+        assertThat(sitemap.path("children").size(), is(1));
+        assertThat(site.requests("/b"), is(0));
+      } finally {
+        configuration.dispose();
+      }
+    }
+  }
+
+  @Test
+  public void sitemapFileIsWrittenToANewDirectory() throws Exception {
+    Path directory = Files.createTempDirectory("sitemap-test");
+    try (LocalSite site = site()) {
+      MulechainwebcrawlerConfiguration configuration = configuration();
+      try {
+        Path outputFile = directory.resolve("reports").resolve("nightly").resolve("sitemap.json");
+        JsonNode summary = crawlingHelper.parseJSON(new MulechainwebcrawlerOperations().getSiteMap(configuration, connection(), site.url("/"), 2, null, false, false,
+                                                                                                  SiteGraph.Format.JSON_TREE, outputFile.toString(), false, budget(0))
+                                                        .getBytes(StandardCharsets.UTF_8));
+        assertThat(summary.path("file").asText(), is(outputFile.toString()));
+        assertThat(crawlingHelper.parseJSON(Files.readAllBytes(outputFile)).path("children").size(), is(2));
+      } finally {
+        configuration.dispose();
+      }
+    } finally {
+      PageFetcherTestCase.deleteRecursively(directory.toFile());
+    }
+  }
+
+  @Test
+  public void crawlSavesEveryPageOnce() throws Exception {
+    Path downloadPath = Files.createTempDirectory("crawl-test");
+    try (LocalSite site = site()) {
+      MulechainwebcrawlerConfiguration configuration = configuration();
+      try {
+        String result = new MulechainwebcrawlerOperations().crawlWebsite(configuration, connection(), site.url("/"), 2, false, false,
+                                                                         downloadPath.toString(), null, false, false,
+                                                                         withDefaults(new CrawlOutputSettings()), budget(0));
+        JsonNode root = crawlingHelper.parseJSON(result.getBytes(StandardCharsets.UTF_8));
+        List<String> files = new ArrayList<>();
+        List<String> urls = new ArrayList<>();
+        collect(root, site, files, urls);
+        assertThat(urls, is(Arrays.asList("/", "/a", "/b", "/c", "/b", "/a")));
+        // pages reached again at another depth point to no file of their own
+        assertThat(files.get(2), is("Duplicate."));
+        assertThat(files.get(5), is("Duplicate."));
+        assertThat(downloadPath.toFile().list().length, is(4));
+        for (String file : Arrays.asList(files.get(0), files.get(1), files.get(3), files.get(4))) {
+          JsonNode page = crawlingHelper.parseJSON(Files.readAllBytes(new File(downloadPath.toFile(), file).toPath()));
+          assertThat(page.path("title").asText(), is("Page"));
+        }
+      } finally {
+        configuration.dispose();
+      }
+    } finally {
+      for (File file : downloadPath.toFile().listFiles()) {
+        file.delete();
+      }
+      Files.delete(downloadPath);
+    }
+  }
+
+  @Test
+  public void resumedCrawlKeepsWhatReplayedPagesFound() throws Exception {
+    Path downloadPath = Files.createTempDirectory("crawl-test");
+    Path checkpoints = Files.createTempDirectory("crawl-journal");
+    String text = "<p>The connector crawls a website breadth first and saves the content of every page it visits, "
+        + "listing pages already visited again without fetching them, and downloading the images of each page once.</p>";
+    try (LocalSite site = new LocalSite()) {
+      site.page("/", links("/a", "/b", "/c"))
+          .page("/a", "<title>Guide</title>" + text + "<img src=\"/logo.png\">")
+          .page("/b", "<title>B</title><p>Something else entirely, about another subject.</p><img src=\"/logo.png\">")
+          .page("/c", "<title>Guide</title>" + text)
+          .handler("/logo.png", exchange -> LocalSite.send(exchange, 200, "image/png", new byte[] {1, 2, 3}));
+      MulechainwebcrawlerConfiguration configuration = withDefaults(new MulechainwebcrawlerConfiguration());
+      set(configuration, "detectNearDuplicates", true);
+      set(configuration, "checkpointDirectory", checkpoints.toString());
+      configuration.initialise();
+      try {
+        CrawlOutputSettings output = withDefaults(new CrawlOutputSettings());
+        set(output, "outputFormat", CrawlOutputSettings.OutputFormat.JSON_LINES);
+        MulechainwebcrawlerOperations operations = new MulechainwebcrawlerOperations();
+        // stopped by its budget after / and /a, which keeps the journal for the next run to continue from
+        operations.crawlWebsite(configuration, connection(), site.url("/"), 1, false, true, downloadPath.toString(), "resumed", false, false, output, budget(2));
+        assertThat(site.requests("/logo.png"), is(1));
+
+        String result = operations.crawlWebsite(configuration, connection(), site.url("/"), 1, false, true, downloadPath.toString(), "resumed", false, false, output, budget(0));
+        JsonNode children = crawlingHelper.parseJSON(result.getBytes(StandardCharsets.UTF_8)).path("children");
+        assertThat(site.requests("/a"), is(1));
+        // the image of /a was not downloaded again for /b, and /c is still found to be a copy of /a
+        assertThat(site.requests("/logo.png"), is(1));
+        assertThat(children.get(2).path("duplicateOf").asText(), is(site.url("/a")));
+        // /a points into the segment written by the first run, which holds its record
+        String[] location = children.get(0).path("fileName").asText().split("#");
+        byte[] segment = Files.readAllBytes(downloadPath.resolve(location[0]));
+        String record = new String(segment, Integer.parseInt(location[1]), segment.length - Integer.parseInt(location[1]), StandardCharsets.UTF_8);
+        assertThat(crawlingHelper.parseJSON(record.substring(0, record.indexOf('\n')).getBytes(StandardCharsets.UTF_8)).path("title").asText(), is("Guide"));
+      } finally {
+        configuration.dispose();
+      }
+    } finally {
+      PageFetcherTestCase.deleteRecursively(downloadPath.toFile());
+      PageFetcherTestCase.deleteRecursively(checkpoints.toFile());
+    }
+  }
+
+  private static void collect(JsonNode node, LocalSite site, List<String> files, List<String> urls) {
+    urls.add(node.path("url").asText().replace(site.url(""), ""));
+    files.add(node.path("fileName").asText());
+    for (JsonNode child : node.path("children")) {
+      collect(child, site, files, urls);
+    }
+  }
+
+  private static MulechainwebcrawlerConfiguration configuration() throws Exception {
+    MulechainwebcrawlerConfiguration configuration = withDefaults(new MulechainwebcrawlerConfiguration());
+    configuration.initialise();
+    return configuration;
+  }
+
+  private static MulechainwebcrawlerConnection connection() throws Exception {
+    return withDefaults(new MulechainwebcrawlerConnectionProvider()).connect();
+  }
+
+  private static CrawlBudgetSettings budget(int maxPages) throws Exception {
+    CrawlBudgetSettings budget = withDefaults(new CrawlBudgetSettings());
+    set(budget, "maxPages", maxPages);
+    return budget;
+  }
+
+  // parameters are normally injected by the runtime, apply the defaults declared on them instead
+  static <T> T withDefaults(T target) throws ReflectiveOperationException {
+    for (Field field : target.getClass().getDeclaredFields()) {
+      Optional optional = field.getAnnotation(Optional.class);
+      if (optional == null || optional.defaultValue().isEmpty()) {
+        continue;
+      }
+      String value = optional.defaultValue();
+      Class<?> type = field.getType();
+      Object converted;
+      if (type == int.class) {
+        converted = Integer.parseInt(value);
+      } else if (type == double.class) {
+        converted = Double.parseDouble(value);
+      } else if (type == boolean.class) {
+        converted = Boolean.parseBoolean(value);
+      } else if (type.isEnum()) {
+        converted = enumValue(type, value);
+      } else {
+        converted = value;
+      }
+      field.setAccessible(true);
+      field.set(target, converted);
+    }
+    return target;
+  }
+
+  static void set(Object target, String name, Object value) throws ReflectiveOperationException {
+    Field field = target.getClass().getDeclaredField(name);
+    field.setAccessible(true);
+    field.set(target, value);
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static Object enumValue(Class<?> type, String value) {
+    return Enum.valueOf((Class<? extends Enum>) type, value);
   }
 }
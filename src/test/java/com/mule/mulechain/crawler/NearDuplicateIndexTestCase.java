@@ -0,0 +1,83 @@
+package com.mule.mulechain.crawler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import com.mule.mulechain.crawler.internal.helpers.NearDuplicateIndex;
+import com.mule.mulechain.crawler.internal.helpers.SimHash;
+import org.junit.Test;
+
+public class NearDuplicateIndexTestCase {
+
+  private static final long PAGE = 0x9e3779b97f4a7c15L;
+
+  @Test
+  public void pagesWithinTheDistanceAreDuplicates() throws Exception {
+    for (int k = 0; k <= 6; k++) {
+      int width = 64 / (k + 1);
+      // k differing bits, one in each band but the one left whole, so only that band leads to the original
+      for (int whole = 0; whole <= k; whole++) {
+        long near = PAGE;
+        for (int band = 0, flipped = 0; band <= k && flipped < k; band++) {
+          if (band != whole) {
+            near ^= 1L << (band * width);
+            flipped++;
+          }
+        }
+        NearDuplicateIndex index = new NearDuplicateIndex(k);
+        assertThat(index.findOrAdd(PAGE, "original"), is((String) null));
+        assertThat("k=" + k + " whole band " + whole, index.findOrAdd(near, "near"), is("original"));
+      }
+    }
+  }
+
+  @Test
+  public void pagesOneBitFurtherAreNotDuplicates() throws Exception {
+    for (int k = 0; k <= 6; k++) {
+      int width = 64 / (k + 1);
+      // one bit in every band, so no band is shared
+      long spread = PAGE;
+      for (int band = 0; band <= k; band++) {
+        spread ^= 1L << (band * width);
+      }
+      // all in the first band, so the others are shared and the page is compared, then rejected by its distance
+      long together = PAGE ^ ((1L << (k + 1)) - 1);
+
+      for (long far : new long[] {spread, together}) {
+        assertThat(SimHash.distance(PAGE, far), is(k + 1));
+        NearDuplicateIndex index = new NearDuplicateIndex(k);
+        assertThat(index.findOrAdd(PAGE, "original"), is((String) null));
+        assertThat("k=" + k, index.findOrAdd(far, "far"), is((String) null));
+      }
+    }
+  }
+
+  @Test
+  public void pagesNotFoundAreIndexed() throws Exception {
+    NearDuplicateIndex index = new NearDuplicateIndex(3);
+    long other = ~PAGE;
+    assertThat(index.findOrAdd(PAGE, "first"), is((String) null));
+    assertThat(index.findOrAdd(other, "second"), is((String) null));
+    assertThat(index.findOrAdd(PAGE ^ 0b101, "copy of first"), is("first"));
+    assertThat(index.findOrAdd(other ^ (1L << 63), "copy of second"), is("second"));
+    // the bands of the top bits end at the last bit
+    assertThat(index.findOrAdd(PAGE ^ (7L << 61), "edge of first"), is("first"));
+  }
+
+  @Test
+  public void similarTextsHaveCloseHashes() throws Exception {
+    String text = "The connector crawls a website breadth first, saving the content of every page it visits to a file. "
+        + "Links to other sites are not followed, and pages already visited are listed again without being fetched. "
+        + "Images can be downloaded with the pages, and meta tags are returned alongside the text of each page.";
+    String edited = text.replace("breadth first", "depth first");
+    String unrelated = "Quarterly revenue grew in every region, driven by subscriptions and a strong holiday season, "
+        + "while operating costs fell after the move to the new warehouse and the renegotiated shipping contracts.";
+
+    // tokens are compared without case or punctuation
+    assertThat(SimHash.of("Hello, World  of pages"), is(SimHash.of("hello world OF pages!")));
+    assertThat(SimHash.distance(SimHash.of(text), SimHash.of(edited)) <= 10, is(true));
+    assertThat(SimHash.distance(SimHash.of(text), SimHash.of(unrelated)) > 10, is(true));
+    // word order matters
+    assertThat(SimHash.of("one two three four") == SimHash.of("four three two one"), is(false));
+  }
+}
@@ -0,0 +1,122 @@
+package com.mule.mulechain.crawler;
+
+import static com.mule.mulechain.crawler.CrawlEngineTestCase.links;
+import static com.mule.mulechain.crawler.MulechainwebcrawlerOperationsTestCase.set;
+import static com.mule.mulechain.crawler.MulechainwebcrawlerOperationsTestCase.withDefaults;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mule.mulechain.crawler.internal.CrawlBudgetSettings;
+import com.mule.mulechain.crawler.internal.MulechainwebcrawlerConfiguration;
+import com.mule.mulechain.crawler.internal.MulechainwebcrawlerConnectionProvider;
+import com.mule.mulechain.crawler.internal.PageChangeSource;
+import com.mule.mulechain.crawler.internal.helpers.crawlingHelper;
+import org.junit.Test;
+import org.mule.runtime.extension.api.runtime.operation.Result;
+import org.mule.runtime.extension.api.runtime.source.PollContext;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+public class PageChangeSourceTestCase {
+
+  @Test
+  public void failedFetchesReportNoRemovedPages() throws Exception {
+    try (LocalSite site = new LocalSite().page("/", links("/a", "/b")).page("/a", links("/c")).page("/b", links())
+        .page("/c", links())) {
+      MulechainwebcrawlerConfiguration configuration = configuration();
+      try {
+        PageChangeSource source = source(configuration, site);
+        assertThat(poll(source, site), is(Arrays.asList("NEW /", "NEW /a", "NEW /b", "NEW /c")));
+
+        // the links of /a are not followed, so /c is not known to be gone either
+        site.handler("/a", exchange -> LocalSite.send(exchange, 500, "text/plain", "Server error"));
+        assertThat(poll(source, site), is(Collections.<String>emptyList()));
+
+        // an outage keeps the hashes of the last poll that reached the site
+        site.handler("/", exchange -> LocalSite.send(exchange, 500, "text/plain", "Server error"));
+        assertThat(poll(source, site), is(Collections.<String>emptyList()));
+
+        site.page("/", links("/a", "/b")).page("/a", links("/c"));
+        assertThat(poll(source, site), is(Collections.<String>emptyList()));
+      } finally {
+        configuration.dispose();
+      }
+    }
+  }
+
+  @Test
+  public void pagesGoneOrNoLongerLinkedAreRemoved() throws Exception {
+    try (LocalSite site = new LocalSite().page("/", links("/a", "/b")).page("/a", links("/c")).page("/b", links())
+        .page("/c", links())) {
+      MulechainwebcrawlerConfiguration configuration = configuration();
+      try {
+        PageChangeSource source = source(configuration, site);
+        assertThat(poll(source, site).size(), is(4));
+
+        site.handler("/b", exchange -> LocalSite.send(exchange, 404, "text/plain", "Not found"));
+        assertThat(poll(source, site), is(Collections.singletonList("REMOVED /b")));
+
+        // a page answering 404 does not hide the pages another page stopped linking to
+        site.page("/a", links());
+        assertThat(poll(source, site), is(Arrays.asList("CHANGED /a", "REMOVED /c")));
+      } finally {
+        configuration.dispose();
+      }
+    }
+  }
+
+  private static PageChangeSource source(MulechainwebcrawlerConfiguration configuration, LocalSite site) throws Exception {
+    PageChangeSource source = withDefaults(new PageChangeSource());
+    set(source, "configuration", configuration);
+    set(source, "connection", withDefaults(new MulechainwebcrawlerConnectionProvider()).connect());
+    set(source, "url", site.url("/"));
+    set(source, "maxDepth", 2);
+    set(source, "budget", withDefaults(new CrawlBudgetSettings()));
+    return source;
+  }
+
+  /**
+   * Polls once and returns the change and path of every event, in the order they were emitted.
+   */
+  @SuppressWarnings("unchecked")
+  private static List<String> poll(PageChangeSource source, LocalSite site) throws Exception {
+    List<String> events = new ArrayList<>();
+    PollContext<String, Void> context = (PollContext<String, Void>) Proxy.newProxyInstance(
+        PollContext.class.getClassLoader(), new Class<?>[] {PollContext.class}, (proxy, method, args) -> {
+          if (method.getName().equals("accept")) {
+            List<Result<String, Void>> results = new ArrayList<>();
+            ((Consumer<PollContext.PollItem<String, Void>>) args[0]).accept(item(results));
+            JsonNode event = crawlingHelper.parseJSON(results.get(0).getOutput().getBytes(StandardCharsets.UTF_8));
+            events.add(event.path("change").asText() + " " + event.path("url").asText().replace(site.url(""), ""));
+            return PollContext.PollItemStatus.ACCEPTED;
+          }
+          return method.getName().equals("isSourceStopping") ? false : null;
+        });
+    source.poll(context);
+    return events;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static PollContext.PollItem<String, Void> item(List<Result<String, Void>> results) {
+    return (PollContext.PollItem<String, Void>) Proxy.newProxyInstance(
+        PollContext.PollItem.class.getClassLoader(), new Class<?>[] {PollContext.PollItem.class}, (proxy, method, args) -> {
+          if (method.getName().equals("setResult")) {
+            results.add((Result<String, Void>) args[0]);
+          }
+          return proxy;
+        });
+  }
+
+  private static MulechainwebcrawlerConfiguration configuration() throws Exception {
+    MulechainwebcrawlerConfiguration configuration = withDefaults(new MulechainwebcrawlerConfiguration());
+    configuration.initialise();
+    return configuration;
+  }
+}
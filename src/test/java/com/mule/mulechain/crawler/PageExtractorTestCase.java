@@ -0,0 +1,82 @@
+package com.mule.mulechain.crawler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mule.mulechain.crawler.internal.helpers.crawlingHelper;
+import com.mule.mulechain.crawler.internal.helpers.crawlingHelper.PageInsightType;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the content, insights and meta tags of fixture documents with what the helpers returned before they were
+ * built on the single pass extractor. The expected outputs in extraction/*.json were recorded with that implementation,
+ * with links classified by exact host as {@code crawlingHelper.isExternalLink} does now, so mailto: links are external
+ * and hosts differing only in case are the same site.
+ */
+public class PageExtractorTestCase {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static final List<String> TAGS = Arrays.asList("h1", "p", "pre", "div");
+
+  @Test
+  public void articleOutputIsUnchanged() throws Exception {
+    assertUnchanged("article");
+  }
+
+  @Test
+  public void nestedBlocksOutputIsUnchanged() throws Exception {
+    assertUnchanged("nested");
+  }
+
+  @Test
+  public void preformattedOutputIsUnchanged() throws Exception {
+    assertUnchanged("preformatted");
+  }
+
+  private static void assertUnchanged(String fixture) throws Exception {
+    Document document = Jsoup.parse(resource(fixture + ".html"), "https://example.com/docs/page.html");
+    Map<String, Object> outputs = new LinkedHashMap<>();
+    outputs.put("content", crawlingHelper.getPageContent(document, null));
+    outputs.put("taggedContent", crawlingHelper.getPageContent(document, TAGS));
+    outputs.put("insights", crawlingHelper.getPageInsights(document, null, PageInsightType.ALL));
+    outputs.put("taggedInsights", crawlingHelper.getPageInsights(document, TAGS, PageInsightType.ALL));
+    outputs.put("statistics", crawlingHelper.getPageInsights(document, null, PageInsightType.ELEMENTCOUNTSTATS));
+    outputs.put("metaTags", crawlingHelper.getPageMetaTags(document));
+
+    JsonNode expected = MAPPER.readTree(resource(fixture + ".json"));
+    JsonNode actual = MAPPER.valueToTree(outputs);
+    // one output at a time, so a failure names the one that changed
+    for (Iterator<String> names = expected.fieldNames(); names.hasNext(); ) {
+      String name = names.next();
+      assertThat(fixture + " " + name, actual.get(name), is(expected.get(name)));
+    }
+    assertThat(actual.size(), is(expected.size()));
+  }
+
+  private static String resource(String name) throws IOException {
+    try (InputStream in = PageExtractorTestCase.class.getResourceAsStream("/extraction/" + name)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,317 @@
+package com.mule.mulechain.crawler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import com.mule.mulechain.crawler.internal.helpers.FetchedPage;
+import com.mule.mulechain.crawler.internal.helpers.HttpCache;
+import com.mule.mulechain.crawler.internal.helpers.PageFetcher;
+import org.jsoup.HttpStatusException;
+import org.jsoup.UnsupportedMimeTypeException;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+public class PageFetcherTestCase {
+
+  private static PageFetcher fetcher() {
+    return fetcher(0);
+  }
+
+  private static PageFetcher fetcher(long maxBodyBytes) {
+    return new PageFetcher(5000, 5000, "test", 8, true, null, maxBodyBytes);
+  }
+
+  @Test
+  public void connectionsAreKeptAlive() throws Exception {
+    try (LocalSite site = new LocalSite()) {
+      site.page("/a", "<title>A</title>").page("/b", "<title>B</title>");
+      PageFetcher fetcher = fetcher();
+      for (int i = 0; i < 5; i++) {
+        assertThat(fetcher.getDocument(site.url("/a")).title(), is("A"));
+        assertThat(fetcher.getDocument(site.url("/b")).title(), is("B"));
+      }
+      assertThat(site.requests("/a"), is(5));
+      assertThat(site.clientPortCount(), is(1));
+    }
+  }
+
+  @Test
+  public void connectionsAreReusedAfterRedirectsAndErrors() throws Exception {
+    try (LocalSite site = new LocalSite()) {
+      site.page("/new", "<title>New</title>")
+          .handler("/old", exchange -> {
+            exchange.getResponseHeaders().set("Location", "/new");
+            LocalSite.send(exchange, 301, "text/html", "<title>Moved</title>");
+          })
+          .handler("/broken", exchange -> LocalSite.send(exchange, 500, "text/html", "<title>Error</title>"));
+      PageFetcher fetcher = fetcher();
+      Document document = fetcher.getDocument(site.url("/old"));
+      assertThat(document.title(), is("New"));
+      assertThat(document.location(), is(site.url("/new")));
+      try {
+        fetcher.getDocument(site.url("/broken"));
+        throw new AssertionError("Expected the 500 to fail the request");
+      } catch (HttpStatusException e) {
+        assertThat(e.getStatusCode(), is(500));
+      }
+      assertThat(fetcher.getDocument(site.url("/new")).title(), is("New"));
+      // the bodies of the redirect and the error were drained, not left on the connection
+      assertThat(site.clientPortCount(), is(1));
+    }
+  }
+
+  @Test
+  public void unchangedPagesAreServedFromTheCache() throws Exception {
+    Path cacheDirectory = Files.createTempDirectory("http-cache");
+    try (LocalSite site = new LocalSite()) {
+      AtomicReference<String> version = new AtomicReference<>("v1");
+      List<String> conditions = Collections.synchronizedList(new ArrayList<>());
+      site.handler("/page", exchange -> {
+        String etag = "\"" + version.get() + "\"";
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        conditions.add(String.valueOf(ifNoneMatch));
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (etag.equals(ifNoneMatch)) {
+          LocalSite.send(exchange, 304, null, new byte[0]);
+        } else {
+          LocalSite.send(exchange, 200, "text/html; charset=UTF-8", "<title>Page " + version.get() + "</title>");
+        }
+      });
+      PageFetcher fetcher = new PageFetcher(5000, 5000, "test", 8, true, new HttpCache(cacheDirectory), 0);
+
+      FetchedPage first = fetcher.fetch(site.url("/page"));
+      assertThat(first.isUnchanged(), is(false));
+      FetchedPage revalidated = fetcher.fetch(site.url("/page"));
+      assertThat(revalidated.isUnchanged(), is(true));
+      assertThat(revalidated.getBytesDownloaded(), is(0L));
+      assertThat(revalidated.getDocument().title(), is("Page v1"));
+      assertThat(revalidated.getDocument().location(), is(site.url("/page")));
+
+      // a changed page is downloaded again and replaces the cached body
+      version.set("v2");
+      FetchedPage changed = fetcher.fetch(site.url("/page"));
+      assertThat(changed.isUnchanged(), is(false));
+      assertThat(changed.getDocument().title(), is("Page v2"));
+      FetchedPage revalidatedAgain = fetcher.fetch(site.url("/page"));
+      assertThat(revalidatedAgain.isUnchanged(), is(true));
+      assertThat(revalidatedAgain.getDocument().title(), is("Page v2"));
+
+      assertThat(conditions, is(Arrays.asList("null", "\"v1\"", "\"v1\"", "\"v2\"")));
+    } finally {
+      deleteRecursively(cacheDirectory.toFile());
+    }
+  }
+
+  @Test
+  public void pagesWithoutValidatorsAreNotCached() throws Exception {
+    Path cacheDirectory = Files.createTempDirectory("http-cache");
+    try (LocalSite site = new LocalSite()) {
+      List<String> conditions = Collections.synchronizedList(new ArrayList<>());
+      site.handler("/page", exchange -> {
+        conditions.add(exchange.getRequestHeaders().getFirst("If-Modified-Since") + " " + exchange.getRequestHeaders().getFirst("If-None-Match"));
+        LocalSite.send(exchange, 200, "text/html", "<title>Page</title>");
+      });
+      PageFetcher fetcher = new PageFetcher(5000, 5000, "test", 8, true, new HttpCache(cacheDirectory), 0);
+      assertThat(fetcher.fetch(site.url("/page")).isUnchanged(), is(false));
+      assertThat(fetcher.fetch(site.url("/page")).isUnchanged(), is(false));
+      assertThat(conditions, is(Arrays.asList("null null", "null null")));
+      assertThat(cacheDirectory.toFile().list().length, is(0));
+    } finally {
+      deleteRecursively(cacheDirectory.toFile());
+    }
+  }
+
+  @Test
+  public void announcedBodiesOverTheLimitAreNotDownloaded() throws Exception {
+    try (LocalSite site = new LocalSite()) {
+      site.page("/large", page(4096)).page("/small", "<title>Small</title>");
+      PageFetcher fetcher = fetcher(1024);
+      // more times than the host has permits, so a permit not given back would block the next request
+      for (int i = 0; i < 10; i++) {
+        assertTooLarge(fetcher, site.url("/large"));
+      }
+      assertThat(fetcher.getDocument(site.url("/small")).title(), is("Small"));
+    }
+  }
+
+  @Test
+  public void streamedBodiesAreCutAtTheLimit() throws Exception {
+    try (LocalSite site = new LocalSite()) {
+      byte[] body = page(4096).getBytes(StandardCharsets.UTF_8);
+      // chunked, so the size is only known once the body has been read
+      site.handler("/chunked", exchange -> {
+        exchange.getResponseHeaders().set("Content-Type", "text/html");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+          out.write(body);
+        }
+      });
+      assertThat(fetcher(body.length).getDocument(site.url("/chunked")).title(), is("Large"));
+      assertTooLarge(fetcher(body.length - 1), site.url("/chunked"));
+    }
+  }
+
+  @Test
+  public void compressedBodiesAreLimitedOnceDecompressed() throws Exception {
+    try (LocalSite site = new LocalSite()) {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+        gzip.write(page(1024 * 1024).getBytes(StandardCharsets.UTF_8));
+      }
+      site.handler("/bomb", exchange -> {
+        exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        LocalSite.send(exchange, 200, "text/html", compressed.toByteArray());
+      });
+      // a few KB on the wire, far below the limit that the megabyte it expands to is over
+      assertThat(compressed.size() < 64 * 1024, is(true));
+      assertTooLarge(fetcher(64 * 1024), site.url("/bomb"));
+    }
+  }
+
+  @Test
+  public void throttledRequestsAreRetriedAfterTheRetryAfter() throws Exception {
+    try (LocalSite site = new LocalSite()) {
+      AtomicInteger seconds = new AtomicInteger();
+      AtomicInteger date = new AtomicInteger();
+      site.handler("/seconds", exchange -> {
+        if (seconds.getAndIncrement() == 0) {
+          exchange.getResponseHeaders().set("Retry-After", "1");
+          LocalSite.send(exchange, 429, "text/html", "<title>Slow down</title>");
+        } else {
+          LocalSite.send(exchange, 200, "text/html", "<title>Seconds</title>");
+        }
+      }).handler("/date", exchange -> {
+        if (date.getAndIncrement() == 0) {
+          // HTTP dates have a resolution of a second, so this is between one and two seconds away
+          exchange.getResponseHeaders().set("Retry-After", DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(2)));
+          LocalSite.send(exchange, 503, "text/html", "<title>Unavailable</title>");
+        } else {
+          LocalSite.send(exchange, 200, "text/html", "<title>Date</title>");
+        }
+      });
+      PageFetcher fetcher = fetcher();
+
+      long start = System.nanoTime();
+      assertThat(fetcher.getDocument(site.url("/seconds")).title(), is("Seconds"));
+      assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 900, is(true));
+      start = System.nanoTime();
+      assertThat(fetcher.getDocument(site.url("/date")).title(), is("Date"));
+      assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 900, is(true));
+      assertThat(site.requests("/seconds"), is(2));
+      assertThat(site.requests("/date"), is(2));
+    }
+  }
+
+  @Test
+  public void throttledRequestsGiveUpAfterTwoRetries() throws Exception {
+    try (LocalSite site = new LocalSite()) {
+      site.handler("/busy", exchange -> {
+        exchange.getResponseHeaders().set("Retry-After", "0");
+        LocalSite.send(exchange, 503, "text/html", "<title>Unavailable</title>");
+      });
+      try {
+        fetcher().getDocument(site.url("/busy"));
+        throw new AssertionError("Expected the 503 to fail the request");
+      } catch (HttpStatusException e) {
+        assertThat(e.getStatusCode(), is(503));
+      }
+      assertThat(site.requests("/busy"), is(3));
+    }
+  }
+
+  @Test
+  public void retryAfterOverTwoMinutesIsNotWaitedFor() throws Exception {
+    try (LocalSite site = new LocalSite()) {
+      site.handler("/later", exchange -> {
+        exchange.getResponseHeaders().set("Retry-After", "3600");
+        LocalSite.send(exchange, 429, "text/html", "<title>Come back later</title>");
+      });
+      PageFetcher fetcher = fetcher();
+      long start = System.nanoTime();
+      try {
+        fetcher.getDocument(site.url("/later"));
+        throw new AssertionError("Expected the 429 to fail the request");
+      } catch (HttpStatusException e) {
+        assertThat(e.getStatusCode(), is(429));
+      }
+      assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000, is(true));
+      assertThat(site.requests("/later"), is(1));
+
+      // the host is still paused, for at most the two minutes
+      AtomicReference<Throwable> failure = new AtomicReference<>();
+      Thread next = new Thread(() -> {
+        try {
+          fetcher.getHostLimiter().acquire(new URL(site.url("/")).getHost()).release();
+        } catch (Throwable e) {
+          failure.set(e);
+        }
+      });
+      next.start();
+      next.join(300);
+      assertThat(next.isAlive(), is(true));
+      next.interrupt();
+      next.join(5000);
+      assertThat(failure.get() instanceof InterruptedIOException, is(true));
+    }
+  }
+
+  @Test
+  public void binaryResponsesAreRejectedFromTheirHeaders() throws Exception {
+    try (LocalSite site = new LocalSite()) {
+      site.handler("/image", exchange -> LocalSite.send(exchange, 200, "image/png", new byte[64 * 1024]));
+      try {
+        fetcher().getDocument(site.url("/image"));
+        throw new AssertionError("Expected the image to be rejected");
+      } catch (UnsupportedMimeTypeException e) {
+        assertThat(e.getMimeType(), is("image/png"));
+      }
+    }
+  }
+
+  private static void assertTooLarge(PageFetcher fetcher, String url) throws Exception {
+    try {
+      fetcher.getDocument(url);
+      throw new AssertionError("Expected the body of " + url + " to exceed the limit");
+    } catch (PageFetcher.BodyTooLargeException e) {
+      // expected
+    }
+  }
+
+  private static String page(int size) {
+    StringBuilder html = new StringBuilder("<html><head><title>Large</title></head><body><p>");
+    while (html.length() < size - "</p></body></html>".length()) {
+      html.append('a');
+    }
+    return html.append("</p></body></html>").toString();
+  }
+
+  static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+}
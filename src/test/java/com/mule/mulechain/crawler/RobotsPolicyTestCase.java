@@ -0,0 +1,65 @@
+package com.mule.mulechain.crawler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import com.mule.mulechain.crawler.internal.helpers.RobotsPolicy;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class RobotsPolicyTestCase {
+
+  private static final String USER_AGENT = "Mozilla/5.0 (compatible; MACWebCrawler/0.1.0)";
+
+  private static final String ROBOTS_TXT =
+      "User-agent: *\n" +
+      "Disallow: /private/\n" +
+      "Crawl-delay: 5\n" +
+      "\n" +
+      "User-agent: MACWebCrawler\n" +
+      "Disallow: /search\n" +
+      "Disallow: /*.pdf$\n" +
+      "Allow: /search/help\n" +
+      "Crawl-delay: 0.5\n" +
+      "\n" +
+      "Sitemap: https://example.com/sitemap_index.xml\n";
+
+  @Test
+  public void mostSpecificGroupApplies() throws Exception {
+    RobotsPolicy policy = RobotsPolicy.parse(ROBOTS_TXT, USER_AGENT);
+    // only the rules of the MACWebCrawler group are used
+    assertThat(policy.isAllowed("/private/page"), is(true));
+    assertThat(policy.isAllowed("/search?q=mule"), is(false));
+    assertThat(policy.getCrawlDelayMillis(), is(500L));
+  }
+
+  @Test
+  public void longestMatchWins() throws Exception {
+    RobotsPolicy policy = RobotsPolicy.parse(ROBOTS_TXT, USER_AGENT);
+    assertThat(policy.isAllowed("/search/help"), is(true));
+    assertThat(policy.isAllowed("/docs/guide.pdf"), is(false));
+    assertThat(policy.isAllowed("/docs/guide.pdf?download=1"), is(true));
+  }
+
+  @Test
+  public void wildcardGroupAppliesToOtherAgents() throws Exception {
+    RobotsPolicy policy = RobotsPolicy.parse(ROBOTS_TXT, "OtherBot/1.0");
+    assertThat(policy.isAllowed("/private/page"), is(false));
+    assertThat(policy.isAllowed("/search"), is(true));
+    assertThat(policy.getCrawlDelayMillis(), is(5000L));
+  }
+
+  @Test
+  public void sitemapsAreListed() throws Exception {
+    RobotsPolicy policy = RobotsPolicy.parse(ROBOTS_TXT, USER_AGENT);
+    assertThat(policy.getSitemaps(), is(Collections.singletonList("https://example.com/sitemap_index.xml")));
+  }
+
+  @Test
+  public void emptyFileAllowsEverything() throws Exception {
+    RobotsPolicy policy = RobotsPolicy.parse("", USER_AGENT);
+    assertThat(policy.isAllowed("/anything"), is(true));
+    assertThat(policy.getCrawlDelayMillis(), is(0L));
+  }
+}
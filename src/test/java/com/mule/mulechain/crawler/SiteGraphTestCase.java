@@ -0,0 +1,90 @@
+package com.mule.mulechain.crawler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import com.mule.mulechain.crawler.internal.helpers.SiteGraph;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class SiteGraphTestCase {
+
+  @Test
+  public void treeIsWrittenAsNestedNodes() throws Exception {
+    SiteGraph graph = new SiteGraph();
+    graph.addNode("https://example.com/", null, 0);
+    graph.addNode("https://example.com/a", "https://example.com/", 1);
+    graph.addNode("https://example.com/b", "https://example.com/", 1);
+    // found again one depth deeper, from a
+    graph.addNode("https://example.com/b", "https://example.com/a", 2);
+    // its parent is not in the tree
+    assertThat(graph.addNode("https://example.com/c", "https://example.com/missing", 1), is(-1));
+
+    StringWriter out = new StringWriter();
+    graph.writeJsonTree(out, false, Collections.<String, Object>singletonMap("budgetExhausted", "MAX_PAGES"));
+    assertThat(out.toString(), is("{\"url\":\"https://example.com/\",\"children\":["
+        + "{\"url\":\"https://example.com/a\",\"children\":[{\"url\":\"https://example.com/b\",\"children\":[]}]},"
+        + "{\"url\":\"https://example.com/b\",\"children\":[]}],\"budgetExhausted\":\"MAX_PAGES\"}"));
+  }
+
+  @Test
+  public void deepTreesAreWrittenWithoutRecursion() throws Exception {
+    SiteGraph graph = new SiteGraph();
+    graph.addNode("https://example.com/0", null, 0);
+    int depth = 400;
+    for (int i = 1; i <= depth; i++) {
+      graph.addNode("https://example.com/" + i, "https://example.com/" + (i - 1), i);
+    }
+    StringWriter out = new StringWriter();
+    graph.writeJsonTree(out, false, null);
+    assertThat(out.toString().endsWith("\"children\":[]" + repeat("}]", depth) + "}"), is(true));
+  }
+
+  @Test
+  public void linksAreCountedOncePerPage() throws Exception {
+    SiteGraph graph = new SiteGraph();
+    graph.addNode("https://example.com/", null, 0);
+    graph.addLinks("https://example.com/", Arrays.asList("https://example.com/a", "https://example.com/b", "https://example.com/a", "https://example.com/"));
+    graph.addLinks("https://example.com/a", Collections.singletonList("https://example.com/b"));
+    graph.addLinks("https://example.com/b", Collections.singletonList("https://example.com/"));
+
+    StringWriter out = new StringWriter();
+    graph.writeEdgeList(out);
+    assertThat(out.toString(), is("https://example.com/\thttps://example.com/a\n"
+        + "https://example.com/\thttps://example.com/b\n"
+        + "https://example.com/a\thttps://example.com/b\n"
+        + "https://example.com/b\thttps://example.com/\n"));
+    // by url id, in the order the urls were first seen
+    assertThat(Arrays.toString(graph.inDegrees()), is("[1, 1, 2]"));
+
+    double[] ranks = graph.pageRank();
+    assertThat(Math.abs(ranks[0] + ranks[1] + ranks[2] - 1) < 1e-6, is(true));
+    assertThat(ranks[2] > ranks[1], is(true));
+  }
+
+  @Test
+  public void sitemapXmlListsEveryUrlOnce() throws Exception {
+    SiteGraph graph = new SiteGraph();
+    graph.addNode("https://example.com/", null, 0);
+    graph.addNode("https://example.com/?a=1&b=2", "https://example.com/", 1);
+    graph.addNode("https://example.com/", "https://example.com/?a=1&b=2", 2);
+
+    StringWriter out = new StringWriter();
+    graph.writeSitemapXml(out, false);
+    assertThat(out.toString(), is("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n"
+        + "<url><loc>https://example.com/</loc></url>\n"
+        + "<url><loc>https://example.com/?a=1&amp;b=2</loc></url>\n"
+        + "</urlset>\n"));
+  }
+
+  private static String repeat(String text, int times) {
+    StringBuilder repeated = new StringBuilder();
+    for (int i = 0; i < times; i++) {
+      repeated.append(text);
+    }
+    return repeated.toString();
+  }
+}
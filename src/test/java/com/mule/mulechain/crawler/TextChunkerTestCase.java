@@ -0,0 +1,110 @@
+package com.mule.mulechain.crawler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import com.mule.mulechain.crawler.internal.helpers.TextChunk;
+import com.mule.mulechain.crawler.internal.helpers.TextChunker;
+import org.jsoup.Jsoup;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TextChunkerTestCase {
+
+  private static final String PAGE =
+      "<html><head><title>Guide</title></head><body>" +
+      "<h1>Mule</h1><p>Mule is a runtime. It runs integrations.</p>" +
+      "<h2>Install</h2><p>Download the runtime. Unzip it.</p>" +
+      "<h3>Linux</h3><p>Run the script.</p>" +
+      "<h2>Run</h2><p>Start it with <b>mule</b> start.</p>" +
+      "</body></html>";
+
+  private static List<TextChunk> chunk(String html, TextChunker.Unit unit, int size, int overlap) {
+    List<TextChunk> chunks = new ArrayList<>();
+    new TextChunker(Jsoup.parse(html, "https://example.com/guide"), null, unit, size, overlap).forEachRemaining(chunks::add);
+    return chunks;
+  }
+
+  @Test
+  public void headingsStartChunksAndFormTheirPath() {
+    List<TextChunk> chunks = chunk(PAGE, TextChunker.Unit.WORDS, 100, 0);
+    assertThat(chunks.size(), is(4));
+    assertThat(chunks.get(0).getHeadingPath(), is(Collections.singletonList("Mule")));
+    assertThat(chunks.get(2).getHeadingPath(), is(Arrays.asList("Mule", "Install", "Linux")));
+    // a heading closes the deeper levels
+    assertThat(chunks.get(3).getHeadingPath(), is(Arrays.asList("Mule", "Run")));
+    assertThat(chunks.get(3).getContent(), is("Run\n\nStart it with mule start."));
+    assertThat(chunks.get(3).getTitle(), is("Guide"));
+    assertThat(chunks.get(3).getIndex(), is(3));
+  }
+
+  @Test
+  public void longSectionsAreSplitWithOverlap() {
+    StringBuilder html = new StringBuilder("<p>");
+    for (int i = 0; i < 50; i++) {
+      html.append("w").append(i).append(' ');
+    }
+    html.append("</p>");
+
+    List<TextChunk> chunks = chunk(html.toString(), TextChunker.Unit.WORDS, 20, 5);
+    for (TextChunk chunk : chunks) {
+      assertThat(chunk.getSize() <= 20, is(true));
+    }
+    assertThat(chunks.get(0).getContent().endsWith("w19"), is(true));
+    assertThat(chunks.get(1).getContent().startsWith("w15 w16 w17 w18 w19 w20"), is(true));
+    assertThat(chunks.get(chunks.size() - 1).getContent().endsWith("w49"), is(true));
+  }
+
+  @Test
+  public void chunksAreCutAtParagraphs() {
+    String html = "<p>one two three four five six</p><p>seven eight nine ten</p>";
+    List<TextChunk> chunks = chunk(html, TextChunker.Unit.WORDS, 8, 0);
+    assertThat(chunks.get(0).getContent(), is("one two three four five six"));
+    assertThat(chunks.get(1).getContent(), is("seven eight nine ten"));
+  }
+
+  @Test
+  public void overlapGivesWayToTheWordsCarriedOver() {
+    // the cut at the second paragraph carries c d e f over, and gggggggggg does not fit beside them and the overlap bbbbbbb
+    List<TextChunk> chunks = chunk("<p>a bbbbbbb</p><p>c d e f gggggggggg h</p>", TextChunker.Unit.CHARACTERS, 20, 10);
+    assertThat(chunks.get(0).getContent(), is("a bbbbbbb"));
+    assertThat(chunks.get(1).getContent(), is("c d e f gggggggggg h"));
+    for (TextChunk chunk : chunks) {
+      assertThat(chunk.getContent(), chunk.getSize() <= 20, is(true));
+    }
+  }
+
+  @Test
+  public void chunksNeverExceedTheMaximumSize() {
+    StringBuilder html = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      html.append(i % 7 == 0 ? "<p>" : "");
+      for (int length = 0; length < 1 + (i * 31) % 12; length++) {
+        html.append((char) ('a' + length));
+      }
+      html.append(i % 5 == 0 ? ". " : " ");
+    }
+    for (TextChunker.Unit unit : TextChunker.Unit.values()) {
+      for (int size = 14; size <= 62; size += 6) {
+        for (int overlap = 0; overlap <= size / 2; overlap += 3) {
+          for (TextChunk chunk : chunk(html.toString(), unit, size, overlap)) {
+            assertThat(unit + " " + size + " " + overlap + " " + chunk.getContent(), chunk.getSize() <= size, is(true));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void charactersAreCounted() {
+    List<TextChunk> chunks = chunk(PAGE, TextChunker.Unit.CHARACTERS, 30, 0);
+    for (TextChunk chunk : chunks) {
+      assertThat(chunk.getSize(), is(chunk.getContent().replace("\n\n", " ").length()));
+      assertThat(chunk.getSize() <= 30, is(true));
+    }
+  }
+}
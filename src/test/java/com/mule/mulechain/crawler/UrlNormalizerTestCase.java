@@ -0,0 +1,48 @@
+package com.mule.mulechain.crawler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import com.mule.mulechain.crawler.internal.helpers.LongHashSet;
+import com.mule.mulechain.crawler.internal.helpers.UrlNormalizer;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class UrlNormalizerTestCase {
+
+  private final UrlNormalizer normalizer = new UrlNormalizer(Arrays.asList("utm_*", "sessionid"));
+
+  @Test
+  public void variantsOfTheSamePageAreEqual() {
+    String expected = "https://docs.example.com/docs";
+    assertThat(normalizer.normalize("https://docs.example.com/docs"), is(expected));
+    assertThat(normalizer.normalize("https://docs.example.com/docs/"), is(expected));
+    assertThat(normalizer.normalize("https://docs.example.com/docs#intro"), is(expected));
+    assertThat(normalizer.normalize("https://docs.example.com/docs?utm_source=x&utm_medium=y"), is(expected));
+    assertThat(normalizer.normalize("HTTPS://Docs.Example.com:443/docs"), is(expected));
+  }
+
+  @Test
+  public void meaningfulQueryParametersAreKept() {
+    assertThat(normalizer.normalize("http://example.com:8080/search?q=mule&sessionid=1&page=2"),
+               is("http://example.com:8080/search?q=mule&page=2"));
+  }
+
+  @Test
+  public void rootPathIsKept() {
+    assertThat(normalizer.normalize("https://example.com"), is("https://example.com/"));
+  }
+
+  @Test
+  public void fingerprintSetDeduplicates() {
+    LongHashSet visited = new LongHashSet();
+    for (int i = 0; i < 10000; i++) {
+      assertThat(visited.add(UrlNormalizer.fingerprint("https://example.com/page/" + i)), is(true));
+    }
+    assertThat(visited.add(UrlNormalizer.fingerprint("https://example.com/page/42")), is(false));
+    assertThat(visited.add(0L), is(true));
+    assertThat(visited.contains(0L), is(true));
+    assertThat(visited.size(), is(10001));
+  }
+}
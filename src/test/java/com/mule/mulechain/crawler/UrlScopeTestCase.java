@@ -0,0 +1,65 @@
+package com.mule.mulechain.crawler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import com.mule.mulechain.crawler.internal.helpers.PageExtract;
+import com.mule.mulechain.crawler.internal.helpers.PageExtractor;
+import com.mule.mulechain.crawler.internal.helpers.UrlScope;
+import org.jsoup.Jsoup;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+
+public class UrlScopeTestCase {
+
+  @Test
+  public void linksAreClassifiedByHostNotBySubstring() throws Exception {
+    String html = "<a href='https://evil.com/?x=docs.mulesoft.com'>a</a>"
+        + "<a href='https://docs.mulesoft.com.evil.com/'>b</a>"
+        + "<a href='https://api.docs.mulesoft.com/x'>c</a>"
+        + "<a href='/general/'>d</a>"
+        + "<a href='#intro'>e</a>";
+    PageExtract extract = PageExtractor.extract(Jsoup.parse(html, "https://docs.mulesoft.com/"),
+        EnumSet.of(PageExtractor.Output.INTERNAL_LINKS, PageExtractor.Output.EXTERNAL_LINKS, PageExtractor.Output.REFERENCE_LINKS), null);
+
+    assertThat(extract.getExternalLinks().size(), is(2));
+    assertThat(extract.getInternalLinks().contains("https://api.docs.mulesoft.com/x"), is(true));
+    assertThat(extract.getInternalLinks().contains("https://docs.mulesoft.com/general/"), is(true));
+    assertThat(extract.getReferenceLinks().contains("https://docs.mulesoft.com/#intro"), is(true));
+  }
+
+  @Test
+  public void pathPrefixesMatchWholeSegments() {
+    UrlScope scope = UrlScope.compile(null, Collections.singletonList("/docs"), Collections.singletonList("/docs/api/**"));
+    assertThat(scope.isInScope("https://example.com/docs"), is(true));
+    assertThat(scope.isInScope("https://example.com/docs/guide?x=1"), is(true));
+    assertThat(scope.isInScope("https://example.com/docs-old"), is(false));
+    assertThat(scope.isInScope("https://example.com/"), is(false));
+    assertThat(scope.isInScope("https://example.com/docs/api"), is(false));
+    assertThat(scope.isInScope("https://example.com/docs/api/v1"), is(false));
+  }
+
+  @Test
+  public void globsAndRegularExpressions() {
+    UrlScope scope = UrlScope.compile(null, Arrays.asList("/blog/*/index.html", "*.md"), Collections.singletonList("regex:[?&]page=\\d+"));
+    assertThat(scope.isInScope("https://example.com/blog/2024/index.html"), is(true));
+    assertThat(scope.isInScope("https://example.com/blog/2024/05/index.html"), is(false));
+    assertThat(scope.isInScope("https://example.com/a/b/readme.md"), is(true));
+    assertThat(scope.isInScope("https://example.com/readme.md?page=2"), is(false));
+  }
+
+  @Test
+  public void hostsAreAllowedExactlyOrBySubdomain() {
+    UrlScope scope = UrlScope.compile(Arrays.asList("example.com", "*.mulesoft.com"), null, null);
+    assertThat(scope.hasHostRules(), is(true));
+    assertThat(scope.isInScope("https://EXAMPLE.com:8080/x"), is(true));
+    assertThat(scope.isInScope("https://www.example.com/x"), is(false));
+    assertThat(scope.isInScope("https://docs.mulesoft.com/x"), is(true));
+    assertThat(scope.isInScope("https://mulesoft.com.evil.com/x"), is(false));
+    assertThat(scope.isInScope("mailto:someone@mulesoft.com"), is(false));
+    assertThat(UrlScope.compile(null, Collections.<String>emptyList(), null) == null, is(true));
+  }
+}